@@ -0,0 +1,260 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays node and property key traces against the {@link DefaultSimpleCache} and the {@link CaffeineSimpleCache}.
+ * <p>
+ * The <tt>nodes</tt> trace has a skewed (Zipf-like) popularity over the node IDs, interrupted by scans of
+ * nodes that are read once, as happens when large folders are listed or content is indexed.  The
+ * <tt>properties</tt> trace uses the same access pattern but its values are property maps whose sizes vary
+ * from a handful of properties to several hundred.  A captured trace can be replayed instead by giving a
+ * file with one numeric key per line as <tt>traceFile</tt>.
+ * <p>
+ * Cache misses are followed by a <tt>put</tt>, in the way the node DAO fills its caches.  The hit and miss
+ * counts are reported as secondary results.  The <tt>caffeine-bytes</tt> implementation is bounded by
+ * size in bytes, set to the estimated size of <tt>cacheSize</tt> average values.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(Threads.MAX)
+public class SimpleCacheTraceBenchmark
+{
+    private static final int TRACE_LENGTH = 2000000;
+    private static final int SCAN_INTERVAL = 50000;
+    private static final int SCAN_LENGTH = 5000;
+    /** Values are shared between keys to keep the heap needed by the benchmark itself reasonable */
+    private static final int MAX_DISTINCT_VALUES = 20000;
+
+    @Param({"default", "caffeine", "caffeine-bytes"})
+    public String implementation;
+
+    @Param({"nodes", "properties"})
+    public String trace;
+
+    /** Optional file of keys, one per line, replayed instead of the generated trace */
+    @Param({""})
+    public String traceFile;
+
+    @Param({"50000"})
+    public int cacheSize;
+
+    /** The number of distinct keys, relative to the cache size, as a percentage */
+    @Param({"400"})
+    public int keySpacePercent;
+
+    private SimpleCache<Long, Serializable> cache;
+    private long[] keys;
+    private Serializable[] values;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        int keyCount = (int) ((long) cacheSize * keySpacePercent / 100);
+        Random random = new Random(42L);
+        keys = traceFile.isEmpty() ? generateTrace(keyCount, random) : readTrace(traceFile);
+        values = new Serializable[Math.min(keyCount, MAX_DISTINCT_VALUES)];
+        SimpleCacheEntryWeigher weigher = new SimpleCacheEntryWeigher();
+        long totalBytes = 0L;
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = "properties".equals(trace) ? createProperties(random) : "node-" + i;
+            totalBytes += weigher.weigh(Long.valueOf(i), values[i]);
+        }
+
+        if ("default".equals(implementation))
+        {
+            cache = new DefaultSimpleCache<Long, Serializable>(cacheSize, getClass().getName());
+        }
+        else if ("caffeine".equals(implementation))
+        {
+            cache = new CaffeineSimpleCache<Long, Serializable>(cacheSize, getClass().getName());
+        }
+        else if ("caffeine-bytes".equals(implementation))
+        {
+            long maxBytes = totalBytes / values.length * cacheSize;
+            cache = new CaffeineSimpleCache<Long, Serializable>(0, false, maxBytes, 0, 0, getClass().getName());
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        }
+    }
+
+    /**
+     * The position of a thread within the trace and its hit counts
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TraceCursor
+    {
+        public long hits;
+        public long misses;
+        private int position;
+
+        @Setup(Level.Iteration)
+        public void setUp()
+        {
+            // Start each thread at a different point of the trace
+            position = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Read-through access to the next key of the trace
+     */
+    @Benchmark
+    public Serializable replay(TraceCursor cursor)
+    {
+        int index = cursor.position % keys.length;
+        cursor.position = index + 1;
+        long key = keys[index];
+        Long cacheKey = Long.valueOf(key);
+        Serializable value = cache.get(cacheKey);
+        if (value == null)
+        {
+            cursor.misses++;
+            value = values[(int) (key % values.length)];
+            cache.put(cacheKey, value);
+        }
+        else
+        {
+            cursor.hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Generate a skewed trace with regular scans of keys that are not otherwise used
+     */
+    private long[] generateTrace(int keyCount, Random random)
+    {
+        long[] trace = new long[TRACE_LENGTH];
+        long scanKey = keyCount;
+        for (int i = 0; i < TRACE_LENGTH; i++)
+        {
+            if (i % SCAN_INTERVAL < SCAN_LENGTH)
+            {
+                trace[i] = scanKey++;
+            }
+            else
+            {
+                // P(rank <= k) = log(k) / log(n), i.e. a Zipf distribution with an exponent of about 1
+                long rank = (long) Math.pow(keyCount, random.nextDouble()) - 1;
+                // Spread the popular keys over the key space
+                trace[i] = (rank * 0x9E3779B97F4A7C15L >>> 1) % keyCount;
+            }
+        }
+        return trace;
+    }
+
+    private long[] readTrace(String fileName) throws IOException
+    {
+        List<Long> trace = new ArrayList<Long>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (!line.isEmpty())
+                {
+                    trace.add(Long.valueOf(Math.abs(Long.parseLong(line))));
+                }
+            }
+        }
+        if (trace.isEmpty())
+        {
+            throw new IllegalArgumentException("The trace file is empty: " + fileName);
+        }
+        long[] keys = new long[trace.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = trace.get(i);
+        }
+        return keys;
+    }
+
+    /**
+     * Most nodes have a few dozen properties; a few have hundreds
+     */
+    private HashMap<String, Serializable> createProperties(Random random)
+    {
+        int count = (random.nextInt(100) < 95) ? 10 + random.nextInt(30) : 200 + random.nextInt(400);
+        HashMap<String, Serializable> properties = new HashMap<String, Serializable>(count * 2);
+        for (int i = 0; i < count; i++)
+        {
+            Serializable value;
+            switch (i % 4)
+            {
+            case 0:
+                value = Long.valueOf(random.nextLong());
+                break;
+            case 1:
+                value = Boolean.valueOf(random.nextBoolean());
+                break;
+            default:
+                value = "value-" + Long.toHexString(random.nextLong()) + "-" + i;
+            }
+            properties.put("{http://www.alfresco.org/model/content/1.0}property" + i, value);
+        }
+        return properties;
+    }
+}
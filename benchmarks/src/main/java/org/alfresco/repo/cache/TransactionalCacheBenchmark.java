@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Measures the per-transaction cost of the {@link TransactionalCache} for read-only and read-write transactions.
+ * <p>
+ * Transactions are simulated by driving the Spring transaction synchronization directly, so the transactional
+ * cache binds its data and listener exactly as it does inside a real transaction but no transaction manager or
+ * database is involved.  Every key read is present in the shared cache.
+ * <ul>
+ *   <li><tt>transaction</tt> begins a transaction, reads <tt>getsPerTxn</tt> values and commits</li>
+ *   <li><tt>commit</tt> only measures the commit of such a transaction</li>
+ * </ul>
+ * Run with <tt>-prof gc</tt> to see the allocation per transaction.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionalCacheBenchmark
+{
+    private static final int KEY_COUNT = 100000;
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    @Param({"true", "false"})
+    public boolean readOnly;
+
+    @Param({"10", "100", "1000"})
+    public int getsPerTxn;
+
+    @Param({"500"})
+    public int maxCacheSize;
+
+    private TransactionalCache<Long, String> transactionalCache;
+    private long[] trace;
+    private int position;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        SimpleCache<Serializable, ValueHolder<String>> sharedCache =
+                new DefaultSimpleCache<Serializable, ValueHolder<String>>(KEY_COUNT, getClass().getName());
+        for (long key = 0; key < KEY_COUNT; key++)
+        {
+            TransactionalCache.putSharedCacheValue(sharedCache, key, "value-" + key, null);
+        }
+        transactionalCache = new TransactionalCache<Long, String>();
+        transactionalCache.setName(getClass().getName());
+        transactionalCache.setSharedCache(sharedCache);
+        transactionalCache.setMaxCacheSize(maxCacheSize);
+        transactionalCache.setTenantAware(false);
+        transactionalCache.afterPropertiesSet();
+
+        Random random = new Random(42L);
+        trace = new long[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++)
+        {
+            trace[i] = random.nextInt(KEY_COUNT);
+        }
+    }
+
+    @Benchmark
+    public int transaction()
+    {
+        begin();
+        int hash = read();
+        commit();
+        return hash;
+    }
+
+    @Benchmark
+    public void commit(OpenTransaction openTransaction)
+    {
+        commit();
+    }
+
+    /**
+     * Opens a transaction and reads from the cache before each invocation of the <tt>commit</tt> benchmark
+     */
+    @State(Scope.Thread)
+    public static class OpenTransaction
+    {
+        public int hash;
+
+        @Setup(Level.Invocation)
+        public void begin(TransactionalCacheBenchmark benchmark)
+        {
+            benchmark.begin();
+            hash = benchmark.read();
+        }
+
+        @TearDown(Level.Invocation)
+        public void end()
+        {
+            if (TransactionSynchronizationManager.isSynchronizationActive())
+            {
+                TransactionSynchronizationManager.clear();
+            }
+        }
+    }
+
+    private void begin()
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    }
+
+    private int read()
+    {
+        int hash = 0;
+        for (int i = 0; i < getsPerTxn; i++)
+        {
+            hash += transactionalCache.get(trace[position]).hashCode();
+            position = (position + 1) & (TRACE_LENGTH - 1);
+        }
+        return hash;
+    }
+
+    /**
+     * Commit in the same sequence as the Spring transaction managers
+     */
+    private void commit()
+    {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        try
+        {
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCommit(readOnly);
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCompletion();
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCommit();
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link EntityLookupCache} lookups by key, by value and by batches of keys.
+ * <p>
+ * The entities are held in memory by the callback DAO, so the numbers show the cost of the cache itself: the region
+ * keys, the value key lookups and the cache misses, which here are as cheap as a miss can be.  The key space is larger
+ * than the shared cache by <tt>keySpacePercent</tt> so that a steady proportion of lookups miss and evict.  Run with
+ * <tt>-t</tt> to vary the number of threads.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EntityLookupCacheBenchmark
+{
+    @Param({"50000"})
+    public int cacheSize;
+
+    /** The number of distinct entities, relative to the cache size, as a percentage */
+    @Param({"50", "200"})
+    public int keySpacePercent;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private EntityLookupCache<Long, String, String> entityLookupCache;
+    private String[] values;
+
+    @Setup
+    public void setUp()
+    {
+        int keyCount = (int) ((long) cacheSize * keySpacePercent / 100);
+        values = new String[keyCount];
+        Map<String, Long> ids = new HashMap<String, Long>(keyCount * 2);
+        for (int i = 0; i < keyCount; i++)
+        {
+            // Shaped like the qualified names and URLs that the lookup caches hold
+            values[i] = "{http://www.alfresco.org/model/benchmark/1.0}value-" + i;
+            ids.put(values[i], Long.valueOf(i));
+        }
+        SimpleCache<Serializable, Object> cache = new DefaultSimpleCache<Serializable, Object>(cacheSize, getClass().getName());
+        entityLookupCache = new EntityLookupCache<Long, String, String>(cache, "Benchmark", new InMemoryCallbackDAO(values, ids));
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        return entityLookupCache.getByKey(randomKey(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        return entityLookupCache.getByValue(values[ThreadLocalRandom.current().nextInt(values.length)]);
+    }
+
+    /**
+     * Batch lookup of <tt>batchSize</tt> random keys, as used by the node bulk loader
+     */
+    @Benchmark
+    public void getByKeys(Blackhole blackhole)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> keys = new ArrayList<Long>(batchSize);
+        for (int i = 0; i < batchSize; i++)
+        {
+            keys.add(randomKey(random));
+        }
+        blackhole.consume(entityLookupCache.getByKeys(keys));
+    }
+
+    private Long randomKey(ThreadLocalRandom random)
+    {
+        return Long.valueOf(random.nextInt(values.length));
+    }
+
+    /**
+     * Read-only entities held in memory in place of the database
+     */
+    private static class InMemoryCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final String[] values;
+        private final Map<String, Long> ids;
+
+        private InMemoryCallbackDAO(String[] values, Map<String, Long> ids)
+        {
+            this.values = values;
+            this.ids = ids;
+        }
+
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            int index = key.intValue();
+            return (index < values.length) ? new Pair<Long, String>(key, values[index]) : null;
+        }
+
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            Long id = ids.get(value);
+            return (id == null) ? null : new Pair<Long, String>(id, value);
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            throw new UnsupportedOperationException("The benchmark entities are read-only");
+        }
+    }
+}
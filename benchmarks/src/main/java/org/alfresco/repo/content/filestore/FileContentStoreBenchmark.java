@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the read and write throughput of a {@link FileContentStore} for small and large content.
+ * <p>
+ * The store is created under the temporary directory, which should be on the same kind of disk as the content store
+ * being sized; it can be moved with <tt>-jvmArgs -Djava.io.tmpdir=...</tt>.  Multiply the operations per second by
+ * <tt>contentSize</tt> for the bytes per second.  Content written during an iteration is deleted after the iteration.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileContentStoreBenchmark
+{
+    @Param({"4096", "1048576"})
+    public int contentSize;
+
+    /** The number of files that the <tt>read</tt> benchmark chooses from */
+    @Param({"100"})
+    public int readFileCount;
+
+    private File rootDirectory;
+    private FileContentStore store;
+    private byte[] content;
+    private String[] readUrls;
+    private Queue<String> writtenUrls;
+
+    @Setup
+    public void setUp()
+    {
+        rootDirectory = new File(TempFileProvider.getTempDir(), "FileContentStoreBenchmark-" + GUID.generate());
+        store = new FileContentStore(rootDirectory.getAbsolutePath());
+        content = new byte[contentSize];
+        new Random(42L).nextBytes(content);
+        readUrls = new String[readFileCount];
+        for (int i = 0; i < readFileCount; i++)
+        {
+            readUrls[i] = writeContent();
+        }
+        writtenUrls = new ConcurrentLinkedQueue<String>();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteWrittenContent()
+    {
+        String contentUrl;
+        while ((contentUrl = writtenUrls.poll()) != null)
+        {
+            store.delete(contentUrl);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(rootDirectory);
+    }
+
+    @Benchmark
+    public String write()
+    {
+        String contentUrl = writeContent();
+        writtenUrls.add(contentUrl);
+        return contentUrl;
+    }
+
+    @Benchmark
+    public long read(ReadBuffer readBuffer) throws IOException
+    {
+        String contentUrl = readUrls[ThreadLocalRandom.current().nextInt(readUrls.length)];
+        long total = 0;
+        try (InputStream is = store.getReader(contentUrl).getContentInputStream())
+        {
+            int read;
+            while ((read = is.read(readBuffer.buffer)) != -1)
+            {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private String writeContent()
+    {
+        ContentWriter writer = store.getWriter(ContentContext.NULL_CONTEXT);
+        writer.putContent(new ByteArrayInputStream(content));
+        return writer.getContentUrl();
+    }
+
+    /**
+     * A buffer per thread, sized like the buffers used to stream content to clients
+     */
+    @State(Scope.Thread)
+    public static class ReadBuffer
+    {
+        public final byte[] buffer = new byte[8192];
+    }
+}
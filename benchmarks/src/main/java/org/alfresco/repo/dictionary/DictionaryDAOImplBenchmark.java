@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.dictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.dictionary.AspectDefinition;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.dictionary.TypeDefinition;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.DynamicallySizedThreadPoolExecutor;
+import org.alfresco.util.TraceableThreadFactory;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link DictionaryDAOImpl} lookups made for almost every node operation: types, aspects and properties
+ * by name, and the sub-types of <tt>cm:content</tt>.
+ * <p>
+ * The dictionary is bootstrapped with the system and content models, as the repository does.  Lookups pick a random
+ * type, aspect or property from those models.  Run with <tt>-t</tt> to vary the number of threads.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DictionaryDAOImplBenchmark
+{
+    private static final List<String> MODELS = Arrays.asList(
+            "alfresco/model/dictionaryModel.xml",
+            "alfresco/model/systemModel.xml",
+            "org/alfresco/repo/security/authentication/userModel.xml",
+            "alfresco/model/contentModel.xml",
+            "alfresco/model/applicationModel.xml");
+
+    private DictionaryDAOImpl dictionaryDAO;
+    private ThreadPoolExecutor threadPoolExecutor;
+    private QName[] types;
+    private QName[] aspects;
+    private QName[] properties;
+
+    @Setup
+    public void setUp()
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setThreadPriority(Thread.NORM_PRIORITY);
+        threadPoolExecutor = new DynamicallySizedThreadPoolExecutor(2, 2, 90, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        compiledModelsCache.setThreadPoolExecutor(threadPoolExecutor);
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        bootstrap.setModels(MODELS);
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+
+        types = dictionaryDAO.getTypes(true).toArray(new QName[0]);
+        aspects = dictionaryDAO.getAspects(true).toArray(new QName[0]);
+        List<QName> propertyNames = new ArrayList<QName>();
+        for (QName type : types)
+        {
+            propertyNames.addAll(dictionaryDAO.getType(type).getProperties().keySet());
+        }
+        for (QName aspect : aspects)
+        {
+            propertyNames.addAll(dictionaryDAO.getAspect(aspect).getProperties().keySet());
+        }
+        properties = propertyNames.toArray(new QName[0]);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        threadPoolExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public TypeDefinition getType()
+    {
+        return dictionaryDAO.getType(types[ThreadLocalRandom.current().nextInt(types.length)]);
+    }
+
+    @Benchmark
+    public AspectDefinition getAspect()
+    {
+        return dictionaryDAO.getAspect(aspects[ThreadLocalRandom.current().nextInt(aspects.length)]);
+    }
+
+    @Benchmark
+    public PropertyDefinition getProperty()
+    {
+        return dictionaryDAO.getProperty(properties[ThreadLocalRandom.current().nextInt(properties.length)]);
+    }
+
+    @Benchmark
+    public Collection<QName> getSubTypes()
+    {
+        return dictionaryDAO.getSubTypes(ContentModel.TYPE_CONTENT, true);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures {@link NodeDAO#getNodeProperties(Long)} in read-only transactions against a real repository database.
+ * <p>
+ * The full application context is started, so the database is given with the same <tt>db.*</tt> system properties
+ * as the repository tests; see the module README.  A store with <tt>nodeCount</tt> documents is created for the run
+ * and deleted afterwards.
+ * <ul>
+ *   <li><tt>getNodeProperties</tt> reads through the node caches, as most reads in a running repository do</li>
+ *   <li><tt>getNodePropertiesCold</tt> clears the node caches before every transaction so that every read goes to the
+ *       database; run it single-threaded</li>
+ * </ul>
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class NodeDAOBenchmark
+{
+    private static final int NODES_PER_TXN = 100;
+
+    @Param({"1000"})
+    public int nodeCount;
+
+    @Param({"1", "50"})
+    public int readsPerTxn;
+
+    private RetryingTransactionHelper txnHelper;
+    private NodeService nodeService;
+    private NodeDAO nodeDAO;
+    private SimpleCache<?, ?>[] nodeCaches;
+    private StoreRef storeRef;
+    private Long[] nodeIds;
+
+    @Setup
+    public void setUp()
+    {
+        ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        txnHelper = serviceRegistry.getRetryingTransactionHelper();
+        nodeService = serviceRegistry.getNodeService();
+        nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
+        nodeCaches = new SimpleCache<?, ?>[] {
+                (SimpleCache<?, ?>) ctx.getBean("node.nodesSharedCache"),
+                (SimpleCache<?, ?>) ctx.getBean("node.aspectsSharedCache"),
+                (SimpleCache<?, ?>) ctx.getBean("node.propertiesSharedCache")};
+
+        AuthenticationUtil.runAsSystem(() -> {
+            storeRef = txnHelper.doInTransaction(() ->
+                    nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, getClass().getSimpleName() + "-" + GUID.generate()));
+            NodeRef rootNodeRef = txnHelper.doInTransaction(() -> nodeService.getRootNode(storeRef));
+            nodeIds = new Long[nodeCount];
+            for (int start = 0; start < nodeCount; start += NODES_PER_TXN)
+            {
+                int first = start;
+                txnHelper.doInTransaction(() -> {
+                    for (int i = first; i < Math.min(first + NODES_PER_TXN, nodeCount); i++)
+                    {
+                        nodeIds[i] = nodeDAO.getNodePair(createDocument(rootNodeRef, i)).getFirst();
+                    }
+                    return null;
+                });
+            }
+            return null;
+        });
+    }
+
+    private NodeRef createDocument(NodeRef parentNodeRef, int index)
+    {
+        String name = "document-" + index + ".txt";
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, name);
+        properties.put(ContentModel.PROP_TITLE, "Document " + index);
+        properties.put(ContentModel.PROP_DESCRIPTION, "A document created by " + getClass().getSimpleName());
+        properties.put(ContentModel.PROP_AUTHOR, "Benchmark");
+        return nodeService.createNode(
+                parentNodeRef,
+                ContentModel.ASSOC_CHILDREN,
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name),
+                ContentModel.TYPE_CONTENT,
+                properties).getChildRef();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        AuthenticationUtil.runAsSystem(() -> txnHelper.doInTransaction(() -> {
+            nodeService.deleteStore(storeRef);
+            return null;
+        }));
+        ApplicationContextHelper.closeApplicationContext();
+    }
+
+    @Benchmark
+    public void getNodeProperties(Blackhole blackhole)
+    {
+        read(blackhole);
+    }
+
+    @Benchmark
+    public void getNodePropertiesCold(ColdCaches coldCaches, Blackhole blackhole)
+    {
+        read(blackhole);
+    }
+
+    private void read(Blackhole blackhole)
+    {
+        txnHelper.doInTransaction(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < readsPerTxn; i++)
+            {
+                blackhole.consume(nodeDAO.getNodeProperties(nodeIds[random.nextInt(nodeIds.length)]));
+            }
+            return null;
+        }, true, true);
+    }
+
+    /**
+     * Empties the node caches before each invocation of the <tt>getNodePropertiesCold</tt> benchmark
+     */
+    @State(Scope.Thread)
+    public static class ColdCaches
+    {
+        @Setup(Level.Invocation)
+        public void clear(NodeDAOBenchmark benchmark)
+        {
+            for (SimpleCache<?, ?> cache : benchmark.nodeCaches)
+            {
+                cache.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link LinkedParentAssocsCache} with the {@link SegmentedParentAssocsCache}.
+ * <p>
+ * The key space is larger than the cache so that a steady proportion of lookups miss and are followed
+ * by a <tt>put</tt>, as happens when <tt>getPaths</tt> walks up a deep hierarchy.  Run with <tt>-t</tt>
+ * to vary the number of threads.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ParentAssocsCacheBenchmark
+{
+    @Param({"linked", "segmented"})
+    public String implementation;
+
+    @Param({"130000"})
+    public int cacheSize;
+
+    /** The number of distinct nodes, relative to the cache size, as a percentage */
+    @Param({"150"})
+    public int keySpacePercent;
+
+    @Param({"8"})
+    public int limitFactor;
+
+    @Param({"32"})
+    public int concurrencyLevel;
+
+    private ParentAssocsCache cache;
+    private List<Pair<Long, String>> keys;
+    private List<ParentAssocsInfo> values;
+
+    @Setup
+    public void setUp()
+    {
+        if ("linked".equals(implementation))
+        {
+            cache = new LinkedParentAssocsCache(cacheSize, limitFactor);
+        }
+        else if ("segmented".equals(implementation))
+        {
+            cache = new SegmentedParentAssocsCache(cacheSize, limitFactor, concurrencyLevel);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        }
+
+        int keyCount = (int) ((long) cacheSize * keySpacePercent / 100);
+        keys = new ArrayList<Pair<Long, String>>(keyCount);
+        values = new ArrayList<ParentAssocsInfo>(keyCount);
+        long assocId = 1L;
+        for (int i = 0; i < keyCount; i++)
+        {
+            Long nodeId = Long.valueOf(i);
+            keys.add(new Pair<Long, String>(nodeId, "txn-" + (i % 1000)));
+            // Most nodes have a single parent; a few are heavily multi-filed
+            int parentCount = (i % 100 == 0) ? 20 : 1;
+            NodeEntity childNode = new NodeEntity();
+            childNode.setId(nodeId);
+            List<ChildAssocEntity> parentAssocs = new ArrayList<ChildAssocEntity>(parentCount);
+            for (int j = 0; j < parentCount; j++)
+            {
+                ChildAssocEntity parentAssoc = new ChildAssocEntity();
+                parentAssoc.setId(assocId++);
+                parentAssoc.setChildNode(childNode);
+                parentAssoc.setPrimary(j == 0);
+                parentAssocs.add(parentAssoc);
+            }
+            values.add(new ParentAssocsInfo(false, false, parentAssocs));
+        }
+        // Start with a full cache
+        for (int i = 0; i < keyCount; i++)
+        {
+            cache.put(keys.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * Read-through access: look up an entry and load it on a miss
+     */
+    @Benchmark
+    public void getOrPut(Blackhole blackhole)
+    {
+        int index = ThreadLocalRandom.current().nextInt(keys.size());
+        Pair<Long, String> key = keys.get(index);
+        ParentAssocsInfo value = cache.get(key);
+        if (value == null)
+        {
+            value = values.get(index);
+            cache.put(key, value);
+        }
+        blackhole.consume(value);
+    }
+
+    /**
+     * Write-heavy access, as seen when a transaction moves or re-parents many nodes
+     */
+    @Benchmark
+    public void putAndInvalidate()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(keys.size());
+        cache.put(keys.get(index), values.get(index));
+        cache.remove(keys.get(random.nextInt(keys.size())));
+    }
+}
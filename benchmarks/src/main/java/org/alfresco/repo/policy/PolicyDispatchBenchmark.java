@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.policy;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.dictionary.CompiledModelsCache;
+import org.alfresco.repo.dictionary.DictionaryBootstrap;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.dictionary.DictionaryDAOImpl;
+import org.alfresco.repo.node.NodeServicePolicies.OnUpdatePropertiesPolicy;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.DynamicallySizedThreadPoolExecutor;
+import org.alfresco.util.TraceableThreadFactory;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of dispatching <tt>onUpdateProperties</tt> the way the node service does it for every property
+ * update: the policy for the type and aspects of a <tt>cm:content</tt> node is fetched from the delegate and invoked.
+ * <p>
+ * Behaviours are bound to <tt>cm:cmobject</tt>, <tt>cm:content</tt> and a few common aspects.  With
+ * <tt>filtered=true</tt> each benchmark thread disables <tt>cm:auditable</tt> behaviour first, as bulk imports do,
+ * which activates the behaviour filter for the rest of the run.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PolicyDispatchBenchmark implements OnUpdatePropertiesPolicy
+{
+    private static final Set<QName> CLASSES = new LinkedHashSet<QName>(Arrays.asList(
+            ContentModel.TYPE_CONTENT,
+            ContentModel.ASPECT_AUDITABLE,
+            ContentModel.ASPECT_TITLED,
+            ContentModel.ASPECT_AUTHOR,
+            ContentModel.ASPECT_VERSIONABLE));
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private ThreadPoolExecutor threadPoolExecutor;
+    private BehaviourFilterImpl behaviourFilter;
+    private ClassPolicyDelegate<OnUpdatePropertiesPolicy> delegate;
+    private NodeRef nodeRef;
+    private Map<QName, Serializable> before;
+    private Map<QName, Serializable> after;
+
+    @Setup
+    public void setUp()
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        DictionaryDAOImpl dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setThreadPriority(Thread.NORM_PRIORITY);
+        threadPoolExecutor = new DynamicallySizedThreadPoolExecutor(2, 2, 90, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        compiledModelsCache.setThreadPoolExecutor(threadPoolExecutor);
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        bootstrap.setModels(Arrays.asList(
+                "alfresco/model/dictionaryModel.xml",
+                "alfresco/model/systemModel.xml",
+                "org/alfresco/repo/security/authentication/userModel.xml",
+                "alfresco/model/contentModel.xml"));
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+
+        DictionaryComponent dictionary = new DictionaryComponent();
+        dictionary.setDictionaryDAO(dictionaryDAO);
+
+        behaviourFilter = new BehaviourFilterImpl();
+        behaviourFilter.setDictionaryService(dictionary);
+        behaviourFilter.setTenantService(tenantService);
+
+        PolicyComponentImpl policyComponent = new PolicyComponentImpl(dictionary);
+        policyComponent.setBehaviourFilter(behaviourFilter);
+        delegate = policyComponent.registerClassPolicy(OnUpdatePropertiesPolicy.class);
+        for (QName className : Arrays.asList(ContentModel.TYPE_CMOBJECT, ContentModel.TYPE_CONTENT,
+                ContentModel.ASPECT_AUDITABLE, ContentModel.ASPECT_TITLED, ContentModel.ASPECT_VERSIONABLE))
+        {
+            policyComponent.bindClassBehaviour(OnUpdatePropertiesPolicy.QNAME, className,
+                    new JavaBehaviour(this, "onUpdateProperties"));
+        }
+
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "benchmark-node");
+        before = new HashMap<QName, Serializable>();
+        before.put(ContentModel.PROP_NAME, "before.txt");
+        after = new HashMap<QName, Serializable>(before);
+        after.put(ContentModel.PROP_NAME, "after.txt");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        threadPoolExecutor.shutdownNow();
+    }
+
+    /**
+     * Behaviour filter state of a benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class FilterState
+    {
+        @Setup
+        public void setUp(PolicyDispatchBenchmark benchmark)
+        {
+            if (benchmark.filtered)
+            {
+                benchmark.behaviourFilter.disableBehaviour(ContentModel.ASPECT_AUDITABLE);
+            }
+        }
+
+        @TearDown
+        public void tearDown(PolicyDispatchBenchmark benchmark)
+        {
+            if (benchmark.filtered)
+            {
+                benchmark.behaviourFilter.enableBehaviour(ContentModel.ASPECT_AUDITABLE);
+            }
+        }
+    }
+
+    @Override
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
+    {
+        // The dispatch is measured, not the behaviour
+    }
+
+    @Benchmark
+    public OnUpdatePropertiesPolicy getPolicy(FilterState filterState)
+    {
+        return delegate.get(nodeRef, new HashSet<QName>(CLASSES));
+    }
+
+    @Benchmark
+    public void dispatchOnUpdateProperties(FilterState filterState)
+    {
+        delegate.get(nodeRef, new HashSet<QName>(CLASSES)).onUpdateProperties(nodeRef, before, after);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.parsers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.search.impl.querymodel.Constraint;
+import org.alfresco.repo.search.impl.querymodel.QueryModelFactory;
+import org.alfresco.repo.search.impl.querymodel.QueryOptions.Connective;
+import org.alfresco.repo.search.impl.querymodel.impl.lucene.LuceneQueryModelFactory;
+import org.alfresco.service.namespace.NamespaceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link FTSQueryParser#buildFTS} turning Alfresco FTS queries into a query model constraint, which happens
+ * for every FTS search before it is sent to the search subsystem.
+ * <p>
+ * The queries are shaped like the ones sent by Share and the public API.  As in the live code path the
+ * <tt>keywords</tt> template is parsed along with each query.
+ * 
+ * @since 7.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FTSQueryParserBenchmark
+{
+    private static final Map<String, String> QUERIES = new HashMap<String, String>();
+    static
+    {
+        QUERIES.put("term", "budget");
+        QUERIES.put("share",
+                "(keywords:\"budget\") AND (+TYPE:\"cm:content\" OR +TYPE:\"cm:folder\") " +
+                "AND -TYPE:\"cm:thumbnail\" AND -TYPE:\"cm:failedThumbnail\" AND -TYPE:\"cm:rating\" " +
+                "AND -ASPECT:\"rn:hidden\" AND -ASPECT:\"sys:hidden\" AND -cm:creator:system");
+        QUERIES.put("fields",
+                "=cm:name:report* AND cm:modified:[\"2020-01-01\" TO NOW] AND NOT ASPECT:\"cm:workingcopy\" " +
+                "AND (cm:title:(budget OR forecast)^2 OR TEXT:\"quarterly budget\"~5)");
+    }
+
+    private static final String KEYWORDS_TEMPLATE =
+            "%(cm:name cm:title cm:description ia:whatEvent ia:descriptionEvent lnk:title lnk:description TEXT TAG)";
+
+    @Param({"term", "share", "fields"})
+    public String query;
+
+    @Param({"DEFAULT_CONJUNCTION", "DEFAULT_DISJUNCTION"})
+    public FTSParser.Mode mode;
+
+    private String ftsExpression;
+    private QueryModelFactory factory;
+    private AlfrescoFunctionEvaluationContext functionContext;
+    private Map<String, String> templates;
+
+    @Setup
+    public void setUp()
+    {
+        ftsExpression = QUERIES.get(query);
+        if (ftsExpression == null)
+        {
+            throw new IllegalArgumentException("Unknown query: " + query);
+        }
+        factory = new LuceneQueryModelFactory<Object, Object, RuntimeException>();
+        functionContext = new AlfrescoFunctionEvaluationContext(null, null, NamespaceService.CONTENT_MODEL_1_0_URI);
+        templates = new HashMap<String, String>();
+        templates.put("keywords", KEYWORDS_TEMPLATE);
+    }
+
+    @Benchmark
+    public Constraint buildFTS()
+    {
+        return FTSQueryParser.buildFTS(ftsExpression, factory, functionContext, null, null,
+                mode, Connective.OR, templates, "keywords", FTSQueryParser.RerankPhase.SINGLE_PASS);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * Alfresco Community Repo Benchmarks
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Measures {@link PermissionServiceImpl#hasPermission(NodeRef, String)} for an ordinary user in read-only transactions
+ * against a real repository database.
+ * <p>
+ * The full application context is started, so the database is given with the same <tt>db.*</tt> system properties
+ * as the repository tests; see the module README.  For the run a user is created, along with a store holding a chain
+ * of <tt>depth</tt> folders with <tt>nodeCount</tt> documents in the deepest one.  The user is made a consumer of the
+ * top folder, so every check is answered by an inherited permission.
+ * <ul>
+ *   <li><tt>hasPermission</tt> checks <tt>Read</tt> through the permission caches</li>
+ *   <li><tt>hasPermissionCold</tt> clears the permission caches before every transaction; run it single-threaded</li>
+ * </ul>
+ * 
+ * @since 7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PermissionServiceImplBenchmark
+{
+    private static final int NODES_PER_TXN = 100;
+
+    @Param({"1000"})
+    public int nodeCount;
+
+    @Param({"1", "10"})
+    public int depth;
+
+    @Param({"1", "50"})
+    public int checksPerTxn;
+
+    private RetryingTransactionHelper txnHelper;
+    private NodeService nodeService;
+    private PersonService personService;
+    private PermissionServiceSPI permissionService;
+    private SimpleCache<?, ?>[] permissionCaches;
+    private String userName;
+    private StoreRef storeRef;
+    private NodeRef[] nodeRefs;
+
+    @Setup
+    public void setUp()
+    {
+        ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        txnHelper = serviceRegistry.getRetryingTransactionHelper();
+        nodeService = serviceRegistry.getNodeService();
+        personService = serviceRegistry.getPersonService();
+        permissionService = (PermissionServiceSPI) ctx.getBean("permissionServiceImpl");
+        permissionCaches = new SimpleCache<?, ?>[] {
+                (SimpleCache<?, ?>) ctx.getBean("permissionsAccessSharedCache"),
+                (SimpleCache<?, ?>) ctx.getBean("readersSharedCache"),
+                (SimpleCache<?, ?>) ctx.getBean("aclSharedCache")};
+        userName = getClass().getSimpleName() + "-" + GUID.generate();
+
+        AuthenticationUtil.runAsSystem(() -> {
+            NodeRef folderNodeRef = txnHelper.doInTransaction(() -> {
+                Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+                properties.put(ContentModel.PROP_USERNAME, userName);
+                properties.put(ContentModel.PROP_FIRSTNAME, "Benchmark");
+                properties.put(ContentModel.PROP_LASTNAME, "User");
+                properties.put(ContentModel.PROP_EMAIL, "benchmark@example.com");
+                personService.createPerson(properties);
+
+                storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, userName);
+                NodeRef parentNodeRef = nodeService.getRootNode(storeRef);
+                for (int i = 0; i < depth; i++)
+                {
+                    parentNodeRef = createNode(parentNodeRef, "folder-" + i, ContentModel.TYPE_FOLDER);
+                    if (i == 0)
+                    {
+                        permissionService.setPermission(parentNodeRef, userName, PermissionService.CONSUMER, true);
+                    }
+                }
+                return parentNodeRef;
+            });
+            nodeRefs = new NodeRef[nodeCount];
+            for (int start = 0; start < nodeCount; start += NODES_PER_TXN)
+            {
+                int first = start;
+                txnHelper.doInTransaction(() -> {
+                    for (int i = first; i < Math.min(first + NODES_PER_TXN, nodeCount); i++)
+                    {
+                        nodeRefs[i] = createNode(folderNodeRef, "document-" + i + ".txt", ContentModel.TYPE_CONTENT);
+                    }
+                    return null;
+                });
+            }
+            return null;
+        });
+    }
+
+    private NodeRef createNode(NodeRef parentNodeRef, String name, QName type)
+    {
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, name);
+        return nodeService.createNode(
+                parentNodeRef,
+                ContentModel.ASSOC_CONTAINS,
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name),
+                type,
+                properties).getChildRef();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        AuthenticationUtil.runAsSystem(() -> txnHelper.doInTransaction(() -> {
+            nodeService.deleteStore(storeRef);
+            personService.deletePerson(userName);
+            return null;
+        }));
+        ApplicationContextHelper.closeApplicationContext();
+    }
+
+    @Benchmark
+    public void hasPermission(Blackhole blackhole)
+    {
+        check(blackhole);
+    }
+
+    @Benchmark
+    public void hasPermissionCold(ColdCaches coldCaches, Blackhole blackhole)
+    {
+        check(blackhole);
+    }
+
+    private void check(Blackhole blackhole)
+    {
+        AuthenticationUtil.runAs(() -> txnHelper.doInTransaction(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < checksPerTxn; i++)
+            {
+                NodeRef nodeRef = nodeRefs[random.nextInt(nodeRefs.length)];
+                AccessStatus accessStatus = permissionService.hasPermission(nodeRef, PermissionService.READ);
+                blackhole.consume(accessStatus);
+            }
+            return null;
+        }, true, true), userName);
+    }
+
+    /**
+     * Empties the permission caches before each invocation of the <tt>hasPermissionCold</tt> benchmark
+     */
+    @State(Scope.Thread)
+    public static class ColdCaches
+    {
+        @Setup(Level.Invocation)
+        public void clear(PermissionServiceImplBenchmark benchmark)
+        {
+            for (SimpleCache<?, ?> cache : benchmark.permissionCaches)
+            {
+                cache.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2005-2021 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Immutable bridge table (the transitive closure of an acyclic set of parent-child links) held in primitive arrays.
+ * <p>
+ * Nodes are interned to int ids. For each node the table keeps its direct parents and children and the sorted ids of
+ * all its ancestors and descendants, so {@link #isAncestor(Object, Object)}, {@link #visitAncestors(Object, Consumer)}
+ * and {@link #visitDescendants(Object, Consumer)} do not allocate.
+ * <p>
+ * Changes are applied with {@link #withChanges(Collection, Collection)} or {@link #withLinks(Collection)}, which return
+ * a new version sharing the arrays of every node whose closure did not change; readers of an older version are never
+ * disturbed. Unlike {@link BridgeTable} the depth at which an ancestor is found is not recorded, and links that would
+ * form a cycle are rejected with a {@link CycleException}. A link added twice has to be removed twice.
+ *
+ * @author Alfresco
+ * @since 7.1
+ */
+public final class CompactBridgeTable<T>
+{
+    private static final int[] NONE = new int[0];
+
+    /** {@link #withLinks(Collection)} rebuilds the table when more than this proportion of the links changed */
+    private static final double MAX_INCREMENTAL_CHANGE_RATIO = 0.1;
+    private static final int MIN_INCREMENTAL_CHANGES = 64;
+
+    /** Intern pool, shared by every version derived from the same full build; ids are only ever added */
+    private final Map<T, Integer> ids;
+    private final AtomicInteger nextId;
+
+    private final Object[] names;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[][] ancestors;
+    private final int[][] descendants;
+    private final int linkCount;
+    private final int nodeCount;
+
+    private CompactBridgeTable(Map<T, Integer> ids, AtomicInteger nextId, Object[] names, int[][] parents,
+            int[][] children, int[][] ancestors, int[][] descendants, int linkCount)
+    {
+        this.ids = ids;
+        this.nextId = nextId;
+        this.names = names;
+        this.parents = parents;
+        this.children = children;
+        this.ancestors = ancestors;
+        this.descendants = descendants;
+        this.linkCount = linkCount;
+        int linked = 0;
+        for (int id = 0; id < names.length; id++)
+        {
+            if (parents[id].length > 0 || children[id].length > 0)
+            {
+                linked++;
+            }
+        }
+        this.nodeCount = linked;
+    }
+
+    /**
+     * @return a table without any links
+     */
+    public static <T> CompactBridgeTable<T> empty()
+    {
+        return of(Collections.<Pair<T, T>>emptyList());
+    }
+
+    /**
+     * Build a table from scratch.
+     *
+     * @param links     (parent, child) pairs
+     * @throws CycleException if the links contain a cycle
+     */
+    public static <T> CompactBridgeTable<T> of(Collection<Pair<T, T>> links)
+    {
+        Map<T, Integer> ids = new ConcurrentHashMap<>(Math.max(16, links.size()));
+        AtomicInteger nextId = new AtomicInteger();
+        int[] linkParents = new int[links.size()];
+        int[] linkChildren = new int[links.size()];
+        int i = 0;
+        for (Pair<T, T> link : links)
+        {
+            linkParents[i] = intern(ids, nextId, link.getFirst());
+            linkChildren[i] = intern(ids, nextId, link.getSecond());
+            i++;
+        }
+        int size = nextId.get();
+        Object[] names = new Object[size];
+        for (Map.Entry<T, Integer> entry : ids.entrySet())
+        {
+            names[entry.getValue()] = entry.getKey();
+        }
+        int[][] parents = group(linkChildren, linkParents, size);
+        int[][] children = group(linkParents, linkChildren, size);
+
+        int[] all = new int[size];
+        for (int id = 0; id < size; id++)
+        {
+            all[id] = id;
+        }
+        int[] order = order(all, parents, children);
+        if (order.length < size)
+        {
+            throw new CycleException("The links contain a cycle");
+        }
+        int[][] ancestors = new int[size][];
+        for (int id : order)
+        {
+            ancestors[id] = closure(parents[id], ancestors);
+        }
+        int[][] descendants = new int[size][];
+        for (int j = size - 1; j >= 0; j--)
+        {
+            int id = order[j];
+            descendants[id] = closure(children[id], descendants);
+        }
+        return new CompactBridgeTable<T>(ids, nextId, names, parents, children, ancestors, descendants, links.size());
+    }
+
+    /**
+     * Apply a change set. Removals are applied first; removing a link that is not present is ignored.
+     *
+     * @param addedLinks    (parent, child) pairs to add
+     * @param removedLinks  (parent, child) pairs to remove
+     * @return the new version of the table; this version is left unchanged
+     * @throws CycleException if an added link would form a cycle
+     */
+    public CompactBridgeTable<T> withChanges(Collection<Pair<T, T>> addedLinks, Collection<Pair<T, T>> removedLinks)
+    {
+        int[] added = new int[addedLinks.size() * 2];
+        int i = 0;
+        for (Pair<T, T> link : addedLinks)
+        {
+            added[i++] = intern(ids, nextId, link.getFirst());
+            added[i++] = intern(ids, nextId, link.getSecond());
+        }
+        Updater updater = new Updater();
+        for (Pair<T, T> link : removedLinks)
+        {
+            int parent = idOf(link.getFirst());
+            int child = idOf(link.getSecond());
+            if (parent >= 0 && child >= 0)
+            {
+                updater.removeLink(parent, child);
+            }
+        }
+        for (int j = 0; j < added.length; j += 2)
+        {
+            updater.addLink(added[j], added[j + 1]);
+        }
+        return updater.build();
+    }
+
+    /**
+     * Bring the table in line with a complete set of links. The difference to the current links is applied
+     * incrementally; when it is large, or the intern pool has accumulated many unlinked nodes, the table is rebuilt.
+     *
+     * @param links     all (parent, child) pairs
+     * @return the new version of the table; this version is left unchanged
+     * @throws CycleException if the links contain a cycle
+     */
+    public CompactBridgeTable<T> withLinks(Collection<Pair<T, T>> links)
+    {
+        if (ids.size() > 2 * nodeCount + MIN_INCREMENTAL_CHANGES)
+        {
+            return of(links);
+        }
+        long[] wanted = new long[links.size()];
+        int i = 0;
+        for (Pair<T, T> link : links)
+        {
+            wanted[i++] = key(intern(ids, nextId, link.getFirst()), intern(ids, nextId, link.getSecond()));
+        }
+        Arrays.sort(wanted);
+        long[] current = new long[linkCount];
+        i = 0;
+        for (int parent = 0; parent < children.length; parent++)
+        {
+            for (int child : children[parent])
+            {
+                current[i++] = key(parent, child);
+            }
+        }
+        Arrays.sort(current);
+
+        // Multiset difference of the two sorted key lists
+        long[] added = new long[wanted.length];
+        long[] removed = new long[current.length];
+        int addedCount = 0;
+        int removedCount = 0;
+        int w = 0;
+        int c = 0;
+        while (w < wanted.length || c < current.length)
+        {
+            if (c == current.length || (w < wanted.length && wanted[w] < current[c]))
+            {
+                added[addedCount++] = wanted[w++];
+            }
+            else if (w == wanted.length || current[c] < wanted[w])
+            {
+                removed[removedCount++] = current[c++];
+            }
+            else
+            {
+                w++;
+                c++;
+            }
+        }
+        if (addedCount + removedCount > Math.max(MIN_INCREMENTAL_CHANGES, linkCount * MAX_INCREMENTAL_CHANGE_RATIO))
+        {
+            return of(links);
+        }
+        if (addedCount + removedCount == 0 && names.length == nextId.get())
+        {
+            return this;
+        }
+        Updater updater = new Updater();
+        for (int j = 0; j < removedCount; j++)
+        {
+            updater.removeLink((int) (removed[j] >>> 32), (int) removed[j]);
+        }
+        for (int j = 0; j < addedCount; j++)
+        {
+            updater.addLink((int) (added[j] >>> 32), (int) added[j]);
+        }
+        return updater.build();
+    }
+
+    /**
+     * @return <tt>true</tt> if <b>ancestor</b> is a parent of <b>node</b>, directly or indirectly
+     */
+    public boolean isAncestor(T ancestor, T node)
+    {
+        int ancestorId = idOf(ancestor);
+        int nodeId = idOf(node);
+        return ancestorId >= 0 && nodeId >= 0 && Arrays.binarySearch(ancestors[nodeId], ancestorId) >= 0;
+    }
+
+    /**
+     * Call the visitor for each ancestor of the node, without allocating.
+     */
+    public void visitAncestors(T node, Consumer<? super T> visitor)
+    {
+        visit(ancestors, node, visitor);
+    }
+
+    /**
+     * Call the visitor for each descendant of the node, without allocating.
+     */
+    public void visitDescendants(T node, Consumer<? super T> visitor)
+    {
+        visit(descendants, node, visitor);
+    }
+
+    public Set<T> getAncestors(T node)
+    {
+        return toSet(ancestors, node);
+    }
+
+    public Set<T> getDescendants(T node)
+    {
+        return toSet(descendants, node);
+    }
+
+    public int getAncestorCount(T node)
+    {
+        int id = idOf(node);
+        return id < 0 ? 0 : ancestors[id].length;
+    }
+
+    public int getDescendantCount(T node)
+    {
+        int id = idOf(node);
+        return id < 0 ? 0 : descendants[id].length;
+    }
+
+    /**
+     * @return the number of nodes with at least one link
+     */
+    public int size()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of links, counting duplicates
+     */
+    public int getLinkCount()
+    {
+        return linkCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void visit(int[][] closures, T node, Consumer<? super T> visitor)
+    {
+        int id = idOf(node);
+        if (id < 0)
+        {
+            return;
+        }
+        for (int other : closures[id])
+        {
+            visitor.accept((T) names[other]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<T> toSet(int[][] closures, T node)
+    {
+        int id = idOf(node);
+        if (id < 0)
+        {
+            return Collections.emptySet();
+        }
+        int[] closure = closures[id];
+        Set<T> set = new HashSet<>(closure.length * 2);
+        for (int other : closure)
+        {
+            set.add((T) names[other]);
+        }
+        return set;
+    }
+
+    /**
+     * @return the id of the node in this version, or -1 if it is not known to this version
+     */
+    private int idOf(Object node)
+    {
+        Integer id = ids.get(node);
+        return id == null || id >= names.length ? -1 : id;
+    }
+
+    private static <T> int intern(Map<T, Integer> ids, AtomicInteger nextId, T node)
+    {
+        Integer id = ids.get(node);
+        return id != null ? id : ids.computeIfAbsent(node, n -> nextId.getAndIncrement());
+    }
+
+    private static long key(int parent, int child)
+    {
+        return ((long) parent << 32) | (child & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Group link targets by link source, keeping duplicates.
+     */
+    private static int[][] group(int[] from, int[] to, int size)
+    {
+        int[] counts = new int[size];
+        for (int id : from)
+        {
+            counts[id]++;
+        }
+        int[][] groups = new int[size][];
+        for (int id = 0; id < size; id++)
+        {
+            groups[id] = counts[id] == 0 ? NONE : new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int i = 0; i < from.length; i++)
+        {
+            groups[from[i]][counts[from[i]]++] = to[i];
+        }
+        return groups;
+    }
+
+    /**
+     * Order the (sorted) subset of nodes so that each comes after all of its predecessors in the subset. Nodes that are
+     * part of a cycle are left out.
+     */
+    private static int[] order(int[] subset, int[][] predecessors, int[][] successors)
+    {
+        int[] waiting = new int[subset.length];
+        for (int i = 0; i < subset.length; i++)
+        {
+            for (int predecessor : predecessors[subset[i]])
+            {
+                if (Arrays.binarySearch(subset, predecessor) >= 0)
+                {
+                    waiting[i]++;
+                }
+            }
+        }
+        int[] order = new int[subset.length];
+        int tail = 0;
+        for (int i = 0; i < subset.length; i++)
+        {
+            if (waiting[i] == 0)
+            {
+                order[tail++] = subset[i];
+            }
+        }
+        for (int head = 0; head < tail; head++)
+        {
+            for (int successor : successors[order[head]])
+            {
+                int i = Arrays.binarySearch(subset, successor);
+                if (i >= 0 && --waiting[i] == 0)
+                {
+                    order[tail++] = successor;
+                }
+            }
+        }
+        return tail == order.length ? order : Arrays.copyOf(order, tail);
+    }
+
+    /**
+     * @return the sorted, distinct union of the direct links and their closures
+     */
+    private static int[] closure(int[] direct, int[][] closures)
+    {
+        if (direct.length == 0)
+        {
+            return NONE;
+        }
+        int total = direct.length;
+        for (int id : direct)
+        {
+            total += closures[id].length;
+        }
+        int[] all = new int[total];
+        int n = 0;
+        for (int id : direct)
+        {
+            all[n++] = id;
+            System.arraycopy(closures[id], 0, all, n, closures[id].length);
+            n += closures[id].length;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (distinct == 0 || all[distinct - 1] != all[i])
+            {
+                all[distinct++] = all[i];
+            }
+        }
+        return distinct == all.length ? all : Arrays.copyOf(all, distinct);
+    }
+
+    /**
+     * @return the sorted union of two sorted arrays, or <b>a</b> itself if <b>b</b> adds nothing
+     */
+    private static int[] union(int[] a, int[] b)
+    {
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (j == b.length || (i < a.length && a[i] < b[j]))
+            {
+                merged[n++] = a[i++];
+            }
+            else if (i == a.length || b[j] < a[i])
+            {
+                merged[n++] = b[j++];
+            }
+            else
+            {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        if (n == a.length)
+        {
+            return a;
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private static int[] append(int[] values, int value)
+    {
+        int[] appended = Arrays.copyOf(values, values.length + 1);
+        appended[values.length] = value;
+        return appended;
+    }
+
+    /**
+     * @return the values without one occurrence of <b>value</b>, or <tt>null</tt> if it is not present
+     */
+    private static int[] removeOne(int[] values, int value)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] == value)
+            {
+                if (values.length == 1)
+                {
+                    return NONE;
+                }
+                int[] removed = new int[values.length - 1];
+                System.arraycopy(values, 0, removed, 0, i);
+                System.arraycopy(values, i + 1, removed, i, values.length - i - 1);
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(int[] values, int value)
+    {
+        for (int v : values)
+        {
+            if (v == value)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy-on-write editor producing the next version. Only the top-level arrays are copied; the per-node arrays of
+     * the previous version are replaced, never modified.
+     */
+    private final class Updater
+    {
+        private final Object[] newNames;
+        private final int[][] newParents;
+        private final int[][] newChildren;
+        private final int[][] newAncestors;
+        private final int[][] newDescendants;
+        private int newLinkCount;
+
+        private Updater()
+        {
+            int size = nextId.get();
+            newNames = Arrays.copyOf(names, size);
+            newParents = Arrays.copyOf(parents, size);
+            newChildren = Arrays.copyOf(children, size);
+            newAncestors = Arrays.copyOf(ancestors, size);
+            newDescendants = Arrays.copyOf(descendants, size);
+            newLinkCount = linkCount;
+            if (size > names.length)
+            {
+                for (Map.Entry<T, Integer> entry : ids.entrySet())
+                {
+                    int id = entry.getValue();
+                    if (id >= names.length && id < size)
+                    {
+                        newNames[id] = entry.getKey();
+                    }
+                }
+                for (int id = names.length; id < size; id++)
+                {
+                    newParents[id] = NONE;
+                    newChildren[id] = NONE;
+                    newAncestors[id] = NONE;
+                    newDescendants[id] = NONE;
+                }
+            }
+        }
+
+        private void addLink(int parent, int child)
+        {
+            if (parent == child || Arrays.binarySearch(newAncestors[parent], child) >= 0)
+            {
+                throw new CycleException("Adding link " + newNames[parent] + " -> " + newNames[child] + " would form a cycle");
+            }
+            newParents[child] = append(newParents[child], parent);
+            newChildren[parent] = append(newChildren[parent], child);
+            newLinkCount++;
+
+            int[] up = union(newAncestors[parent], new int[] {parent});
+            int[] down = union(newDescendants[child], new int[] {child});
+            for (int id : down)
+            {
+                newAncestors[id] = union(newAncestors[id], up);
+            }
+            for (int id : up)
+            {
+                newDescendants[id] = union(newDescendants[id], down);
+            }
+        }
+
+        private void removeLink(int parent, int child)
+        {
+            int[] remaining = removeOne(newChildren[parent], child);
+            if (remaining == null)
+            {
+                return;
+            }
+            newChildren[parent] = remaining;
+            newParents[child] = removeOne(newParents[child], parent);
+            newLinkCount--;
+            if (contains(remaining, child))
+            {
+                // A duplicate of the link is still there
+                return;
+            }
+
+            // Only the ancestors below the link and the descendants above it can change; the nodes around them keep
+            // their closures, so recomputing in dependency order is enough.
+            int[] down = union(newDescendants[child], new int[] {child});
+            for (int id : order(down, newParents, newChildren))
+            {
+                newAncestors[id] = closure(newParents[id], newAncestors);
+            }
+            int[] up = union(newAncestors[parent], new int[] {parent});
+            for (int id : order(up, newChildren, newParents))
+            {
+                newDescendants[id] = closure(newChildren[id], newDescendants);
+            }
+        }
+
+        private CompactBridgeTable<T> build()
+        {
+            return new CompactBridgeTable<T>(ids, nextId, newNames, newParents, newChildren, newAncestors,
+                    newDescendants, newLinkCount);
+        }
+    }
+
+    /**
+     * Thrown when links would form a cycle.
+     */
+    public static class CycleException extends IllegalArgumentException
+    {
+        private static final long serialVersionUID = 3794427510349962531L;
+
+        public CycleException(String message)
+        {
+            super(message);
+        }
+    }
+}
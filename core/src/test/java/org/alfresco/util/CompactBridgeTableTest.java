@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2005-2021 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link CompactBridgeTable} against {@link BridgeTable}.
+ */
+public class CompactBridgeTableTest extends TestCase
+{
+    @Test
+    public void testBasic()
+    {
+        CompactBridgeTable<String> table = CompactBridgeTable.of(links("A", "B", "C", "D", "E", "F"));
+        assertEquals(6, table.size());
+        assertEquals(Collections.singleton("A"), table.getAncestors("B"));
+        assertEquals(0, table.getAncestors("C").size());
+
+        CompactBridgeTable<String> linked = table.withChanges(links("B", "C", "D", "E"), links());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C", "D", "E")), linked.getAncestors("F"));
+        assertEquals(new HashSet<>(Arrays.asList("B", "C", "D", "E", "F")), linked.getDescendants("A"));
+        assertTrue(linked.isAncestor("A", "F"));
+        assertFalse(linked.isAncestor("F", "A"));
+        assertEquals(5, linked.getLinkCount());
+
+        // The previous version is unchanged
+        assertEquals(0, table.getAncestors("C").size());
+        assertFalse(table.isAncestor("A", "F"));
+
+        CompactBridgeTable<String> split = linked.withChanges(links(), links("C", "D"));
+        assertEquals(new HashSet<>(Arrays.asList("D", "E")), split.getAncestors("F"));
+        assertEquals(new HashSet<>(Arrays.asList("B", "C")), split.getDescendants("A"));
+        assertTrue(linked.isAncestor("A", "F"));
+    }
+
+    @Test
+    public void testUnknownNodes()
+    {
+        CompactBridgeTable<String> table = CompactBridgeTable.of(links("A", "B"));
+        assertEquals(0, table.getAncestors("X").size());
+        assertEquals(0, table.getAncestorCount("X"));
+        assertFalse(table.isAncestor("X", "B"));
+        table.visitAncestors("X", name -> fail());
+
+        // A node interned by a later version is unknown to this one
+        table.withChanges(links("A", "X"), links());
+        assertEquals(0, table.getAncestors("X").size());
+        assertEquals(0, CompactBridgeTable.<String>empty().size());
+    }
+
+    @Test
+    public void testDuplicateLinks()
+    {
+        CompactBridgeTable<String> table = CompactBridgeTable.of(links("A", "B", "A", "B", "B", "C"));
+        assertEquals(3, table.getLinkCount());
+        table = table.withChanges(links(), links("A", "B"));
+        assertTrue(table.isAncestor("A", "C"));
+        table = table.withChanges(links(), links("A", "B"));
+        assertFalse(table.isAncestor("A", "C"));
+        assertEquals(1, table.getLinkCount());
+    }
+
+    @Test
+    public void testCycles()
+    {
+        try
+        {
+            CompactBridgeTable.of(links("A", "B", "B", "C", "C", "A"));
+            fail("Cycle not detected");
+        }
+        catch (CompactBridgeTable.CycleException e)
+        {
+            // Expected
+        }
+        CompactBridgeTable<String> table = CompactBridgeTable.of(links("A", "B", "B", "C"));
+        for (List<Pair<String, String>> cycle : Arrays.asList(links("C", "A"), links("B", "A"), links("B", "B")))
+        {
+            try
+            {
+                table.withChanges(cycle, links());
+                fail("Cycle not detected: " + cycle);
+            }
+            catch (CompactBridgeTable.CycleException e)
+            {
+                // Expected
+            }
+        }
+        try
+        {
+            table.withLinks(links("A", "B", "B", "C", "C", "A"));
+            fail("Cycle not detected");
+        }
+        catch (CompactBridgeTable.CycleException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRandomChanges()
+    {
+        Random random = new Random(42);
+        List<Pair<String, String>> links = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            addRandomLink(random, links);
+        }
+        CompactBridgeTable<String> table = CompactBridgeTable.of(links);
+        check(links, table);
+
+        for (int round = 0; round < 100; round++)
+        {
+            List<Pair<String, String>> added = new ArrayList<>();
+            List<Pair<String, String>> removed = new ArrayList<>();
+            for (int i = random.nextInt(4); i > 0; i--)
+            {
+                removed.add(links.remove(random.nextInt(links.size())));
+            }
+            for (int i = random.nextInt(4); i > 0; i--)
+            {
+                added.add(addRandomLink(random, links));
+            }
+            if (round % 2 == 0)
+            {
+                table = table.withChanges(added, removed);
+            }
+            else
+            {
+                table = table.withLinks(links);
+            }
+            check(links, table);
+        }
+    }
+
+    /**
+     * Add a link from a lower to a higher numbered node, so that the links never form a cycle.
+     */
+    private Pair<String, String> addRandomLink(Random random, List<Pair<String, String>> links)
+    {
+        int parent = random.nextInt(99);
+        int child = parent + 1 + random.nextInt(100 - parent - 1);
+        Pair<String, String> link = new Pair<>("G" + parent, "G" + child);
+        links.add(link);
+        return link;
+    }
+
+    private void check(List<Pair<String, String>> links, CompactBridgeTable<String> table)
+    {
+        BridgeTable<String> expected = new BridgeTable<String>();
+        for (Pair<String, String> link : links)
+        {
+            expected.addLink(link);
+        }
+        assertEquals(links.size(), table.getLinkCount());
+        for (int i = 0; i < 100; i++)
+        {
+            String name = "G" + i;
+            assertEquals(name, expected.getAncestors(name), table.getAncestors(name));
+            assertEquals(name, expected.getDescendants(name), table.getDescendants(name));
+            Set<String> visited = new HashSet<>();
+            table.visitAncestors(name, visited::add);
+            assertEquals(name, expected.getAncestors(name), visited);
+        }
+    }
+
+    private static List<Pair<String, String>> links(String... names)
+    {
+        List<Pair<String, String>> links = new ArrayList<>();
+        for (int i = 0; i < names.length; i += 2)
+        {
+            links.add(new Pair<>(names[i], names[i + 1]));
+        }
+        return links;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.metrics;
+
+import java.io.IOException;
+
+import org.alfresco.metrics.MicrometerMetricsReporter;
+import org.alfresco.util.PropertyCheck;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.extensions.webscripts.AbstractWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Pull endpoint for the repository metrics in the Prometheus text format.
+ * 
+ * @see MicrometerMetricsReporter
+ * @since 7.1
+ */
+public class MetricsGet extends AbstractWebScript implements InitializingBean
+{
+    private MicrometerMetricsReporter metricsReporter;
+
+    public void setMetricsReporter(MicrometerMetricsReporter metricsReporter)
+    {
+        this.metricsReporter = metricsReporter;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        PropertyCheck.mandatory(this, "metricsReporter", metricsReporter);
+    }
+
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
+    {
+        if (!metricsReporter.isScrapeAvailable())
+        {
+            throw new WebScriptException(Status.STATUS_NOT_FOUND, "Metrics are not enabled");
+        }
+        String metrics = metricsReporter.scrape();
+        res.setStatus(Status.STATUS_OK);
+        res.setContentType(MicrometerMetricsReporter.SCRAPE_CONTENT_TYPE);
+        res.setContentEncoding("UTF-8");
+        res.getWriter().write(metrics);
+        res.getWriter().close();
+    }
+}
@@ -84,6 +84,7 @@ public class WebDAV
     public static final String SC_OK_DESC = "OK";
     public static final String SC_NOT_FOUND_DESC = "Not Found";
     public static final String SC_FORBIDDEN_DESC = "Forbidden";
+    public static final String SC_INTERNAL_SERVER_ERROR_DESC = "Internal Server Error";
 
 
     // HTTP methods
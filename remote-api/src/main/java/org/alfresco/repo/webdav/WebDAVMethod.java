@@ -35,9 +35,11 @@ import java.io.InputStreamReader;
 import java.net.SocketException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -72,6 +74,7 @@ import org.alfresco.service.cmr.search.SearchService;
 import org.alfresco.service.cmr.security.AuthenticationService;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.RegexQNamePattern;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.TempFileProvider;
 import org.apache.commons.logging.Log;
@@ -1210,6 +1213,55 @@ public abstract class WebDAVMethod
     }
     
     
+    /**
+     * Seeds the request scoped child to parent cache used by the indirect lock lookup for a listed level
+     * of children, using a single child association query against the parent instead of a primary parent
+     * lookup per child.  Only children whose primary parent is the given folder are cached.
+     * 
+     * @param parentInfo the folder that was listed
+     * @param childInfos the children of the folder being reported
+     */
+    protected void cacheChildParents(final FileInfo parentInfo, final List<FileInfo> childInfos)
+    {
+        if (parentInfo.getNodeRef() == null || childInfos.size() < 2)
+        {
+            // nothing worth batching
+            return;
+        }
+        
+        final Set<NodeRef> childNodeRefs = new HashSet<NodeRef>(childInfos.size() * 2);
+        for (FileInfo childInfo : childInfos)
+        {
+            if (!m_childToParent.containsKey(childInfo.getNodeRef()))
+            {
+                childNodeRefs.add(childInfo.getNodeRef());
+            }
+        }
+        if (childNodeRefs.isEmpty())
+        {
+            return;
+        }
+        
+        AuthenticationUtil.runAsSystem(new RunAsWork<Void>()
+        {
+            @Override
+            public Void doWork() throws Exception
+            {
+                List<ChildAssociationRef> childAssocRefs = getNodeService().getChildAssocs(
+                        parentInfo.getNodeRef(), ContentModel.ASSOC_CONTAINS, RegexQNamePattern.MATCH_ALL, false);
+                for (ChildAssociationRef childAssocRef : childAssocRefs)
+                {
+                    if (childAssocRef.isPrimary() && childNodeRefs.contains(childAssocRef.getChildRef()))
+                    {
+                        // temporarily cache - for this request
+                        m_childToParent.put(childAssocRef.getChildRef(), childAssocRef.getParentRef());
+                    }
+                }
+                return null;
+            }
+        });
+    }
+    
     /**
      * Returns node Lock token in consideration of WebDav lock depth. 
      * 
@@ -1415,6 +1467,21 @@ public abstract class WebDAVMethod
         return true;
     }
     
+    /**
+     * Discards all XML written since it was last flushed to the response
+     * 
+     * @param writer XMLWriter whose output should be discarded
+     */
+    protected final void discardXML(XMLWriter writer) throws IOException
+    {
+        if (shouldFlushXMLWriter())
+        {
+            writer.flush();
+        }
+        
+        m_xmlWriter.reset();
+    }
+
     /**
      * Flushes all XML written so far to the response
      * 
@@ -46,6 +46,11 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import org.alfresco.model.ApplicationModel;
 import org.alfresco.model.ContentModel;
@@ -60,6 +65,7 @@ import org.alfresco.repo.domain.node.AuditablePropertiesEntity;
 import org.alfresco.repo.lock.mem.Lifetime;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.model.filefolder.FileFolderServiceImpl;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.node.getchildren.FilterProp;
 import org.alfresco.repo.node.getchildren.FilterPropBoolean;
 import org.alfresco.repo.node.getchildren.GetChildrenCannedQuery;
@@ -216,6 +222,10 @@ public class NodesImpl implements Nodes
     private LockService lockService;
     private VirtualStore smartStore; // note: remove as part of REPO-1173
     private ClassDefinitionMapper classDefinitionMapper;
+    private NodeBulkLoader nodeBulkLoader;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private final Map<String, Timer> includeTimers = new ConcurrentHashMap<>();
+    private volatile Timer prefetchTimer;
 
     private enum Activity_Type
     {
@@ -334,6 +344,25 @@ public class NodesImpl implements Nodes
         this.classDefinitionMapper = classDefinitionMapper;
     }
 
+    /**
+     * Optional - pre-loads the nodes of a page of children before they are mapped
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+        this.includeTimers.clear();
+        this.prefetchTimer = null;
+    }
+
+    // metrics - time taken to fetch each "include" option of a node and to pre-fetch a page of nodes
+    private static final String METRIC_INCLUDE = "alfresco.rest.nodes.include";
+    private static final String METRIC_PREFETCH = "alfresco.rest.nodes.prefetch";
+
     // excluded namespaces (aspects, properties, assoc types)
     private static final List<String> EXCLUDED_NS = Arrays.asList(NamespaceService.SYSTEM_MODEL_1_0_URI);
 
@@ -846,6 +875,11 @@ public class NodesImpl implements Nodes
 
     @Override
     public Node getFolderOrDocument(final NodeRef nodeRef, NodeRef parentNodeRef, QName nodeTypeQName, List<String> includeParam, Map<String, UserInfo> mapUserInfo)
+    {
+        return getFolderOrDocument(nodeRef, parentNodeRef, nodeTypeQName, includeParam, mapUserInfo, null);
+    }
+
+    private Node getFolderOrDocument(final NodeRef nodeRef, NodeRef parentNodeRef, QName nodeTypeQName, List<String> includeParam, Map<String, UserInfo> mapUserInfo, PagePrefetch prefetch)
     {
         if (mapUserInfo == null)
         {
@@ -863,8 +897,10 @@ public class NodesImpl implements Nodes
         PathInfo pathInfo = null;
         if (includeParam.contains(PARAM_INCLUDE_PATH))
         {
+            long start = System.nanoTime();
             ChildAssociationRef archivedParentAssoc = (ChildAssociationRef) properties.get(ContentModel.PROP_ARCHIVED_ORIGINAL_PARENT_ASSOC);
-            pathInfo = lookupPathInfo(nodeRef, archivedParentAssoc);
+            pathInfo = lookupPathInfo(nodeRef, archivedParentAssoc, prefetch);
+            recordInclude(PARAM_INCLUDE_PATH, start);
         }
 
         if (nodeTypeQName == null)
@@ -902,14 +938,18 @@ public class NodesImpl implements Nodes
 
         if (includeParam.size() > 0)
         {
+            long start = System.nanoTime();
             node.setProperties(mapFromNodeProperties(properties, includeParam, mapUserInfo, EXCLUDED_NS, EXCLUDED_PROPS));
+            recordInclude(PARAM_INCLUDE_PROPERTIES, start);
         }
 
         Set<QName> aspects = null;
         if (includeParam.contains(PARAM_INCLUDE_ASPECTNAMES))
         {
+            long start = System.nanoTime();
             aspects = nodeService.getAspects(nodeRef);
             node.setAspectNames(mapFromNodeAspects(aspects, EXCLUDED_NS, EXCLUDED_ASPECTS));
+            recordInclude(PARAM_INCLUDE_ASPECTNAMES, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_ISLINK))
@@ -920,18 +960,23 @@ public class NodesImpl implements Nodes
 
         if (includeParam.contains(PARAM_INCLUDE_ISLOCKED))
         {
-            boolean isLocked = isLocked(nodeRef, aspects);
+            long start = System.nanoTime();
+            boolean isLocked = ((prefetch != null) && (prefetch.lockedNodes != null)) ? prefetch.lockedNodes.contains(nodeRef) : isLocked(nodeRef, aspects);
             node.setIsLocked(isLocked);
+            recordInclude(PARAM_INCLUDE_ISLOCKED, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_ISFAVORITE))
         {
-            boolean isFavorite = isFavorite(nodeRef);
+            long start = System.nanoTime();
+            boolean isFavorite = ((prefetch != null) && (prefetch.favorites != null)) ? prefetch.favorites.contains(nodeRef) : isFavorite(nodeRef);
             node.setIsFavorite(isFavorite);
+            recordInclude(PARAM_INCLUDE_ISFAVORITE, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_ALLOWABLEOPERATIONS))
         {
+            long start = System.nanoTime();
             // note: refactor when requirements change
             Map<String, String> mapPermsToOps = new HashMap<>(3);
             mapPermsToOps.put(PermissionService.DELETE, OP_DELETE);
@@ -963,10 +1008,12 @@ public class NodesImpl implements Nodes
             }
 
             node.setAllowableOperations((allowableOperations.size() > 0 )? allowableOperations : null);
+            recordInclude(PARAM_INCLUDE_ALLOWABLEOPERATIONS, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_PERMISSIONS))
         {
+            long start = System.nanoTime();
             Boolean inherit = permissionService.getInheritParentPermissions(nodeRef);
 
             List<NodePermissions.NodePermission> inheritedPerms = new ArrayList<>(5);
@@ -1004,10 +1051,12 @@ public class NodesImpl implements Nodes
                 NodePermissions nodePerms = new NodePermissions(inherit, inheritedPerms, setDirectlyPerms, settablePerms);
                 node.setPermissions(nodePerms);
             }
+            recordInclude(PARAM_INCLUDE_PERMISSIONS, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_ASSOCIATION))
         {
+            long start = System.nanoTime();
             // Ugh ... can we optimise this and return the actual assoc directly (via FileFolderService/GetChildrenCQ) ?
             ChildAssociationRef parentAssocRef = nodeService.getPrimaryParent(nodeRef);
 
@@ -1038,12 +1087,15 @@ public class NodesImpl implements Nodes
                     node.setAssociation(childAssoc);
                 }
             }
+            recordInclude(PARAM_INCLUDE_ASSOCIATION, start);
         }
 
         if (includeParam.contains(PARAM_INCLUDE_DEFINITION)) 
         {
+            long start = System.nanoTime();
             ClassDefinition classDefinition = classDefinitionMapper.fromDictionaryClassDefinition(getTypeDefinition(nodeRef), dictionaryService);
             node.setDefinition(classDefinition);
+            recordInclude(PARAM_INCLUDE_DEFINITION, start);
         }
 
         node.setNodeType(nodeTypeQName.toPrefixString(namespaceService));
@@ -1052,6 +1104,31 @@ public class NodesImpl implements Nodes
         return node;
     }
 
+    private void recordInclude(String include, long startNanos)
+    {
+        Timer timer = includeTimers.computeIfAbsent(include, i -> meterRegistry.timer(METRIC_INCLUDE, "include", i));
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private PathInfo lookupPathInfo(NodeRef nodeRef, ChildAssociationRef archivedParentAssoc, PagePrefetch prefetch)
+    {
+        if ((prefetch == null) || (archivedParentAssoc != null))
+        {
+            return lookupPathInfo(nodeRef, archivedParentAssoc);
+        }
+
+        // the path is that of the primary parent, so is the same for all children of the same parent
+        NodeRef primaryParentRef = nodeService.getPrimaryParent(nodeRef).getParentRef();
+        PathInfo pathInfo = prefetch.pathInfos.get(primaryParentRef);
+        if (pathInfo == null)
+        {
+            pathInfo = lookupPathInfo(nodeRef, null);
+            prefetch.pathInfos.put(primaryParentRef, pathInfo);
+        }
+        // note: copied as the relative path may be set per node
+        return new PathInfo(pathInfo.getName(), pathInfo.getIsComplete(), pathInfo.getElements());
+    }
+
     private TypeDefinition getTypeDefinition(NodeRef nodeRef)
     {
         QName type = nodeService.getType(nodeRef);
@@ -1334,6 +1411,7 @@ public class NodesImpl implements Nodes
         final Map<String, UserInfo> mapUserInfo = new HashMap<>(10);
 
         final List<FileInfo> page = pagingResults.getPage();
+        final PagePrefetch prefetch = prefetch(page, includeParam);
         List<Node> nodes = new AbstractList<Node>()
         {
             @Override
@@ -1344,7 +1422,7 @@ public class NodesImpl implements Nodes
                 // minimal info by default (unless "include"d otherwise)
                 // (pass in null as parentNodeRef to force loading of primary
                 // parent node as parentId)
-                Node node = getFolderOrDocument(fInfo.getNodeRef(), null, fInfo.getType(), includeParam, mapUserInfo);
+                Node node = getFolderOrDocument(fInfo.getNodeRef(), null, fInfo.getType(), includeParam, mapUserInfo, prefetch);
                 if (node.getPath() != null)
                 {
                     calculateRelativePath(parentFolderNodeId, node);
@@ -3448,16 +3526,89 @@ public class NodesImpl implements Nodes
         return duplicate;
     }
     
+    /**
+     * Data that is fetched once for a page of nodes rather than once per node.
+     */
+    private static class PagePrefetch
+    {
+        // the current user's favorites (if included)
+        private Set<NodeRef> favorites;
+
+        // path info by primary parent (if included)
+        private final Map<NodeRef, PathInfo> pathInfos = new HashMap<>(4);
+
+        // the nodes of the page that are locked (if included)
+        private Set<NodeRef> lockedNodes;
+    }
+
+    /**
+     * Fetch what is needed to map the given page of nodes in bulk, before the nodes are mapped one at a time.
+     */
+    private PagePrefetch prefetch(List<FileInfo> page, List<String> includeParam)
+    {
+        long start = System.nanoTime();
+        PagePrefetch prefetch = new PagePrefetch();
+
+        if ((nodeBulkLoader != null) && (page.size() > 0))
+        {
+            // properties, aspects and parent assocs (note: already cached nodes are skipped)
+            List<NodeRef> nodeRefs = new ArrayList<>(page.size());
+            for (FileInfo fileInfo : page)
+            {
+                nodeRefs.add(fileInfo.getNodeRef());
+            }
+            nodeBulkLoader.cacheNodes(nodeRefs);
+        }
+
+        if ((includeParam != null) && includeParam.contains(PARAM_INCLUDE_ISFAVORITE))
+        {
+            prefetch.favorites = getFavorites();
+        }
+
+        if ((includeParam != null) && includeParam.contains(PARAM_INCLUDE_ISLOCKED))
+        {
+            // only lockable nodes can be locked, and the aspects of the page have just been bulk loaded, so the lock
+            // service is only asked about those (note: there is no bulk lock lookup)
+            prefetch.lockedNodes = new HashSet<>();
+            for (FileInfo fileInfo : page)
+            {
+                NodeRef nodeRef = fileInfo.getNodeRef();
+                if (isLocked(nodeRef, nodeService.getAspects(nodeRef)))
+                {
+                    prefetch.lockedNodes.add(nodeRef);
+                }
+            }
+        }
+
+        Timer timer = prefetchTimer;
+        if (timer == null)
+        {
+            timer = meterRegistry.timer(METRIC_PREFETCH);
+            prefetchTimer = timer;
+        }
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return prefetch;
+    }
+
     /**
      * 
      * @param node
      */
     private boolean isFavorite(NodeRef node)
+    {
+        return getFavorites().contains(node);
+    }
+
+    /**
+     * @return the nodes that are favorites of the current user
+     */
+    private Set<NodeRef> getFavorites()
     {
         PreferenceService preferenceService = (PreferenceService) sr.getService(ServiceRegistry.PREFERENCE_SERVICE);
         String currentUserName = AuthenticationUtil.getFullyAuthenticatedUser();
         Map<String, Serializable> preferences = preferenceService.getPreferences(currentUserName);
 
+        Set<NodeRef> favorites = new HashSet<>();
         for (Serializable nodesFavorites : preferences.values())
         {
             if (nodesFavorites instanceof String)
@@ -3473,16 +3624,11 @@ public class NodesImpl implements Nodes
                         continue;
                     }
 
-                    NodeRef nodeRef = new NodeRef((String) nodeRefStr);
-
-                    if (nodeRef.equals(node))
-                    {
-                        return true;
-                    }
+                    favorites.add(new NodeRef((String) nodeRefStr));
                 }
             }
         }
-        return false;
+        return favorites;
     }
 
     public void validateAspects(List<String> aspectNames, List<String> excludedNS, List<QName> excludedAspects)
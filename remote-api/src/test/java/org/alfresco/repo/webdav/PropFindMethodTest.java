@@ -0,0 +1,289 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.XMLWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Unit tests for the {@link PropFindMethod} class, covering the multistatus written a chunk at a time.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PropFindMethodTest
+{
+    private static final String ROOT_PATH = "/folder";
+    private static final String URL_PREFIX = "/webdav/";
+    private static final int CHILD_COUNT = 250;
+
+    private TestPropFindMethod propFindMethod;
+    private MockHttpServletRequest req;
+    private StringWriter responseBody;
+    private @Mock HttpServletResponse resp;
+    private WebDAVHelper davHelper;
+    private @Mock ServiceRegistry serviceRegistry;
+    private @Mock TransactionService transactionService;
+    private @Mock RetryingTransactionHelper txnHelper;
+    private NodeRef rootNode;
+    private FileInfo folderInfo;
+    private int attemptsPerTransaction;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        req = new MockHttpServletRequest();
+        rootNode = new NodeRef("workspace://SpacesStore/root-id");
+        responseBody = new StringWriter();
+        attemptsPerTransaction = 1;
+
+        davHelper = spy(new WebDAVHelper());
+        doReturn(ROOT_PATH).when(davHelper).getRepositoryPath(any(HttpServletRequest.class));
+        doReturn(URL_PREFIX).when(davHelper).getUrlPathPrefix(any(HttpServletRequest.class));
+        doReturn(serviceRegistry).when(davHelper).getServiceRegistry();
+        when(serviceRegistry.getTransactionService()).thenReturn(transactionService);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+        when(txnHelper.doInTransaction(any(), anyBoolean())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                // Run the callback as many times as a retrying transaction would
+                RetryingTransactionCallback<?> callback = invocation.getArgument(0);
+                Object result = null;
+                for (int i = 0; i < attemptsPerTransaction; i++)
+                {
+                    result = callback.execute();
+                }
+                return result;
+            }
+        });
+        // Not used when nothing is sent
+        lenient().when(resp.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+        folderInfo = mock(FileInfo.class);
+        when(folderInfo.isFolder()).thenReturn(true);
+        doReturn(folderInfo).when(davHelper).getNodeForPath(rootNode, ROOT_PATH);
+
+        propFindMethod = new TestPropFindMethod();
+        propFindMethod.setDetails(req, resp, davHelper, rootNode);
+    }
+
+    @Test
+    public void depthOneReportsEveryChildAcrossChunks() throws Exception
+    {
+        doReturn(childInfos()).when(davHelper).getChildren(folderInfo);
+        req.addHeader(WebDAV.HEADER_DEPTH, WebDAV.ONE);
+
+        List<String[]> responses = propFind();
+
+        assertEquals(CHILD_COUNT + 1, responses.size());
+        assertEquals(URL_PREFIX + "folder/", responses.get(0)[0]);
+        for (int i = 0; i < CHILD_COUNT; i++)
+        {
+            assertEquals(URL_PREFIX + "folder/child-" + i, responses.get(i + 1)[0]);
+            assertEquals(null, responses.get(i + 1)[1]);
+        }
+        // One transaction per chunk of 100 responses
+        verify(txnHelper, times(3)).doInTransaction(any(), eq(true));
+    }
+
+    @Test
+    public void retriedChunksAreNotRepeated() throws Exception
+    {
+        doReturn(childInfos()).when(davHelper).getChildren(folderInfo);
+        req.addHeader(WebDAV.HEADER_DEPTH, WebDAV.ONE);
+        attemptsPerTransaction = 2;
+
+        List<String[]> responses = propFind();
+
+        assertEquals(CHILD_COUNT + 1, responses.size());
+        for (int i = 0; i < CHILD_COUNT; i++)
+        {
+            assertEquals(URL_PREFIX + "folder/child-" + i, responses.get(i + 1)[0]);
+        }
+    }
+
+    @Test
+    public void depthInfinityReportsOnlyTheRequestedNode() throws Exception
+    {
+        // Infinite depth is not walked, the folder itself is reported as for depth zero
+        req.addHeader(WebDAV.HEADER_DEPTH, WebDAV.INFINITY);
+
+        List<String[]> responses = propFind();
+
+        assertEquals(1, responses.size());
+        assertEquals(URL_PREFIX + "folder/", responses.get(0)[0]);
+        verify(davHelper, never()).getChildren(folderInfo);
+    }
+
+    @Test
+    public void failureInLaterChunkReportsRemainingNodesAsErrors() throws Exception
+    {
+        doReturn(childInfos()).when(davHelper).getChildren(folderInfo);
+        req.addHeader(WebDAV.HEADER_DEPTH, WebDAV.ONE);
+        propFindMethod.failingPath = ROOT_PATH + "/child-220";
+
+        List<String[]> responses = propFind();
+
+        assertEquals(CHILD_COUNT + 1, responses.size());
+        String errorStatus = WebDAV.HTTP1_1 + " " + HttpServletResponse.SC_INTERNAL_SERVER_ERROR + " " + WebDAV.SC_INTERNAL_SERVER_ERROR_DESC;
+        for (int i = 0; i < CHILD_COUNT; i++)
+        {
+            String[] response = responses.get(i + 1);
+            assertEquals(URL_PREFIX + "folder/child-" + i, response[0]);
+            // The first two chunks were sent before the failure, the whole of the failing chunk and the rest are errors
+            assertEquals(i < 199 ? null : errorStatus, response[1]);
+        }
+    }
+
+    @Test
+    public void failureInFirstChunkSendsNothing() throws Exception
+    {
+        doReturn(childInfos()).when(davHelper).getChildren(folderInfo);
+        req.addHeader(WebDAV.HEADER_DEPTH, WebDAV.ONE);
+        propFindMethod.failingPath = ROOT_PATH + "/child-50";
+
+        propFindMethod.parseRequestHeaders();
+        propFindMethod.executeImpl();
+        try
+        {
+            propFindMethod.generateResponseImpl();
+            fail("The failure should be thrown when no part of the response has been sent");
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(propFindMethod.failure, e);
+        }
+        assertEquals("", responseBody.toString());
+    }
+
+    /**
+     * Runs the PROPFIND and returns the href and status, if any, of each response element
+     */
+    private List<String[]> propFind() throws Exception
+    {
+        propFindMethod.parseRequestHeaders();
+        propFindMethod.executeImpl();
+        propFindMethod.generateResponseImpl();
+
+        // The whole multistatus must be well formed
+        Document document = DocumentHelper.parseText(responseBody.toString());
+        Element multiStatus = document.getRootElement();
+        assertEquals(WebDAV.XML_MULTI_STATUS, multiStatus.getName());
+
+        List<String[]> responses = new ArrayList<String[]>();
+        for (Object child : multiStatus.elements())
+        {
+            Element response = (Element) child;
+            assertEquals(WebDAV.XML_RESPONSE, response.getName());
+            Element status = response.element(WebDAV.XML_STATUS);
+            responses.add(new String[] {
+                    response.element(WebDAV.XML_HREF).getText(),
+                    status == null ? null : status.getText() });
+        }
+        return responses;
+    }
+
+    private List<FileInfo> childInfos()
+    {
+        List<FileInfo> childInfos = new ArrayList<FileInfo>(CHILD_COUNT);
+        for (int i = 0; i < CHILD_COUNT; i++)
+        {
+            FileInfo childInfo = mock(FileInfo.class);
+            when(childInfo.getName()).thenReturn("child-" + i);
+            childInfos.add(childInfo);
+        }
+        return childInfos;
+    }
+
+    /**
+     * Writes only the href of each response, and optionally fails part way through the response for a path
+     */
+    private static class TestPropFindMethod extends PropFindMethod
+    {
+        private String failingPath;
+        private final IllegalStateException failure = new IllegalStateException("Failed to read the node");
+
+        @Override
+        protected void cacheChildParents(FileInfo parentInfo, List<FileInfo> childInfos)
+        {
+            // not needed without lock lookups
+        }
+
+        @Override
+        protected void generateResponseForNode(XMLWriter xml, FileInfo nodeInfo, String path) throws Exception
+        {
+            xml.startElement(WebDAV.DAV_NS, WebDAV.XML_RESPONSE, WebDAV.XML_NS_RESPONSE, getDAVHelper().getNullAttributes());
+            xml.startElement(WebDAV.DAV_NS, WebDAV.XML_HREF, WebDAV.XML_NS_HREF, getDAVHelper().getNullAttributes());
+            xml.write(getURLForPath(m_request, path, nodeInfo.isFolder()));
+            xml.endElement(WebDAV.DAV_NS, WebDAV.XML_HREF, WebDAV.XML_NS_HREF);
+            if (path.equals(failingPath))
+            {
+                // Fail with the response element still open
+                throw failure;
+            }
+            xml.endElement(WebDAV.DAV_NS, WebDAV.XML_RESPONSE, WebDAV.XML_NS_RESPONSE);
+        }
+    }
+}
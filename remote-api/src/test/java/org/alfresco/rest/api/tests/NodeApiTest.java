@@ -4368,6 +4368,93 @@ public class NodeApiTest extends AbstractSingleNetworkSiteTest
         deleteNode(folderId);
     }
 
+    /**
+     * Tests the isLocked include when listing children, where the lock state is fetched for a page of nodes at once.
+     * <p>GET:</p>
+     * {@literal <host>:<port>/alfresco/api/-default-/public/alfresco/versions/1/nodes/<nodeId>/children?include=isLocked}
+     */
+    @Test
+    public void testListChildrenIncludeIsLocked() throws Exception
+    {
+        setRequestContext(user1);
+
+        // create folder with a locked, an ephemerally locked and an unlocked document, and a sub-folder
+        Folder folderResp = createFolder(Nodes.PATH_MY, "folder" + RUNID + "_isLocked");
+        String folderId = folderResp.getId();
+
+        String d1Name = "content" + RUNID + "_1l";
+        String d1Id = createTextFile(folderId, d1Name, "The quick brown fox jumps over the lazy dog 1.").getId();
+        String d2Name = "content" + RUNID + "_2l";
+        String d2Id = createTextFile(folderId, d2Name, "The quick brown fox jumps over the lazy dog 2.").getId();
+        String d3Name = "content" + RUNID + "_3";
+        createTextFile(folderId, d3Name, "The quick brown fox jumps over the lazy dog 3.");
+        String f1Name = "folder" + RUNID + "_1";
+        createFolder(folderId, f1Name);
+
+        LockInfo lockInfo = new LockInfo();
+        lockInfo.setTimeToExpire(60);
+        lockInfo.setType("FULL");
+        lockInfo.setLifetime("PERSISTENT");
+        lock(d1Id, toJsonAsStringNonNull(lockInfo));
+
+        lockInfo = new LockInfo();
+        lockInfo.setTimeToExpire(60);
+        lockInfo.setType("ALLOW_OWNER_CHANGES");
+        lockInfo.setLifetime("EPHEMERAL");
+        lock(d2Id, toJsonAsStringNonNull(lockInfo));
+
+        Map<String, String> params = Collections.singletonMap("include", "isLocked");
+
+        // all children in one page
+        HttpResponse response = getAll(getNodeChildrenUrl(folderId), getPaging(0, 100), params, 200);
+        Map<String, Boolean> isLocked = getIsLockedByName(response);
+        assertEquals(4, isLocked.size());
+        assertTrue(isLocked.get(d1Name));
+        assertTrue(isLocked.get(d2Name));
+        assertFalse(isLocked.get(d3Name));
+        assertFalse(isLocked.get(f1Name));
+
+        // the same children a page of two at a time
+        isLocked = new HashMap<>();
+        isLocked.putAll(getIsLockedByName(getAll(getNodeChildrenUrl(folderId), getPaging(0, 2), params, 200)));
+        isLocked.putAll(getIsLockedByName(getAll(getNodeChildrenUrl(folderId), getPaging(2, 2), params, 200)));
+        assertEquals(4, isLocked.size());
+        assertTrue(isLocked.get(d1Name));
+        assertTrue(isLocked.get(d2Name));
+        assertFalse(isLocked.get(d3Name));
+        assertFalse(isLocked.get(f1Name));
+
+        // not included by default
+        response = getAll(getNodeChildrenUrl(folderId), getPaging(0, 100), 200);
+        for (Node node : RestApiUtil.parseRestApiEntries(response.getJsonResponse(), Node.class))
+        {
+            assertNull(node.getIsLocked());
+        }
+
+        unlock(d1Id);
+        unlock(d2Id);
+
+        response = getAll(getNodeChildrenUrl(folderId), getPaging(0, 100), params, 200);
+        isLocked = getIsLockedByName(response);
+        assertEquals(4, isLocked.size());
+        for (Boolean locked : isLocked.values())
+        {
+            assertFalse(locked);
+        }
+
+        deleteNode(folderId);
+    }
+
+    private Map<String, Boolean> getIsLockedByName(HttpResponse response) throws Exception
+    {
+        Map<String, Boolean> isLocked = new HashMap<>();
+        for (Node node : RestApiUtil.parseRestApiEntries(response.getJsonResponse(), Node.class))
+        {
+            isLocked.put(node.getName(), node.getIsLocked());
+        }
+        return isLocked;
+    }
+
     @Test
     public void testLockFileCreatedByDeletedUser() throws Exception
     {
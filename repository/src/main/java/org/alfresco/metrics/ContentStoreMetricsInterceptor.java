@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentAccessor;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records the latency of the calls to a {@link ContentStore} and the number of bytes read and written
+ * through its readers and writers, tagged with the name of the store.
+ * <p>
+ * The bytes are recorded when the content stream of a reader or writer is closed.
+ * 
+ * @since 7.1
+ */
+public class ContentStoreMetricsInterceptor extends TimedMethodInterceptor
+{
+    public static final String METRIC_CALLS = "alfresco.contentstore.calls";
+    public static final String METRIC_BYTES = "alfresco.contentstore.bytes";
+    public static final String TAG_STORE = "store";
+    public static final String TAG_OPERATION = "operation";
+
+    private static final Log logger = LogFactory.getLog(ContentStoreMetricsInterceptor.class);
+
+    private final DistributionSummary readBytes;
+    private final DistributionSummary writtenBytes;
+
+    /**
+     * @param meterRegistry         the registry to record the metrics in
+     * @param storeName             the name of the store, usually the name of its bean
+     */
+    public ContentStoreMetricsInterceptor(MeterRegistry meterRegistry, String storeName)
+    {
+        super(meterRegistry, METRIC_CALLS, Tags.of(TAG_STORE, storeName));
+        this.readBytes = bytesSummary(storeName, "read");
+        this.writtenBytes = bytesSummary(storeName, "write");
+    }
+
+    private DistributionSummary bytesSummary(String storeName, String operation)
+    {
+        return DistributionSummary.builder(METRIC_BYTES)
+                .baseUnit("bytes")
+                .tag(TAG_STORE, storeName)
+                .tag(TAG_OPERATION, operation)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected Object afterInvocation(MethodInvocation invocation, Object result)
+    {
+        if (result instanceof ContentReader)
+        {
+            recordOnClose((ContentAccessor) result, readBytes);
+        }
+        else if (result instanceof ContentWriter)
+        {
+            recordOnClose((ContentAccessor) result, writtenBytes);
+        }
+        return result;
+    }
+
+    private void recordOnClose(final ContentAccessor accessor, final DistributionSummary summary)
+    {
+        try
+        {
+            accessor.addListener(new ContentStreamListener()
+            {
+                @Override
+                public void contentStreamClosed()
+                {
+                    summary.record(accessor.getSize());
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            // The accessor is already in use, so the stream cannot be measured
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Unable to measure content stream of " + accessor, e);
+            }
+        }
+    }
+}
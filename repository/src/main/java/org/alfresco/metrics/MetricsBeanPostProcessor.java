@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.metrics;
+
+import io.micrometer.core.instrument.Tags;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.util.PropertyCheck;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Wraps selected beans in proxies that record metrics about the calls made to them.
+ * <p>
+ * Beans are selected by name.  The objects created by factory beans, such as the dialect-specific node DAO,
+ * are wrapped rather than the factories themselves.  Nothing is wrapped unless metrics are
+ * {@link MicrometerMetricsReporter#isEnabled() enabled}, so there is no cost otherwise.  Beans that are not
+ * already JDK proxies are proxied by class, so they can still be injected by their concrete type.
+ * 
+ * @see TimedMethodInterceptor
+ * @see ContentStoreMetricsInterceptor
+ * @since 7.1
+ */
+public class MetricsBeanPostProcessor implements BeanPostProcessor, InitializingBean
+{
+    private static final Log logger = LogFactory.getLog(MetricsBeanPostProcessor.class);
+
+    private MicrometerMetricsReporter metricsReporter;
+    private Map<String, String> timedBeans = Collections.emptyMap();
+    private List<String> contentStores = Collections.emptyList();
+
+    public void setMetricsReporter(MicrometerMetricsReporter metricsReporter)
+    {
+        this.metricsReporter = metricsReporter;
+    }
+
+    /**
+     * @param timedBeans            the names of the timers to record the calls to each bean in, by bean name
+     */
+    public void setTimedBeans(Map<String, String> timedBeans)
+    {
+        this.timedBeans = timedBeans;
+    }
+
+    /**
+     * @param contentStores         the names of the {@link ContentStore} beans to record content metrics for
+     */
+    public void setContentStores(List<String> contentStores)
+    {
+        this.contentStores = contentStores;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        PropertyCheck.mandatory(this, "metricsReporter", metricsReporter);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException
+    {
+        if (!metricsReporter.isEnabled() || bean instanceof FactoryBean)
+        {
+            return bean;
+        }
+        MethodInterceptor interceptor;
+        String metricName = timedBeans.get(beanName);
+        if (metricName != null)
+        {
+            interceptor = new TimedMethodInterceptor(metricsReporter.getMeterRegistry(), metricName, Tags.empty());
+        }
+        else if (contentStores.contains(beanName) && bean instanceof ContentStore)
+        {
+            interceptor = new ContentStoreMetricsInterceptor(metricsReporter.getMeterRegistry(), beanName);
+        }
+        else
+        {
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(!Proxy.isProxyClass(bean.getClass()));
+        proxyFactory.addAdvice(interceptor);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Recording metrics for bean " + beanName);
+        }
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+}
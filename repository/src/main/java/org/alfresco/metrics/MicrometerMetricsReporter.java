@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.metrics;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Owns the Micrometer {@link MeterRegistry} that the repository records its metrics in.
+ * <p>
+ * Components are given the {@link #getMeterRegistry() registry} and register their meters in it
+ * unconditionally.  Only when metrics are {@link #setEnabled(boolean) enabled} are the Prometheus and
+ * JMX registries added to it; until then all meters are no-ops.  The registry is also added to the
+ * Micrometer {@link Metrics#globalRegistry global registry} for code that is not created by Spring.
+ * <p>
+ * The Prometheus registry is read by the pull endpoint through {@link #scrape()}.
+ * 
+ * @since 7.1
+ */
+public class MicrometerMetricsReporter implements MetricsReporter, InitializingBean, DisposableBean
+{
+    /** The content type of the {@link #scrape() scraped} metrics */
+    public static final String SCRAPE_CONTENT_TYPE = TextFormat.CONTENT_TYPE_004;
+
+    /** The prefix of the names of all the repository's meters */
+    public static final String METER_PREFIX = "alfresco.";
+
+    private static final Log logger = LogFactory.getLog(MicrometerMetricsReporter.class);
+
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private boolean enabled;
+    private boolean prometheusEnabled = true;
+    private boolean jmxEnabled = true;
+    private String jmxDomain = "Alfresco.metrics";
+    private boolean histogramsEnabled;
+    private PrometheusMeterRegistry prometheusRegistry;
+    private JmxMeterRegistry jmxRegistry;
+
+    /**
+     * @param enabled           <tt>true</tt> to record and export metrics
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param prometheusEnabled <tt>true</tt> to make the metrics available to the pull endpoint
+     */
+    public void setPrometheusEnabled(boolean prometheusEnabled)
+    {
+        this.prometheusEnabled = prometheusEnabled;
+    }
+
+    /**
+     * @param jmxEnabled        <tt>true</tt> to export the metrics as MBeans
+     */
+    public void setJmxEnabled(boolean jmxEnabled)
+    {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * @param jmxDomain         the JMX domain of the exported MBeans
+     */
+    public void setJmxDomain(String jmxDomain)
+    {
+        this.jmxDomain = jmxDomain;
+    }
+
+    /**
+     * Publish percentile histograms for the repository's timers and distribution summaries.
+     * Histograms make latencies comparable across nodes but increase the number of time series
+     * considerably, so they are off by default.
+     * 
+     * @param histogramsEnabled <tt>true</tt> to publish histograms to the pull endpoint
+     */
+    public void setHistogramsEnabled(boolean histogramsEnabled)
+    {
+        this.histogramsEnabled = histogramsEnabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        if (prometheusEnabled)
+        {
+            prometheusRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            if (histogramsEnabled)
+            {
+                prometheusRegistry.config().meterFilter(new HistogramMeterFilter());
+            }
+            meterRegistry.add(prometheusRegistry);
+        }
+        if (jmxEnabled)
+        {
+            jmxRegistry = new JmxMeterRegistry(new DomainJmxConfig(jmxDomain), Clock.SYSTEM);
+            meterRegistry.add(jmxRegistry);
+        }
+        Metrics.addRegistry(meterRegistry);
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Metrics enabled: prometheus=" + prometheusEnabled + ", jmx=" + jmxEnabled);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        Metrics.removeRegistry(meterRegistry);
+        meterRegistry.close();
+        if (prometheusRegistry != null)
+        {
+            prometheusRegistry.close();
+        }
+        if (jmxRegistry != null)
+        {
+            jmxRegistry.close();
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return the registry to register meters in, even when metrics are disabled
+     */
+    public MeterRegistry getMeterRegistry()
+    {
+        return meterRegistry;
+    }
+
+    /**
+     * @return <tt>true</tt> if the metrics can be {@link #scrape() scraped}
+     */
+    public boolean isScrapeAvailable()
+    {
+        return prometheusRegistry != null;
+    }
+
+    /**
+     * @return the current metrics in the Prometheus text format
+     * @throws IllegalStateException if the metrics are not {@link #isScrapeAvailable() available}
+     */
+    public String scrape()
+    {
+        if (prometheusRegistry == null)
+        {
+            throw new IllegalStateException("Metrics are not enabled for the pull endpoint");
+        }
+        return prometheusRegistry.scrape();
+    }
+
+    private static class DomainJmxConfig implements JmxConfig
+    {
+        private final String domain;
+
+        private DomainJmxConfig(String domain)
+        {
+            this.domain = domain;
+        }
+
+        @Override
+        public String get(String key)
+        {
+            return null;
+        }
+
+        @Override
+        public String domain()
+        {
+            return domain;
+        }
+    }
+
+    private static class HistogramMeterFilter implements MeterFilter
+    {
+        @Override
+        public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config)
+        {
+            if (id.getName().startsWith(METER_PREFIX))
+            {
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .build()
+                        .merge(config);
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Records the latency of every call to the intercepted bean in a {@link Timer} tagged with the
+ * name of the method and the exception thrown, if any.
+ * 
+ * @since 7.1
+ */
+public class TimedMethodInterceptor implements MethodInterceptor
+{
+    public static final String TAG_METHOD = "method";
+    public static final String TAG_EXCEPTION = "exception";
+    private static final String NO_EXCEPTION = "none";
+
+    protected final MeterRegistry meterRegistry;
+    private final String metricName;
+    private final Tags tags;
+    private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry         the registry to record the timings in
+     * @param metricName            the name of the timer
+     * @param tags                  tags added to every timing, e.g. the name of the bean
+     */
+    public TimedMethodInterceptor(MeterRegistry meterRegistry, String metricName, Tags tags)
+    {
+        this.meterRegistry = meterRegistry;
+        this.metricName = metricName;
+        this.tags = tags;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable
+    {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class)
+        {
+            return invocation.proceed();
+        }
+        long startNanos = System.nanoTime();
+        Object result;
+        try
+        {
+            result = invocation.proceed();
+        }
+        catch (Throwable e)
+        {
+            timer(method, e.getClass().getSimpleName()).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        Timer timer = timers.get(method);
+        if (timer == null)
+        {
+            timer = timers.computeIfAbsent(method, m -> timer(m, NO_EXCEPTION));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return afterInvocation(invocation, result);
+    }
+
+    /**
+     * Called after a successful invocation.  Override to record further metrics about the result.
+     * 
+     * @return the result to return to the caller
+     */
+    protected Object afterInvocation(MethodInvocation invocation, Object result)
+    {
+        return result;
+    }
+
+    private Timer timer(Method method, String exception)
+    {
+        return Timer.builder(metricName)
+                .tags(tags)
+                .tag(TAG_METHOD, method.getName())
+                .tag(TAG_EXCEPTION, exception)
+                .register(meterRegistry);
+    }
+}
@@ -227,6 +227,24 @@ public abstract class FeedTaskProcessor
                     
                     int excludedConnections = 0;
                     
+                    // The feed entry summary is the same for every recipient of the post, so work it out once
+                    // (the JSON activity data simply passes straight through)
+                    String activitySummary = activityPost.getActivityData();
+                    boolean summaryTooLong = activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY;
+                    if (summaryTooLong)
+                    {
+                        logger.warn("Skip feed entries (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
+                    }
+                    //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                    if (! userNamesAreCaseSensitive)
+                    {
+                        postingUserId = postingUserId.toLowerCase();
+                    }
+                    Date feedDate = new Date();
+                    
+                    // Feed entries for this post, inserted in batches rather than one row at a time
+                    List<ActivityFeedEntity> feedEntries = new ArrayList<ActivityFeedEntity>(recipients.size());
+                    
                     for (String recipient : recipients)
                     {
                         List<FeedControlEntity> feedControls = null;
@@ -266,35 +284,23 @@ public abstract class FeedTaskProcessor
                                 if (! userNamesAreCaseSensitive)
                                 {
                                     recipient = recipient.toLowerCase();
-                                    postingUserId = postingUserId.toLowerCase();
                                 }
                                 feed.setFeedUserId(recipient);
                                 feed.setPostUserId(postingUserId);
                                 feed.setActivityType(activityType);
                                 
-                                String activitySummary = null;
-                                    // allows JSON to simply pass straight through
-                                    activitySummary = activityPost.getActivityData();
-                                
                                 if (! activitySummary.equals(""))
                                 {
-                                    if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
-                                    {
-                                        logger.warn("Skip feed entry (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
-                                    }
-                                    else
+                                    if (! summaryTooLong)
                                     {
                                         feed.setActivitySummary(activitySummary);
                                         feed.setSiteNetwork(thisSite);
                                         feed.setAppTool(activityPost.getAppTool());
                                         feed.setPostDate(activityPost.getPostDate());
                                         feed.setPostId(activityPost.getId());
-                                        feed.setFeedDate(new Date());
-                                        
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
+                                        feed.setFeedDate(feedDate);
                                         
-                                        totalGenerated++;
+                                        feedEntries.add(feed);
                                     }
                                 }
                                 else
@@ -308,6 +314,12 @@ public abstract class FeedTaskProcessor
                         }
                     }
                     
+                    // Insert activity feeds
+                    if (! feedEntries.isEmpty())
+                    {
+                        totalGenerated += insertFeedEntries(feedEntries);
+                    }
+                    
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
                     
                     commitTransaction();
@@ -335,7 +347,14 @@ public abstract class FeedTaskProcessor
             // TODO i18n info message
             StringBuilder sb = new StringBuilder();
             sb.append("Generated ").append(totalGenerated).append(" activity feed entr").append(totalGenerated == 1 ? "y" : "ies");
-            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(System.currentTimeMillis() - startTime).append(" msecs)");
+            long duration = System.currentTimeMillis() - startTime;
+            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(duration).append(" msecs");
+            if (duration > 0)
+            {
+                sb.append(", ").append(totalGenerated * 1000L / duration).append(" entries/sec");
+                sb.append(", ").append(postCnt * 1000L / duration).append(" posts/sec");
+            }
+            sb.append(")");
             logger.info(sb.toString());
         }
     }
@@ -445,6 +464,21 @@ public abstract class FeedTaskProcessor
 
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Insert the feed entries generated for an activity post.  Override to insert them in batches.
+     * 
+     * @param feeds         the feed entries to insert
+     * @return              the number of feed entries inserted
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed);
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
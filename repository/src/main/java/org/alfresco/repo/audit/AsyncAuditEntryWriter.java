@@ -0,0 +1,558 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.error.ExceptionStackUtil;
+import org.alfresco.repo.audit.AuditJournal.JournalEntry;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+import org.springframework.transaction.TransactionException;
+
+/**
+ * Writes audit entries to the audit tables in the background, in batches, instead of in the audited transaction.
+ * <p>
+ * Entries recorded in a transaction are held until it commits and are then appended, in commit order, to a durable
+ * {@link AuditJournal local journal} and to an in-memory queue.  A single background thread takes entries from the
+ * queue in batches of up to <tt>batchSize</tt>, writes each batch to the audit tables in one transaction and then
+ * checkpoints the journal.  Entries that have not been written when the server stops are read back from the journal
+ * and written after the next startup.  An entry can be written twice if the server stops between writing a batch and
+ * checkpointing it, but it is never lost once its transaction has committed and the journal has been forced to disk.
+ * <p>
+ * At most <tt>maxPendingEntries</tt> entries can be waiting to be written; beyond that, committing transactions wait
+ * for the writer to catch up.  Until the entries have been written they are not visible to audit queries, so
+ * {@link #getPendingCount()} and {@link #getLagMillis()} report how far behind the writer is.
+ * 
+ * @since 7.1
+ */
+public class AsyncAuditEntryWriter extends AbstractLifecycleBean
+{
+    private static final Log logger = LogFactory.getLog(AsyncAuditEntryWriter.class);
+
+    public static final String METRIC_PENDING = "alfresco.audit.pending";
+    public static final String METRIC_LAG = "alfresco.audit.lag";
+
+    private static final String KEY_ENTRIES = AsyncAuditEntryWriter.class.getName() + ".entries";
+    private static final long POLL_TIMEOUT_MS = 1000L;
+    private static final long RETRY_WAIT_MS = 5000L;
+    /** Attempts at writing a batch in one transaction before writing its entries one by one */
+    private static final int BATCH_ATTEMPTS = 3;
+    /**
+     * Failures that say nothing about the entry itself, so it is kept and written again later.  The
+     * retrying transaction helper has already retried the entry, so integrity and other SQL errors
+     * still left at this point are taken to be caused by the entry.
+     */
+    private static final Class<?>[] TRANSIENT_EXCEPTIONS = new Class<?>[] {
+                TransientDataAccessException.class,
+                RecoverableDataAccessException.class,
+                DataAccessResourceFailureException.class,
+                TransactionException.class,
+                SQLTransientException.class,
+                SQLRecoverableException.class
+                };
+
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private boolean enabled;
+    private String journalDirectory;
+    private boolean syncJournal = true;
+    private int maxPendingEntries = 10000;
+    private int batchSize = 500;
+    private long shutdownTimeoutMs = 30000L;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /** Guards the journal and the queue so that entries are queued in journal order */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final BlockingQueue<JournalEntry> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private AuditJournal journal;
+    /** The first entry of the batch being written, if any */
+    private volatile JournalEntry inFlight;
+    /** The highest sequence number dealt with by the writer, which may be beyond the checkpoint */
+    private long lastWrittenSequence;
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param enabled           <tt>true</tt> to write audit entries in the background
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param journalDirectory  the local directory holding the journal of entries waiting to be written
+     */
+    public void setJournalDirectory(String journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param syncJournal       <tt>true</tt> (default) to force the journal to disk before a transaction's
+     *                          entries are accepted.  Without it, entries of recently committed transactions
+     *                          can be lost if the machine crashes.
+     */
+    public void setSyncJournal(boolean syncJournal)
+    {
+        this.syncJournal = syncJournal;
+    }
+
+    /**
+     * @param maxPendingEntries the number of entries that may wait to be written before transactions wait
+     */
+    public void setMaxPendingEntries(int maxPendingEntries)
+    {
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * @param batchSize         the maximum number of entries written in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param shutdownTimeoutMs how long to keep writing entries at shutdown before leaving them in the journal
+     */
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs)
+    {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Publish the writer metrics to the given registry rather than the global one
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Open the journal and read back any entries left from a previous run.  Nothing is written
+     * until the application context has started.
+     */
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Property 'batchSize' must be at least 1.");
+        }
+
+        AuditJournal auditJournal = new AuditJournal(new File(journalDirectory), syncJournal);
+        if (!enabled && !auditJournal.exists())
+        {
+            return;
+        }
+        try
+        {
+            List<JournalEntry> recovered = auditJournal.open();
+            if (auditJournal.getDiscardedBytes() > 0)
+            {
+                logger.warn("Discarded " + auditJournal.getDiscardedBytes() + " bytes of incomplete entries at the end of the audit journal.");
+            }
+            if (!recovered.isEmpty())
+            {
+                logger.info("Found " + recovered.size() + " audit entries that were not written before the last shutdown.");
+                queue.addAll(recovered);
+                pendingCount.addAndGet(recovered.size());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AuditException("Unable to open the audit journal in " + journalDirectory, e);
+        }
+        journal = auditJournal;
+
+        Gauge.builder(METRIC_PENDING, pendingCount, AtomicInteger::get)
+                .description("Audit entries waiting to be written to the audit tables")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_LAG, this, AsyncAuditEntryWriter::getLagMillis)
+                .description("Age in milliseconds of the oldest audit entry waiting to be written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return                  <tt>true</tt> if new audit entries should be given to this writer
+     */
+    public boolean isEnabled()
+    {
+        return enabled && journal != null;
+    }
+
+    /**
+     * @return                  the number of audit entries accepted but not yet written to the audit tables
+     */
+    public int getPendingCount()
+    {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return                  the age in milliseconds of the oldest entry not yet written, or 0 if there is none
+     */
+    public long getLagMillis()
+    {
+        JournalEntry oldest = inFlight;
+        if (oldest == null)
+        {
+            oldest = queue.peek();
+        }
+        return (oldest == null) ? 0L : Math.max(0L, System.currentTimeMillis() - oldest.entry.getTime());
+    }
+
+    /**
+     * Accept an audit entry.  Inside a transaction the entry is held until the transaction commits
+     * and is discarded if it rolls back.
+     */
+    public void write(AuditEntryInfo entry)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            List<AuditEntryInfo> entries = new ArrayList<>(1);
+            entries.add(entry);
+            accept(entries);
+            return;
+        }
+        List<AuditEntryInfo> entries = TransactionalResourceHelper.getList(KEY_ENTRIES);
+        if (entries.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    accept(entries);
+                }
+            });
+        }
+        entries.add(entry);
+    }
+
+    private void accept(List<AuditEntryInfo> entries)
+    {
+        lock.lock();
+        try
+        {
+            // Wait for space, unless the writer is not running and so would never make any
+            while (running && pendingCount.get() >= maxPendingEntries)
+            {
+                notFull.await();
+            }
+            List<JournalEntry> journalled = journal.append(entries);
+            queue.addAll(journalled);
+            pendingCount.addAndGet(journalled.size());
+            return;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to journal " + entries.size() + " audit entries; writing them directly: " + e.getMessage());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        writeNow(entries);
+    }
+
+    private void writeNow(List<AuditEntryInfo> entries)
+    {
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        txnHelper.doInTransaction(() -> {
+            auditDAO.createAuditEntries(entries);
+            return null;
+        }, false, true);
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        if (journal == null)
+        {
+            return;
+        }
+        running = true;
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("AsyncAuditEntryWriter");
+        writerThread = threadFactory.newThread(this::writeEntries);
+        writerThread.start();
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        if (journal == null)
+        {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try
+        {
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (writerThread != null)
+        {
+            try
+            {
+                writerThread.join(shutdownTimeoutMs);
+                if (writerThread.isAlive())
+                {
+                    writerThread.interrupt();
+                    writerThread.join(POLL_TIMEOUT_MS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try
+        {
+            if (pendingCount.get() > 0)
+            {
+                logger.warn("Leaving " + pendingCount.get() + " audit entries in the journal to be written after the next startup.");
+            }
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to close the audit journal: " + e.getMessage());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write entries until the writer is stopped and there are none left
+     */
+    private void writeEntries()
+    {
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        try
+        {
+            while (true)
+            {
+                JournalEntry first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    if (!running)
+                    {
+                        return;
+                    }
+                    continue;
+                }
+                inFlight = first;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                // Keep trying what is left of the same batch so that entries are written in order
+                int attempts = 0;
+                while (!writeBatch(batch, ++attempts >= BATCH_ATTEMPTS))
+                {
+                    if (!running)
+                    {
+                        return;
+                    }
+                    inFlight = batch.get(0);
+                    Thread.sleep(RETRY_WAIT_MS);
+                }
+                batch.clear();
+                inFlight = null;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Shutting down; anything not written is still in the journal
+        }
+    }
+
+    /**
+     * Write a batch of entries in one transaction or, if that keeps failing, one entry per transaction.  Entries
+     * that can't be written on their own while others can are assumed to be bad and are discarded so that they
+     * don't hold up the rest, unless the failure was transient; those entries are left in the batch to be
+     * retried and the journal is not checkpointed past them.
+     * 
+     * @param batch             the entries to write, in journal order; entries dealt with are removed from it
+     * @param oneByOne          <tt>true</tt> to write each entry in its own transaction
+     * @return                  <tt>true</tt> if the whole batch was dealt with
+     */
+    boolean writeBatch(List<JournalEntry> batch, boolean oneByOne)
+    {
+        List<JournalEntry> retained = new ArrayList<>();
+        if (!oneByOne)
+        {
+            List<AuditEntryInfo> entries = new ArrayList<>(batch.size());
+            for (JournalEntry journalEntry : batch)
+            {
+                entries.add(journalEntry.entry);
+            }
+            try
+            {
+                writeNow(entries);
+            }
+            catch (Throwable e)
+            {
+                logger.error("Failed to write " + entries.size() + " audit entries; they will be retried.", e);
+                return false;
+            }
+        }
+        else
+        {
+            List<JournalEntry> badEntries = new ArrayList<>();
+            Throwable failure = null;
+            for (JournalEntry journalEntry : batch)
+            {
+                try
+                {
+                    List<AuditEntryInfo> single = new ArrayList<>(1);
+                    single.add(journalEntry.entry);
+                    writeNow(single);
+                }
+                catch (Throwable e)
+                {
+                    if (ExceptionStackUtil.getCause(e, TRANSIENT_EXCEPTIONS) != null)
+                    {
+                        retained.add(journalEntry);
+                    }
+                    else
+                    {
+                        badEntries.add(journalEntry);
+                    }
+                    failure = e;
+                }
+            }
+            if (retained.size() + badEntries.size() == batch.size())
+            {
+                // Nothing could be written, so the failures can't be put down to the entries
+                logger.error("Failed to write " + batch.size() + " audit entries; they will be retried.", failure);
+                return false;
+            }
+            for (JournalEntry journalEntry : badEntries)
+            {
+                logger.error("Discarding an audit entry that can't be written: " + journalEntry.entry);
+            }
+            if (!retained.isEmpty())
+            {
+                logger.warn("Failed to write " + retained.size() + " audit entries; they will be retried.", failure);
+            }
+        }
+
+        int dealtWith = batch.size() - retained.size();
+        for (JournalEntry journalEntry : batch)
+        {
+            if (!retained.contains(journalEntry))
+            {
+                lastWrittenSequence = Math.max(lastWrittenSequence, journalEntry.sequence);
+            }
+        }
+        // Entries after a retained one may have been written, but the checkpoint can't pass it
+        long checkpoint = retained.isEmpty() ? lastWrittenSequence : retained.get(0).sequence - 1;
+        batch.retainAll(retained);
+
+        lock.lock();
+        try
+        {
+            journal.checkpoint(checkpoint);
+        }
+        catch (IOException e)
+        {
+            // The entries are safe in the database; they will only be written again after a crash
+            logger.warn("Unable to checkpoint the audit journal: " + e.getMessage());
+        }
+        finally
+        {
+            pendingCount.addAndGet(-dealtWith);
+            notFull.signalAll();
+            lock.unlock();
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Wrote " + dealtWith + " audit entries; " + pendingCount.get() + " still pending.");
+        }
+        return batch.isEmpty();
+    }
+}
@@ -42,6 +42,7 @@ import org.alfresco.repo.audit.model.AuditModelRegistry;
 import org.alfresco.repo.audit.model.AuditModelRegistryImpl;
 import org.alfresco.repo.audit.model.AuditApplication.DataExtractorDefinition;
 import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
 import org.alfresco.repo.domain.propval.PropertyValueDAO;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
@@ -81,6 +82,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AsyncAuditEntryWriter asyncAuditEntryWriter;
     
     /**
      * Default constructor
@@ -137,6 +139,20 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the component that writes audit entries in the background, when it is enabled
+     * @since 7.1
+     */
+    public void setAsyncAuditEntryWriter(AsyncAuditEntryWriter asyncAuditEntryWriter)
+    {
+        this.asyncAuditEntryWriter = asyncAuditEntryWriter;
+    }
+
+    private boolean isAsyncWrite()
+    {
+        return asyncAuditEntryWriter != null && asyncAuditEntryWriter.isEnabled();
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -578,6 +594,17 @@ public class AuditComponentImpl implements AuditComponent
         
         // We have something to record.  Start a transaction, if necessary
         TxnReadState txnState = AlfrescoTransactionSupport.getTransactionReadState();
+        if (isAsyncWrite())
+        {
+            // Nothing is written in the transaction so a read-only one will do.  Outside of a writable transaction the
+            // entries are handed over when our own transaction commits, so that they survive the caller rolling back.
+            if (txnState == TxnReadState.TXN_NONE || txnState == TxnReadState.TXN_READ_ONLY)
+            {
+                return transactionService.getRetryingTransactionHelper().doInTransaction(
+                        () -> recordAuditValuesImpl(mappedValues), true, true);
+            }
+            return recordAuditValuesImpl(mappedValues);
+        }
         switch (txnState)
         {
         case TXN_NONE:
@@ -749,7 +776,15 @@ public class AuditComponentImpl implements AuditComponent
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
             if (!justGatherPreCallData)
             {
-                entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                if (isAsyncWrite())
+                {
+                    // Written after the transaction commits, so there is no entry ID yet
+                    asyncAuditEntryWriter.write(new AuditEntryInfo(applicationId, time, username, new HashMap<String, Serializable>(auditData)));
+                }
+                else
+                {
+                    entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                }
             }
             // Done
             if (logger.isDebugEnabled())
@@ -923,9 +958,35 @@ public class AuditComponentImpl implements AuditComponent
             return;
         }
         
+        if (logger.isDebugEnabled() && getAuditEntriesPendingCount() > 0)
+        {
+            logger.debug(
+                    "Audit query will not find the " + getAuditEntriesPendingCount() + " audit entries " +
+                    "still waiting to be written (oldest " + getAuditEntriesPendingAge() + "ms ago)");
+        }
         auditDAO.findAuditEntries(callback, parameters, maxResults);
     }
 
+    /**
+     * {@inheritDoc}
+     * @since 7.1
+     */
+    @Override
+    public int getAuditEntriesPendingCount()
+    {
+        return (asyncAuditEntryWriter == null) ? 0 : asyncAuditEntryWriter.getPendingCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @since 7.1
+     */
+    @Override
+    public long getAuditEntriesPendingAge()
+    {
+        return (asyncAuditEntryWriter == null) ? 0L : asyncAuditEntryWriter.getLagMillis();
+    }
+
     /**
      * {@inheritDoc}
      */
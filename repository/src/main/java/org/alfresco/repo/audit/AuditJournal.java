@@ -0,0 +1,367 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+
+/**
+ * A durable journal of the audit entries that the {@link AsyncAuditEntryWriter} has accepted but not yet written
+ * to the audit tables.
+ * <p>
+ * Each record holds a sequence number, the length of the serialized entry, the entry itself and a CRC32 checksum of
+ * it.  The sequence number of the last entry written to the database is kept in a separate checkpoint file.  After
+ * a restart the entries after the checkpoint are read back so that they can be written again; a record that was only
+ * partly written when the server stopped fails its checks and is discarded along with anything after it.  The journal
+ * is emptied whenever every entry in it has been checkpointed and, so that it doesn't grow without bound while the
+ * writer never quite catches up, is rewritten without its checkpointed entries once those take up more than
+ * <tt>compactBytes</tt> and at least half of the file.
+ * <p>
+ * This class is not thread safe; callers must synchronize access.
+ * 
+ * @since 7.1
+ */
+class AuditJournal
+{
+    static final String JOURNAL_FILE = "audit.journal";
+    static final String CHECKPOINT_FILE = "audit.checkpoint";
+    static final long DEFAULT_COMPACT_BYTES = 16L * 1024L * 1024L;
+
+    /** Sequence number, length and checksum */
+    private static final int RECORD_OVERHEAD = 8 + 4 + 8;
+
+    /**
+     * An audit entry with its position in the journal
+     */
+    static class JournalEntry
+    {
+        final long sequence;
+        final AuditEntryInfo entry;
+
+        JournalEntry(long sequence, AuditEntryInfo entry)
+        {
+            this.sequence = sequence;
+            this.entry = entry;
+        }
+    }
+
+    private final File directory;
+    private final boolean sync;
+    private final long compactBytes;
+    private RandomAccessFile file;
+    /** The sequence number of the last entry appended */
+    private long lastSequence;
+    /** The sequence number of the last entry written to the database */
+    private long checkpoint;
+    private long discardedBytes;
+    /** The last sequence number and end position of each append, oldest first, that is not yet checkpointed */
+    private final Deque<long[]> appendEnds = new ArrayDeque<>();
+    /** The position up to which every record has been checkpointed */
+    private long checkpointPosition;
+
+    /**
+     * @param directory         the directory holding the journal and checkpoint files
+     * @param sync              <tt>true</tt> to force every append and checkpoint to disk before returning
+     */
+    AuditJournal(File directory, boolean sync)
+    {
+        this(directory, sync, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * @param compactBytes      the size of the checkpointed part of the journal beyond which it is rewritten
+     */
+    AuditJournal(File directory, boolean sync, long compactBytes)
+    {
+        this.directory = directory;
+        this.sync = sync;
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the directory holds a journal from a previous run
+     */
+    boolean exists()
+    {
+        return new File(directory, JOURNAL_FILE).exists();
+    }
+
+    /**
+     * Open the journal, creating it if necessary.
+     * 
+     * @return                  the entries that were appended but never checkpointed, in order
+     */
+    List<JournalEntry> open() throws IOException
+    {
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new IOException("Unable to create the audit journal directory " + directory);
+        }
+        File checkpointFile = new File(directory, CHECKPOINT_FILE);
+        if (checkpointFile.exists())
+        {
+            checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile.toPath()), "US-ASCII").trim());
+        }
+        lastSequence = checkpoint;
+
+        file = new RandomAccessFile(new File(directory, JOURNAL_FILE), "rw");
+        List<JournalEntry> entries = new ArrayList<>();
+        long length = file.length();
+        long position = 0;
+        while (true)
+        {
+            JournalEntry entry = readRecord(position, length);
+            if (entry == null)
+            {
+                break;
+            }
+            position = file.getFilePointer();
+            lastSequence = Math.max(lastSequence, entry.sequence);
+            if (entry.sequence > checkpoint)
+            {
+                entries.add(entry);
+                appendEnds.addLast(new long[] {entry.sequence, position});
+            }
+            else
+            {
+                checkpointPosition = position;
+            }
+        }
+        // Drop a torn record left by a crash
+        discardedBytes = length - position;
+        file.setLength(position);
+        file.seek(position);
+        return entries;
+    }
+
+    private JournalEntry readRecord(long position, long length) throws IOException
+    {
+        if (length - position < RECORD_OVERHEAD)
+        {
+            return null;
+        }
+        file.seek(position);
+        long sequence = file.readLong();
+        int size = file.readInt();
+        if (size < 0 || size > length - position - RECORD_OVERHEAD)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        file.readFully(bytes);
+        long checksum = file.readLong();
+        if (checksum != checksum(bytes))
+        {
+            return null;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return new JournalEntry(sequence, (AuditEntryInfo) ois.readObject());
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Unable to read audit journal entry " + sequence, e);
+        }
+    }
+
+    /**
+     * @return                  the number of bytes at the end of the journal that were discarded when it was opened
+     */
+    long getDiscardedBytes()
+    {
+        return discardedBytes;
+    }
+
+    /**
+     * Append entries to the journal.  Either all of the entries are appended or, if any of them can't be
+     * serialized, none of them are.
+     * 
+     * @return                  the entries with their sequence numbers
+     */
+    List<JournalEntry> append(List<AuditEntryInfo> entries) throws IOException
+    {
+        if (file == null)
+        {
+            throw new IOException("The audit journal is closed");
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entries.size() * 512);
+        DataOutputStream out = new DataOutputStream(records);
+        List<JournalEntry> appended = new ArrayList<>(entries.size());
+        long sequence = lastSequence;
+        for (AuditEntryInfo entry : entries)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes))
+            {
+                oos.writeObject(entry);
+            }
+            byte[] serialized = bytes.toByteArray();
+            sequence++;
+            out.writeLong(sequence);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+            out.writeLong(checksum(serialized));
+            appended.add(new JournalEntry(sequence, entry));
+        }
+        out.flush();
+        long position = file.getFilePointer();
+        try
+        {
+            file.write(records.toByteArray());
+            if (sync)
+            {
+                file.getChannel().force(false);
+            }
+        }
+        catch (IOException e)
+        {
+            // Don't leave part of the batch behind
+            file.setLength(position);
+            file.seek(position);
+            throw e;
+        }
+        lastSequence = sequence;
+        appendEnds.addLast(new long[] {sequence, file.getFilePointer()});
+        return appended;
+    }
+
+    /**
+     * Record that every entry up to and including the given sequence number has been written to the database.
+     */
+    void checkpoint(long sequence) throws IOException
+    {
+        File checkpointFile = new File(directory, CHECKPOINT_FILE);
+        File tempFile = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile))
+        {
+            out.write(Long.toString(sequence).getBytes("US-ASCII"));
+            if (sync)
+            {
+                out.getFD().sync();
+            }
+        }
+        Files.move(tempFile.toPath(), checkpointFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = sequence;
+        while (!appendEnds.isEmpty() && appendEnds.peekFirst()[0] <= checkpoint)
+        {
+            checkpointPosition = appendEnds.removeFirst()[1];
+        }
+        if (checkpoint >= lastSequence)
+        {
+            // Everything has been written so the space can be reclaimed
+            file.setLength(0);
+            file.seek(0);
+            appendEnds.clear();
+            checkpointPosition = 0;
+        }
+        else if (checkpointPosition > compactBytes && checkpointPosition * 2 >= file.length())
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the journal without the records before the checkpoint.  The new journal replaces the old one in a
+     * single move, so a crash leaves one or the other.
+     */
+    private void compact() throws IOException
+    {
+        File journalFile = new File(directory, JOURNAL_FILE);
+        File tempFile = new File(directory, JOURNAL_FILE + ".tmp");
+        long length = file.length();
+        try (RandomAccessFile temp = new RandomAccessFile(tempFile, "rw"))
+        {
+            temp.setLength(0);
+            long position = checkpointPosition;
+            while (position < length)
+            {
+                position += file.getChannel().transferTo(position, length - position, temp.getChannel());
+            }
+            if (sync)
+            {
+                temp.getChannel().force(false);
+            }
+        }
+        file.close();
+        try
+        {
+            Files.move(tempFile.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            // Carry on with whichever journal is in place
+            file = new RandomAccessFile(journalFile, "rw");
+            file.seek(file.length());
+        }
+        for (long[] appendEnd : appendEnds)
+        {
+            appendEnd[1] -= checkpointPosition;
+        }
+        checkpointPosition = 0;
+    }
+
+    /**
+     * @return                  the current size of the journal file in bytes
+     */
+    long length() throws IOException
+    {
+        return file.length();
+    }
+
+    void close() throws IOException
+    {
+        if (file != null)
+        {
+            file.close();
+            file = null;
+        }
+    }
+
+    private static long checksum(byte[] bytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
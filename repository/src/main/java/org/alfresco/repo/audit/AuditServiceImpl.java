@@ -186,4 +186,22 @@ public class AuditServiceImpl implements AuditService
     {
         return auditComponent.getAuditEntriesCountByApp(applicationName);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAuditEntriesPendingCount()
+    {
+        return auditComponent.getAuditEntriesPendingCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAuditEntriesPendingAge()
+    {
+        return auditComponent.getAuditEntriesPendingAge();
+    }
 }
\ No newline at end of file
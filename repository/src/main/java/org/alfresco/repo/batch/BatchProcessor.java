@@ -39,9 +39,19 @@ import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -63,13 +73,23 @@ import org.springframework.context.ApplicationEventPublisher;
  * errors. When the batch is complete a summary of the number of errors and the last error stack trace will be logged at
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
- * Enterprise Edition).
+ * Enterprise Edition). The number of processed and failed entries and the duration of the batch transactions are
+ * recorded in the global Micrometer registry, tagged with the process name.
+ * <p>
+ * Two optional execution modes help large jobs: {@link #setPrefetchWork(boolean) prefetching} fetches the next work
+ * packet in the background while the current one is being queued, and {@link #setAdaptiveBatchSize(boolean) adaptive
+ * batch sizing} halves the batch size whenever a transaction has to be retried (e.g. after a deadlock) and grows it
+ * back towards the configured size while transactions commit first time.
  * 
  * @author dward
  */
 @AlfrescoPublicApi
 public class BatchProcessor<T> implements BatchMonitor
 {
+    public static final String METRIC_ENTRIES = "alfresco.batch.entries";
+    public static final String METRIC_TRANSACTIONS = "alfresco.batch.transactions";
+    public static final String METRIC_RETRIES = "alfresco.batch.retries";
+
     /** The factory for all new threads */
     private TraceableThreadFactory threadFactory;
     
@@ -93,9 +113,18 @@ public class BatchProcessor<T> implements BatchMonitor
 
     /** The number of entries we process at a time in a transaction. */
     private final int batchSize;
+
+    /** The number of entries currently put in each transaction, when the batch size is adaptive. */
+    private final AtomicInteger currentBatchSize;
+
+    /** Should the batch size adapt to the rate of transaction retries? */
+    private boolean adaptiveBatchSize;
+
+    /** Should the next work packet be fetched in the background? */
+    private boolean prefetchWork;
     
     /** The current entry id. */
-    private String currentEntryId;
+    private volatile String currentEntryId;
 
     /** The number of batches currently executing. */
     private int executingCount;
@@ -110,16 +139,31 @@ public class BatchProcessor<T> implements BatchMonitor
     private String lastErrorEntryId;
 
     /** The total number of errors. */
-    private int totalErrors;
+    private final LongAdder totalErrors = new LongAdder();
 
     /** The number of successfully processed entries. */
-    private int successfullyProcessedEntries;
+    private final LongAdder successfullyProcessedEntries = new LongAdder();
+
+    /** The number of processed entries, successful or not, used to report progress at each logging interval. */
+    private final AtomicLong processedEntries = new AtomicLong();
 
     /** The start time. */
-    private Date startTime;
+    private volatile Date startTime;
 
     /** The end time. */
-    private Date endTime;
+    private volatile Date endTime;
+
+    /** The number of successfully processed entries, published as a metric (<tt>null</tt> if not published). */
+    private Counter processedCounter;
+
+    /** The number of failed entries, published as a metric (<tt>null</tt> if not published). */
+    private Counter errorCounter;
+
+    /** The duration of the batch transactions, published as a metric (<tt>null</tt> if not published). */
+    private Timer transactionTimer;
+
+    /** The number of batch transaction retries, published as a metric (<tt>null</tt> if not published). */
+    private Counter retryCounter;
 
     /**
      * Instantiates a new batch processor.
@@ -220,6 +264,7 @@ public class BatchProcessor<T> implements BatchMonitor
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.currentBatchSize = new AtomicInteger(batchSize);
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -237,10 +282,59 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Fetch the next work packet from the {@link BatchProcessWorkProvider} on a background thread while the current
+     * one is being queued. Only used when transactions are split. The work provider must not rely on the calling
+     * thread's transaction or authentication, and must be able to return the next packet before the previous one has
+     * been processed (e.g. by paging on an id rather than re-querying for unprocessed entries).
+     * 
+     * @param prefetchWork
+     *            <code>true</code> to fetch work in the background
+     */
+    public void setPrefetchWork(boolean prefetchWork)
+    {
+        this.prefetchWork = prefetchWork;
+    }
+
+    /**
+     * Adapt the number of entries put in each transaction to the rate of transaction retries. The batch size given to
+     * the constructor is the maximum.
+     * 
+     * @param adaptiveBatchSize
+     *            <code>true</code> to halve the batch size on each retry and grow it back when transactions succeed
+     */
+    public void setAdaptiveBatchSize(boolean adaptiveBatchSize)
+    {
+        this.adaptiveBatchSize = adaptiveBatchSize;
+    }
+
+    /**
+     * Publish the processed entries, errors, retries and transaction durations of this process as metrics. Optional,
+     * nothing is recorded if no registry is set.
+     * 
+     * @param meterRegistry
+     *            the registry to publish the metrics in
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.processedCounter = meterRegistry.counter(METRIC_ENTRIES, "process", processName, "outcome", "processed");
+        this.errorCounter = meterRegistry.counter(METRIC_ENTRIES, "process", processName, "outcome", "error");
+        this.transactionTimer = meterRegistry.timer(METRIC_TRANSACTIONS, "process", processName);
+        this.retryCounter = meterRegistry.counter(METRIC_RETRIES, "process", processName);
+    }
+
+    /**
+     * @return the number of entries currently put in each transaction
+     */
+    public int getCurrentBatchSize()
+    {
+        return this.adaptiveBatchSize ? this.currentBatchSize.get() : this.batchSize;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public synchronized String getCurrentEntryId()
+    public String getCurrentEntryId()
     {
         return this.currentEntryId;
     }
@@ -272,7 +366,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized String getProcessName()
+    public String getProcessName()
     {
         return this.processName;
     }
@@ -280,18 +374,18 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized int getSuccessfullyProcessedEntries()
+    public int getSuccessfullyProcessedEntries()
     {
-        return this.successfullyProcessedEntries;
+        return this.successfullyProcessedEntries.intValue();
     }
 
     /**
      * {@inheritDoc}
      */
-    public synchronized String getPercentComplete()
+    public String getPercentComplete()
     {
         int totalResults = this.workProvider.getTotalEstimatedWorkSize();
-        int processed = this.successfullyProcessedEntries + this.totalErrors;
+        long processed = this.processedEntries.get();
         return processed <= totalResults ? NumberFormat.getPercentInstance().format(
                 totalResults == 0 ? 1.0F : (float) processed / totalResults) : "Unknown";
     }
@@ -299,9 +393,9 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized int getTotalErrors()
+    public int getTotalErrors()
     {
-        return this.totalErrors;
+        return this.totalErrors.intValue();
     }
 
     /**
@@ -315,7 +409,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getEndTime()
+    public Date getEndTime()
     {
         return this.endTime;
     }
@@ -323,7 +417,7 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * {@inheritDoc}
      */
-    public synchronized Date getStartTime()
+    public Date getStartTime()
     {
         return this.startTime;
     }
@@ -386,16 +480,19 @@ public class BatchProcessor<T> implements BatchMonitor
 
                 },
                 threadFactory) : null;
+        // A single thread to fetch the next work packet while the current one is queued
+        ExecutorService prefetchExecutorService = splitTxns && this.prefetchWork ?
+                Executors.newSingleThreadExecutor(threadFactory) : null;
         try
         {
-            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider, prefetchExecutorService);
             int id=0;
             List<T> batch = new ArrayList<T>(this.batchSize);
             while (iterator.hasNext())
             {
                 batch.add(iterator.next());
                 boolean hasNext = iterator.hasNext();
-                if (batch.size() >= this.batchSize || !hasNext)
+                if (batch.size() >= getCurrentBatchSize() || !hasNext)
                 {
                     final TxnCallback callback = new TxnCallback(id++, worker, batch, splitTxns);
                     if (hasNext)
@@ -417,6 +514,10 @@ public class BatchProcessor<T> implements BatchMonitor
         }
         finally
         {
+            if (prefetchExecutorService != null)
+            {
+                prefetchExecutorService.shutdownNow();
+            }
             if (executorService != null)
             {
                 executorService.shutdown();
@@ -430,7 +531,11 @@ public class BatchProcessor<T> implements BatchMonitor
             }
             synchronized (this)
             {
-                reportProgress(true);
+                long processed = this.processedEntries.get();
+                if (processed % this.loggingInterval != 0)
+                {
+                    reportProgress(processed);
+                }
                 this.endTime = new Date();
                 if (this.logger.isInfoEnabled())
                 {
@@ -444,9 +549,9 @@ public class BatchProcessor<T> implements BatchMonitor
 
                     }
                 }
-                if (this.totalErrors > 0 && this.logger.isErrorEnabled())
+                if (this.totalErrors.sum() > 0 && this.logger.isErrorEnabled())
                 {
-                    this.logger.error(getProcessName() + ": " + this.totalErrors
+                    this.logger.error(getProcessName() + ": " + this.totalErrors.sum()
                             + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
                             this.lastError);
                 }
@@ -457,32 +562,54 @@ public class BatchProcessor<T> implements BatchMonitor
     /**
      * Reports the current progress.
      * 
-     * @param last
-     *            Have all jobs been processed? If <code>false</code> then progress is only reported after the number of
-     *            entries indicated by {@link #loggingInterval}. If <code>true</code> then progress is reported if this
-     *            is not one of the entries indicated by {@link #loggingInterval}.
+     * @param processed
+     *            the number of entries processed so far, normally a multiple of {@link #loggingInterval}
      */
-    private synchronized void reportProgress(boolean last)
+    private void reportProgress(long processed)
     {
-        int processed = this.successfullyProcessedEntries + this.totalErrors;
-        if (processed % this.loggingInterval == 0 ^ last)
+        StringBuilder message = new StringBuilder(100).append(getProcessName()).append(": Processed ").append(
+                processed).append(" entries");
+        int totalResults = this.workProvider.getTotalEstimatedWorkSize();
+        if (totalResults >= processed)
         {
-            StringBuilder message = new StringBuilder(100).append(getProcessName()).append(": Processed ").append(
-                    processed).append(" entries");
-            int totalResults = this.workProvider.getTotalEstimatedWorkSize();
-            if (totalResults >= processed)
-            {
-                message.append(" out of ").append(totalResults).append(". ").append(
-                        NumberFormat.getPercentInstance().format(
-                                totalResults == 0 ? 1.0F : (float) processed / totalResults)).append(" complete");
-            }
-            long duration = System.currentTimeMillis() - this.startTime.getTime();
-            if (duration > 0)
-            {
-                message.append(". Rate: ").append(processed * 1000L / duration).append(" per second");
-            }
-            message.append(". " + this.totalErrors + " failures detected.");
-            this.logger.info(message);
+            message.append(" out of ").append(totalResults).append(". ").append(
+                    NumberFormat.getPercentInstance().format(
+                            totalResults == 0 ? 1.0F : (float) processed / totalResults)).append(" complete");
+        }
+        long duration = System.currentTimeMillis() - this.startTime.getTime();
+        if (duration > 0)
+        {
+            message.append(". Rate: ").append(processed * 1000L / duration).append(" per second");
+        }
+        message.append(". " + this.totalErrors.sum() + " failures detected.");
+        this.logger.info(message);
+    }
+
+    /**
+     * Adapts the batch size to the outcome of a transaction.
+     * 
+     * @param retries
+     *            the number of times the transaction had to be retried
+     */
+    private void adaptBatchSize(int retries)
+    {
+        if (retries > 0 && this.retryCounter != null)
+        {
+            this.retryCounter.increment(retries);
+        }
+        if (!this.adaptiveBatchSize)
+        {
+            return;
+        }
+        int oldSize = this.currentBatchSize.get();
+        // Back off quickly when transactions collide and recover slowly when they don't
+        int newSize = retries > 0 ? Math.max(1, oldSize / 2) : Math.min(this.batchSize,
+                oldSize + Math.max(1, this.batchSize / 10));
+        if (newSize != oldSize && this.currentBatchSize.compareAndSet(oldSize, newSize)
+                && this.logger.isDebugEnabled())
+        {
+            this.logger.debug(getProcessName() + ": Batch size changed from " + oldSize + " to " + newSize
+                    + " after " + retries + " retries");
         }
     }
 
@@ -553,7 +680,8 @@ public class BatchProcessor<T> implements BatchMonitor
     }
     
     /**
-     * Small iterator that repeatedly gets the next batch of work from a {@link BatchProcessWorkProvider}
+     * Small iterator that repeatedly gets the next batch of work from a {@link BatchProcessWorkProvider}, optionally
+     * fetching the following batch in the background as soon as one is handed out.
 
      * @author Derek Hulley
      */
@@ -561,10 +689,13 @@ public class BatchProcessor<T> implements BatchMonitor
     {
         private BatchProcessWorkProvider<T> workProvider;
         private Iterator<T> currentIterator;
+        private ExecutorService prefetchExecutorService;
+        private Future<Collection<T>> prefetchedWork;
         
-        private WorkProviderIterator(BatchProcessWorkProvider<T> workProvider)
+        private WorkProviderIterator(BatchProcessWorkProvider<T> workProvider, ExecutorService prefetchExecutorService)
         {
             this.workProvider = workProvider;
+            this.prefetchExecutorService = prefetchExecutorService;
         }
         
         public boolean hasNext()
@@ -587,7 +718,7 @@ public class BatchProcessor<T> implements BatchMonitor
                 // go and get more results
                 if (!hasNext)
                 {
-                    Collection<T> nextWork = workProvider.getNextWork();
+                    Collection<T> nextWork = getNextWork();
                     if (nextWork == null)
                     {
                         throw new RuntimeException("BatchProcessWorkProvider returned 'null' work: " + workProvider);
@@ -605,12 +736,51 @@ public class BatchProcessor<T> implements BatchMonitor
                         // There were some results, so get a new iterator
                         currentIterator = nextWork.iterator();
                         hasNext = currentIterator.hasNext();
+                        if (prefetchExecutorService != null)
+                        {
+                            final BatchProcessWorkProvider<T> provider = workProvider;
+                            prefetchedWork = prefetchExecutorService.submit(() -> provider.getNextWork());
+                        }
                     }
                 }
             }
             return hasNext;
         }
 
+        private Collection<T> getNextWork()
+        {
+            if (prefetchedWork == null)
+            {
+                return workProvider.getNextWork();
+            }
+            try
+            {
+                return prefetchedWork.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while fetching work from: " + workProvider, e);
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("BatchProcessWorkProvider failed to fetch work: " + workProvider, cause);
+            }
+            finally
+            {
+                prefetchedWork = null;
+            }
+        }
+
         public T next()
         {
             if (!hasNext())
@@ -675,10 +845,14 @@ public class BatchProcessor<T> implements BatchMonitor
 
         /** The last error entry id. */
         private String txnLastErrorEntryId;
+
+        /** The number of times the transaction has been attempted. */
+        private int txnAttempts;
         
         public Object execute() throws Throwable
         {
             reset();
+            this.txnAttempts++;
             if (this.batch.isEmpty())
             {
                 return null;
@@ -762,6 +936,7 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 Throwable tt = null;
                 worker.beforeProcess();
+                long startNanos = System.nanoTime();
                 try
                 {
                     BatchProcessor.this.retryingTransactionHelper.doInTransaction(callback, false, splitTxns);
@@ -771,6 +946,10 @@ public class BatchProcessor<T> implements BatchMonitor
                     // Keep this and rethrow
                     tt = t;
                 }
+                if (BatchProcessor.this.transactionTimer != null)
+                {
+                    BatchProcessor.this.transactionTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
                 worker.afterProcess();
                 // Throw if there was a processing exception
                 if (tt != null)
@@ -826,49 +1005,30 @@ public class BatchProcessor<T> implements BatchMonitor
          */
         private void commitProgress()
         {
-            synchronized (BatchProcessor.this)
-            {
-                if (this.txnErrors > 0)
-                {
-                    int processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    int currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    int newErrors = BatchProcessor.this.totalErrors + this.txnErrors;
-                    // Work out the number of logging intervals we will cross and report them
-                    int intervals = (this.txnErrors + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.totalErrors += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.totalErrors = newErrors;
-                }
+            BatchProcessor.this.adaptBatchSize(this.txnAttempts - 1);
+            this.txnAttempts = 0;
 
-                if (this.txnSuccesses > 0)
+            if (BatchProcessor.this.processedCounter != null)
+            {
+                BatchProcessor.this.processedCounter.increment(this.txnSuccesses);
+                BatchProcessor.this.errorCounter.increment(this.txnErrors);
+            }
+            BatchProcessor.this.successfullyProcessedEntries.add(this.txnSuccesses);
+            BatchProcessor.this.totalErrors.add(this.txnErrors);
+            int txnProcessed = this.txnSuccesses + this.txnErrors;
+            if (txnProcessed > 0)
+            {
+                long processed = BatchProcessor.this.processedEntries.addAndGet(txnProcessed);
+                // Work out the logging intervals we have crossed and report them
+                long interval = BatchProcessor.this.loggingInterval;
+                for (long crossed = (processed - txnProcessed) / interval + 1; crossed <= processed / interval; crossed++)
                 {
-                    int processed = BatchProcessor.this.successfullyProcessedEntries + BatchProcessor.this.totalErrors;
-                    int currentIncrement = processed % BatchProcessor.this.loggingInterval;
-                    int newSuccess = BatchProcessor.this.successfullyProcessedEntries + this.txnSuccesses;
-                    // Work out the number of logging intervals we will cross and report them
-                    int intervals = (this.txnSuccesses + currentIncrement) / BatchProcessor.this.loggingInterval;
-                    if (intervals > 0)
-                    {
-                        BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval
-                                - currentIncrement;
-                        reportProgress(false);
-                        while (--intervals > 0)
-                        {
-                            BatchProcessor.this.successfullyProcessedEntries += BatchProcessor.this.loggingInterval;
-                            reportProgress(false);
-                        }
-                    }
-                    BatchProcessor.this.successfullyProcessedEntries = newSuccess;
+                    reportProgress(crossed * interval);
                 }
+            }
 
+            synchronized (BatchProcessor.this)
+            {
                 if (this.txnLastError != null)
                 {
                     BatchProcessor.this.lastError = this.txnLastError;
@@ -37,6 +37,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.alfresco.repo.bulkimport.impl.FileUtils;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.logging.Log;
@@ -161,6 +162,10 @@ public final class ImportableItem
         private Path     metadataFile          = null;
         private long     metadataFileSize      = -1;
 
+        // Loaded ahead of the import by a pipelined importer
+        private volatile MetadataLoader.Metadata metadata    = null;
+        private volatile ContentData             contentData = null;
+
         
         public final Path getContentFile()
         {
@@ -297,6 +302,32 @@ public final class ImportableItem
             return(metadataFileSize);
         }
         
+        /**
+         * @return the metadata loaded ahead of the import, or null if it has to be loaded during the import
+         */
+        public final MetadataLoader.Metadata getMetadata()
+        {
+            return metadata;
+        }
+
+        public final void setMetadata(final MetadataLoader.Metadata metadata)
+        {
+            this.metadata = metadata;
+        }
+
+        /**
+         * @return the content copied into the content store ahead of the import, or null if it has to be streamed during the import
+         */
+        public final ContentData getContentData()
+        {
+            return contentData;
+        }
+
+        public final void setContentData(final ContentData contentData)
+        {
+            this.contentData = contentData;
+        }
+
         public final int weight()
         {
             return((contentFile   == null || !contentFileExists ? 0 : 1) +
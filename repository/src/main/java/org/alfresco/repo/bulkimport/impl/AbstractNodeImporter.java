@@ -418,6 +418,12 @@ public abstract class AbstractNodeImporter implements NodeImporter
 
     protected final MetadataLoader.Metadata loadMetadata(ImportableItem.ContentAndMetadata contentAndMetadata)
     {
+        if (contentAndMetadata != null && contentAndMetadata.getMetadata() != null)
+        {
+            // Already loaded by a pipelined import
+            return contentAndMetadata.getMetadata();
+        }
+
         MetadataLoader.Metadata result = new MetadataLoader.Metadata();
         
         // Load "standard" metadata from the filesystem
@@ -442,6 +448,35 @@ public abstract class AbstractNodeImporter implements NodeImporter
         return(result);
     }
 
+    /**
+     * Loads the metadata of the head revision and all versions of the given item outside of any transaction,
+     * so that the import itself does not have to read the metadata files.
+     * 
+     * @param importableItem the item that will be imported later
+     */
+    public final void loadMetadataAhead(ImportableItem importableItem)
+    {
+        ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+        headRevision.setMetadata(loadMetadata(headRevision));
+        for (ImportableItem.VersionedContentAndMetadata versionEntry : importableItem.getVersionEntries())
+        {
+            versionEntry.setMetadata(loadMetadata(versionEntry));
+        }
+    }
+
+    /**
+     * Copies the content of the head revision of the given item into the content store outside of the import transactions,
+     * so that the import itself only has to reference it.  Implementations that cannot do this return <tt>false</tt>
+     * and stream the content during the import as usual.
+     * 
+     * @param importableItem the item that will be imported later
+     * @return <tt>true</tt> if the content was copied
+     */
+    public boolean copyContentAhead(ImportableItem importableItem)
+    {
+        return false;
+    }
+
     public NodeRef importImportableItem(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode)
     {
         if(logger.isDebugEnabled())
@@ -28,6 +28,7 @@ package org.alfresco.repo.bulkimport.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -53,6 +54,16 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	CREATED,
     	REPLACED
     };
+
+    /**
+     * The stages of a pipelined import that run ahead of node creation.
+     */
+    public enum PipelineStage
+    {
+    	SCAN,
+    	METADATA,
+    	CONTENT
+    };
     
     // General information
     private int numThreads;
@@ -100,6 +111,11 @@ public class BulkImportStatusImpl implements BulkImportStatus
     private AtomicLong    numberOfContentVersionBytesWritten      = new AtomicLong();
     private AtomicLong    numberOfContentVersionPropertiesWritten = new AtomicLong();
 
+    // Pipeline information
+    private EnumMap<PipelineStage, AtomicLong> pipelineStageItems = newPipelineCounters();
+    private EnumMap<PipelineStage, AtomicLong> pipelineStageNs    = newPipelineCounters();
+    private AtomicLong    pipelineStallNs                         = new AtomicLong();
+
     private ReadLock readLock;
     private WriteLock writeLock;
 
@@ -258,6 +274,14 @@ public class BulkImportStatusImpl implements BulkImportStatus
         this.numberOfContentVersionBytesWritten.set(0);
         this.numberOfContentVersionPropertiesWritten.set(0);
         
+        // Pipeline information
+        for (PipelineStage stage : PipelineStage.values())
+        {
+            this.pipelineStageItems.get(stage).set(0);
+            this.pipelineStageNs.get(stage).set(0);
+        }
+        this.pipelineStallNs.set(0);
+        
         this.startNs = System.nanoTime();
         this.endNs   = null;
     }
@@ -549,7 +573,52 @@ public class BulkImportStatusImpl implements BulkImportStatus
 		}
     }
 
+    // Pipeline information
+    public long getNumberOfPipelineItems(final PipelineStage stage)   { return(pipelineStageItems.get(stage).longValue()); }
+    public long getPipelineDurationInNs(final PipelineStage stage)    { return(pipelineStageNs.get(stage).longValue()); }
+    public long getPipelineStallInNs()                                 { return(pipelineStallNs.longValue()); }
+
+    public void incrementPipelineStage(final PipelineStage stage, final long items, final long durationNs)
+    {
+        pipelineStageItems.get(stage).addAndGet(items);
+        pipelineStageNs.get(stage).addAndGet(durationNs);
+    }
+
+    /**
+     * Records time spent by the node creation stage waiting for the earlier pipeline stages.
+     */
+    public void incrementPipelineStall(final long durationNs)
+    {
+        pipelineStallNs.addAndGet(durationNs);
+    }
+
+    /**
+     * @return the number of items a pipeline stage processes per second of its own working time, or null if it did no work
+     */
+    public Long getPipelineItemsPerSecond(final PipelineStage stage)
+    {
+        long durationNs = pipelineStageNs.get(stage).longValue();
+        if(durationNs > 0)
+        {
+            return pipelineStageItems.get(stage).longValue() * 1000000000L / durationNs;
+        }
+        else
+        {
+            return null;
+        }
+    }
+
     // Private helper methods
+    private static EnumMap<PipelineStage, AtomicLong> newPipelineCounters()
+    {
+        EnumMap<PipelineStage, AtomicLong> counters = new EnumMap<PipelineStage, AtomicLong>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values())
+        {
+            counters.put(stage, new AtomicLong());
+        }
+        return counters;
+    }
+
     private final Date copyDate(final Date date)
     {
         // Defensively copy the date.
@@ -675,6 +744,22 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append("\nNumber of content version bytes written : ");
     	sb.append(getNumberOfContentVersionBytesWritten());    	
 
+    	for (PipelineStage stage : PipelineStage.values())
+    	{
+    		if(getNumberOfPipelineItems(stage) > 0)
+    		{
+    			sb.append("\nPipeline ").append(stage).append(" items : ");
+    			sb.append(getNumberOfPipelineItems(stage));
+    			sb.append("\nPipeline ").append(stage).append(" items/sec : ");
+    			sb.append(getPipelineItemsPerSecond(stage));
+    		}
+    	}
+    	if(getPipelineStallInNs() > 0)
+    	{
+    		sb.append("\nPipeline stall (ms) : ");
+    		sb.append(getPipelineStallInNs() / 1000000L);
+    	}
+
     	return sb.toString();
     }
 }
@@ -34,6 +34,7 @@ import org.alfresco.repo.bulkimport.FilesystemTracker;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.node.integrity.IntegrityException;
+import org.alfresco.repo.rendition2.RenditionScheduler;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.tenant.TenantUtil;
 import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
@@ -89,6 +90,8 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
             {
                 // Run as the correct user
                 AuthenticationUtil.setRunAsUser(currentUser);
+                // Renditions of imported content shouldn't hold up those requested by interactive users
+                RenditionScheduler.setBackgroundThread(true);
 
                 refreshLock(lockToken, batchSize * 250L);
                 if(bulkImportParameters.isDisableRulesService() && rulesEnabled)
@@ -106,6 +109,7 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 
             	importStatus.incrementNumberOfBatchesCompleted();
 
+                RenditionScheduler.setBackgroundThread(false);
                 AuthenticationUtil.clearCurrentSecurityContext();
             }
 
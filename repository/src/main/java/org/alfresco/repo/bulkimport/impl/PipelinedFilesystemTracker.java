@@ -0,0 +1,548 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.bulkimport.AnalysedDirectory;
+import org.alfresco.repo.bulkimport.DirectoryAnalyser;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.PipelineStage;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TraceableThreadFactory;
+
+/**
+ * A filesystem tracker that returns the same levels as the {@link StripingFilesystemTracker}, but prepares them in a
+ * pipeline of stages that run ahead of node creation, each on its own thread pool:
+ * <ul>
+ *   <li>directory analysis, which scans the next level while the current level is being imported</li>
+ *   <li>metadata loading</li>
+ *   <li>copying content into the content store</li>
+ * </ul>
+ * The number of items that have been handed to the pipeline but not yet taken for node creation is bounded, so that
+ * a slow import holds back the earlier stages rather than filling the heap.  Levels are fed to the pipeline in order,
+ * so the items of a level never wait for items of the next one.  An item that could not be prepared is passed on as
+ * it is and imported the usual way.
+ * 
+ * @since 7.1
+ */
+public class PipelinedFilesystemTracker extends AbstractFilesystemTracker
+{
+	private static final long POLL_INTERVAL_MS = 100L;
+	private static final long SHUTDOWN_WAIT_MS = 60000L;
+
+	/** Marks the end of the filesystem */
+	private static final Level END = new Level();
+
+	private final ImportableItem rootFolder;
+	private final AbstractNodeImporter nodeImporter;
+	private final BulkImportStatusImpl importStatus;
+	private final int batchSize;
+	private final String runAsUser;
+	private final String runAsDomain;
+
+	private final Semaphore capacity;
+	private final ExecutorService scanExecutor;
+	private final ExecutorService metadataExecutor;
+	private final ThreadPoolExecutor contentExecutor;
+	private final Thread feeder;
+
+	private final BlockingQueue<Level> levels = new LinkedBlockingQueue<Level>();
+	private final List<Level> openLevels = new ArrayList<Level>();
+	private volatile Level currentLevel = null;
+	private volatile Throwable failure = null;
+
+	/**
+	 * @param nodeImporter     the importer that loads metadata and copies content ahead of the import, or <tt>null</tt> to only scan ahead
+	 * @param scanThreads      the number of threads analysing directories
+	 * @param metadataThreads  the number of threads loading metadata - <tt>0</tt> to load it during the import
+	 * @param contentThreads   the number of threads copying content - <tt>0</tt> to stream it during the import
+	 * @param queueCapacity    the maximum number of items in the pipeline
+	 */
+	public PipelinedFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize,
+			AbstractNodeImporter nodeImporter, BulkImportStatusImpl importStatus,
+			int scanThreads, int metadataThreads, int contentThreads, int queueCapacity)
+	{
+		this.directoryAnalyser = directoryAnalyser;
+		this.nodeImporter = nodeImporter;
+		this.importStatus = importStatus;
+		this.batchSize = batchSize;
+		this.runAsUser = AuthenticationUtil.getFullyAuthenticatedUser();
+		this.runAsDomain = TenantUtil.getCurrentDomain();
+
+		// not really an importable item but the interface requires it to be in this form
+		rootFolder = new ImportableItem();
+		rootFolder.getHeadRevision().setContentFile(sourceFolder.toPath());
+		rootFolder.setNodeRef(target);
+
+		capacity = new Semaphore(Math.max(1, queueCapacity));
+		scanExecutor = newExecutor("BulkImportScan", Math.max(1, scanThreads));
+		metadataExecutor = (nodeImporter != null && metadataThreads > 0) ? newExecutor("BulkImportMetadata", metadataThreads) : null;
+		contentExecutor = (metadataExecutor != null && contentThreads > 0) ? newExecutor("BulkImportContent", contentThreads) : null;
+
+		TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+		threadFactory.setThreadDaemon(true);
+		threadFactory.setNamePrefix("BulkImportPipeline");
+		feeder = threadFactory.newThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				feed();
+			}
+		});
+	}
+
+	private static ThreadPoolExecutor newExecutor(String name, int threads)
+	{
+		TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+		threadFactory.setThreadDaemon(true);
+		threadFactory.setNamePrefix(name);
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	/**
+	 * Starts scanning the filesystem.
+	 */
+	public void start()
+	{
+		feeder.start();
+	}
+
+	/**
+	 * Stops all stages, waiting for any content copy in progress to finish.  Copies that have not started are dropped.
+	 */
+	public void shutdown()
+	{
+		feeder.interrupt();
+		scanExecutor.shutdownNow();
+		if (metadataExecutor != null)
+		{
+			metadataExecutor.shutdownNow();
+		}
+		if (contentExecutor != null)
+		{
+			// Not interrupted, as that would close the channels of a copy part way through
+			contentExecutor.getQueue().clear();
+			contentExecutor.shutdown();
+		}
+
+		try
+		{
+			feeder.join(SHUTDOWN_WAIT_MS);
+			if (metadataExecutor != null)
+			{
+				metadataExecutor.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
+			}
+			if (contentExecutor != null && !contentExecutor.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS))
+			{
+				logger.warn("Bulk import content copies are still running after shutdown");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Moves on to the next level of the filesystem, waiting for it to be scanned if necessary.
+	 * 
+	 * @return <tt>true</tt> if there is another level to import
+	 */
+	public boolean nextLevel()
+	{
+		long start = System.nanoTime();
+		try
+		{
+			currentLevel = levels.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new AlfrescoRuntimeException("Interrupted while waiting for the next level to import", e);
+		}
+		finally
+		{
+			importStatus.incrementPipelineStall(System.nanoTime() - start);
+		}
+
+		checkFailure();
+		if (currentLevel == END)
+		{
+			// Let any further calls see the end as well
+			levels.add(END);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the items of the current level, or of all levels, whose content was copied ahead of the import, and
+	 * forgets about them.  The caller is responsible for removing any of this content that was not used.
+	 * 
+	 * @param allLevels <tt>true</tt> to include levels that were prepared but not imported
+	 */
+	public List<ImportableItem> takeCopiedItems(boolean allLevels)
+	{
+		List<ImportableItem> result = new ArrayList<ImportableItem>();
+		synchronized (openLevels)
+		{
+			for (Level level : openLevels)
+			{
+				if (allLevels || level == currentLevel)
+				{
+					ImportableItem item;
+					while ((item = level.copied.poll()) != null)
+					{
+						result.add(item);
+					}
+				}
+			}
+			if (allLevels)
+			{
+				openLevels.clear();
+			}
+			else
+			{
+				openLevels.remove(currentLevel);
+			}
+		}
+		return result;
+	}
+
+	public int count()
+	{
+		// Note: this is the number of directories and files of the current level found so far
+		Level level = currentLevel;
+		return (level == null ? 0 : level.fed.get());
+	}
+
+	public void itemImported(NodeRef nodeRef, ImportableItem importableItem)
+	{
+		// nothing to do
+	}
+
+	protected List<ImportableItem> getImportableItems(int count)
+	{
+		Level level = currentLevel;
+		List<ImportableItem> result = new ArrayList<ImportableItem>(count);
+		long start = System.nanoTime();
+		try
+		{
+			while (result.isEmpty())
+			{
+				checkFailure();
+				if (level.allFed && level.taken.get() >= level.fed.get())
+				{
+					// this level has been exhausted
+					break;
+				}
+				ImportableItem item = level.ready.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (item != null)
+				{
+					result.add(item);
+					level.ready.drainTo(result, count - 1);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new AlfrescoRuntimeException("Interrupted while waiting for items to import", e);
+		}
+		finally
+		{
+			importStatus.incrementPipelineStall(System.nanoTime() - start);
+		}
+
+		level.taken.addAndGet(result.size());
+		capacity.release(result.size());
+		return result;
+	}
+
+	@Override
+	public BatchProcessWorkProvider<ImportableItem> getWorkProvider()
+	{
+		BatchProcessWorkProvider<ImportableItem> provider = new BatchProcessWorkProvider<ImportableItem>()
+		{
+			@Override
+			public int getTotalEstimatedWorkSize()
+			{
+				return count();
+			}
+
+			@Override
+			public Collection<ImportableItem> getNextWork()
+			{
+				return getImportableItems(batchSize);
+			}
+		};
+
+		return provider;
+	}
+
+	private void checkFailure()
+	{
+		if (failure != null)
+		{
+			throw new AlfrescoRuntimeException("Bulk import pipeline failed", failure);
+		}
+	}
+
+	/**
+	 * Walks the filesystem level by level.  The directories found in a level are analysed as soon as they are found,
+	 * so that the next level is usually scanned by the time the current one has been imported.
+	 */
+	private void feed()
+	{
+		try
+		{
+			List<Future<AnalysedDirectory>> scans = new ArrayList<Future<AnalysedDirectory>>();
+			scans.add(scan(rootFolder));
+			while (!scans.isEmpty())
+			{
+				Level level = new Level();
+				synchronized (openLevels)
+				{
+					openLevels.add(level);
+				}
+				levels.add(level);
+
+				List<Future<AnalysedDirectory>> nextScans = new ArrayList<Future<AnalysedDirectory>>();
+				for (Future<AnalysedDirectory> scan : scans)
+				{
+					AnalysedDirectory analysedDirectory = scan.get();
+					for (ImportableItem directory : analysedDirectory.getImportableDirectories())
+					{
+						nextScans.add(scan(directory));
+					}
+					prepare(level, analysedDirectory.getImportableDirectories());
+					prepare(level, analysedDirectory.getImportableItems());
+				}
+				level.allFed = true;
+				scans = nextScans;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// shut down
+		}
+		catch (ExecutionException e)
+		{
+			failure = e.getCause();
+		}
+		catch (Throwable e)
+		{
+			failure = e;
+		}
+		finally
+		{
+			levels.add(END);
+		}
+	}
+
+	private Future<AnalysedDirectory> scan(final ImportableItem directory)
+	{
+		return scanExecutor.submit(new Callable<AnalysedDirectory>()
+		{
+			@Override
+			public AnalysedDirectory call() throws Exception
+			{
+				return runAs(new TenantRunAsWork<AnalysedDirectory>()
+				{
+					@Override
+					public AnalysedDirectory doWork() throws Exception
+					{
+						long start = System.nanoTime();
+						AnalysedDirectory analysedDirectory = getImportableItemsInDirectory(directory);
+						importStatus.incrementPipelineStage(PipelineStage.SCAN,
+								analysedDirectory.getImportableDirectories().size() + analysedDirectory.getImportableItems().size(),
+								System.nanoTime() - start);
+						return analysedDirectory;
+					}
+				});
+			}
+		});
+	}
+
+	private void prepare(final Level level, Collection<ImportableItem> items) throws InterruptedException
+	{
+		for (final ImportableItem item : items)
+		{
+			capacity.acquire();
+			level.fed.incrementAndGet();
+			if (metadataExecutor == null)
+			{
+				level.ready.add(item);
+				continue;
+			}
+
+			try
+			{
+				metadataExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						boolean copyContent = false;
+						try
+						{
+							loadMetadata(item);
+							copyContent = (contentExecutor != null && isFile(item));
+							if (copyContent)
+							{
+								copyContent(level, item);
+							}
+						}
+						finally
+						{
+							if (!copyContent)
+							{
+								level.ready.add(item);
+							}
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				// shut down
+				level.ready.add(item);
+			}
+		}
+	}
+
+	private void loadMetadata(final ImportableItem item)
+	{
+		try
+		{
+			runAs(new TenantRunAsWork<Void>()
+			{
+				@Override
+				public Void doWork() throws Exception
+				{
+					long start = System.nanoTime();
+					nodeImporter.loadMetadataAhead(item);
+					importStatus.incrementPipelineStage(PipelineStage.METADATA, 1, System.nanoTime() - start);
+					return null;
+				}
+			});
+		}
+		catch (Throwable e)
+		{
+			logger.warn("Failed to load metadata ahead of the import, it will be loaded during the import: " + item, e);
+		}
+	}
+
+	private void copyContent(final Level level, final ImportableItem item)
+	{
+		try
+		{
+			contentExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						runAs(new TenantRunAsWork<Void>()
+						{
+							@Override
+							public Void doWork() throws Exception
+							{
+								long start = System.nanoTime();
+								if (nodeImporter.copyContentAhead(item))
+								{
+									level.copied.add(item);
+									importStatus.incrementPipelineStage(PipelineStage.CONTENT, 1, System.nanoTime() - start);
+								}
+								return null;
+							}
+						});
+					}
+					catch (Throwable e)
+					{
+						logger.warn("Failed to copy content ahead of the import, it will be streamed during the import: " + item, e);
+					}
+					finally
+					{
+						level.ready.add(item);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// shut down
+			level.ready.add(item);
+		}
+	}
+
+	private <R> R runAs(TenantRunAsWork<R> work)
+	{
+		return TenantUtil.runAsUserTenant(work, runAsUser, runAsDomain);
+	}
+
+	private static boolean isFile(ImportableItem item)
+	{
+		ImportableItem.ContentAndMetadata headRevision = item.getHeadRevision();
+		return headRevision.contentFileExists() && ImportableItem.FileType.FILE.equals(headRevision.getContentFileType());
+	}
+
+	/**
+	 * The items of one level of the filesystem as they pass through the pipeline.
+	 */
+	private static class Level
+	{
+		private final BlockingQueue<ImportableItem> ready = new LinkedBlockingQueue<ImportableItem>();
+		private final Queue<ImportableItem> copied = new ConcurrentLinkedQueue<ImportableItem>();
+		private final AtomicInteger fed = new AtomicInteger();
+		private final AtomicInteger taken = new AtomicInteger();
+		private volatile boolean allFed = false;
+	}
+}
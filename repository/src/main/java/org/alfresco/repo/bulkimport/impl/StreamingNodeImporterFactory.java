@@ -27,18 +27,31 @@ package org.alfresco.repo.bulkimport.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.MetadataLoader;
 import org.alfresco.repo.bulkimport.NodeImporter;
 import org.alfresco.repo.bulkimport.impl.BulkImportStatusImpl.NodeState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.MimetypeService;
+import org.alfresco.service.cmr.repository.MimetypeServiceAware;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Triple;
+import org.springframework.extensions.surf.util.I18NUtil;
 
 /**
  * 
@@ -47,6 +60,28 @@ import org.alfresco.util.Triple;
  */
 public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 {
+	private ContentService contentService;
+	private TransactionService transactionService;
+	private MimetypeService mimetypeService;
+
+	/**
+	 * @param contentService the service that content is written through ahead of a pipelined import - if not set content is always streamed
+	 */
+	public void setContentService(ContentService contentService)
+	{
+		this.contentService = contentService;
+	}
+
+	public void setTransactionService(TransactionService transactionService)
+	{
+		this.transactionService = transactionService;
+	}
+
+	public void setMimetypeService(MimetypeService mimetypeService)
+	{
+		this.mimetypeService = mimetypeService;
+	}
+
 	public NodeImporter getNodeImporter(File sourceFolder)
 	{
 		StreamingNodeImporter nodeImporter = new StreamingNodeImporter();
@@ -56,6 +91,12 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 		nodeImporter.setMetadataLoader(metadataLoader);
 		nodeImporter.setVersionService(versionService);
 		nodeImporter.setImportStatus(importStatus);
+		nodeImporter.setContentService(contentService);
+		if (transactionService != null)
+		{
+			nodeImporter.setTransactionHelper(transactionService.getRetryingTransactionHelper());
+		}
+		nodeImporter.setMimetypeService(mimetypeService);
 
 		nodeImporter.setSourceFolder(sourceFolder);
 
@@ -70,16 +111,125 @@ public class StreamingNodeImporterFactory extends AbstractNodeImporterFactory
 	private static class StreamingNodeImporter extends AbstractNodeImporter
 	{
 	    private File sourceFolder;
+	    private ContentService contentService;
+	    private RetryingTransactionHelper transactionHelper;
+	    private MimetypeService mimetypeService;
 
 		public void setSourceFolder(File sourceFolder)
 		{
 			this.sourceFolder = sourceFolder;
 		}
+
+		public void setContentService(ContentService contentService)
+		{
+			this.contentService = contentService;
+		}
+
+		public void setTransactionHelper(RetryingTransactionHelper transactionHelper)
+		{
+			this.transactionHelper = transactionHelper;
+		}
+
+		public void setMimetypeService(MimetypeService mimetypeService)
+		{
+			this.mimetypeService = mimetypeService;
+		}
+
+		/**
+		 * Copies the file into the content store of the content service using channel transfers, so that the kernel
+		 * can move the bytes without them passing through the heap.  Versioned items are left to the import as usual.
+		 * <p>
+		 * The copy runs in a short transaction of its own, so that content left by a failed copy is removed when it
+		 * rolls back.
+		 */
+		@Override
+		public boolean copyContentAhead(final ImportableItem importableItem)
+		{
+			final ImportableItem.ContentAndMetadata headRevision = importableItem.getHeadRevision();
+			if (contentService == null || transactionHelper == null || importableItem.hasVersionEntries() || !headRevision.contentFileExists() ||
+			        !headRevision.isContentFileReadable() || !ImportableItem.FileType.FILE.equals(headRevision.getContentFileType()))
+			{
+				return false;
+			}
+
+			ContentData contentData = transactionHelper.doInTransaction(new RetryingTransactionCallback<ContentData>()
+			{
+				@Override
+				public ContentData execute() throws Throwable
+				{
+					return copyContent(importableItem, headRevision);
+				}
+			}, true, true);
+			headRevision.setContentData(contentData);
+			return true;
+		}
+
+		private ContentData copyContent(ImportableItem importableItem, ImportableItem.ContentAndMetadata headRevision)
+		{
+			Path file = headRevision.getContentFile();
+			// Not attached to a node, the content is registered for removal if the transaction rolls back
+			ContentWriter writer = contentService.getWriter(null, null, false);
+			writer.setEncoding("UTF-8");
+			writer.setLocale(I18NUtil.getLocale());
+			if (mimetypeService != null && writer instanceof MimetypeServiceAware)
+			{
+				// Guessed from the name of the node and the content once the channel is closed, as when streaming
+				((MimetypeServiceAware) writer).setMimetypeService(mimetypeService);
+				writer.guessMimetype(getImportableItemName(importableItem, headRevision.getMetadata()));
+				writer.guessEncoding();
+			}
+
+			try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				WritableByteChannel target = writer.getWritableChannel();
+				try
+				{
+					long size = source.size();
+					long position = 0;
+					while (position < size)
+					{
+						long transferred = (target instanceof FileChannel) ?
+						        ((FileChannel) target).transferFrom(source, position, size - position) :
+						        source.transferTo(position, size - position, target);
+						if (transferred <= 0)
+						{
+							// The file was truncated while it was being copied
+							break;
+						}
+						position += transferred;
+					}
+				}
+				finally
+				{
+					target.close();
+				}
+			}
+			catch (IOException e)
+			{
+				throw new ContentIOException("Failed to copy content from file: \n" +
+				        "   writer: " + writer + "\n" +
+				        "   file: " + file,
+				        e);
+			}
+
+			return writer.getContentData();
+		}
 		
 	    protected final void importContentAndMetadata(NodeRef nodeRef, ImportableItem.ContentAndMetadata contentAndMetadata, MetadataLoader.Metadata metadata)
 	    {
+	    	ContentData contentData = contentAndMetadata.getContentData();
+
 	    	// Write the content of the file
-	    	if (contentAndMetadata.contentFileExists())
+	    	if (contentData != null)
+	    	{
+	    		if (logger.isDebugEnabled())
+	    		{
+	    			logger.debug("Referencing content '" + contentData.getContentUrl() + "' copied ahead of the import from node '" + nodeRef.toString() + "'.");
+	    		}
+
+	    		nodeService.setProperty(nodeRef, ContentModel.PROP_CONTENT, contentData);
+	    	}
+	    	else if (contentAndMetadata.contentFileExists())
 	    	{
 	    		String filename = getFileName(contentAndMetadata.getContentFile());
 
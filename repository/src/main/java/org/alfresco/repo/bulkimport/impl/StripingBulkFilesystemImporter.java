@@ -26,21 +26,84 @@
 package org.alfresco.repo.bulkimport.impl;
 
 import java.io.File;
+import java.util.List;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.batch.BatchProcessor;
 import org.alfresco.repo.bulkimport.BulkImportParameters;
 import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.ContentData;
 
 /**
  * A multi threaded bulk importer that imports by striping across filesystem levels.
+ * <p/>
+ * When the pipeline is enabled, directory analysis, metadata loading and content copying run ahead of node
+ * creation on their own threads - see {@link PipelinedFilesystemTracker}.
  * 
  * @since 4.0
  *
  */
 public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemImporter
 {
+    private boolean pipelineEnabled = false;
+    private int pipelineScanThreads = 2;
+    private int pipelineMetadataThreads = 2;
+    private int pipelineContentThreads = 4;
+    private int pipelineQueueCapacity = 1000;
+    private ContentDataDAO contentDataDAO;
+    private EagerContentStoreCleaner eagerContentStoreCleaner;
+
+    /**
+     * @param pipelineEnabled <tt>true</tt> to prepare items on separate threads ahead of node creation
+     */
+    public void setPipelineEnabled(boolean pipelineEnabled)
+    {
+        this.pipelineEnabled = pipelineEnabled;
+    }
+
+    public void setPipelineScanThreads(int pipelineScanThreads)
+    {
+        this.pipelineScanThreads = pipelineScanThreads;
+    }
+
+    /**
+     * @param pipelineMetadataThreads the number of threads loading metadata ahead of node creation - <tt>0</tt> to load it during node creation
+     */
+    public void setPipelineMetadataThreads(int pipelineMetadataThreads)
+    {
+        this.pipelineMetadataThreads = pipelineMetadataThreads;
+    }
+
+    /**
+     * @param pipelineContentThreads the number of threads copying content ahead of node creation - <tt>0</tt> to stream it during node creation
+     */
+    public void setPipelineContentThreads(int pipelineContentThreads)
+    {
+        this.pipelineContentThreads = pipelineContentThreads;
+    }
+
+    /**
+     * @param pipelineQueueCapacity the maximum number of items prepared ahead of node creation
+     */
+    public void setPipelineQueueCapacity(int pipelineQueueCapacity)
+    {
+        this.pipelineQueueCapacity = pipelineQueueCapacity;
+    }
+
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
+    public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+    {
+        this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+    }
+
 	/**
      * Method that does the work of importing a filesystem using the BatchProcessor.
      * 
@@ -53,6 +116,12 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
     {
         super.bulkImportImpl(bulkImportParameters, nodeImporter, lockToken);
 
+        if (pipelineEnabled)
+        {
+            bulkImportPipelined(bulkImportParameters, nodeImporter, lockToken);
+            return;
+        }
+
     	final File sourceFolder = nodeImporter.getSourceFolder();
         final int batchSize = getBatchSize(bulkImportParameters);
         final int loggingInterval = getLoggingInterval(bulkImportParameters);
@@ -70,4 +139,80 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
 		}
 		while(tracker.moreLevels());
     }
+
+    private void bulkImportPipelined(final BulkImportParameters bulkImportParameters, final NodeImporter nodeImporter, final String lockToken)
+    {
+        final File sourceFolder = nodeImporter.getSourceFolder();
+        final int batchSize = getBatchSize(bulkImportParameters);
+        final int loggingInterval = getLoggingInterval(bulkImportParameters);
+        // Only our own importers know how to prepare items ahead of time
+        final AbstractNodeImporter preparingImporter = (nodeImporter instanceof AbstractNodeImporter) ? (AbstractNodeImporter) nodeImporter : null;
+        final PipelinedFilesystemTracker tracker = new PipelinedFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize,
+                preparingImporter, importStatus,
+                pipelineScanThreads, pipelineMetadataThreads, (contentDataDAO != null && eagerContentStoreCleaner != null) ? pipelineContentThreads : 0,
+                pipelineQueueCapacity);
+        final BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, tracker.getWorkProvider(), loggingInterval);
+        final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker);
+
+        tracker.start();
+        try
+        {
+            while(tracker.nextLevel())
+            {
+                batchProcessor.process(worker, true);
+                if(batchProcessor.getLastError() != null)
+                {
+                    throw new AlfrescoRuntimeException(batchProcessor.getLastError());
+                }
+                removeUnusedContent(tracker.takeCopiedItems(false), batchSize);
+            }
+        }
+        finally
+        {
+            tracker.shutdown();
+            try
+            {
+                removeUnusedContent(tracker.takeCopiedItems(true), batchSize);
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Failed to remove content copied ahead of an incomplete bulk import", e);
+            }
+        }
+    }
+
+    /**
+     * Deletes content that was copied ahead of the import but never referenced, e.g. because the node was skipped or
+     * its transaction failed.  Content that has no content URL entity is not known to the content store cleaner.
+     */
+    private void removeUnusedContent(final List<ImportableItem> copiedItems, int batchSize)
+    {
+        for (int i = 0; i < copiedItems.size(); i += batchSize)
+        {
+            final List<ImportableItem> batch = copiedItems.subList(i, Math.min(i + batchSize, copiedItems.size()));
+            int removed = transactionHelper.doInTransaction(new RetryingTransactionCallback<Integer>()
+            {
+                @Override
+                public Integer execute() throws Throwable
+                {
+                    int count = 0;
+                    for (ImportableItem item : batch)
+                    {
+                        ContentData contentData = item.getHeadRevision().getContentData();
+                        if (contentDataDAO.getContentUrl(contentData.getContentUrl()) == null)
+                        {
+                            eagerContentStoreCleaner.registerOrphanedContentUrl(contentData.getContentUrl(), true);
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            }, false, true);
+
+            if (removed > 0 && logger.isDebugEnabled())
+            {
+                logger.debug("Removed " + removed + " content files copied ahead of the import that were not used.");
+            }
+        }
+    }
 }
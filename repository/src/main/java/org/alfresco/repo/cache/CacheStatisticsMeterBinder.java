@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.util.PropertyCheck;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Publishes the {@link CacheStatistics} of the transactional caches as Micrometer meters.
+ * <p>
+ * A {@link FunctionTimer} is registered for each operation type as soon as statistics are
+ * {@link CacheStatisticsCreated created} for a cache.  The meters read the statistics when they are
+ * published, so the caches themselves are not slowed down.  Only caches that have statistics enabled
+ * are published.
+ * 
+ * @since 7.1
+ */
+public class CacheStatisticsMeterBinder implements ApplicationListener<CacheStatisticsCreated>, InitializingBean
+{
+    public static final String METRIC_NAME = "alfresco.cache.operations";
+    public static final String TAG_CACHE = "cache";
+    public static final String TAG_OPERATION = "operation";
+
+    private MeterRegistry meterRegistry;
+
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        PropertyCheck.mandatory(this, "meterRegistry", meterRegistry);
+    }
+
+    @Override
+    public void onApplicationEvent(CacheStatisticsCreated event)
+    {
+        bind(event.getCacheStats(), event.getCacheName());
+    }
+
+    /**
+     * Register the meters for a cache
+     */
+    public void bind(final CacheStatistics cacheStats, final String cacheName)
+    {
+        for (final OpType opType : OpType.values())
+        {
+            FunctionTimer.builder(
+                    METRIC_NAME,
+                    cacheStats,
+                    stats -> stats.count(cacheName, opType),
+                    stats -> totalTime(stats, cacheName, opType),
+                    TimeUnit.NANOSECONDS)
+                    .tag(TAG_CACHE, cacheName)
+                    .tag(TAG_OPERATION, opType.name().toLowerCase(Locale.ENGLISH))
+                    .register(meterRegistry);
+        }
+    }
+
+    private static double totalTime(CacheStatistics cacheStats, String cacheName, OpType opType)
+    {
+        OperationStats opStats = cacheStats.allStats(cacheName).get(opType);
+        if (opStats == null || Double.isNaN(opStats.getTotalTime()))
+        {
+            return 0.0;
+        }
+        return opStats.getTotalTime();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.BeanNameAware;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * {@link SimpleCache} implementation backed by a Caffeine {@link Cache}.
+ * <p>
+ * Eviction uses Caffeine's W-TinyLFU policy, which admits new entries based on their recent frequency and
+ * so keeps hot entries in the cache during scans.  The cache can be bounded by the number of entries or,
+ * when <tt>maxBytes</tt> is given, by the estimated heap size of the entries as reported by the
+ * {@link SimpleCacheEntryWeigher}.  This suits caches whose values vary a lot in size, such as the node
+ * properties cache, but weighing the entries makes writes more expensive when the cache is full.
+ * <p>
+ * Values are stored without a wrapper; <tt>null</tt> values are replaced by a marker.
+ * Cache maintenance is done on the calling threads, in the same way as for the {@link DefaultSimpleCache}.
+ * 
+ * @since 7.1
+ */
+public final class CaffeineSimpleCache<K extends Serializable, V extends Object>
+    implements SimpleCache<K, V>, BeanNameAware
+{
+    private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+    private static final Object NULL_VALUE = new Object();
+    private final Cache<K, Object> cache;
+    private String cacheName;
+    private final int maxItems;
+    private final boolean useMaxItems;
+    private final long maxBytes;
+    private final int ttlSecs;
+    private final int maxIdleSecs;
+
+    /**
+     * Construct a cache using the specified capacity and name.
+     * 
+     * @param maxItems The cache capacity. 0 = use {@link #DEFAULT_CAPACITY}
+     * @param useMaxItems Whether the maxItems value should be applied as a size-cap for the cache.
+     * @param maxBytes The maximum estimated size of the cache in bytes. 0 = not bounded by size in bytes.
+     *                 When used, this takes precedence over maxItems.
+     * @param ttlSecs Time to live of the entries after they have been written. 0 = no limit
+     * @param maxIdleSecs Time to live of the entries after they were last accessed. 0 = no limit
+     * @param cacheName An arbitrary cache name.
+     */
+    public CaffeineSimpleCache(int maxItems, boolean useMaxItems, long maxBytes, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        if (maxItems == 0)
+        {
+            maxItems = DEFAULT_CAPACITY;
+        }
+        else if (maxItems < 0)
+        {
+            throw new IllegalArgumentException("maxItems may not be negative, but was " + maxItems);
+        }
+        if (maxBytes < 0)
+        {
+            throw new IllegalArgumentException("maxBytes may not be negative, but was " + maxBytes);
+        }
+        this.maxItems = maxItems;
+        this.useMaxItems = useMaxItems;
+        this.maxBytes = maxBytes;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        setBeanName(cacheName);
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (maxBytes > 0)
+        {
+            builder.maximumWeight(maxBytes).weigher(new SimpleCacheEntryWeigher());
+        }
+        else if (useMaxItems)
+        {
+            builder.maximumSize(maxItems);
+        }
+        if (ttlSecs > 0)
+        {
+            builder.expireAfterWrite(ttlSecs, TimeUnit.SECONDS);
+        }
+        if (maxIdleSecs > 0)
+        {
+            builder.expireAfterAccess(maxIdleSecs, TimeUnit.SECONDS);
+        }
+        // Keep the maintenance work on the calling threads
+        builder.executor(Runnable::run);
+
+        cache = builder.build();
+    }
+
+    /**
+     * Create a size limited, named cache with no other features enabled.
+     * 
+     * @param maxItems int
+     * @param cacheName String
+     */
+    public CaffeineSimpleCache(int maxItems, String cacheName)
+    {
+        this(maxItems, true, 0, 0, 0, cacheName);
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        return cache.asMap().containsKey(key);
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        return cache.asMap().keySet();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(K key)
+    {
+        Object value = cache.getIfPresent(key);
+        if (value == null || value == NULL_VALUE)
+        {
+            return null;
+        }
+        return (V) value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        putAndCheckUpdate(key, value);
+    }
+
+    /**
+     * <code>put</code> method that may be used to check for updates in a thread-safe manner.
+     * 
+     * @return <code>true</code> if the put resulted in a change in value, <code>false</code> otherwise.
+     */
+    public boolean putAndCheckUpdate(K key, V value)
+    {
+        Object newValue = (value == null ? NULL_VALUE : value);
+        Object priorValue = cache.asMap().put(key, newValue);
+        return (priorValue != null && (!priorValue.equals(newValue)));
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Perform any pending maintenance, such as evictions, straight away.
+     */
+    public void cleanUp()
+    {
+        cache.cleanUp();
+    }
+
+    /**
+     * Get the estimated size of the cache in bytes, if the cache is bounded by size in bytes.
+     * 
+     * @return the estimated size in bytes or <tt>-1</tt> if the cache is not bounded by size in bytes
+     */
+    public long getEstimatedBytes()
+    {
+        if (maxBytes <= 0)
+        {
+            return -1L;
+        }
+        return cache.policy().eviction().get().weightedSize().orElse(-1L);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CaffeineSimpleCache[maxItems=" + maxItems + ", useMaxItems=" + useMaxItems + ", maxBytes=" + maxBytes + ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * Gets the maximum number of items that the cache will hold.
+     * 
+     * @return maxItems
+     */
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    /**
+     * Is a size-cap in use?
+     * 
+     * @return useMaxItems
+     */
+    public boolean isUseMaxItems()
+    {
+        return this.useMaxItems;
+    }
+
+    /**
+     * Get the maximum estimated size of the cache in bytes.
+     * 
+     * @return maxBytes, 0 if the cache is not bounded by size in bytes
+     */
+    public long getMaxBytes()
+    {
+        return this.maxBytes;
+    }
+
+    /**
+     * Get the time-to-live setting in seconds.
+     * 
+     * @return ttlSecs
+     */
+    public int getTTLSecs()
+    {
+        return this.ttlSecs;
+    }
+
+    /**
+     * Get the time-to-idle setting in seconds.
+     * 
+     * @return maxIdleSecs
+     */
+    public int getMaxIdleSecs()
+    {
+        return this.maxIdleSecs;
+    }
+
+    /**
+     * Retrieve the name of this cache.
+     * 
+     * @return the cacheName
+     */
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    /**
+     * Since there are many cache instances, it is useful to be able to associate
+     * a name with each one.
+     * 
+     * @param cacheName Set automatically by Spring, but can be set manually if required.
+     */
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact, insertion-ordered {@link Map} using open addressing.
+ * <p>
+ * The entries are kept in insertion order in flat key, value and hash arrays, while a separate table of
+ * <tt>int</tt> positions is probed linearly to find them.  Unlike {@link java.util.LinkedHashMap} no
+ * object is allocated per entry, and nothing at all is allocated until the first entry is added, which
+ * suits the short-lived, transaction-local maps of the {@link TransactionalCache}.
+ * <p>
+ * As with {@link java.util.LinkedHashMap}, replacing the value of an existing key does not change its
+ * position and {@link #removeEldestEntry()} can be overridden to bound the size of the map.
+ * <p>
+ * This class is not thread-safe.  <tt>null</tt> keys and values are allowed.
+ * 
+ * @since 7.1
+ */
+class CompactLinkedHashMap<K, V> extends AbstractMap<K, V>
+{
+    private static final Object NULL_KEY = new Object();
+    private static final int MIN_CAPACITY = 8;
+
+    private final int initialCapacity;
+    /** Keys in insertion order; <tt>null</tt> marks a removed entry */
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    /** Open-addressing table holding entry positions plus one; zero marks an empty slot */
+    private int[] table;
+    /** Position of the first entry that might still be present */
+    private int head;
+    /** Position at which the next entry will be added */
+    private int tail;
+    private int size;
+    private int modCount;
+
+    /**
+     * @param initialCapacity           the number of entries to allocate space for when the first entry is added
+     */
+    CompactLinkedHashMap(int initialCapacity)
+    {
+        this.initialCapacity = Math.max(MIN_CAPACITY, initialCapacity);
+    }
+
+    /**
+     * Called after a new entry has been added.  Override this to return <tt>true</tt> when the eldest
+     * entry should be removed.
+     */
+    protected boolean removeEldestEntry()
+    {
+        return false;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return findPosition(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key)
+    {
+        int position = findPosition(key);
+        return position < 0 ? null : (V) values[position];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V put(K key, V value)
+    {
+        Object maskedKey = maskNull(key);
+        int hash = hash(maskedKey);
+        if (keys != null)
+        {
+            int slot = findSlot(maskedKey, hash);
+            if (table[slot] != 0)
+            {
+                int position = table[slot] - 1;
+                V oldValue = (V) values[position];
+                values[position] = value;
+                return oldValue;
+            }
+        }
+        if (keys == null || tail == keys.length)
+        {
+            resize();
+        }
+        int position = tail++;
+        keys[position] = maskedKey;
+        values[position] = value;
+        hashes[position] = hash;
+        table[findSlot(maskedKey, hash)] = position + 1;
+        size++;
+        modCount++;
+        if (removeEldestEntry())
+        {
+            removePosition(head);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key)
+    {
+        int position = findPosition(key);
+        if (position < 0)
+        {
+            return null;
+        }
+        V oldValue = (V) values[position];
+        removePosition(position);
+        return oldValue;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (size > 0 || tail > 0)
+        {
+            Arrays.fill(keys, 0, tail, null);
+            Arrays.fill(values, 0, tail, null);
+            Arrays.fill(table, 0);
+        }
+        head = 0;
+        tail = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new EntrySet();
+    }
+
+    private static Object maskNull(Object key)
+    {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static int hash(Object maskedKey)
+    {
+        int h = maskedKey.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the position of the key's entry or <tt>-1</tt> if the key is not present
+     */
+    private int findPosition(Object key)
+    {
+        if (size == 0)
+        {
+            return -1;
+        }
+        Object maskedKey = maskNull(key);
+        int slot = findSlot(maskedKey, hash(maskedKey));
+        return table[slot] - 1;
+    }
+
+    /**
+     * @return the slot holding the key's entry or the empty slot where it would be added
+     */
+    private int findSlot(Object maskedKey, int hash)
+    {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (true)
+        {
+            int entry = table[slot];
+            if (entry == 0)
+            {
+                return slot;
+            }
+            int position = entry - 1;
+            if (hashes[position] == hash && maskedKey.equals(keys[position]))
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void removePosition(int position)
+    {
+        Object maskedKey = keys[position];
+        int hash = hashes[position];
+        int slot = findSlot(maskedKey, hash);
+        keys[position] = null;
+        values[position] = null;
+        size--;
+        modCount++;
+        // Backward shift deletion keeps the probe sequences intact without tombstones
+        int mask = table.length - 1;
+        int next = slot;
+        table[slot] = 0;
+        while (true)
+        {
+            next = (next + 1) & mask;
+            int entry = table[next];
+            if (entry == 0)
+            {
+                break;
+            }
+            int ideal = hashes[entry - 1] & mask;
+            // Move the entry back unless its ideal slot lies cyclically in (slot, next]
+            boolean inRange = (slot <= next) ? (slot < ideal && ideal <= next) : (slot < ideal || ideal <= next);
+            if (!inRange)
+            {
+                table[slot] = entry;
+                table[next] = 0;
+                slot = next;
+            }
+        }
+        while (head < tail && keys[head] == null)
+        {
+            head++;
+        }
+        if (size == 0)
+        {
+            head = 0;
+            tail = 0;
+        }
+    }
+
+    /**
+     * Make space at the end of the entry arrays, compacting out removed entries and growing as required
+     */
+    private void resize()
+    {
+        if (keys == null)
+        {
+            keys = new Object[initialCapacity];
+            values = new Object[initialCapacity];
+            hashes = new int[initialCapacity];
+            table = new int[tableSize(initialCapacity)];
+            return;
+        }
+        int capacity = (size >= keys.length / 2) ? keys.length * 2 : keys.length;
+        Object[] newKeys = new Object[capacity];
+        Object[] newValues = new Object[capacity];
+        int[] newHashes = new int[capacity];
+        int count = 0;
+        for (int i = head; i < tail; i++)
+        {
+            if (keys[i] != null)
+            {
+                newKeys[count] = keys[i];
+                newValues[count] = values[i];
+                newHashes[count] = hashes[i];
+                count++;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        hashes = newHashes;
+        head = 0;
+        tail = count;
+        table = new int[tableSize(capacity)];
+        for (int position = 0; position < count; position++)
+        {
+            table[findSlot(keys[position], hashes[position])] = position + 1;
+        }
+    }
+
+    /**
+     * Keep the table at most half full
+     */
+    private static int tableSize(int capacity)
+    {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>>
+    {
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public void clear()
+        {
+            CompactLinkedHashMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>>
+    {
+        private int next = head;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next < tail && keys[next] == null)
+            {
+                next++;
+            }
+            return next < tail;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            if (modCount != expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            Object key = keys[last];
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key == NULL_KEY ? null : (K) key, (V) values[last]);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last < 0 || keys[last] == null)
+            {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            removePosition(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+}
@@ -35,6 +35,9 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p>
+ * Setting the property {name}.implementation to <tt>caffeine</tt> creates a {@link CaffeineSimpleCache}
+ * instead, which may also be bounded by its estimated size in bytes using the property {name}.maxBytes.
  * 
  * @author Matt Ward
  */
@@ -42,6 +45,8 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final String IMPLEMENTATION_DEFAULT = "default";
+    private static final String IMPLEMENTATION_CAFFEINE = "caffeine";
     
     
     @Override
@@ -56,7 +61,21 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         boolean useMaxItems = useMaxItems(cacheName);
         int ttlSecs = ttlSeconds(cacheName);
         int maxIdleSeconds = maxIdleSeconds(cacheName);
-        DefaultSimpleCache<K, V> cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        String implementation = implementation(cacheName);
+        SimpleCache<K, V> cache;
+        if (implementation.equals(IMPLEMENTATION_CAFFEINE))
+        {
+            long maxBytes = maxBytes(cacheName);
+            cache = new CaffeineSimpleCache<K, V>(maxItems, useMaxItems, maxBytes, ttlSecs, maxIdleSeconds, cacheName);
+        }
+        else if (implementation.equals(IMPLEMENTATION_DEFAULT))
+        {
+            cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown implementation '" + implementation + "' for cache " + cacheName);
+        }
         if (log.isDebugEnabled())
         {
             log.debug("Creating cache: " + cache);
@@ -77,6 +96,17 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         return !evictionPolicy.equals(EVICT_NONE);
     }
     
+    private String implementation(String cacheName)
+    {
+        return getProperty(cacheName, "implementation", IMPLEMENTATION_DEFAULT).toLowerCase();
+    }
+    
+    private long maxBytes(String cacheName)
+    {
+        String maxBytesStr = getProperty(cacheName, "maxBytes", "0");
+        return Long.parseLong(maxBytesStr);
+    }
+    
     private int ttlSeconds(String cacheName)
     {
         String ttlSecsStr = getProperty(cacheName, "timeToLiveSeconds", "0");
@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+/**
+ * {@link Weigher} that estimates the number of heap bytes retained by a cache entry.
+ * <p>
+ * The estimate walks the common value types held by the repository caches (strings, numbers, dates,
+ * collections, maps and arrays) and uses a fixed allowance for anything else.  Values held by a
+ * {@link TransactionalCache} are unwrapped first.  Instances that are normally shared between entries,
+ * such as {@link QName}s, {@link StoreRef}s and {@link Locale}s, only count as a reference.  Values that
+ * know their own size can implement {@link Weighable}.
+ * <p>
+ * The figures assume a 64-bit VM with compressed references and are only meant to be good enough to
+ * bound a cache by size in bytes rather than by number of entries.
+ * 
+ * @since 7.1
+ */
+public class SimpleCacheEntryWeigher implements Weigher<Object, Object>
+{
+    private static final int REFERENCE = 8;
+    private static final int OBJECT_HEADER = 16;
+    private static final int BOXED_VALUE = 24;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int COLLECTION_OVERHEAD = 40;
+    private static final int MAP_OVERHEAD = 48;
+    private static final int MAP_ENTRY = 32;
+    private static final int UNKNOWN_OBJECT = 64;
+    /** Deeper structures are charged the fixed allowance, which also stops us following cycles */
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * Implemented by cache values that can give a better estimate of their heap size than this weigher.
+     */
+    public interface Weighable
+    {
+        /**
+         * @return              the estimated heap size of this instance in bytes
+         */
+        long getEstimatedSize();
+    }
+
+    @Override
+    public int weigh(Object key, Object value)
+    {
+        long weight = estimate(key, 0) + estimate(value, 0);
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimate the heap size of the given object and the objects it references.
+     * 
+     * @param object            the object to estimate (may be <tt>null</tt>)
+     * @return                  the estimated size in bytes
+     */
+    public long estimate(Object object)
+    {
+        return estimate(object, 0);
+    }
+
+    private long estimate(Object object, int depth)
+    {
+        if (object == null)
+        {
+            return 0;
+        }
+        else if (depth > MAX_DEPTH)
+        {
+            return UNKNOWN_OBJECT;
+        }
+        else if (object instanceof TransactionalCache.ValueHolder)
+        {
+            return OBJECT_HEADER + estimate(((TransactionalCache.ValueHolder<?>) object).getValue(), depth + 1);
+        }
+        else if (object instanceof Weighable)
+        {
+            return ((Weighable) object).getEstimatedSize();
+        }
+        else if (object instanceof String)
+        {
+            return STRING_OVERHEAD + 2L * ((String) object).length();
+        }
+        else if (object instanceof Number || object instanceof Boolean || object instanceof Character || object instanceof Date)
+        {
+            return BOXED_VALUE;
+        }
+        else if (object instanceof QName || object instanceof StoreRef || object instanceof Locale || object instanceof Enum)
+        {
+            return REFERENCE;
+        }
+        else if (object instanceof NodeRef)
+        {
+            return OBJECT_HEADER + REFERENCE + estimate(((NodeRef) object).getId(), depth + 1);
+        }
+        else if (object instanceof Map)
+        {
+            long size = MAP_OVERHEAD;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet())
+            {
+                size += MAP_ENTRY + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        else if (object instanceof Collection)
+        {
+            long size = COLLECTION_OVERHEAD;
+            for (Object element : (Collection<?>) object)
+            {
+                size += REFERENCE + estimate(element, depth + 1);
+            }
+            return size;
+        }
+        else if (object.getClass().isArray())
+        {
+            return estimateArray(object, depth);
+        }
+        else
+        {
+            return UNKNOWN_OBJECT;
+        }
+    }
+
+    private long estimateArray(Object array, int depth)
+    {
+        int length = Array.getLength(array);
+        Class<?> componentType = array.getClass().getComponentType();
+        if (componentType == byte.class || componentType == boolean.class)
+        {
+            return OBJECT_HEADER + length;
+        }
+        else if (componentType == char.class || componentType == short.class)
+        {
+            return OBJECT_HEADER + 2L * length;
+        }
+        else if (componentType == int.class || componentType == float.class)
+        {
+            return OBJECT_HEADER + 4L * length;
+        }
+        else if (componentType == long.class || componentType == double.class)
+        {
+            return OBJECT_HEADER + 8L * length;
+        }
+        long size = OBJECT_HEADER;
+        for (int i = 0; i < length; i++)
+        {
+            size += REFERENCE + estimate(Array.get(array, i), depth + 1);
+        }
+        return size;
+    }
+}
@@ -49,7 +49,9 @@ public class TransactionStats
         GET_MISS,
         PUT,
         REMOVE,
-        CLEAR
+        CLEAR,
+        /** An entry was pruned by the cache itself to stay within its limits */
+        EVICT
     }
     
     public long getCount(OpType op)
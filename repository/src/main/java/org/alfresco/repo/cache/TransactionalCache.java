@@ -29,7 +29,6 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -71,6 +70,11 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * of the tranasaction.  At the end of the transaction, if the flag is set, the
  * shared transaction is cleared <i>before</i> updates are added back to it.
  * <p>
+ * Values read from the shared cache in a read-write transaction are remembered so that
+ * the transaction keeps seeing them.  Read-only transactions do not remember these reads:
+ * they see the latest shared values, much as they see the latest committed database state,
+ * and reading does not fill up the transaction-local cache.
+ * <p>
  * Because there is a limited amount of space available to the in-transaction caches,
  * when either of these becomes full, the cleared flag is set.  This ensures that
  * the shared cache will not have stale data in the event of the transaction-local
@@ -651,8 +655,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                         // No stats tracking, pass in null TransactionStats
                         value = TransactionalCache.getSharedCacheValue(sharedCache, key, null);
                     }
-                    bucket = new ReadCacheBucket<V>(value);
-                    txnData.updatedItemsCache.put(key, bucket);
+                    // Read-only transactions see committed data (READ_COMMITTED) and never write the reads
+                    // back, so only remember the read for consistency within read-write transactions
+                    if (!txnData.isReadOnly)
+                    {
+                        bucket = new ReadCacheBucket<V>(value);
+                        txnData.updatedItemsCache.put(key, bucket);
+                    }
                     return value;
                 }
             }
@@ -1388,15 +1397,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     }
     
     /**
-     * Simple LRU based on {@link LinkedHashMap}
+     * Simple LRU based on {@link CompactLinkedHashMap}
      * 
      * @author Derek Hulley
      * @since 3.4
      */
-    private class LRULinkedHashMap<K1, V1> extends LinkedHashMap<K1, V1>
+    private class LRULinkedHashMap<K1, V1> extends CompactLinkedHashMap<K1, V1>
     {
-        private static final long serialVersionUID = -4874684348174271106L;
-
         private LRULinkedHashMap(int initialSize)
         {
             super(initialSize);
@@ -1409,7 +1416,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
          * Remove the eldest entry if the size has reached the maximum cache size
          */
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K1, V1> eldest)
+        protected boolean removeEldestEntry()
         {
             return (size() > maxCacheSize);
         }
@@ -27,6 +27,13 @@ package org.alfresco.repo.cache.lookup;
 
 import java.io.Serializable;
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -91,6 +98,32 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
          */
         Pair<K1, V1> findByKey(K1 key);
         
+        /**
+         * Find the entities for the given keys.  This is used to resolve cache misses in bulk, so
+         * implementations should override it to fetch all the entities with a single query
+         * (e.g. using a SQL <code>IN</code> clause) or a small number of batched queries.
+         * <p/>
+         * The default implementation calls {@link #findByKey(Serializable) findByKey} for each key.
+         * 
+         * @param keys          the keys (IDs) used to identify the entities (never <tt>null</tt> and without duplicates)
+         * @return              Return the entities found, in any order.  Keys that don't reference an entity are left out.
+         * 
+         * @since 7.1
+         */
+        default List<Pair<K1, V1>> findByKeys(List<K1> keys)
+        {
+            List<Pair<K1, V1>> entityPairs = new ArrayList<Pair<K1, V1>>(keys.size());
+            for (K1 key : keys)
+            {
+                Pair<K1, V1> entityPair = findByKey(key);
+                if (entityPair != null)
+                {
+                    entityPairs.add(entityPair);
+                }
+            }
+            return entityPairs;
+        }
+        
         /**
          * Find and entity using the given value key.  The <code>equals</code> and <code>hashCode</code>
          * methods of the value object should respect case-sensitivity in the same way that this
@@ -335,22 +368,159 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
         else
         {
-            value = entityPair.getSecond();
-            // Get the value key
-            VK valueKey = (value == null) ? (VK)VALUE_NULL : entityLookup.getValueKey(value);
-            // Check if the value has a good key
-            if (valueKey != null)
+            cacheEntity(key, entityPair.getSecond());
+        }
+        // Done
+        return entityPair;
+    }
+    
+    /**
+     * Find the entities associated with the given keys.
+     * Entries already in the cache are used directly and all the cache misses are resolved with a single call to the
+     * {@link EntityLookupCallbackDAO#findByKeys(List) entity callback}.  The results are cached in the same way as for
+     * {@link #getByKey(Serializable)}, including the keys that don't reference an entity.
+     * 
+     * @param keys                  The entity keys, which may be valid or invalid (<tt>null</tt> keys not allowed)
+     * @return                      Returns the key-value pairs for the keys that reference an entity, in the order of the
+     *                              given keys and without duplicates
+     * 
+     * @since 7.1
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getByKeys(Collection<K> keys)
+    {
+        if (keys == null)
+        {
+            throw new IllegalArgumentException("The entity lookup keys may not be null");
+        }
+        Set<K> uniqueKeys = new LinkedHashSet<K>(keys);
+        if (uniqueKeys.contains(null))
+        {
+            throw new IllegalArgumentException("An entity lookup key may not be null");
+        }
+        
+        Map<K, Pair<K, V>> entityPairsByKey = new HashMap<K, Pair<K, V>>(uniqueKeys.size() * 2);
+        List<K> missingKeys = new ArrayList<K>(uniqueKeys.size());
+        for (K key : uniqueKeys)
+        {
+            // Handle missing cache
+            if (cache == null)
             {
-                CacheRegionValueKey valueCacheKey = new CacheRegionValueKey(cacheRegion, valueKey);
-                // The key is good, so we can cache the value
-                cache.put(valueCacheKey, key);
+                missingKeys.add(key);
+                continue;
+            }
+            // Look in the cache
+            V value = (V) cache.get(new CacheRegionKey(cacheRegion, key));
+            if (value == null)
+            {
+                missingKeys.add(key);
+            }
+            else if (value.equals(VALUE_NOT_FOUND))
+            {
+                // We checked before
+            }
+            else if (value.equals(VALUE_NULL))
+            {
+                entityPairsByKey.put(key, new Pair<K, V>(key, null));
+            }
+            else
+            {
+                entityPairsByKey.put(key, new Pair<K, V>(key, value));
+            }
+        }
+        
+        if (!missingKeys.isEmpty())
+        {
+            // Resolve them
+            List<Pair<K, V>> entityPairs = entityLookup.findByKeys(missingKeys);
+            for (Pair<K, V> entityPair : entityPairs)
+            {
+                K key = entityPair.getFirst();
+                entityPairsByKey.put(key, entityPair);
+                if (cache != null)
+                {
+                    cacheEntity(key, entityPair.getSecond());
+                }
+            }
+            if (cache != null)
+            {
+                for (K key : missingKeys)
+                {
+                    if (!entityPairsByKey.containsKey(key))
+                    {
+                        // Cache "not found"
+                        cache.put(new CacheRegionKey(cacheRegion, key), VALUE_NOT_FOUND);
+                    }
+                }
+            }
+        }
+        
+        List<Pair<K, V>> results = new ArrayList<Pair<K, V>>(entityPairsByKey.size());
+        for (K key : uniqueKeys)
+        {
+            Pair<K, V> entityPair = entityPairsByKey.get(key);
+            if (entityPair != null)
+            {
+                results.add(entityPair);
             }
-            cache.put(
-                    keyCacheKey,
-                    (value == null ? VALUE_NULL : value));
         }
         // Done
-        return entityPair;
+        return results;
+    }
+    
+    /**
+     * Find the keys of the entities currently held in the cache region, e.g. to record the working set
+     * so that it can be {@link #getByKeys(Collection) loaded} again later.  Keys cached as referencing no
+     * entity may be included.
+     * 
+     * @param maxKeys               The maximum number of keys to return
+     * @return                      Returns the cached entity keys, in no particular order
+     * 
+     * @since 7.1
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> getCachedKeys(int maxKeys)
+    {
+        List<K> keys = new ArrayList<K>();
+        if (cache == null)
+        {
+            return keys;
+        }
+        for (Serializable cacheKey : cache.getKeys())
+        {
+            if (keys.size() >= maxKeys)
+            {
+                break;
+            }
+            if (cacheKey instanceof CacheRegionKey && cacheRegion.equals(((CacheRegionKey) cacheKey).getCacheRegion()))
+            {
+                keys.add((K) ((CacheRegionKey) cacheKey).getCacheKey());
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Put a resolved entity into the cache by key and, where the value has a good value key, by value as well.
+     * 
+     * @param key                   the entity key
+     * @param value                 the entity value (may be <tt>null</tt>)
+     */
+    @SuppressWarnings("unchecked")
+    private void cacheEntity(K key, V value)
+    {
+        // Get the value key
+        VK valueKey = (value == null) ? (VK)VALUE_NULL : entityLookup.getValueKey(value);
+        // Check if the value has a good key
+        if (valueKey != null)
+        {
+            CacheRegionValueKey valueCacheKey = new CacheRegionValueKey(cacheRegion, valueKey);
+            // The key is good, so we can cache the value
+            cache.put(valueCacheKey, key);
+        }
+        cache.put(
+                new CacheRegionKey(cacheRegion, key),
+                (value == null ? VALUE_NULL : value));
     }
     
     /**
@@ -26,24 +26,43 @@
 package org.alfresco.repo.content.cleanup;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
@@ -77,6 +96,14 @@ import org.apache.commons.logging.LogFactory;
  * Lazy cleanup protects the content for a given period (e.g. 7 days) giving plenty of
  * time for a backup to be taken; this allows hot backup without needing metadata-content
  * consistency to be enforced.
+ * <p/>
+ * <u><b>Parallel lazy cleanup:</b></u> (since 7.1)<p/>
+ * With a {@link #setThreadCount(int) thread count} above 1, the binaries of each batch are
+ * deleted on a pool of threads, optionally with a {@link #setStoreConcurrency(int) limit}
+ * on the concurrent deletes against any one store.  Listeners are then called on the pool
+ * threads, outside of the cleanup transaction.  Orphans are processed in order of ID and,
+ * if an {@link #setAttributeService(AttributeService) attribute service} is given, the last
+ * processed ID is recorded with each batch so that an interrupted run is resumed.
  * 
  * @author Derek Hulley
  */
@@ -112,6 +139,17 @@ public class ContentStoreCleaner
     
     private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentStoreCleaner"); 
     private static final long LOCK_TTL = 30000L;
+
+    /** Attribute keys for the ID of the last orphan processed by an unfinished run */
+    public static final String KEY_CLEANER_ROOT = ".contentStoreCleaner";
+    public static final String KEY_LAST_PROCESSED_ID = "lastProcessedId";
+
+    /** Orphaned content URLs processed, tagged with the outcome (<tt>deleted</tt> or <tt>failed</tt>) */
+    public static final String METRIC_URLS = "alfresco.content.cleaner.urls";
+    /** Time taken by each batch */
+    public static final String METRIC_BATCH = "alfresco.content.cleaner.batch";
+    /** Milliseconds by which the oldest orphan of the last batch had passed its protection period */
+    public static final String METRIC_LAG = "alfresco.content.cleaner.lag";
     
     private static Log logger = LogFactory.getLog(ContentStoreCleaner.class);
     
@@ -127,12 +165,19 @@ public class ContentStoreCleaner
     private int protectDays;
     private int batchSize;
     private DeleteFailureAction deletionFailureAction;
+    private AttributeService attributeService;
+    private int threadCount;
+    private int storeConcurrency;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private final AtomicLong lag = new AtomicLong();
     
     public ContentStoreCleaner()
     {
         this.batchSize = 1000;
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
+        this.threadCount = 1;
+        this.storeConcurrency = 0;
     }
 
     /**
@@ -215,12 +260,54 @@ public class ContentStoreCleaner
         this.deletionFailureAction = deletionFailureAction;
     }
 
+    /**
+     * @param attributeService      records the progress of a run so that it can be resumed (optional)
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * Set the number of threads deleting binaries.  The default is 1, which deletes them one by
+     * one in the cleanup transaction.
+     * 
+     * @param threadCount   the number of threads deleting binaries
+     */
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Set the maximum number of concurrent deletes against any one store, to spare slow
+     * backends when deleting on several threads.  The default is 0, for no limit.
+     * 
+     * @param storeConcurrency  the maximum concurrent deletes per store
+     */
+    public void setStoreConcurrency(int storeConcurrency)
+    {
+        this.storeConcurrency = storeConcurrency;
+    }
+
+    /**
+     * @param meterRegistry     the registry for the cleanup metrics
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
     /**
      * Initializes the cleaner.
      */
     public void init()
     {
         checkProperties();
+        Gauge.builder(METRIC_LAG, lag, AtomicLong::get)
+                .description("Milliseconds by which the oldest orphan of the last batch had passed its protection period")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
     }
     
     /**
@@ -234,6 +321,10 @@ public class ContentStoreCleaner
         PropertyCheck.mandatory(this, "contentService", contentService);
         PropertyCheck.mandatory(this, "transactionService", transactionService);
         PropertyCheck.mandatory(this, "eagerContentStoreCleaner", eagerContentStoreCleaner);
+        if (threadCount < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'threadCount' must be 1 or greater");
+        }
         
         // check the protect days
         if (protectDays < 0)
@@ -336,33 +427,103 @@ public class ContentStoreCleaner
     private void executeInternal()
     {
         final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
+        final ExecutorService deleteExecutor = createDeleteExecutor();
+        final ConcurrentMap<ContentStore, Semaphore> storePermits = new ConcurrentHashMap<ContentStore, Semaphore>();
+        final AtomicLong lastId = new AtomicLong(getCheckpoint());
+        if (lastId.get() > 0L && logger.isDebugEnabled())
+        {
+            logger.debug("   Resuming content store cleanup after orphan ID " + lastId.get());
+        }
         // execute in READ-WRITE txn
         RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
         {
             public Long execute() throws Exception
             {
-                return cleanBatch(maxOrphanTime, batchSize);
+                return cleanBatch(maxOrphanTime, lastId.get(), batchSize, deleteExecutor, storePermits);
             };
         };
-        while (true)
+        try
         {
-            Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
-            if (vmShutdownListener.isVmShuttingDown())
+            while (true)
             {
-                throw new VmShutdownException();
+                Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (lastProcessedOrphanId == null)
+                {
+                    // There is no more to process
+                    break;
+                }
+                lastId.set(lastProcessedOrphanId);
+                // There is still more to delete, so continue
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("   Removed orphaned content URLs up to orphan ID " + lastProcessedOrphanId);
+                }
             }
-            if (lastProcessedOrphanId == null)
+        }
+        finally
+        {
+            if (deleteExecutor != null)
             {
-                // There is no more to process
-                break;
+                deleteExecutor.shutdownNow();
             }
-            // There is still more to delete, so continue
-            if (logger.isDebugEnabled())
+        }
+        // Done: the next run starts from the beginning
+        clearCheckpoint();
+    }
+    
+    /**
+     * @return      the pool deleting binaries or <tt>null</tt> to delete them in the cleanup thread
+     */
+    private ExecutorService createDeleteExecutor()
+    {
+        if (threadCount <= 1)
+        {
+            return null;
+        }
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("ContentStoreCleaner");
+        return Executors.newFixedThreadPool(threadCount, threadFactory);
+    }
+    
+    /**
+     * @return      the last orphan ID processed by an unfinished run or 0
+     */
+    private long getCheckpoint()
+    {
+        if (attributeService == null)
+        {
+            return 0L;
+        }
+        Long lastId = transactionService.getRetryingTransactionHelper().doInTransaction(
+                new RetryingTransactionCallback<Long>()
+                {
+                    public Long execute() throws Exception
+                    {
+                        return (Long) attributeService.getAttribute(KEY_CLEANER_ROOT, KEY_LAST_PROCESSED_ID);
+                    }
+                }, true);
+        return lastId == null ? 0L : lastId;
+    }
+    
+    private void clearCheckpoint()
+    {
+        if (attributeService == null)
+        {
+            return;
+        }
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Exception
             {
-                logger.debug("   Removed orphaned content URLs up orphan time " + new Date(lastProcessedOrphanId));
+                attributeService.removeAttribute(KEY_CLEANER_ROOT, KEY_LAST_PROCESSED_ID);
+                return null;
             }
-        }
-        // Done
+        });
     }
     
     private class LockCallback implements JobLockRefreshCallback
@@ -389,27 +550,42 @@ public class ContentStoreCleaner
     /**
      * 
      * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param minIdExclusive        the orphan ID after which to start (exclusive)
      * @param batchSize             the maximum number of orphans to process
+     * @param deleteExecutor        the pool deleting binaries or <tt>null</tt> to delete them in this thread
+     * @param storePermits          the permits limiting concurrent deletes for each store
      * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private Long cleanBatch(
+            final long maxTimeExclusive,
+            final long minIdExclusive,
+            final int batchSize,
+            final ExecutorService deleteExecutor,
+            final ConcurrentMap<ContentStore, Semaphore> storePermits)
     {
+        long startTime = System.nanoTime();
         // Get a bunch of cleanable URLs
         final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
+        final AtomicLong oldestOrphanTime = new AtomicLong(maxTimeExclusive);
         ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
         {
             @Override
             public void handle(Long id, String contentUrl, Long orphanTime)
             {
                 urlsById.put(id, contentUrl);
+                if (orphanTime != null && orphanTime < oldestOrphanTime.get())
+                {
+                    oldestOrphanTime.set(orphanTime);
+                }
             }
         };
         // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
+        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, minIdExclusive, batchSize);
         
         // Shortcut, if necessary
         if (urlsById.size() == 0)
         {
+            lag.set(0L);
             return null;
         }
         
@@ -420,27 +596,86 @@ public class ContentStoreCleaner
         // No problems, so far (ALF-1998: contentStoreCleanerJob leads to foreign key exception)
 
         // Now attempt to physically delete the URLs
-        for (Long id : ids)
+        List<String> failedUrls = deleteFromStores(urlsById.values(), deleteExecutor, storePermits);
+        for (String contentUrl : failedUrls)
         {
-            String contentUrl = urlsById.get(id);
             // Handle failures
-            boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
-            if (!deleted)
+            switch (deletionFailureAction)
             {
-                switch (deletionFailureAction)
-                {
-                    case KEEP_URL:
-                        // Keep the URL, but with an orphan time of 0 so that it is recorded
-                        contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
-                    case IGNORE:
-                        break;
-                    default:
-                        throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
-                }
+                case KEEP_URL:
+                    // Keep the URL, but with an orphan time of 0 so that it is recorded
+                    contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
+                case IGNORE:
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
             }
         }
         
+        // Record the progress along with the deletes
+        if (attributeService != null)
+        {
+            attributeService.setAttribute(lastId, KEY_CLEANER_ROOT, KEY_LAST_PROCESSED_ID);
+        }
+        
+        Counter.builder(METRIC_URLS).tag("outcome", "deleted").register(meterRegistry).increment(ids.size() - failedUrls.size());
+        Counter.builder(METRIC_URLS).tag("outcome", "failed").register(meterRegistry).increment(failedUrls.size());
+        Timer.builder(METRIC_BATCH).register(meterRegistry).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        lag.set(maxTimeExclusive - oldestOrphanTime.get());
+        
         // Done
         return lastId;
     }
+    
+    /**
+     * Delete the binaries of the orphaned URLs from the stores.
+     * 
+     * @return                      the URLs that could not be deleted from all stores
+     */
+    private List<String> deleteFromStores(
+            Collection<String> contentUrls,
+            ExecutorService deleteExecutor,
+            final ConcurrentMap<ContentStore, Semaphore> storePermits)
+    {
+        List<String> failedUrls = new ArrayList<String>();
+        if (deleteExecutor == null)
+        {
+            for (String contentUrl : contentUrls)
+            {
+                if (!eagerContentStoreCleaner.deleteFromStores(contentUrl))
+                {
+                    failedUrls.add(contentUrl);
+                }
+            }
+            return failedUrls;
+        }
+        
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(contentUrls.size());
+        for (final String contentUrl : contentUrls)
+        {
+            results.add(deleteExecutor.submit(() -> eagerContentStoreCleaner.deleteFromStores(contentUrl,
+                    store -> storeConcurrency > 0 ? storePermits.computeIfAbsent(store, s -> new Semaphore(storeConcurrency)) : null)));
+        }
+        int i = 0;
+        for (String contentUrl : contentUrls)
+        {
+            try
+            {
+                if (!results.get(i++).get())
+                {
+                    failedUrls.add(contentUrl);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while deleting orphaned content", e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new AlfrescoRuntimeException("Failed to delete orphaned content: " + contentUrl, e.getCause());
+            }
+        }
+        return failedUrls;
+    }
 }
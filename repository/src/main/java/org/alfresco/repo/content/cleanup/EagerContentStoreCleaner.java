@@ -28,6 +28,8 @@ package org.alfresco.repo.content.cleanup;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -265,10 +267,30 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
      */
     public boolean deleteFromStores(String contentUrl)
     {
-        return deleteFromStores(contentUrl, true);
+        return deleteFromStores(contentUrl, true, null);
+    }
+    
+    /**
+     * Delete the content URL from all stores, holding a permit of the store while deleting from it
+     * <p/>
+     * Note that listeners <b>are</b> called for this process.
+     * 
+     * @param contentUrl                the URL to delete
+     * @param storePermits              gives the permits limiting concurrent deletes for each store
+     *                                  (the function may return <tt>null</tt> for stores without a limit)
+     * @return                          Returns <tt>true</tt> if all deletes were successful
+     */
+    /*package*/ boolean deleteFromStores(String contentUrl, Function<ContentStore, Semaphore> storePermits)
+    {
+        return deleteFromStores(contentUrl, true, storePermits);
     }
     
     private boolean deleteFromStores(String contentUrl, boolean callListeners)
+    {
+        return deleteFromStores(contentUrl, callListeners, null);
+    }
+    
+    private boolean deleteFromStores(String contentUrl, boolean callListeners, Function<ContentStore, Semaphore> storePermits)
     {
         int deleted = 0;
         for (ContentStore store : stores)
@@ -305,9 +327,24 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
                 }
             }
             // Delete
-            if (deleteFromStore(contentUrl, store))
+            Semaphore permits = (storePermits == null) ? null : storePermits.apply(store);
+            if (permits != null)
             {
-                deleted++;
+                permits.acquireUninterruptibly();
+            }
+            try
+            {
+                if (deleteFromStore(contentUrl, store))
+                {
+                    deleted++;
+                }
+            }
+            finally
+            {
+                if (permits != null)
+                {
+                    permits.release();
+                }
             }
         }
         // Did we delete from all stores (non-existence is a delete, too)
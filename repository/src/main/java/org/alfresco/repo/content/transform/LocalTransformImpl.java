@@ -61,11 +61,27 @@ public class LocalTransformImpl extends AbstractLocalTransform
                               Set<TransformOption> transformsTransformOptions,
                               LocalTransformServiceRegistry localTransformServiceRegistry, String baseUrl,
                               int startupRetryPeriodSeconds)
+    {
+        this(name, transformerDebug, mimetypeService, strictMimeTypeCheck, strictMimetypeExceptions,
+                retryTransformOnDifferentMimeType, transformsTransformOptions, localTransformServiceRegistry, baseUrl,
+                startupRetryPeriodSeconds, RemoteTransformerConnectionPool.getDefault(), 0, 0);
+    }
+
+    public LocalTransformImpl(String name, TransformerDebug transformerDebug,
+                              MimetypeService mimetypeService, boolean strictMimeTypeCheck,
+                              Map<String, Set<String>> strictMimetypeExceptions,
+                              boolean retryTransformOnDifferentMimeType,
+                              Set<TransformOption> transformsTransformOptions,
+                              LocalTransformServiceRegistry localTransformServiceRegistry, String baseUrl,
+                              int startupRetryPeriodSeconds, RemoteTransformerConnectionPool connectionPool,
+                              int maxConcurrentRequests, int failureThreshold)
     {
         super(name, transformerDebug, mimetypeService, strictMimeTypeCheck, strictMimetypeExceptions,
                 retryTransformOnDifferentMimeType, transformsTransformOptions, localTransformServiceRegistry);
-        remoteTransformerClient = new RemoteTransformerClient(name, baseUrl);
+        remoteTransformerClient = new RemoteTransformerClient(name, baseUrl, connectionPool);
         remoteTransformerClient.setStartupRetryPeriodSeconds(startupRetryPeriodSeconds);
+        remoteTransformerClient.setMaxConcurrentRequests(maxConcurrentRequests);
+        remoteTransformerClient.setFailureThreshold(failureThreshold);
 
         checkAvailability();
     }
@@ -76,6 +76,7 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
     private boolean strictMimeTypeCheck;
     private Map<String, Set<String>> strictMimetypeExceptions;
     private boolean retryTransformOnDifferentMimeType;
+    private RemoteTransformerConnectionPool connectionPool;
 
     public void setPipelineConfigDir(String pipelineConfigDir)
     {
@@ -120,6 +121,14 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         this.retryTransformOnDifferentMimeType = retryTransformOnDifferentMimeType;
     }
 
+    /**
+     * The HTTP connection pool shared by the T-Engine clients. If not set, the default shared pool is used.
+     */
+    public void setConnectionPool(RemoteTransformerConnectionPool connectionPool)
+    {
+        this.connectionPool = connectionPool;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception
     {
@@ -127,6 +136,10 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
         PropertyCheck.mandatory(this, "properties", properties);
         PropertyCheck.mandatory(this, "transformerDebug", transformerDebug);
         strictMimetypeExceptions = getStrictMimetypeExceptions();
+        if (connectionPool == null)
+        {
+            connectionPool = RemoteTransformerConnectionPool.getDefault();
+        }
         super.afterPropertiesSet();
     }
 
@@ -185,9 +198,12 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
             else if (!isPipeline && !isFailover)
             {
                 int startupRetryPeriodSeconds = getStartupRetryPeriodSeconds(name);
+                int maxConcurrentRequests = getIntProperty(name, ".maxConcurrentRequests", "0");
+                int failureThreshold = getIntProperty(name, ".failureThreshold", "0");
                 localTransform = new LocalTransformImpl(name, transformerDebug, mimetypeService,
                          strictMimeTypeCheck, strictMimetypeExceptions, retryTransformOnDifferentMimeType,
-                        transformsTransformOptions, this, baseUrl, startupRetryPeriodSeconds);
+                        transformsTransformOptions, this, baseUrl, startupRetryPeriodSeconds, connectionPool,
+                        maxConcurrentRequests, failureThreshold);
             }
             else if (isPipeline)
             {
@@ -349,19 +365,22 @@ public class LocalTransformServiceRegistry extends TransformServiceRegistryImpl
 
     private int getStartupRetryPeriodSeconds(String name)
     {
-        String startupRetryPeriodSecondsName = LOCAL_TRANSFORMER + name + ".startupRetryPeriodSeconds";
-        String property = getProperty(startupRetryPeriodSecondsName, "60");
-        int startupRetryPeriodSeconds;
+        return getIntProperty(name, ".startupRetryPeriodSeconds", "60");
+    }
+
+    private int getIntProperty(String name, String suffix, String defaultValue)
+    {
+        String propertyName = LOCAL_TRANSFORMER + name + suffix;
+        String property = getProperty(propertyName, defaultValue);
         try
         {
-            startupRetryPeriodSeconds = Integer.parseInt(property);
+            return Integer.parseInt(property);
         }
         catch (NumberFormatException e)
         {
-            throw new IllegalArgumentException("Local transformer property " + startupRetryPeriodSecondsName +
+            throw new IllegalArgumentException("Local transformer property " + propertyName +
                     " should be an integer");
         }
-        return startupRetryPeriodSeconds;
     }
 
     private Map<String, Set<String>> getStrictMimetypeExceptions()
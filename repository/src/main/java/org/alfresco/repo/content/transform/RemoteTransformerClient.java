@@ -25,7 +25,9 @@
  */
 package org.alfresco.repo.content.transform;
 
+import io.micrometer.core.instrument.Timer;
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.util.Pair;
@@ -38,41 +40,66 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.StringJoiner;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Client class that transfers content (from a ContentReader) to a remote transformation agent together with
  * request parameters that will be used to transform the content. The transformed content is then returned and
  * saved in a ContentWriter. In the event of an error an Exception is thrown.
  *
+ * Connections come from a {@link RemoteTransformerConnectionPool} that is normally shared by all clients. The number
+ * of concurrent requests to a transformer may be limited and a run of failed requests may be used to mark it as
+ * unavailable until its next successful availability check.
+ *
  * @since 6.0
  */
 public class RemoteTransformerClient
 {
     private final String name;
     private final String baseUrl;
+    private final RemoteTransformerConnectionPool connectionPool;
 
     // The length of time to wait after a connection problem before checking availability again.
     private long startupRetryPeriod = 15000;
 
     // When to check availability.
-    private long checkAvailabilityAfter = 0L;
+    private volatile long checkAvailabilityAfter = 0L;
 
     // The initial value indicates we have not had a success yet.
     // Only changed once on success. This is stored so it can always be returned.
-    private Pair<Boolean, String> checkResult = new Pair<>(null, null);
+    private volatile Pair<Boolean, String> checkResult = new Pair<>(null, null);
+
+    // Limits the number of requests in progress. null if only limited by the connection pool.
+    private Semaphore concurrentRequests;
+
+    // The number of consecutive failed requests after which the transformer is treated as unavailable. 0 disables.
+    private int failureThreshold = 0;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private Timer successTimer;
+    private Timer failureTimer;
 
     public RemoteTransformerClient(String name, String baseUrl)
+    {
+        this(name, baseUrl, RemoteTransformerConnectionPool.getDefault());
+    }
+
+    public RemoteTransformerClient(String name, String baseUrl, RemoteTransformerConnectionPool connectionPool)
     {
         this.name = name;
         this.baseUrl = baseUrl == null || baseUrl.trim().isEmpty() ? null : baseUrl.trim();
+        this.connectionPool = connectionPool;
     }
 
     public void setStartupRetryPeriodSeconds(int startupRetryPeriodSeconds)
@@ -80,6 +107,25 @@ public class RemoteTransformerClient
         startupRetryPeriod = startupRetryPeriodSeconds*1000;
     }
 
+    /**
+     * Limits the number of requests to this transformer that may be in progress at the same time. Zero or less
+     * means requests are only limited by the connection pool.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests)
+    {
+        concurrentRequests = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+    }
+
+    /**
+     * The number of consecutive failed transform requests after which the transformer is treated as unavailable,
+     * until the next successful availability check. Zero disables this check, leaving only connection failures
+     * to do so.
+     */
+    public void setFailureThreshold(int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+    }
+
     public String getBaseUrl()
     {
         return baseUrl;
@@ -104,7 +150,16 @@ public class RemoteTransformerClient
     {
         MultipartEntityBuilder builder = MultipartEntityBuilder.create();
         ContentType contentType = ContentType.create(sourceMimetype);
-        builder.addBinaryBody("file", reader.getContentInputStream(), contentType, "tmp."+sourceExtension);
+        File file = getFile(reader);
+        if (file != null)
+        {
+            // Send the file directly, so its length is known up front and it is not read through the reader's stream
+            builder.addBinaryBody("file", file, contentType, "tmp."+sourceExtension);
+        }
+        else
+        {
+            builder.addBinaryBody("file", reader.getContentInputStream(), contentType, "tmp."+sourceExtension);
+        }
         builder.addTextBody("targetExtension", targetExtension);
         sj.add("targetExtension" + '=' + targetExtension);
         for (int i=0; i< args.length; i+=2)
@@ -126,7 +181,104 @@ public class RemoteTransformerClient
         return builder.build();
     }
 
+    private File getFile(ContentReader reader)
+    {
+        if (reader instanceof FileContentReader)
+        {
+            File file = ((FileContentReader) reader).getFile();
+            if (file.isFile())
+            {
+                return file;
+            }
+        }
+        return null;
+    }
+
     void request(Log logger, String sourceExtension, String targetExtension, HttpEntity reqEntity, ContentWriter writer, String args)
+    {
+        acquireRequest();
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean poolTimedOut = false;
+        try
+        {
+            doRequest(logger, sourceExtension, targetExtension, reqEntity, writer, args);
+            success = true;
+        }
+        catch (UnsupportedTransformationException | UnimportantTransformException e)
+        {
+            // The transformer is working, it just did not like this request
+            success = true;
+            throw e;
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // Waiting too long for a pooled connection says nothing about the transformer itself
+            poolTimedOut = e.getCause() instanceof ConnectionPoolTimeoutException;
+            throw e;
+        }
+        finally
+        {
+            if (concurrentRequests != null)
+            {
+                concurrentRequests.release();
+            }
+            getRequestTimer(success).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!poolTimedOut)
+            {
+                requestCompleted(success);
+            }
+        }
+    }
+
+    private void acquireRequest()
+    {
+        if (concurrentRequests != null)
+        {
+            try
+            {
+                concurrentRequests.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException(name + " was interrupted waiting to make a request", e);
+            }
+        }
+    }
+
+    private Timer getRequestTimer(boolean success)
+    {
+        // Timers are registered lazily as the meter registry deduplicates them anyway
+        if (success)
+        {
+            if (successTimer == null)
+            {
+                successTimer = connectionPool.getRequestTimer(name, "success");
+            }
+            return successTimer;
+        }
+        if (failureTimer == null)
+        {
+            failureTimer = connectionPool.getRequestTimer(name, "failure");
+        }
+        return failureTimer;
+    }
+
+    private void requestCompleted(boolean success)
+    {
+        if (success)
+        {
+            consecutiveFailures.set(0);
+        }
+        else if (failureThreshold > 0 && consecutiveFailures.incrementAndGet() >= failureThreshold)
+        {
+            consecutiveFailures.set(0);
+            connectionFailed();
+        }
+    }
+
+    private void doRequest(Log logger, String sourceExtension, String targetExtension, HttpEntity reqEntity, ContentWriter writer, String args)
     {
         String url = baseUrl + (baseUrl.endsWith("/") ? "" : "/") + "transform";
         HttpPost httppost = new HttpPost(url);
@@ -139,77 +291,76 @@ public class RemoteTransformerClient
 
         try
         {
-            try (CloseableHttpClient httpclient = HttpClients.createDefault())
+            CloseableHttpClient httpclient = connectionPool.getHttpClient();
+            try (CloseableHttpResponse response = execute(httpclient, httppost))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httppost))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" returned no status " + url + ' ' + args);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
-                            {
-                                if (logger.isDebugEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    Header responseContentType = resEntity.getContentType();
-                                    logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
-                                            " returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding);
-                                }
-
-                                writer.putContent(resEntity.getContent());
-                                EntityUtils.consume(resEntity);
-                            }
-                            catch (IOException e)
+                            if (logger.isDebugEnabled())
                             {
-                                throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                Header responseContentType = resEntity.getContentType();
+                                logger.debug(name + ' ' + sourceExtension + ' ' + targetExtension +
+                                        " returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding);
                             }
+
+                            writer.putContent(resEntity.getContent());
+                            EntityUtils.consume(resEntity);
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            String msg = (name + " returned a " + statusCode + " status " + message +
-                                    ' ' + url + ' ' + args).trim();
-                            if (statusCode == 401)
-                            {
-                                throw new UnsupportedTransformationException(msg);
-                            }
-                            else if (statusCode == 402)
-                            {
-                                throw new UnimportantTransformException(msg);
-                            }
-                            else
-                            {
-                                throw new AlfrescoRuntimeException(msg);
-                            }
+                            throw new AlfrescoRuntimeException(name + " failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        String msg = (name + " returned a " + statusCode + " status " + message +
+                                ' ' + url + ' ' + args).trim();
+                        if (statusCode == 401)
+                        {
+                            throw new UnsupportedTransformationException(msg);
+                        }
+                        else if (statusCode == 402)
+                        {
+                            throw new UnimportantTransformException(msg);
+                        }
+                        else
+                        {
+                            throw new AlfrescoRuntimeException(msg);
+                        }
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    // In the case of transform requests, unlike version checks, it is only the failure to connect that
-                    // forces a wait before trying again.
-                    connectionFailed();
-                    throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " did not return an entity " + url);
                 }
             }
+            catch (ConnectionPoolTimeoutException e)
+            {
+                // The T-Engine has not failed, all the pooled connections to it are just in use.
+                throw new AlfrescoRuntimeException(name + " timed out waiting for a free connection", e);
+            }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " failed to create an HttpClient", e);
+                // In the case of transform requests, unlike version checks, it is only the failure to connect that
+                // forces a wait before trying again.
+                connectionFailed();
+                throw new AlfrescoRuntimeException(name + " failed to connect or to read the response", e);
             }
         }
         catch (AlfrescoRuntimeException e)
@@ -242,67 +393,61 @@ public class RemoteTransformerClient
 
         try
         {
-            try (CloseableHttpClient httpclient = HttpClients.createDefault())
+            CloseableHttpClient httpclient = connectionPool.getCheckHttpClient();
+            try (CloseableHttpResponse response = execute(httpclient, httpGet))
             {
-                try (CloseableHttpResponse response = execute(httpclient, httpGet))
+                StatusLine statusLine = response.getStatusLine();
+                if (statusLine == null)
                 {
-                    StatusLine statusLine = response.getStatusLine();
-                    if (statusLine == null)
-                    {
-                        throw new AlfrescoRuntimeException(name+" check returned no status " + url);
-                    }
-                    HttpEntity resEntity = response.getEntity();
-                    if (resEntity != null)
+                    throw new AlfrescoRuntimeException(name+" check returned no status " + url);
+                }
+                HttpEntity resEntity = response.getEntity();
+                if (resEntity != null)
+                {
+                    int statusCode = statusLine.getStatusCode();
+                    if (statusCode == 200)
                     {
-                        int statusCode = statusLine.getStatusCode();
-                        if (statusCode == 200)
+                        try
                         {
-                            try
-                            {
-                                String version = getContent(resEntity);
-
-                                if (logger.isTraceEnabled())
-                                {
-                                    long responseContentLength = resEntity.getContentLength();
-                                    Header responseContentType = resEntity.getContentType();
-                                    Header responseContentEncoding = resEntity.getContentEncoding();
-                                    logger.trace(name +
-                                            " check returned. length=" + responseContentLength +
-                                            " type=" + responseContentType +
-                                            " encoding=" + responseContentEncoding+
-                                            " content="+version);
-                                }
-
-                                EntityUtils.consume(resEntity);
-                                connectionSuccess();
-                                Pair<Boolean, String> success = new Pair<>(true, version);
-                                setCheckResult(success);
-                                return success;
-                            }
-                            catch (IOException e)
+                            String version = getContent(resEntity);
+
+                            if (logger.isTraceEnabled())
                             {
-                                throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
+                                long responseContentLength = resEntity.getContentLength();
+                                Header responseContentType = resEntity.getContentType();
+                                Header responseContentEncoding = resEntity.getContentEncoding();
+                                logger.trace(name +
+                                        " check returned. length=" + responseContentLength +
+                                        " type=" + responseContentType +
+                                        " encoding=" + responseContentEncoding+
+                                        " content="+version);
                             }
+
+                            EntityUtils.consume(resEntity);
+                            connectionSuccess();
+                            Pair<Boolean, String> success = new Pair<>(true, version);
+                            setCheckResult(success);
+                            return success;
                         }
-                        else
+                        catch (IOException e)
                         {
-                            String message = getErrorMessage(resEntity);
-                            throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
+                            throw new AlfrescoRuntimeException(name + " check failed to read the returned content", e);
                         }
                     }
                     else
                     {
-                        throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
+                        String message = getErrorMessage(resEntity);
+                        throw new AlfrescoRuntimeException(name + " check returned a " + statusCode + " status " + message + ' ' + url);
                     }
                 }
-                catch (IOException e)
+                else
                 {
-                    throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
+                    throw new AlfrescoRuntimeException(name + " check did not return an entity " + url);
                 }
             }
             catch (IOException e)
             {
-                throw new AlfrescoRuntimeException(name + " check failed to create an HttpClient", e);
+                throw new AlfrescoRuntimeException(name + " check failed to connect or to read the response", e);
             }
         }
         catch (AlfrescoRuntimeException e)
@@ -365,32 +510,34 @@ public class RemoteTransformerClient
         return new Pair<>(success, output);
     }
 
-    synchronized void connectionFailed()
+    // The availability state is volatile rather than guarded by a lock, as isAvailable() is called for every
+    // transform and only ever needs the latest value.
+    void connectionFailed()
     {
         checkAvailabilityAfter = System.currentTimeMillis() + startupRetryPeriod;
     }
 
-    synchronized void connectionSuccess()
+    void connectionSuccess()
     {
         checkAvailabilityAfter = Long.MAX_VALUE;
     }
 
-    private synchronized boolean isTimeToCheckAvailability()
+    private boolean isTimeToCheckAvailability()
     {
         return System.currentTimeMillis() > checkAvailabilityAfter;
     }
 
-    public synchronized boolean isAvailable()
+    public boolean isAvailable()
     {
         return checkAvailabilityAfter == Long.MAX_VALUE;
     }
 
-    private synchronized Pair<Boolean, String> getCheckResult()
+    private Pair<Boolean, String> getCheckResult()
     {
         return checkResult;
     }
 
-    private synchronized void setCheckResult(Pair<Boolean, String> checkResult)
+    private void setCheckResult(Pair<Boolean, String> checkResult)
     {
         this.checkResult = checkResult;
     }
@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, keep-alive HTTP connection pool shared by all the {@link RemoteTransformerClient}s talking to T-Engines,
+ * so that transform requests reuse connections rather than opening a new one for each request. It also provides the
+ * latency timers recorded by the clients. Availability checks use a separate small pool, so that they are not held up
+ * behind transform requests when the shared pool is exhausted.
+ *
+ * @since 7.1
+ */
+public class RemoteTransformerConnectionPool
+{
+    public static final String METRIC_REQUEST = "alfresco.transform.remote.request";
+
+    // Availability checks are made by one thread at a time per T-Engine, so need few connections.
+    private static final int CHECK_CONNECTIONS_PER_ROUTE = 2;
+
+    private static final Log logger = LogFactory.getLog(RemoteTransformerConnectionPool.class);
+
+    private int maxConnections = 100;
+    private int maxConnectionsPerRoute = 20;
+    private int connectTimeoutMs = 5000;
+    private int connectionRequestTimeoutMs = 30000;
+    private long keepAliveMs = 30000;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private CloseableHttpClient checkHttpClient;
+
+    /**
+     * @return a pool with default settings, shared by clients that are not given one, so that they do not each open
+     * their own connections and idle connection evictor thread. It lives as long as the JVM and must not be shut down.
+     */
+    public static RemoteTransformerConnectionPool getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder
+    {
+        private static final RemoteTransformerConnectionPool INSTANCE = new RemoteTransformerConnectionPool();
+    }
+
+    /**
+     * The maximum number of open connections to all T-Engines.
+     */
+    public void setMaxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * The maximum number of open connections to a single T-Engine.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute)
+    {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs)
+    {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * How long a request waits for a free connection when the pool is exhausted. Zero waits indefinitely.
+     */
+    public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs)
+    {
+        this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+    }
+
+    /**
+     * How long an idle connection is kept open, unless the T-Engine asks for less.
+     */
+    public void setKeepAliveMs(long keepAliveMs)
+    {
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return the shared client, created on first use. It must not be closed by callers.
+     */
+    public synchronized CloseableHttpClient getHttpClient()
+    {
+        if (httpClient == null)
+        {
+            connectionManager = new PoolingHttpClientConnectionManager(keepAliveMs, TimeUnit.MILLISECONDS);
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(connectTimeoutMs)
+                    .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                    .build();
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(getKeepAliveStrategy())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                    .build();
+
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Created T-Engine connection pool maxConnections=" + maxConnections +
+                        " maxConnectionsPerRoute=" + maxConnectionsPerRoute + " keepAliveMs=" + keepAliveMs);
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * @return the client used for availability checks, created on first use. Its connections are not counted against
+     * the limits of the shared pool. It must not be closed by callers.
+     */
+    public synchronized CloseableHttpClient getCheckHttpClient()
+    {
+        if (checkHttpClient == null)
+        {
+            PoolingHttpClientConnectionManager checkConnectionManager =
+                    new PoolingHttpClientConnectionManager(keepAliveMs, TimeUnit.MILLISECONDS);
+            checkConnectionManager.setMaxTotal(maxConnections);
+            checkConnectionManager.setDefaultMaxPerRoute(CHECK_CONNECTIONS_PER_ROUTE);
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(connectTimeoutMs)
+                    .setConnectionRequestTimeout(connectTimeoutMs)
+                    .setSocketTimeout(connectTimeoutMs)
+                    .build();
+
+            checkHttpClient = HttpClients.custom()
+                    .setConnectionManager(checkConnectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(getKeepAliveStrategy())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return checkHttpClient;
+    }
+
+    private ConnectionKeepAliveStrategy getKeepAliveStrategy()
+    {
+        return (response, context) ->
+        {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, keepAliveMs) : keepAliveMs;
+        };
+    }
+
+    /**
+     * @return the current leased, available and pending connection counts, or null if the pool has not been used.
+     */
+    public synchronized PoolStats getStats()
+    {
+        return connectionManager == null ? null : connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return the timer used to record the latency of requests to the named transformer with the given outcome.
+     */
+    public Timer getRequestTimer(String transformerName, String outcome)
+    {
+        return Timer.builder(METRIC_REQUEST)
+                .description("Time taken by T-Engine transform requests")
+                .tag("transformer", transformerName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    public synchronized void shutdown()
+    {
+        close(httpClient);
+        close(checkHttpClient);
+        httpClient = null;
+        checkHttpClient = null;
+        connectionManager = null;
+    }
+
+    private void close(CloseableHttpClient client)
+    {
+        if (client != null)
+        {
+            try
+            {
+                client.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Failed to close the T-Engine connection pool", e);
+            }
+        }
+    }
+}
@@ -284,21 +284,9 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
 
     public Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
     {
-        final Long usernameId;
-        if (username != null)
-        {
-            usernameId = propertyValueDAO.getOrCreatePropertyValue(username).getFirst();
-        }
-        else
-        {
-            usernameId = null;
-        }
+        Long usernameId = getUsernameId(username);
         // Now persist the data values
-        Long valuesId = null;
-        if (values != null && values.size() > 0)
-        {
-            valuesId = propertyValueDAO.createProperty((Serializable)values);
-        }
+        Long valuesId = createValues(values);
 
         // Create the audit entry
         AuditEntryEntity entity = createAuditEntry(applicationId, time, usernameId, valuesId);
@@ -316,6 +304,45 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
         return entity.getId();
     }
     
+    public void createAuditEntries(List<AuditEntryInfo> entries)
+    {
+        List<AuditEntryEntity> batch = new ArrayList<AuditEntryEntity>(entries.size() > 512 ? 512 : entries.size());
+        for (AuditEntryInfo entry : entries)
+        {
+            AuditEntryEntity entity = new AuditEntryEntity();
+            entity.setAuditApplicationId(entry.getApplicationId());
+            entity.setAuditTime(entry.getTime());
+            entity.setAuditUserId(getUsernameId(entry.getUsername()));
+            entity.setAuditValuesId(createValues(entry.getValues()));
+            batch.add(entity);
+            if (batch.size() >= 512)
+            {
+                createAuditEntriesImpl(batch);
+                batch.clear();
+            }
+        }
+        // Process remaining
+        if (batch.size() > 0)
+        {
+            createAuditEntriesImpl(batch);
+        }
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Created " + entries.size() + " new audit entries");
+        }
+    }
+    
+    private Long getUsernameId(String username)
+    {
+        return (username == null) ? null : propertyValueDAO.getOrCreatePropertyValue(username).getFirst();
+    }
+    
+    private Long createValues(Map<String, Serializable> values)
+    {
+        return (values == null || values.isEmpty()) ? null : propertyValueDAO.createProperty((Serializable) values);
+    }
+    
     public int deleteAuditEntries(List<Long> auditEntryIds)
     {
         // Ensure that we don't have duplicates
@@ -348,6 +375,11 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
     }
 
     protected abstract AuditEntryEntity createAuditEntry(Long applicationId, long time, Long usernameId, Long valuesId);
+    /**
+     * Insert the given entries, ideally with a single multi-row statement
+     * @since 7.1
+     */
+    protected abstract void createAuditEntriesImpl(List<AuditEntryEntity> entities);
     protected abstract int deleteAuditEntriesImpl(List<Long> auditEntryIds);
     
     /*
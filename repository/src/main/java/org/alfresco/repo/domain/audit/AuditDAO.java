@@ -111,6 +111,66 @@ public interface AuditDAO
         }
     }
     
+    /**
+     * An audit entry that has not been persisted yet.  It is serializable so that it can be held
+     * on disk until it is written.
+     * 
+     * @since 7.1
+     */
+    public static class AuditEntryInfo implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        
+        /**
+         * @param applicationId     an existing audit application ID
+         * @param time              the time (ms since epoch) to log the entry against
+         * @param username          the authenticated user (<tt>null</tt> if not present)
+         * @param values            the values to record
+         */
+        public AuditEntryInfo(Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+        }
+        
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append("AuditEntryInfo ")
+              .append("[ applicationId=").append(applicationId)
+              .append(", time=").append(time)
+              .append(", username=").append(username)
+              .append(", values=").append(values)
+              .append("]");
+            return sb.toString();
+        }
+        
+        public Long getApplicationId()
+        {
+            return applicationId;
+        }
+        public long getTime()
+        {
+            return time;
+        }
+        public String getUsername()
+        {
+            return username;
+        }
+        public Map<String, Serializable> getValues()
+        {
+            return values;
+        }
+    }
+    
     /**
      * Creates a new audit model entry or finds an existing one
      * 
@@ -211,6 +271,16 @@ public interface AuditDAO
      */
     Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values);
     
+    /**
+     * Create several audit entries, inserting the entry rows in as few statements as possible.
+     * The entries are inserted in the order given but their IDs are not returned.
+     * 
+     * @param entries           the entries to create
+     * 
+     * @since 7.1
+     */
+    void createAuditEntries(List<AuditEntryInfo> entries);
+    
     /**
      * Find audit entries using the given parameters, any of which may be null
      * 
@@ -64,6 +64,7 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
     private static final String DELETE_ENTRIES = "alfresco.audit.delete_AuditEntries";
     private static final String DELETE_ENTRIES_BY_ID = "alfresco.audit.delete_AuditEntriesById";
     private static final String INSERT_ENTRY = "alfresco.audit.insert.insert_AuditEntry";
+    private static final String INSERT_ENTRIES = "alfresco.audit.insert.insert_AuditEntries";
     private static final String SELECT_MINMAX_ENTRY_FOR_APP = "alfresco.audit.select_MinMaxAuditEntryId";
     private static final String SELECT_COUNT_ENTRIES_FOR_APP = "alfresco.audit.select_CountAuditEntryId";
     
@@ -213,6 +214,12 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
         return entity;
     }
 
+    @Override
+    protected void createAuditEntriesImpl(List<AuditEntryEntity> entities)
+    {
+        template.insert(INSERT_ENTRIES, entities);
+    }
+
     public HashMap<String, Long> getAuditMinMaxByApp(long appId, List<String> extremes)
     {
         // Build parameters to be used in the query. Filter the duplicates when inserting into map
@@ -122,6 +122,23 @@ public interface ContentDataDAO
             Long maxOrphanTimeExclusive,
             int maxResults);
     
+    /**
+     * Enumerate, in order of ID, the available content URLs that were orphaned on or before the given time and
+     * have an ID greater than the one given.  Used to page through orphans without rescanning those already seen.
+     * 
+     * @param contentUrlHandler         the callback object to process the rows
+     * @param maxOrphanTimeExclusive    the maximum orphan time (exclusive)
+     * @param minIdExclusive            the ID after which to start (exclusive)
+     * @param maxResults                the maximum number of results (1 or greater)
+     * 
+     * @since 7.1
+     */
+    void getContentUrlsOrphaned(
+            ContentUrlHandler contentUrlHandler,
+            Long maxOrphanTimeExclusive,
+            Long minIdExclusive,
+            int maxResults);
+    
     /**
      * Enumerate all available content URLs that were orphaned and cleanup for these urls failed
      * 
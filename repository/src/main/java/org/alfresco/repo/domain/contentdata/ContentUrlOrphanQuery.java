@@ -33,7 +33,8 @@ package org.alfresco.repo.domain.contentdata;
  */
 public class ContentUrlOrphanQuery
 {
-    private Long maxOrphanTimeExclusive;
+    private Long maxOrphanTimeExclusive;
+    private Long minIdExclusive;
     private Long maxRecords;
     
     @Override
@@ -42,6 +43,7 @@ public class ContentUrlOrphanQuery
         StringBuilder sb = new StringBuilder(512);
         sb.append("ContentUrlOrphanQuery")
           .append("[ maxOrphanTimeExclusive=").append(maxOrphanTimeExclusive)
+          .append(", minIdExclusive=").append(minIdExclusive)
           .append(", maxRecords=").append(maxRecords)
           .append("]");
         return sb.toString();
@@ -57,6 +59,16 @@ public class ContentUrlOrphanQuery
         this.maxOrphanTimeExclusive = maxOrphanTimeExclusive;
     }
 
+    public Long getMinIdExclusive()
+    {
+        return minIdExclusive;
+    }
+
+    public void setMinIdExclusive(Long minIdExclusive)
+    {
+        this.minIdExclusive = minIdExclusive;
+    }
+
     public Long getMaxRecords()
     {
         return maxRecords;
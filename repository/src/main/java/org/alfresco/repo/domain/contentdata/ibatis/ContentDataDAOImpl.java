@@ -150,11 +150,22 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
             final ContentUrlHandler contentUrlHandler,
             final Long maxOrphanTimeExclusive,
             final int maxResults)
+    {
+        getContentUrlsOrphaned(contentUrlHandler, maxOrphanTimeExclusive, null, maxResults);
+    }
+    
+    @Override
+    public void getContentUrlsOrphaned(
+            final ContentUrlHandler contentUrlHandler,
+            final Long maxOrphanTimeExclusive,
+            final Long minIdExclusive,
+            final int maxResults)
     {
         ParameterCheck.mandatory("maxOrphanTimeExclusive", maxOrphanTimeExclusive);
         
         ContentUrlOrphanQuery query = new ContentUrlOrphanQuery();
         query.setMaxOrphanTimeExclusive(maxOrphanTimeExclusive);
+        query.setMinIdExclusive(minIdExclusive);
         query.setMaxRecords((long) maxResults);
         List<ContentUrlEntity> results = template.selectList(SELECT_CONTENT_URLS_ORPHANED, 
                                                                                       query, 
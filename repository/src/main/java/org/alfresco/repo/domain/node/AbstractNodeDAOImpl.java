@@ -43,8 +43,6 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.Stack;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.ibatis.BatchingDAO;
@@ -392,6 +390,18 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         this.parentAssocsCacheLimitFactor = parentAssocsCacheLimitFactor;
     }
 
+    /**
+     * Set the implementation used to cache parent associations.  If not set, a {@link LinkedParentAssocsCache}
+     * is constructed using the {@link #setParentAssocsCacheSize(int) size} and
+     * {@link #setParentAssocsCacheLimitFactor(int) limit factor} given.
+     *
+     * @param parentAssocsCache     the cache implementation (must be thread-safe and non-clustered)
+     */
+    public void setParentAssocsCache(ParentAssocsCache parentAssocsCache)
+    {
+        this.parentAssocsCache = parentAssocsCache;
+    }
+
     /**
      * Set the cache that maintains lookups by child <b>cm:name</b>
      * 
@@ -418,7 +428,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         PropertyCheck.mandatory(this, "usageDAO", usageDAO);
 
         this.nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
-        this.parentAssocsCache = new ParentAssocsCache(this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor);
+        if (this.parentAssocsCache == null)
+        {
+            this.parentAssocsCache = new LinkedParentAssocsCache(this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor);
+        }
     }
     
     /*
@@ -870,6 +883,42 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             }
         }
 
+        /**
+         * Loads the nodes in batches, using <code>IN</code> clauses
+         */
+        @Override
+        public List<Pair<Long, Node>> findByKeys(List<Long> nodeIds)
+        {
+            List<Pair<Long, Node>> nodePairs = new ArrayList<Pair<Long, Node>>(nodeIds.size());
+            int batchSize = 256;
+            SortedSet<Long> batch = new TreeSet<Long>();
+            for (Long nodeId : nodeIds)
+            {
+                batch.add(nodeId);
+                if (batch.size() >= batchSize)
+                {
+                    addNodePairs(selectNodesByIds(batch), nodePairs);
+                    batch.clear();
+                }
+            }
+            // Load any remaining nodes
+            if (batch.size() > 0)
+            {
+                addNodePairs(selectNodesByIds(batch), nodePairs);
+            }
+            return nodePairs;
+        }
+
+        private void addNodePairs(List<Node> nodes, List<Pair<Long, Node>> nodePairs)
+        {
+            for (Node node : nodes)
+            {
+                // Lock it to prevent 'accidental' modification
+                node.lock();
+                nodePairs.add(new Pair<Long, Node>(node.getId(), node));
+            }
+        }
+
         /**
          * @return                  Returns the Node's NodeRef
          */
@@ -1953,6 +2002,29 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         invalidateNodeChildrenCaches(primaryParentNodeId, true, false);
     }
     
+    @Override
+    public int setNodesSharedAclId(
+            List<Long> nodeIds,
+            Long optionalOldSharedAclIdInAdditionToNull,
+            Long newSharedAclId)
+    {
+        if (nodeIds.isEmpty())
+        {
+            return 0;
+        }
+        Long txnId = getCurrentTransaction().getId();
+        int count = updateNodesSharedAclId(
+                txnId,
+                nodeIds,
+                optionalOldSharedAclIdInAdditionToNull,
+                newSharedAclId);
+        for (Long nodeId : nodeIds)
+        {
+            invalidateNodeCaches(nodeId);
+        }
+        return count;
+    }
+    
     @Override
     public void deleteNode(Long nodeId)
     {
@@ -3380,6 +3452,27 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return selectPrimaryChildAcls(nodeId);
     }
     
+    @Override
+    public List<NodeIdAndAclId> getPrimaryChildrenAcls(List<Long> parentNodeIds, Long minChildNodeId, int maxResults)
+    {
+        if (parentNodeIds.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        return selectPrimaryChildAcls(parentNodeIds, minChildNodeId, maxResults);
+    }
+    
+    @Override
+    public Set<Long> getNodeIdsWithAspect(List<Long> nodeIds, QName aspectQName)
+    {
+        Pair<Long, QName> aspectQNamePair = qnameDAO.getQName(aspectQName);
+        if (nodeIds.isEmpty() || aspectQNamePair == null)
+        {
+            return Collections.emptySet();
+        }
+        return new HashSet<Long>(selectNodeIdsWithAspect(nodeIds, aspectQNamePair.getFirst()));
+    }
+    
     @Override
     public Pair<Long, ChildAssociationRef> getChildAssoc(
             Long parentNodeId,
@@ -3441,7 +3534,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     {
         private final ChildAssocRefQueryCallback callback;
         private final boolean preload;
-        private final List<NodeRef> nodeRefs;
+        private final List<Long> nodeIds;
         /**
          * @param callback      the callback to batch around
          */
@@ -3451,11 +3544,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             this.preload = callback.preLoadNodes();
             if (preload)
             {
-                nodeRefs = new LinkedList<NodeRef>();           // No memory required
+                nodeIds = new LinkedList<Long>();               // No memory required
             }
             else
             {
-                nodeRefs = null;                                // No list needed
+                nodeIds = null;                                 // No list needed
             }
         }
         /**
@@ -3483,17 +3576,17 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             if (preload)
             {
-                nodeRefs.add(childNodePair.getSecond());
+                nodeIds.add(childNodePair.getFirst());
             }
             return callback.handle(childAssocPair, parentNodePair, childNodePair);
         }
         public void done()
         {
             // Finish the batch
-            if (preload && nodeRefs.size() > 0)
+            if (preload && nodeIds.size() > 0)
             {
-                cacheNodes(nodeRefs);
-                nodeRefs.clear();
+                cacheNodesById(nodeIds);
+                nodeIds.clear();
             }
             // Done
             callback.done();
@@ -4183,159 +4276,6 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         // done
     }
 
-    /**
-     * A Map-like class for storing ParentAssocsInfos. It prunes its oldest ParentAssocsInfo entries not only when a
-     * capacity is reached, but also when a total number of cached parents is reached, as this is what dictates the
-     * overall memory usage.
-     */
-    private static class ParentAssocsCache
-    {
-        private final ReadWriteLock lock = new ReentrantReadWriteLock();
-        private final int size;
-        private final int maxParentCount;
-        private final Map<Pair <Long, String>, ParentAssocsInfo> cache;
-        private final Map<Pair <Long, String>, Pair <Long, String>> nextKeys;
-        private final Map<Pair <Long, String>, Pair <Long, String>> previousKeys;
-        private Pair <Long, String> firstKey;
-        private Pair <Long, String> lastKey;
-        private int parentCount;
-        
-        /**
-         * @param size int
-         * @param limitFactor int
-         */
-        public ParentAssocsCache(int size, int limitFactor)
-        {
-            this.size = size;
-            this.maxParentCount = size * limitFactor;
-            final int mapSize = size * 2;
-            this.cache = new HashMap<Pair <Long, String>, ParentAssocsInfo>(mapSize);
-            this.nextKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
-            this.previousKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
-        }
-
-        private ParentAssocsInfo get(Pair <Long, String> cacheKey)
-        {
-            lock.readLock().lock();
-            try
-            {
-                return cache.get(cacheKey);
-            }
-            finally
-            {
-                lock.readLock().unlock();
-            }
-        }
-        
-        private void put(Pair <Long, String> cacheKey, ParentAssocsInfo parentAssocs)
-        {
-            lock.writeLock().lock();
-            try
-            {
-                // If an entry already exists, remove it and do the necessary housekeeping
-                if (cache.containsKey(cacheKey))
-                {
-                    remove(cacheKey);
-                }
-
-                // Add the value and prepend the key
-                cache.put(cacheKey, parentAssocs);
-                if (firstKey == null)
-                {
-                    lastKey = cacheKey;
-                }
-                else
-                {
-                    nextKeys.put(cacheKey, firstKey);
-                    previousKeys.put(firstKey, cacheKey);
-                }
-                firstKey = cacheKey;
-                parentCount += parentAssocs.getParentAssocs().size();
-                
-                // Now prune the oldest entries whilst we have more cache entries or cached parents than desired
-                int currentSize = cache.size();
-                while (currentSize > size || parentCount > maxParentCount)
-                {
-                    remove(lastKey);
-                    currentSize--;
-                }
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
-        }
-
-        private ParentAssocsInfo remove(Pair <Long, String> cacheKey)
-        {
-            lock.writeLock().lock();
-            try
-            {
-                // Remove from the map
-                ParentAssocsInfo oldParentAssocs = cache.remove(cacheKey);
-
-                // If the object didn't exist, we are done
-                if (oldParentAssocs == null)
-                {
-                    return null;
-                }
-
-                // Re-link the list
-                Pair <Long, String> previousCacheKey = previousKeys.remove(cacheKey);
-                Pair <Long, String> nextCacheKey = nextKeys.remove(cacheKey);
-                if (nextCacheKey == null)
-                {
-                    if (previousCacheKey == null)
-                    {
-                        firstKey = lastKey = null;
-                    }
-                    else
-                    {
-                        lastKey = previousCacheKey;
-                        nextKeys.remove(previousCacheKey);
-                    }
-                }
-                else
-                {
-                    if (previousCacheKey == null)
-                    {
-                        firstKey = nextCacheKey;
-                        previousKeys.remove(nextCacheKey);
-                    }
-                    else
-                    {
-                        nextKeys.put(previousCacheKey, nextCacheKey);
-                        previousKeys.put(nextCacheKey, previousCacheKey);
-                    }
-                }
-                // Update the parent count
-                parentCount -= oldParentAssocs.getParentAssocs().size();
-                return oldParentAssocs;
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
-        }
-
-        private void clear()
-        {
-            lock.writeLock().lock();
-            try
-            {
-                cache.clear();
-                nextKeys.clear();
-                previousKeys.clear();
-                firstKey = lastKey = null;
-                parentCount = 0;
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
-        }
-    }
-
     /**
      * @return Returns a node's parent associations
      */
@@ -4531,14 +4471,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
          * 
          * There is an obvious cost associated with querying the database to pull back nodes,
          * and there is additional cost associated with putting the resultant entries into the
-         * caches.  It is NO MORE expensive to check the cache than it is to put an entry into it
-         * - and probably cheaper considering cache replication - so we start checking nodes to see
-         * if they have entries before passing them over for batch loading.
-         * 
-         * However, when running against a cold cache or doing a first-time query against some
-         * part of the repo, we will be checking for entries in the cache and consistently getting
-         * no results.  To avoid unnecessary checking when the cache is PROBABLY cold, we
-         * examine the ratio of hits/misses at regular intervals.
+         * caches.  The nodes cache hands back the entries that it already has and loads all
+         * the misses with batched IN queries, so there is no need to guess if the cache is cold.
+         * The properties and aspects are then only loaded for the nodes that don't have them.
          */
         
         boolean disableSharedCacheReadForTransaction = false;
@@ -4547,51 +4482,33 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             disableSharedCacheReadForTransaction = nodesTransactionalCache.getDisableSharedCacheReadForTransaction();
         }
         
-        if ((disableSharedCacheReadForTransaction == false) && nodeIds.size() < 10)
+        if ((disableSharedCacheReadForTransaction == false) && nodeIds.size() < cachingThreshold)
         {
             // We only cache where the number of results is potentially
             // a problem for the N+1 loading that might result.
             return;
         }
         
-        int foundCacheEntryCount = 0;
-        int missingCacheEntryCount = 0;
-        boolean forceBatch = false;
-        
-        List<Long> batchLoadNodeIds = new ArrayList<Long>(nodeIds.size());
-        for (Long nodeId : nodeIds)
+        List<Pair<Long, Node>> nodePairs = nodesCache.getByKeys(nodeIds);
+        List<Node> nodes = new ArrayList<Node>(nodePairs.size());
+        for (Pair<Long, Node> nodePair : nodePairs)
         {
-            if (!forceBatch)
-            {
-                // Is this node in the cache?
-                if (nodesCache.getValue(nodeId) != null)
-                {
-                    foundCacheEntryCount++;                             // Don't add it to the batch
-                    continue;
-                }
-                else
-                {
-                    missingCacheEntryCount++;                           // Fall through and add it to the batch
-                }
-                if (foundCacheEntryCount + missingCacheEntryCount % 100 == 0)
-                {
-                    // We force the batch if the number of hits drops below the number of misses
-                    forceBatch = foundCacheEntryCount < missingCacheEntryCount;
-                }
-            }
-            
-            batchLoadNodeIds.add(nodeId);
+            nodes.add(nodePair.getSecond());
         }
-        
-        int size = batchLoadNodeIds.size();
-        cacheNodesBatch(batchLoadNodeIds);
+        cacheNodeAspectsAndProperties(nodes);
 
         if (logger.isDebugEnabled())
         {
-            logger.debug("Pre-loaded " + size + " nodes.");
+            logger.debug("Pre-loaded " + nodes.size() + " nodes.");
         }
     }
 
+    @Override
+    public List<Long> getCachedNodeIds(int maxNodes)
+    {
+        return nodesCache.getCachedKeys(maxNodes);
+    }
+
 	/**
      * {@inheritDoc}
      * <p/>
@@ -4701,35 +4618,25 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
     
-    private void cacheNodesBatch(List<Long> nodeIds)
+    /**
+     * Bulk-fetch the nodes for a given store.  All nodes passed in are fetched.
+     */
+    private void cacheNodesNoBatch(List<Node> nodes)
     {
-        int batchSize = 256;
-        SortedSet<Long> batch = new TreeSet<Long>();
-        for (Long nodeId : nodeIds)
-        {
-            batch.add(nodeId);
-            if (batch.size() >= batchSize)
-            {
-                // Preload
-                List<Node> nodes = selectNodesByIds(batch);
-                cacheNodesNoBatch(nodes);
-                batch.clear();
-            }
-        }
-        // Load any remaining nodes
-        if (batch.size() > 0)
+        // Get the nodes
+        for (Node node : nodes)
         {
-            List<Node> nodes = selectNodesByIds(batch);
-            cacheNodesNoBatch(nodes);
+            node.lock();                            // Prevent unexpected edits of values going into the cache
+            nodesCache.setValue(node.getId(), node);
         }
+        cacheNodeAspectsAndProperties(nodes);
     }
     
     /**
-     * Bulk-fetch the nodes for a given store.  All nodes passed in are fetched.
+     * Bulk-fetch the aspects and properties of the given nodes where these are not already cached.
      */
-    private void cacheNodesNoBatch(List<Node> nodes)
+    private void cacheNodeAspectsAndProperties(List<Node> nodes)
     {
-        // Get the nodes
         SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
         SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
         Map<Long, NodeVersionKey> nodeVersionKeysFromCache = new HashMap<Long, NodeVersionKey>(nodes.size()*2);    // Keep for quick lookup
@@ -4737,8 +4644,6 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             Long nodeId = node.getId();
             NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
-            node.lock();                            // Prevent unexpected edits of values going into the cache
-            nodesCache.setValue(nodeId, node);
             if (propertiesCache.getValue(nodeVersionKey) == null)
             {
                 propertiesNodeIds.add(nodeId);
@@ -4936,6 +4841,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Long primaryParentNodeId,
             Long optionalOldSharedAlcIdInAdditionToNull,
             Long newSharedAlcId);
+    protected abstract int updateNodesSharedAclId(
+            Long txnId,
+            List<Long> nodeIds,
+            Long optionalOldSharedAclIdInAdditionToNull,
+            Long newSharedAclId);
     protected abstract int deleteNodeById(Long nodeId);
     protected abstract int deleteNodesByCommitTime(long fromTxnCommitTimeMs, long toTxnCommitTimeMs);
     protected abstract NodeEntity selectNodeById(Long id);
@@ -4986,6 +4896,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Long minAssocIdInclusive,
             int maxResults);
     protected abstract List<NodeIdAndAclId> selectPrimaryChildAcls(Long nodeId);
+    protected abstract List<NodeIdAndAclId> selectPrimaryChildAcls(List<Long> parentNodeIds, Long minChildNodeId, int maxResults);
+    protected abstract List<Long> selectNodeIdsWithAspect(List<Long> nodeIds, Long aspectQNameId);
     protected abstract List<ChildAssocEntity> selectChildAssoc(
             Long parentNodeId,
             Long childNodeId,
@@ -264,6 +264,22 @@ public interface NodeDAO extends NodeBulkLoader
             Long optionalOldSharedAlcIdInAdditionToNull,
             Long newSharedAclId);
     
+    /**
+     * Set the shared ACL of many nodes in one statement.  Only nodes without an ACL or with
+     * the given old shared ACL are changed.
+     * 
+     * @param nodeIds                                   the nodes to update
+     * @param optionalOldSharedAclIdInAdditionToNull    the shared ACL to replace (may be <tt>null</tt>)
+     * @param newSharedAclId                            the new shared ACL
+     * @return                                          the number of nodes updated
+     * 
+     * @since 7.1
+     */
+    public int setNodesSharedAclId(
+            List<Long> nodeIds,
+            Long optionalOldSharedAclIdInAdditionToNull,
+            Long newSharedAclId);
+    
     /**
      * An object that contains data giving a 'view' of the node to be deleted.
      * It is used for ensuring that node cleanup is only done for node-related
@@ -772,6 +788,29 @@ public interface NodeDAO extends NodeBulkLoader
      */
     public List<NodeIdAndAclId> getPrimaryChildrenAcls(Long nodeId);
     
+    /**
+     * Fetch a page of <i>primary</i> child node IDs and corresponding ACL IDs of several parents, in order of child node ID. 
+     * 
+     * @param parentNodeIds         the parent node IDs
+     * @param minChildNodeId        only fetch children with a greater node ID (<tt>null</tt> to start from the first)
+     * @param maxResults            the maximum number of children to fetch
+     * @return                      Returns a list of Node ID - ACL ID pairs
+     * 
+     * @since 7.1
+     */
+    public List<NodeIdAndAclId> getPrimaryChildrenAcls(List<Long> parentNodeIds, Long minChildNodeId, int maxResults);
+    
+    /**
+     * Find which of the given nodes have an aspect, without loading the nodes.
+     * 
+     * @param nodeIds               the node IDs to check
+     * @param aspectQName           the aspect to look for
+     * @return                      Returns the IDs of the nodes that have the aspect
+     * 
+     * @since 7.1
+     */
+    public Set<Long> getNodeIdsWithAspect(List<Long> nodeIds, QName aspectQName);
+    
     /**
      * Build the paths for a node.
      * 
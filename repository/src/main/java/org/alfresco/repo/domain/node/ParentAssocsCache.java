@@ -0,0 +1,66 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import org.alfresco.util.Pair;
+
+/**
+ * A bounded, non-clustered cache of {@link ParentAssocsInfo} instances keyed by
+ * <b>(node ID, change transaction ID)</b>.  Implementations must be thread-safe and
+ * should prune entries not only when a capacity is reached, but also when a total
+ * number of cached parents is reached, as this is what dictates the overall memory usage.
+ * 
+ * @see LinkedParentAssocsCache
+ * @see SegmentedParentAssocsCache
+ * @since 7.1
+ */
+public interface ParentAssocsCache
+{
+    /**
+     * @param cacheKey          the (node ID, change transaction ID) pair
+     * @return                  the cached parent associations or <tt>null</tt> if not cached
+     */
+    ParentAssocsInfo get(Pair<Long, String> cacheKey);
+    
+    /**
+     * Add or replace a cache entry, pruning older entries as required
+     * 
+     * @param cacheKey          the (node ID, change transaction ID) pair
+     * @param parentAssocs      the parent associations to cache
+     */
+    void put(Pair<Long, String> cacheKey, ParentAssocsInfo parentAssocs);
+    
+    /**
+     * @param cacheKey          the (node ID, change transaction ID) pair
+     * @return                  the previously-cached parent associations or <tt>null</tt>
+     */
+    ParentAssocsInfo remove(Pair<Long, String> cacheKey);
+    
+    /**
+     * Remove all entries from the cache
+     */
+    void clear();
+}
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.domain.node;
 
+import java.util.List;
+
 /**
  * Carry bulk acl update info.
  * 
@@ -36,6 +38,9 @@ public class PrimaryChildrenAclUpdateEntity
 {
     Long txnId;
     Long primaryParentNodeId; 
+    List<Long> primaryParentNodeIds;
+    Long minChildNodeId;
+    List<Long> nodeIds;
     Long optionalOldSharedAclIdInAdditionToNull;
     Long newSharedAclId;
     
@@ -63,6 +68,36 @@ public class PrimaryChildrenAclUpdateEntity
         this.primaryParentNodeId = primaryParentNodeId;
     }
 
+    public List<Long> getPrimaryParentNodeIds()
+    {
+        return primaryParentNodeIds;
+    }
+
+    public void setPrimaryParentNodeIds(List<Long> primaryParentNodeIds)
+    {
+        this.primaryParentNodeIds = primaryParentNodeIds;
+    }
+
+    public Long getMinChildNodeId()
+    {
+        return minChildNodeId;
+    }
+
+    public void setMinChildNodeId(Long minChildNodeId)
+    {
+        this.minChildNodeId = minChildNodeId;
+    }
+
+    public List<Long> getNodeIds()
+    {
+        return nodeIds;
+    }
+
+    public void setNodeIds(List<Long> nodeIds)
+    {
+        this.nodeIds = nodeIds;
+    }
+
     public Long getOptionalOldSharedAclIdInAdditionToNull()
     {
         return optionalOldSharedAclIdInAdditionToNull;
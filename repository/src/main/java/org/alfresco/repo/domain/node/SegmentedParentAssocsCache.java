@@ -0,0 +1,421 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.repo.cache.CacheStatistics;
+import org.alfresco.repo.cache.TransactionStats;
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.util.Pair;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A {@link ParentAssocsCache} that spreads its entries over a number of independently-locked segments.
+ * <p>
+ * Reads never block: each segment holds its entries in a {@link ConcurrentHashMap}.  Writes only lock the
+ * segment that the key hashes to, so concurrent <tt>put</tt> calls for different nodes seldom contend.
+ * Each segment is given an equal share of the overall capacity and of the total number of cached parents
+ * (the <b>size</b> multiplied by the <b>limitFactor</b>), and prunes its oldest entries independently when
+ * either of these is exceeded.  The weighting is therefore the same as that of the
+ * {@link LinkedParentAssocsCache}, except that the eviction order is only preserved within a segment.
+ * <p>
+ * When statistics are enabled, cache operations are timed and aggregated with the
+ * {@link CacheStatistics} service at the end of each transaction, in the same way as for the
+ * {@link org.alfresco.repo.cache.TransactionalCache}.  Hit, miss and eviction counts are also
+ * always available directly from the cache.
+ * 
+ * @since 7.1
+ */
+public class SegmentedParentAssocsCache implements ParentAssocsCache
+{
+    private static final String RESOURCE_KEY_TXN_STATS = "SegmentedParentAssocsCache.TxnStats";
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private String name;
+    private CacheStatistics cacheStats;
+    private boolean cacheStatsEnabled = false;
+    private String resourceKeyTxnStats = RESOURCE_KEY_TXN_STATS;
+
+    /**
+     * @param size              the maximum number of entries
+     * @param limitFactor       the average number of parents expected per entry
+     * @param concurrencyLevel  the estimated number of concurrently updating threads; this is rounded up to the
+     *                          next power of two and capped so that each segment holds at least one entry
+     */
+    public SegmentedParentAssocsCache(int size, int limitFactor, int concurrencyLevel)
+    {
+        if (size < 1 || limitFactor < 1)
+        {
+            throw new IllegalArgumentException("The cache size and limit factor must be positive.");
+        }
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS && (segmentCount << 1) <= size)
+        {
+            segmentCount <<= 1;
+        }
+        long maxParentCount = (long) size * limitFactor;
+        int segmentSize = (size + segmentCount - 1) / segmentCount;
+        int segmentMaxParentCount = (int) Math.min(Integer.MAX_VALUE, (maxParentCount + segmentCount - 1) / segmentCount);
+        
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(segmentSize, segmentMaxParentCount);
+        }
+    }
+
+    /**
+     * Set the name under which the cache reports to the {@link CacheStatistics} service
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public void setCacheStats(CacheStatistics cacheStats)
+    {
+        this.cacheStats = cacheStats;
+    }
+
+    public void setCacheStatsEnabled(boolean cacheStatsEnabled)
+    {
+        this.cacheStatsEnabled = cacheStatsEnabled;
+    }
+
+    /**
+     * Ensures that all properties have been set
+     */
+    public void init()
+    {
+        if (cacheStatsEnabled)
+        {
+            PropertyCheck.mandatory(this, "name", name);
+            PropertyCheck.mandatory(this, "cacheStats", cacheStats);
+        }
+        resourceKeyTxnStats = RESOURCE_KEY_TXN_STATS + "." + name;
+    }
+
+    @Override
+    public ParentAssocsInfo get(Pair<Long, String> cacheKey)
+    {
+        TransactionStats stats = getTransactionStats();
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        ParentAssocsInfo value = segmentFor(cacheKey).entries.get(cacheKey);
+        if (value == null)
+        {
+            missCount.increment();
+            if (stats != null)
+            {
+                stats.record(startNanos, System.nanoTime(), OpType.GET_MISS);
+            }
+        }
+        else
+        {
+            hitCount.increment();
+            if (stats != null)
+            {
+                stats.record(startNanos, System.nanoTime(), OpType.GET_HIT);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Pair<Long, String> cacheKey, ParentAssocsInfo parentAssocs)
+    {
+        TransactionStats stats = getTransactionStats();
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        int evicted = segmentFor(cacheKey).put(cacheKey, parentAssocs);
+        if (evicted > 0)
+        {
+            evictionCount.add(evicted);
+        }
+        if (stats != null)
+        {
+            final long endNanos = System.nanoTime();
+            stats.record(startNanos, endNanos, OpType.PUT);
+            for (int i = 0; i < evicted; i++)
+            {
+                stats.record(endNanos, endNanos, OpType.EVICT);
+            }
+        }
+    }
+
+    @Override
+    public ParentAssocsInfo remove(Pair<Long, String> cacheKey)
+    {
+        TransactionStats stats = getTransactionStats();
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        ParentAssocsInfo oldParentAssocs = segmentFor(cacheKey).remove(cacheKey);
+        if (stats != null)
+        {
+            stats.record(startNanos, System.nanoTime(), OpType.REMOVE);
+        }
+        return oldParentAssocs;
+    }
+
+    @Override
+    public void clear()
+    {
+        TransactionStats stats = getTransactionStats();
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+        if (stats != null)
+        {
+            stats.record(startNanos, System.nanoTime(), OpType.CLEAR);
+        }
+    }
+
+    /**
+     * @return              the number of entries currently cached
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return              the total number of parent associations currently cached
+     */
+    public int getParentCount()
+    {
+        int parentCount = 0;
+        for (Segment segment : segments)
+        {
+            parentCount += segment.getParentCount();
+        }
+        return parentCount;
+    }
+
+    /**
+     * @return              the number of segments used
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount.sum();
+    }
+
+    private Segment segmentFor(Pair<Long, String> cacheKey)
+    {
+        int h = cacheKey.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * @return              the statistics for the current transaction or <tt>null</tt> if they are not being
+     *                      collected
+     */
+    private TransactionStats getTransactionStats()
+    {
+        if (!cacheStatsEnabled || !TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            return null;
+        }
+        TransactionStats stats = AlfrescoTransactionSupport.getResource(resourceKeyTxnStats);
+        if (stats == null)
+        {
+            stats = new TransactionStats();
+            AlfrescoTransactionSupport.bindResource(resourceKeyTxnStats, stats);
+            AlfrescoTransactionSupport.bindListener(new StatsListener(stats));
+        }
+        return stats;
+    }
+
+    /**
+     * Aggregates a transaction's statistics with the centralised cache statistics
+     */
+    private class StatsListener extends TransactionListenerAdapter
+    {
+        private final TransactionStats stats;
+
+        private StatsListener(TransactionStats stats)
+        {
+            this.stats = stats;
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            cacheStats.add(name, stats);
+        }
+
+        @Override
+        public void afterRollback()
+        {
+            cacheStats.add(name, stats);
+        }
+    }
+
+    /**
+     * A bounded portion of the cache.  Lookups go straight to the concurrent map; all modifications hold the
+     * segment lock, which also guards the insertion order and the parent count.
+     */
+    private static class Segment
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int maxSize;
+        private final int maxParentCount;
+        private final ConcurrentHashMap<Pair<Long, String>, ParentAssocsInfo> entries;
+        private final LinkedHashSet<Pair<Long, String>> insertionOrder;
+        private int parentCount;
+
+        private Segment(int maxSize, int maxParentCount)
+        {
+            this.maxSize = maxSize;
+            this.maxParentCount = maxParentCount;
+            this.entries = new ConcurrentHashMap<Pair<Long, String>, ParentAssocsInfo>(maxSize * 2);
+            this.insertionOrder = new LinkedHashSet<Pair<Long, String>>(maxSize * 2);
+        }
+
+        /**
+         * @return              the number of entries evicted to make space
+         */
+        private int put(Pair<Long, String> cacheKey, ParentAssocsInfo parentAssocs)
+        {
+            int evicted = 0;
+            lock.lock();
+            try
+            {
+                ParentAssocsInfo oldParentAssocs = entries.put(cacheKey, parentAssocs);
+                if (oldParentAssocs != null)
+                {
+                    // Move the key to the back of the queue
+                    insertionOrder.remove(cacheKey);
+                    parentCount -= oldParentAssocs.getParentAssocs().size();
+                }
+                insertionOrder.add(cacheKey);
+                parentCount += parentAssocs.getParentAssocs().size();
+
+                // Now prune the oldest entries whilst we have more cache entries or cached parents than desired
+                Iterator<Pair<Long, String>> oldestKeys = insertionOrder.iterator();
+                while ((entries.size() > maxSize || parentCount > maxParentCount) && oldestKeys.hasNext())
+                {
+                    Pair<Long, String> oldestKey = oldestKeys.next();
+                    oldestKeys.remove();
+                    ParentAssocsInfo evictedParentAssocs = entries.remove(oldestKey);
+                    parentCount -= evictedParentAssocs.getParentAssocs().size();
+                    evicted++;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            return evicted;
+        }
+
+        private ParentAssocsInfo remove(Pair<Long, String> cacheKey)
+        {
+            // Avoid the lock if there is nothing to remove
+            if (!entries.containsKey(cacheKey))
+            {
+                return null;
+            }
+            lock.lock();
+            try
+            {
+                ParentAssocsInfo oldParentAssocs = entries.remove(cacheKey);
+                if (oldParentAssocs != null)
+                {
+                    insertionOrder.remove(cacheKey);
+                    parentCount -= oldParentAssocs.getParentAssocs().size();
+                }
+                return oldParentAssocs;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void clear()
+        {
+            lock.lock();
+            try
+            {
+                entries.clear();
+                insertionOrder.clear();
+                parentCount = 0;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private int getParentCount()
+        {
+            lock.lock();
+            try
+            {
+                return parentCount;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -107,6 +107,7 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_NODE_ASPECTS = "alfresco.node.select_NodeAspects";
     private static final String INSERT_NODE_PROPERTY = "alfresco.node.insert_NodeProperty";
     private static final String UPDATE_PRIMARY_CHILDREN_SHARED_ACL = "alfresco.node.update.update_PrimaryChildrenSharedAcl";
+    private static final String UPDATE_NODES_SHARED_ACL = "alfresco.node.update_NodesSharedAcl";
     private static final String INSERT_NODE_ASPECT = "alfresco.node.insert_NodeAspect";
     private static final String DELETE_NODE_ASPECTS = "alfresco.node.delete_NodeAspects";
     private static final String DELETE_NODE_PROPERTIES = "alfresco.node.delete_NodeProperties";
@@ -114,6 +115,7 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_NODE_MAX_ID = "alfresco.node.select_NodeMaxId";
     private static final String SELECT_NODE_INTERVAL_BY_TYPE = "alfresco.node.select_MinMaxNodeIdForNodeType";
     private static final String SELECT_NODES_WITH_ASPECT_IDS = "alfresco.node.select_NodesWithAspectIds";
+    private static final String SELECT_NODE_IDS_WITH_ASPECT = "alfresco.node.select_NodeIdsWithAspect";
     private static final String INSERT_NODE_ASSOC = "alfresco.node.insert.insert_NodeAssoc";
     private static final String UPDATE_NODE_ASSOC = "alfresco.node.update_NodeAssoc";
     private static final String DELETE_NODE_ASSOC = "alfresco.node.delete_NodeAssoc";
@@ -125,6 +127,7 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_NODE_ASSOCS_MAX_INDEX = "alfresco.node.select_NodeAssocsMaxId";
     private static final String SELECT_CHILD_NODE_IDS = "alfresco.node.select.children.select_ChildNodeIds_Limited";
     private static final String SELECT_NODE_PRIMARY_CHILD_ACLS = "alfresco.node.select_NodePrimaryChildAcls";
+    private static final String SELECT_NODES_PRIMARY_CHILD_ACLS = "alfresco.node.select_NodesPrimaryChildAcls";
     private static final String INSERT_CHILD_ASSOC = "alfresco.node.insert.insert_ChildAssoc";
     private static final String DELETE_CHILD_ASSOCS = "alfresco.node.delete_ChildAssocs";
     private static final String UPDATE_CHILD_ASSOCS_INDEX = "alfresco.node.update_ChildAssocsIndex";
@@ -392,6 +395,22 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         template.update(UPDATE_PRIMARY_CHILDREN_SHARED_ACL, primaryChildrenAclUpdateEntity);
     }
 
+    @Override
+    protected int updateNodesSharedAclId(
+            Long txnId,
+            List<Long> nodeIds,
+            Long optionalOldSharedAclIdInAdditionToNull,
+            Long newSharedAclId)
+    {
+        PrimaryChildrenAclUpdateEntity primaryChildrenAclUpdateEntity = new PrimaryChildrenAclUpdateEntity();
+        primaryChildrenAclUpdateEntity.setTxnId(txnId);
+        primaryChildrenAclUpdateEntity.setNodeIds(nodeIds);
+        primaryChildrenAclUpdateEntity.setOptionalOldSharedAclIdInAdditionToNull(optionalOldSharedAclIdInAdditionToNull);
+        primaryChildrenAclUpdateEntity.setNewSharedAclId(newSharedAclId);
+        
+        return template.update(UPDATE_NODES_SHARED_ACL, primaryChildrenAclUpdateEntity);
+    }
+
     @Override
     protected int deleteNodeById(Long nodeId)
     {
@@ -1015,6 +1034,26 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         return template.selectList(SELECT_NODE_PRIMARY_CHILD_ACLS, assoc);
     }
 
+    @Override
+    public List<NodeIdAndAclId> selectPrimaryChildAcls(List<Long> parentNodeIds, Long minChildNodeId, int maxResults)
+    {
+        PrimaryChildrenAclUpdateEntity primaryChildrenAclUpdateEntity = new PrimaryChildrenAclUpdateEntity();
+        primaryChildrenAclUpdateEntity.setPrimaryParentNodeIds(parentNodeIds);
+        primaryChildrenAclUpdateEntity.setMinChildNodeId(minChildNodeId);
+
+        return template.selectList(SELECT_NODES_PRIMARY_CHILD_ACLS, primaryChildrenAclUpdateEntity, new RowBounds(0, maxResults));
+    }
+
+    @Override
+    protected List<Long> selectNodeIdsWithAspect(List<Long> nodeIds, Long aspectQNameId)
+    {
+        IdsEntity parameters = new IdsEntity();
+        parameters.setIdOne(aspectQNameId);
+        parameters.setIds(nodeIds);
+
+        return template.selectList(SELECT_NODE_IDS_WITH_ASPECT, parameters);
+    }
+
     @Override
     protected List<ChildAssocEntity> selectChildAssoc(
             Long parentNodeId,
@@ -72,6 +72,9 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
     private BehaviourFilter behaviourFilter;
     private boolean preserveAuditableData = true;
     
+    /** the maximum number of nodes set with one statement by {@link #setFixedAclsOnChildren(List, Long, int, Long, Long, Long, Long, boolean)} */
+    private static final int BULK_UPDATE_SIZE = 1000;
+    
     /**maxim transaction time allowed for {@link #setFixedAcls(Long, Long, Long, Long, List, boolean, AsyncCallParameters, boolean)} */
     private long fixedAclMaxTransactionTime = 10 * 1000;
 
@@ -525,7 +528,124 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
         }
     }
     
-    /**
+    /**
+     * Set-based counterpart of {@link #setFixedAcls(Long, Long, Long, Long, List, boolean, boolean, boolean, boolean)} for
+     * one level of a hierarchy: a page of the children of all the given nodes is read with one query and the inheriting
+     * ones are updated with multi-row statements.  Children with a defining ACL have the shared ACL merged in and are not
+     * descended into.  Children that are themselves pending, that still have the parent's current ACL (copies) or that
+     * have an unexpected shared ACL which is being forced are done node by node with <code>setFixedAcls</code>, as are
+     * their descendants; any other unexpected shared ACL fails the update.  The page ends early once the transaction has
+     * taken <code>fixedAclMaxTransactionTime</code>, leaving the rest for the next transaction.
+     * 
+     * @param parentNodeIds
+     *            the parent nodes, all of which inherit <code>mergeFrom</code>
+     * @param minChildNodeId
+     *            the last child dealt with by the previous page, or <code>null</code> for the first page
+     * @param maxChildren
+     *            the maximum number of children to deal with
+     * @param inheritFrom
+     *            the ACL from which the shared ACL is inherited
+     * @param mergeFrom
+     *            the shared ACL to set
+     * @param sharedAclToReplace
+     *            the old shared ACL, to be replaced
+     * @param currentAcl
+     *            the ACL the parents had before the change, if it may differ from <code>sharedAclToReplace</code>
+     * @param forceSharedACL
+     *            When a child node has an unexpected ACL, force it to assume the new shared ACL instead of throwing a concurrency exception.
+     * @return the children that inherit the shared ACL, whose own children have still to be set, and the ID of the
+     *         last child dealt with if there are more children to set or <code>null</code> if there are none
+     */
+    public Pair<List<Long>, Long> setFixedAclsOnChildren(List<Long> parentNodeIds, Long minChildNodeId, int maxChildren,
+            Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, Long currentAcl, boolean forceSharedACL)
+    {
+        List<NodeIdAndAclId> children = nodeDAO.getPrimaryChildrenAcls(parentNodeIds, minChildNodeId, maxChildren);
+        List<Long> childIds = new ArrayList<>(children.size());
+        for (NodeIdAndAclId child : children)
+        {
+            childIds.add(child.getId());
+        }
+        Set<Long> pendingIds = nodeDAO.getNodeIdsWithAspect(childIds, ContentModel.ASPECT_PENDING_FIX_ACL);
+        long transactionStartTime = AlfrescoTransactionSupport.getTransactionStartTime();
+        
+        List<Long> inheriting = new ArrayList<>(children.size());
+        List<Long> toUpdate = new ArrayList<>(Math.min(children.size(), BULK_UPDATE_SIZE));
+        Long lastChildId = null;
+        boolean stoppedEarly = false;
+        for (NodeIdAndAclId child : children)
+        {
+            if (lastChildId != null && System.currentTimeMillis() - transactionStartTime >= fixedAclMaxTransactionTime)
+            {
+                stoppedEarly = true;
+                break;
+            }
+            lastChildId = child.getId();
+            Long acl = child.getAclId();
+            boolean pending = pendingIds.contains(child.getId());
+            if (acl == null || acl.equals(sharedAclToReplace) || acl.equals(mergeFrom))
+            {
+                if (pending)
+                {
+                    // Its own pending change is applied with it, as setFixedAcls reads and then removes the aspect
+                    setFixedAcls(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, new ArrayList<AclChange>(), true, false, true, forceSharedACL);
+                    continue;
+                }
+                inheriting.add(child.getId());
+                if (!mergeFrom.equals(acl))
+                {
+                    toUpdate.add(child.getId());
+                    if (toUpdate.size() == BULK_UPDATE_SIZE)
+                    {
+                        nodeDAO.setNodesSharedAclId(toUpdate, sharedAclToReplace, mergeFrom);
+                        toUpdate.clear();
+                    }
+                }
+                continue;
+            }
+            if (acl.equals(currentAcl))
+            {
+                // Copied while pending: its descendants have the copied ACL too, so they are done the usual way
+                setFixedAcls(child.getId(), inheritFrom, mergeFrom, sharedAclToReplace, new ArrayList<AclChange>(), true, false, true, forceSharedACL);
+                continue;
+            }
+            Acl dbAcl = aclDaoComponent.getAcl(acl);
+            if (dbAcl.getAclType() == ACLType.LAYERED)
+            {
+                throw new UnsupportedOperationException();
+            }
+            else if (dbAcl.getAclType() == ACLType.DEFINING)
+            {
+                if (dbAcl.getInherits())
+                {
+                    aclDaoComponent.mergeInheritedAccessControlList(mergeFrom, acl);
+                }
+            }
+            else if (dbAcl.getAclType() == ACLType.SHARED)
+            {
+                if (pending || forceSharedACL)
+                {
+                    if (!pending)
+                    {
+                        log.warn("Forcing shared ACL on node: " + child.getId() + " ( "
+                                + nodeDAO.getNodePair(child.getId()).getSecond() + ") - " + dbAcl);
+                    }
+                    // The descendants have the unexpected ACL too, so they are done the usual way
+                    setFixedAcls(child.getId(), inheritFrom, mergeFrom, acl, new ArrayList<AclChange>(), true, false, true, forceSharedACL);
+                }
+                else
+                {
+                    throw new ConcurrencyFailureException(
+                            "setFixedAcls: unexpected shared acl: " + dbAcl + " on node " + child.getId() + " ( "
+                                    + nodeDAO.getNodePair(child.getId()).getSecond() + ")");
+                }
+            }
+        }
+        nodeDAO.setNodesSharedAclId(toUpdate, sharedAclToReplace, mergeFrom);
+        boolean more = stoppedEarly || children.size() == maxChildren;
+        return new Pair<List<Long>, Long>(inheriting, more ? lastChildId : null);
+    }
+    
+    /**
      * Adds ASPECT_PENDING_FIX_ACL aspect to nodes when transactionTime reaches max admitted time
      * MNT-18308: No longer checks if call is async in order to evaluate time passed to decide if nodes should be
      * processed by job. This is now the default behavior for both sync and async calls: when fixedAclMaxTransactionTime
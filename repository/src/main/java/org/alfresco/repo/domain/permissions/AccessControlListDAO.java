@@ -34,6 +34,7 @@ import org.alfresco.repo.security.permissions.impl.AclChange;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.Pair;
 
 /**
  * This abstracts the reading and writing of ACLs on nodes from particular node implementations.
@@ -110,7 +111,17 @@ public interface AccessControlListDAO
     
     public void updateInheritance(Long childNodeId, Long oldParentAclId, Long newParentAclId);
     
-    public void setFixedAcls(Long nodeId, Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, List<AclChange> changes, boolean set);
+    public void setFixedAcls(Long nodeId, Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, List<AclChange> changes, boolean set);
+
+    /**
+     * Set a shared ACL on a page of the primary children of several nodes using multi-row updates, without recursing.
+     * 
+     * @return the children that inherit the shared ACL, whose own children have still to be set, and the ID of the
+     *         last child dealt with if there are more children to set or <tt>null</tt> if there are none
+     * @since 7.1
+     */
+    public Pair<List<Long>, Long> setFixedAclsOnChildren(List<Long> parentNodeIds, Long minChildNodeId, int maxChildren,
+            Long inheritFrom, Long mergeFrom, Long sharedAclToReplace, Long currentAcl, boolean forceSharedACL);
 
     public void removePendingAclAspect(Long nodeId);
 }
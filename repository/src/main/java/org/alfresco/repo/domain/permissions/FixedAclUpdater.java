@@ -33,9 +33,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
@@ -56,6 +60,7 @@ import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.NamespaceService;
@@ -63,6 +68,7 @@ import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PolicyIgnoreUtil;
+import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
@@ -73,6 +79,11 @@ import org.springframework.dao.ConcurrencyFailureException;
 
 /**
  * Finds nodes with ASPECT_PENDING_FIX_ACL aspect and sets fixed ACLs for them
+ * <p/>
+ * With {@link #setSetBasedPropagation(boolean) set-based propagation} the shared ACL is set below each pending
+ * node level by level, with multi-row updates of the children of many nodes at a time, instead of node by node.
+ * The children of a pending node are taken in ranges of subtrees and, if an {@link #setAttributeService(AttributeService)
+ * attribute service} is given, the last completed range is recorded so that an interrupted job resumes after it.
  * 
  * @author Andreea Dragoi
  * @author sglover
@@ -87,6 +98,14 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     public static final String FIXED_ACL_ASYNC_CALL_KEY = "FIXED_ACL_ASYNC_CALL";
     protected static final QName LOCK_Q_NAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "FixedAclUpdater");
 
+    /** Attribute key for the last subtree completed below each pending node */
+    public static final String KEY_LAST_SUBTREE = ".fixedAclUpdaterLastSubtree";
+
+    /** Nodes set with the shared ACL by set-based propagation */
+    public static final String METRIC_NODES = "alfresco.acl.fixed.nodes";
+    /** Time taken by set-based propagation below each pending node */
+    public static final String METRIC_PENDING = "alfresco.acl.fixed.pending";
+
     /** A set of listeners to receive callback events whenever permissions are updated by this class. */
     private static Set<FixedAclUpdaterListener> listeners = Sets.newConcurrentHashSet();
 
@@ -94,13 +113,19 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     private JobLockService jobLockService;
     private TransactionService transactionService;
     private AccessControlListDAO accessControlListDAO;
+    private AclDAO aclDAO;
     private NodeDAO nodeDAO;
+    private AttributeService attributeService;
+    private MeterRegistry meterRegistry;
+    private Counter nodesCounter;
+    private Timer pendingTimer;
     private long lockTimeToLive = 10000;
     private long lockRefreshTime = lockTimeToLive / 2;
 
     private int maxItemBatchSize = 100;
     private int numThreads = 4;
     private boolean forceSharedACL = false;
+    private boolean setBasedPropagation = false;
 
     private ClassPolicyDelegate<OnInheritPermissionsDisabled> onInheritPermissionsDisabledDelegate;
     private PolicyComponent policyComponent;
@@ -137,6 +162,30 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.accessControlListDAO = accessControlListDAO;
     }
 
+    public void setAclDAO(AclDAO aclDAO)
+    {
+        this.aclDAO = aclDAO;
+    }
+
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param setBasedPropagation   <tt>true</tt> to set the shared ACL below pending nodes a level at a time, with multi-row
+     *                              updates, instead of node by node
+     */
+    public void setSetBasedPropagation(boolean setBasedPropagation)
+    {
+        this.setBasedPropagation = setBasedPropagation;
+    }
+
     public void setMaxItemBatchSize(int maxItemBatchSize)
     {
         this.maxItemBatchSize = maxItemBatchSize;
@@ -171,6 +220,10 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
     public void init()
     {
+        PropertyCheck.mandatory(this, "meterRegistry", meterRegistry);
+        nodesCounter = Counter.builder(METRIC_NODES).register(meterRegistry);
+        pendingTimer = Timer.builder(METRIC_PENDING).register(meterRegistry);
+
         onInheritPermissionsDisabledDelegate = policyComponent
                 .registerClassPolicy(PermissionServicePolicies.OnInheritPermissionsDisabled.class);
     }
@@ -310,15 +363,7 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
                         // Remove aspect
                         accessControlListDAO.removePendingAclAspect(nodeId);
 
-                        if (!policyIgnoreUtil.ignorePolicy(nodeRef))
-                        {
-                            boolean transformedToAsyncOperation = toBoolean((Boolean) AlfrescoTransactionSupport
-                                    .getResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY));
-
-                            OnInheritPermissionsDisabled onInheritPermissionsDisabledPolicy = onInheritPermissionsDisabledDelegate
-                                    .get(ContentModel.TYPE_BASE);
-                            onInheritPermissionsDisabledPolicy.onInheritPermissionsDisabled(nodeRef, transformedToAsyncOperation);
-                        }
+                        invokeOnInheritPermissionsDisabled(nodeRef);
                     }
                     catch (Exception e)
                     {
@@ -349,6 +394,223 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         return new AclWorker();
     }
 
+    private void invokeOnInheritPermissionsDisabled(NodeRef nodeRef)
+    {
+        if (!policyIgnoreUtil.ignorePolicy(nodeRef))
+        {
+            boolean transformedToAsyncOperation = toBoolean((Boolean) AlfrescoTransactionSupport
+                    .getResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY));
+
+            OnInheritPermissionsDisabled onInheritPermissionsDisabledPolicy = onInheritPermissionsDisabledDelegate
+                    .get(ContentModel.TYPE_BASE);
+            onInheritPermissionsDisabledPolicy.onInheritPermissionsDisabled(nodeRef, transformedToAsyncOperation);
+        }
+    }
+
+    /**
+     * Sets the shared ACL below a pending node a level at a time.  The children of the pending node are set first
+     * and then taken in ranges of <code>maxItemBatchSize</code> subtrees, in order of ID; the levels of each range
+     * are set in transactions covering at most <code>maxItemBatchSize</code> children of <code>maxItemBatchSize</code>
+     * nodes.  The updates only replace a missing or the old shared ACL, so repeating them after an interruption is
+     * harmless.
+     */
+    private class SubtreePropagation
+    {
+        private final NodeRef nodeRef;
+        private final FixedAclUpdaterJobLockRefreshCallback lockCallback;
+        private Long nodeId;
+        private Long inheritFrom;
+        private Long sharedAclToReplace;
+        private Long mergeFrom;
+        private Long currentAcl;
+
+        SubtreePropagation(NodeRef nodeRef, FixedAclUpdaterJobLockRefreshCallback lockCallback)
+        {
+            this.nodeRef = nodeRef;
+            this.lockCallback = lockCallback;
+        }
+
+        /**
+         * @return <tt>true</tt> if the pending node was processed or <tt>false</tt> if the job lock was lost
+         */
+        boolean run()
+        {
+            final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+            if (!txnHelper.doInTransaction(this::readPendingChange, false, true))
+            {
+                return true;
+            }
+            List<Long> subtrees = setChildren(Collections.singletonList(nodeId), currentAcl);
+            if (subtrees == null)
+            {
+                return false;
+            }
+            Collections.sort(subtrees);
+
+            int start = 0;
+            Long lastSubtree = getLastSubtree();
+            while (lastSubtree != null && start < subtrees.size() && subtrees.get(start) <= lastSubtree)
+            {
+                start++;
+            }
+            for (int i = start; i < subtrees.size(); i += maxItemBatchSize)
+            {
+                final List<Long> range = subtrees.subList(i, Math.min(subtrees.size(), i + maxItemBatchSize));
+                List<Long> level = range;
+                while (!level.isEmpty())
+                {
+                    if (!lockCallback.isActive())
+                    {
+                        return false;
+                    }
+                    List<Long> nextLevel = new ArrayList<>();
+                    for (int j = 0; j < level.size(); j += maxItemBatchSize)
+                    {
+                        List<Long> children = setChildren(level.subList(j, Math.min(level.size(), j + maxItemBatchSize)), null);
+                        if (children == null)
+                        {
+                            return false;
+                        }
+                        nextLevel.addAll(children);
+                    }
+                    level = nextLevel;
+                }
+                if (attributeService != null)
+                {
+                    final Long rangeEnd = range.get(range.size() - 1);
+                    txnHelper.doInTransaction(() -> {
+                        attributeService.setAttribute(rangeEnd, KEY_LAST_SUBTREE, nodeId);
+                        return null;
+                    }, false, true);
+                }
+                if (log.isDebugEnabled())
+                {
+                    log.debug(String.format("Set fixed ACLs below %s for subtrees %d to %d", nodeRef, i + 1, i + range.size()));
+                }
+            }
+
+            txnHelper.doInTransaction(this::finish, false, true);
+            listeners.forEach(listener -> listener.permissionsUpdatedAsynchronously(nodeRef));
+            return true;
+        }
+
+        /**
+         * Read the pending change.
+         * 
+         * @return <tt>true</tt> if there is something to set
+         */
+        private Boolean readPendingChange()
+        {
+            Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+            if (nodePair == null)
+            {
+                return false;
+            }
+            nodeId = nodePair.getFirst();
+            // MNT-22009 - If node was deleted and in archive store, remove the aspect and properties and do not process
+            if (nodeRef.getStoreRef().equals(StoreRef.STORE_REF_ARCHIVE_SPACESSTORE))
+            {
+                accessControlListDAO.removePendingAclAspect(nodeId);
+                return false;
+            }
+            inheritFrom = (Long) nodeDAO.getNodeProperty(nodeId, ContentModel.PROP_INHERIT_FROM_ACL);
+            sharedAclToReplace = (Long) nodeDAO.getNodeProperty(nodeId, ContentModel.PROP_SHARED_ACL_TO_REPLACE);
+            // Children copied in while the node was pending have its ACL rather than the one to replace
+            currentAcl = nodeDAO.getNodeAclId(nodeId);
+            mergeFrom = aclDAO.getInheritedAccessControlList(inheritFrom);
+            return true;
+        }
+
+        /**
+         * Set the children of the given nodes, a page of at most <code>maxItemBatchSize</code> children per transaction.
+         * 
+         * @return the children that inherit the shared ACL, or <tt>null</tt> if the job lock was lost
+         */
+        private List<Long> setChildren(final List<Long> parents, final Long parentsAcl)
+        {
+            final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+            List<Long> inheriting = new ArrayList<>();
+            Long lastChild = null;
+            do
+            {
+                if (!lockCallback.isActive())
+                {
+                    return null;
+                }
+                final Long minChild = lastChild;
+                Pair<List<Long>, Long> page = txnHelper.doInTransaction(
+                        () -> accessControlListDAO.setFixedAclsOnChildren(parents, minChild, maxItemBatchSize,
+                                inheritFrom, mergeFrom, sharedAclToReplace, parentsAcl, forceSharedACL),
+                        false, true);
+                nodesCounter.increment(page.getFirst().size());
+                inheriting.addAll(page.getFirst());
+                lastChild = page.getSecond();
+            }
+            while (lastChild != null);
+            return inheriting;
+        }
+
+        private Long getLastSubtree()
+        {
+            if (attributeService == null)
+            {
+                return null;
+            }
+            return transactionService.getRetryingTransactionHelper().doInTransaction(
+                    () -> (Long) attributeService.getAttribute(KEY_LAST_SUBTREE, nodeId), true, true);
+        }
+
+        private Void finish()
+        {
+            accessControlListDAO.removePendingAclAspect(nodeId);
+            if (attributeService != null)
+            {
+                attributeService.removeAttribute(KEY_LAST_SUBTREE, nodeId);
+            }
+            invokeOnInheritPermissionsDisabled(nodeRef);
+            return null;
+        }
+    }
+
+    /**
+     * Process the pending nodes one at a time with {@link SubtreePropagation}.
+     * 
+     * @return the number of pending nodes processed
+     */
+    private int executeSetBased(final FixedAclUpdaterJobLockRefreshCallback lockCallback)
+    {
+        GetNodesWithAspects getNodesWithAspects = new GetNodesWithAspects(Collections.singleton(ContentModel.ASPECT_PENDING_FIX_ACL));
+        int count = 0;
+        while (true)
+        {
+            List<NodeRef> nodeRefs = getNodesWithAspects.getNodesWithAspects();
+            if (nodeRefs.isEmpty())
+            {
+                return count;
+            }
+            for (final NodeRef nodeRef : nodeRefs)
+            {
+                long startTime = System.nanoTime();
+                try
+                {
+                    boolean done = AuthenticationUtil.runAs(
+                            () -> new SubtreePropagation(nodeRef, lockCallback).run(),
+                            AuthenticationUtil.getSystemUserName());
+                    if (!done)
+                    {
+                        return count;
+                    }
+                    count++;
+                }
+                catch (RuntimeException e)
+                {
+                    log.error("Job could not process pending ACL node " + nodeRef + ": " + e, e);
+                }
+                pendingTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     class GetNodesWithAspectCallback implements NodeRefQueryCallback
     {
         private List<NodeRef> nodes = new ArrayList<>();
@@ -357,7 +619,8 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
         void init()
         {
-            nodes.clear();
+            // A new list as the previous one may still be in use when work is prefetched
+            nodes = new ArrayList<>();
         }
 
         void done()
@@ -443,11 +706,19 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
             lockToken = jobLockService.getLock(LOCK_Q_NAME, lockTimeToLive, 0, 1);
             jobLockService.refreshLock(lockToken, LOCK_Q_NAME, lockRefreshTime, jobLockRefreshCallback);
 
+            if (setBasedPropagation)
+            {
+                return executeSetBased(jobLockRefreshCallback);
+            }
+
             AclWorkProvider provider = new AclWorkProvider();
             AclWorker worker = createAclWorker();
             BatchProcessor<NodeRef> bp = new BatchProcessor<>("FixedAclUpdater",
                     transactionService.getRetryingTransactionHelper(), provider, numThreads, maxItemBatchSize, applicationContext,
                     log, 100);
+            bp.setPrefetchWork(true);
+            bp.setAdaptiveBatchSize(true);
+            bp.setMeterRegistry(meterRegistry);
             int count = bp.process(worker, true);
             return count;
         }
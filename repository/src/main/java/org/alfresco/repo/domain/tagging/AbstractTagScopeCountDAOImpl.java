@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.domain.control.ControlDAO;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.service.cmr.repository.InvalidNodeRefException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.Pair;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.extensions.surf.util.ParameterCheck;
+
+/**
+ * Abstract implementation for the Tag Scope Count DAO.
+ * <p>
+ * This resolves the tag scope nodes and works out the row changes, but defers to the
+ * underlying implementation for CRUD operations for:
+ * 
+ *     <b>alf_tag_scope_count</b>
+ * 
+ * @since 7.1
+ */
+public abstract class AbstractTagScopeCountDAOImpl implements TagScopeCountDAO
+{
+    private NodeDAO nodeDAO;
+    private ControlDAO controlDAO;
+    
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+    
+    public void setControlDAO(ControlDAO controlDAO)
+    {
+        this.controlDAO = controlDAO;
+    }
+    
+    private long getNodeIdNotNull(NodeRef nodeRef)
+    {
+        ParameterCheck.mandatory("nodeRef", nodeRef);
+        
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+        if (nodePair == null)
+        {
+            throw new InvalidNodeRefException("Node does not exist: " + nodeRef, nodeRef);
+        }
+        return nodePair.getFirst();
+    }
+    
+    @Override
+    public void updateTagCounts(NodeRef scopeNodeRef, Map<String, Integer> changes)
+    {
+        long scopeNodeId = getNodeIdNotNull(scopeNodeRef);
+        
+        boolean decremented = false;
+        for (Map.Entry<String, Integer> change : changes.entrySet())
+        {
+            int delta = (change.getValue() == null ? 0 : change.getValue());
+            if (delta == 0)
+            {
+                continue;
+            }
+            TagScopeCountEntity entity = new TagScopeCountEntity(scopeNodeId, change.getKey(), delta);
+            // The count is changed by the database, so there is no read-modify-write of the row
+            int updated = updateTagScopeCountEntity(entity);
+            if (updated == 0 && delta > 0)
+            {
+                entity.setVersion(0L);
+                Savepoint savepoint = controlDAO.createSavepoint("insertTagScopeCountEntity");
+                try
+                {
+                    insertTagScopeCountEntity(entity);
+                    controlDAO.releaseSavepoint(savepoint);
+                }
+                catch (DataIntegrityViolationException e)
+                {
+                    // Another transaction added the tag since we looked, so add to its row instead
+                    controlDAO.rollbackToSavepoint(savepoint);
+                    if (updateTagScopeCountEntity(entity) == 0)
+                    {
+                        throw e;
+                    }
+                }
+            }
+            else if (delta < 0)
+            {
+                decremented = true;
+            }
+        }
+        
+        // Tags that are no longer used drop out of the scope
+        if (decremented)
+        {
+            deleteEmptyTagScopeCountEntities(scopeNodeId);
+        }
+    }
+    
+    @Override
+    public void setTagCounts(NodeRef scopeNodeRef, Map<String, Integer> counts)
+    {
+        long scopeNodeId = getNodeIdNotNull(scopeNodeRef);
+        
+        deleteTagScopeCountEntities(scopeNodeId);
+        for (Map.Entry<String, Integer> count : counts.entrySet())
+        {
+            if (count.getValue() == null || count.getValue() < 1)
+            {
+                continue;
+            }
+            TagScopeCountEntity entity = new TagScopeCountEntity(scopeNodeId, count.getKey(), count.getValue());
+            entity.setVersion(0L);
+            insertTagScopeCountEntity(entity);
+        }
+    }
+    
+    @Override
+    public List<Pair<String, Integer>> getTagCounts(NodeRef scopeNodeRef, int maxResults)
+    {
+        long scopeNodeId = getNodeIdNotNull(scopeNodeRef);
+        
+        List<TagScopeCountEntity> entities = selectTagScopeCountEntities(scopeNodeId, maxResults);
+        if (entities.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        List<Pair<String, Integer>> result = new ArrayList<Pair<String, Integer>>(entities.size());
+        for (TagScopeCountEntity entity : entities)
+        {
+            result.add(new Pair<String, Integer>(entity.getTagName(), entity.getTagCount().intValue()));
+        }
+        return result;
+    }
+    
+    @Override
+    public int deleteTagCounts(NodeRef scopeNodeRef)
+    {
+        long scopeNodeId = getNodeIdNotNull(scopeNodeRef);
+        return deleteTagScopeCountEntities(scopeNodeId);
+    }
+    
+    /**
+     * @param entity            the new row
+     */
+    protected abstract void insertTagScopeCountEntity(TagScopeCountEntity entity);
+    
+    /**
+     * Add the entity's count to the stored count of the same tag.
+     * 
+     * @param entity            the scope, tag and change in count
+     * @return                  the number of rows updated
+     */
+    protected abstract int updateTagScopeCountEntity(TagScopeCountEntity entity);
+    
+    /**
+     * @param scopeNodeId       the tag scope node ID
+     * @param maxResults        the maximum number of rows or <tt>0</tt> or less for all of them
+     * @return                  the rows ordered by descending count
+     */
+    protected abstract List<TagScopeCountEntity> selectTagScopeCountEntities(long scopeNodeId, int maxResults);
+    
+    /**
+     * @param scopeNodeId       the tag scope node ID
+     * @return                  the number of rows deleted
+     */
+    protected abstract int deleteEmptyTagScopeCountEntities(long scopeNodeId);
+    
+    /**
+     * @param scopeNodeId       the tag scope node ID
+     * @return                  the number of rows deleted
+     */
+    protected abstract int deleteTagScopeCountEntities(long scopeNodeId);
+}
@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.Pair;
+
+/**
+ * DAO services for the per-scope tag counts held in <b>alf_tag_scope_count</b>.
+ * <p>
+ * Each row holds the number of nodes below a tag scope that carry a given tag.  Counts are
+ * changed in place by the database so that applying a batch of tagging changes does not
+ * need to read and rewrite the whole of the scope's tag list.
+ * 
+ * @since 7.1
+ */
+public interface TagScopeCountDAO
+{
+    /**
+     * Apply changes to the tag counts of a tag scope.  Tags that are not yet counted are added
+     * and tags whose count drops to zero or below are removed.
+     * 
+     * @param scopeNodeRef      the tag scope node
+     * @param changes           the tag names mapped to the (+ve or -ve) change in their count
+     */
+    void updateTagCounts(NodeRef scopeNodeRef, Map<String, Integer> changes);
+    
+    /**
+     * Replace all the tag counts of a tag scope.
+     * 
+     * @param scopeNodeRef      the tag scope node
+     * @param counts            the tag names mapped to their count; counts less than one are ignored
+     */
+    void setTagCounts(NodeRef scopeNodeRef, Map<String, Integer> counts);
+    
+    /**
+     * Get the tags of a tag scope, most frequently used first.
+     * 
+     * @param scopeNodeRef      the tag scope node
+     * @param maxResults        the maximum number of tags to return or <tt>0</tt> or less for all of them
+     * @return                  the tag names and their counts, ordered by descending count
+     */
+    List<Pair<String, Integer>> getTagCounts(NodeRef scopeNodeRef, int maxResults);
+    
+    /**
+     * Remove all the tag counts of a tag scope.
+     * 
+     * @param scopeNodeRef      the tag scope node
+     * @return                  the number of tags removed
+     */
+    int deleteTagCounts(NodeRef scopeNodeRef);
+}
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Entity bean for <b>alf_tag_scope_count</b> rows.
+ * <p>
+ * When used as an update parameter the <b>tagCount</b> carries the change to apply to
+ * the stored count.
+ * 
+ * @since 7.1
+ */
+public class TagScopeCountEntity
+{
+    public static final int TAG_NAME_SHORT_LENGTH = 12;
+    
+    private Long id;
+    private Long version;
+    private Long scopeNodeId;
+    private Long tagNameCrc;
+    private String tagNameShort;
+    private String tagName;
+    private Long tagCount;
+    
+    /**
+     * Find a CRC value for the tag name using UTF-8 conversion.
+     * 
+     * @param tagName               the tag name
+     * @return                      Returns the CRC value (UTF-8 compatible)
+     */
+    public static Long getTagNameCrc(String tagName)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(tagName.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+    
+    /**
+     * Find the leading part of the tag name that, together with the CRC, uniquely identifies the tag in a scope.
+     * 
+     * @param tagName               the tag name
+     * @return                      Returns at most the first {@link #TAG_NAME_SHORT_LENGTH} characters of the name
+     */
+    public static String getTagNameShort(String tagName)
+    {
+        return tagName.length() <= TAG_NAME_SHORT_LENGTH ? tagName : tagName.substring(0, TAG_NAME_SHORT_LENGTH);
+    }
+    
+    /**
+     * Default constructor required
+     */
+    public TagScopeCountEntity()
+    {
+    }
+    
+    public TagScopeCountEntity(long scopeNodeId)
+    {
+        this.scopeNodeId = scopeNodeId;
+    }
+    
+    public TagScopeCountEntity(long scopeNodeId, String tagName, long tagCount)
+    {
+        this.scopeNodeId = scopeNodeId;
+        this.tagName = tagName;
+        this.tagNameCrc = getTagNameCrc(tagName);
+        this.tagNameShort = getTagNameShort(tagName);
+        this.tagCount = tagCount;
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("TagScopeCountEntity")
+          .append("[ ID=").append(id)
+          .append(", scopeNodeId=").append(scopeNodeId)
+          .append(", tagName=").append(tagName)
+          .append(", tagCount=").append(tagCount)
+          .append("]");
+        return sb.toString();
+    }
+    
+    public Long getId()
+    {
+        return id;
+    }
+    
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+    
+    public Long getVersion()
+    {
+        return version;
+    }
+    
+    public void setVersion(Long version)
+    {
+        this.version = version;
+    }
+    
+    public Long getScopeNodeId()
+    {
+        return scopeNodeId;
+    }
+    
+    public void setScopeNodeId(Long scopeNodeId)
+    {
+        this.scopeNodeId = scopeNodeId;
+    }
+    
+    public Long getTagNameCrc()
+    {
+        return tagNameCrc;
+    }
+    
+    public void setTagNameCrc(Long tagNameCrc)
+    {
+        this.tagNameCrc = tagNameCrc;
+    }
+    
+    public String getTagNameShort()
+    {
+        return tagNameShort;
+    }
+    
+    public void setTagNameShort(String tagNameShort)
+    {
+        this.tagNameShort = tagNameShort;
+    }
+    
+    public String getTagName()
+    {
+        return tagName;
+    }
+    
+    public void setTagName(String tagName)
+    {
+        this.tagName = tagName;
+    }
+    
+    public Long getTagCount()
+    {
+        return tagCount;
+    }
+    
+    public void setTagCount(Long tagCount)
+    {
+        this.tagCount = tagCount;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging.ibatis;
+
+import java.util.List;
+
+import org.alfresco.repo.domain.tagging.AbstractTagScopeCountDAOImpl;
+import org.alfresco.repo.domain.tagging.TagScopeCountEntity;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * iBatis-specific implementation of the Tag Scope Count DAO.
+ * 
+ * @since 7.1
+ */
+public class TagScopeCountDAOImpl extends AbstractTagScopeCountDAOImpl
+{
+    private static final String INSERT_TAG_SCOPE_COUNT = "alfresco.tagging.insert.insert_TagScopeCount";
+    private static final String UPDATE_TAG_SCOPE_COUNT = "alfresco.tagging.update_TagScopeCount";
+    private static final String SELECT_TAG_SCOPE_COUNTS = "alfresco.tagging.select_TagScopeCounts";
+    private static final String DELETE_TAG_SCOPE_COUNTS_EMPTY = "alfresco.tagging.delete_TagScopeCountsEmpty";
+    private static final String DELETE_TAG_SCOPE_COUNTS = "alfresco.tagging.delete_TagScopeCounts";
+    
+    private SqlSessionTemplate template;
+    
+    public final void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) 
+    {
+        this.template = sqlSessionTemplate;
+    }
+    
+    @Override
+    protected void insertTagScopeCountEntity(TagScopeCountEntity entity)
+    {
+        template.insert(INSERT_TAG_SCOPE_COUNT, entity);
+    }
+    
+    @Override
+    protected int updateTagScopeCountEntity(TagScopeCountEntity entity)
+    {
+        return template.update(UPDATE_TAG_SCOPE_COUNT, entity);
+    }
+    
+    @Override
+    protected List<TagScopeCountEntity> selectTagScopeCountEntities(long scopeNodeId, int maxResults)
+    {
+        TagScopeCountEntity params = new TagScopeCountEntity(scopeNodeId);
+        if (maxResults > 0)
+        {
+            return template.selectList(SELECT_TAG_SCOPE_COUNTS, params, new RowBounds(0, maxResults));
+        }
+        return template.selectList(SELECT_TAG_SCOPE_COUNTS, params);
+    }
+    
+    @Override
+    protected int deleteEmptyTagScopeCountEntities(long scopeNodeId)
+    {
+        return template.delete(DELETE_TAG_SCOPE_COUNTS_EMPTY, new TagScopeCountEntity(scopeNodeId));
+    }
+    
+    @Override
+    protected int deleteTagScopeCountEntities(long scopeNodeId)
+    {
+        return template.delete(DELETE_TAG_SCOPE_COUNTS, new TagScopeCountEntity(scopeNodeId));
+    }
+}
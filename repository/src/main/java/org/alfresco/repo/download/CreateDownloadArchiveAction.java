@@ -29,7 +29,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -49,6 +52,7 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -86,8 +90,11 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
     private DictionaryService dictionaryService;
+    private ContentService contentService;
 
     private long maximumContentSize = -1l;
+    private int parallelThreads = 0;
+    private Set<String> storedMimetypes = Collections.emptySet();
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -174,6 +181,43 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.dictionaryService = dictionaryService;
     }
 
+    /**
+     * Set the content service used by the parallel compression workers to read content.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * Set the number of threads used to read and compress the content of a
+     * download in parallel. 0 or 1 compresses the content sequentially.
+     */
+    public void setParallelThreads(int parallelThreads)
+    {
+        this.parallelThreads = parallelThreads;
+    }
+
+    /**
+     * Set the comma separated mimetypes of content that is already compressed,
+     * which is stored in the archive without compressing it again.
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        Set<String> mimetypes = new LinkedHashSet<String>();
+        if (storedMimetypes != null)
+        {
+            for (String mimetype : storedMimetypes.split(","))
+            {
+                if (mimetype.trim().length() > 0)
+                {
+                    mimetypes.add(mimetype.trim());
+                }
+            }
+        }
+        this.storedMimetypes = mimetypes;
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -254,6 +298,8 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, dictionaryService, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        handler.setParallelCompression(contentService, parallelThreads);
+        handler.setStoredMimetypes(storedMimetypes);
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -265,6 +311,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.close();
             tempFile.delete();
         }
     }
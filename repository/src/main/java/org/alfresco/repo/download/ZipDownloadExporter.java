@@ -26,16 +26,26 @@
 package org.alfresco.repo.download;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
@@ -43,21 +53,31 @@ import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
 import org.alfresco.service.cmr.view.ExporterException;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.alfresco.util.TempFileProvider;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream.UnicodeExtraFieldPolicy;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p>
+ * Content with an already compressed mimetype is stored in the ZIP without being deflated again. When more than one
+ * parallel thread is set, content is read and compressed by a pool of workers and the compressed entries are gathered
+ * into the ZIP file at the end, rather than each entry being read and deflated in turn by the exporting thread.
  * 
  * @author Alex Miller
  */
@@ -67,12 +87,17 @@ public class ZipDownloadExporter extends BaseExporter
     
     private static final String PATH_SEPARATOR = "/";
 
+    // ALF-16289 - only update the status every 10MB
+    private static final long STATUS_UPDATE_BYTES = 10L * 1024 * 1024;
+    private static final int STATUS_UPDATE_WAIT_SECONDS = 5;
+
     protected ZipArchiveOutputStream zipStream;
 
     private NodeRef downloadNodeRef;
     private int sequenceNumber = 1;
     private long total;
-    private long done;
+    private final AtomicLong done = new AtomicLong();
+    private long doneAtLastUpdate;
     private long totalFileCount;
     private long filesAddedCount;
     
@@ -84,7 +109,16 @@ public class ZipDownloadExporter extends BaseExporter
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
-    private OutputStream outputStream;
+    private ContentService contentService;
+    private int parallelThreads;
+    private Set<String> storedMimetypes = Collections.emptySet();
+    private ExecutorService compressionExecutor;
+    private ParallelScatterZipCreator scatterZipCreator;
+    /** The temporary files of the compression threads, removed however the export ends */
+    private final List<ScatterGatherBackingStore> scatterStores = Collections.synchronizedList(new ArrayList<ScatterGatherBackingStore>());
+    /** The user and tenant that the compression threads read content as */
+    private String runAsUser;
+    private String runAsDomain;
 
     /**
      * Construct
@@ -105,7 +139,8 @@ public class ZipDownloadExporter extends BaseExporter
         super(checkOutCheckInService, nodeService);
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
+            // A file backed stream allows entries to be stored without knowing their size and CRC up front
+            this.zipStream = new ZipArchiveOutputStream(zipFile);
             this.updateService = updateService;
             this.transactionHelper = transactionHelper;
             this.downloadStorage = downloadStorage;
@@ -115,22 +150,58 @@ public class ZipDownloadExporter extends BaseExporter
             this.total = total;
             this.totalFileCount = totalFileCount;
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ExporterException("Failed to create zip file", e);
         }
     }
 
+    /**
+     * Sets the number of threads used to read and compress content in parallel. Values of 1 or less, or no
+     * content service, keep the content being read and compressed by the exporting thread.
+     * 
+     * @param contentService used by the workers to read content by URL
+     * @param parallelThreads the number of worker threads
+     */
+    public void setParallelCompression(ContentService contentService, int parallelThreads)
+    {
+        this.contentService = contentService;
+        this.parallelThreads = parallelThreads;
+    }
+
+    /**
+     * Sets the mimetypes of content that is already compressed, which are stored without compression.
+     * An entry ending with <tt>*</tt> matches any mimetype starting with the text before it.
+     */
+    public void setStoredMimetypes(Set<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
     @Override
     public void start(final ExporterContext context)
     {
-        zipStream = new ZipArchiveOutputStream(outputStream);
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
         zipStream.setCreateUnicodeExtraFields(UnicodeExtraFieldPolicy.ALWAYS);
         zipStream.setUseLanguageEncodingFlag(true);
         zipStream.setFallbackToUTF8(true);
+
+        if (parallelThreads > 1 && contentService != null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setNamePrefix("DownloadZip");
+            threadFactory.setThreadDaemon(true);
+            runAsUser = AuthenticationUtil.getRunAsUser();
+            runAsDomain = TenantUtil.getCurrentDomain();
+            compressionExecutor = Executors.newFixedThreadPool(parallelThreads, threadFactory);
+            scatterZipCreator = new ParallelScatterZipCreator(compressionExecutor, () -> {
+                ScatterGatherBackingStore scatterStore = new FileBasedScatterGatherBackingStore(TempFileProvider.createTempFile("download", ".scatter"));
+                scatterStores.add(scatterStore);
+                return scatterStore;
+            });
+        }
     }
 
     @Override
@@ -163,10 +234,30 @@ public class ZipDownloadExporter extends BaseExporter
             return;
         }
         
+        // ALF-2016
+        ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
+        zipEntry.setMethod(isStoredMimetype(contentData.getMimetype()) ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+
+        if (scatterZipCreator != null)
+        {
+            // The stream passed in is closed once this returns, so the worker opens its own
+            final String contentUrl = contentData.getContentUrl();
+            // The compression threads have no security context, which the tenant routing store needs to find the content
+            scatterZipCreator.addArchiveEntry(zipEntry, () -> TenantUtil.runAsUserTenant(
+                    () -> new ProgressInputStream(contentService.getRawReader(contentUrl).getContentInputStream()),
+                    runAsUser, runAsDomain));
+            filesAddedCount = filesAddedCount + 1;
+
+            if (done.get() - doneAtLastUpdate >= STATUS_UPDATE_BYTES)
+            {
+                updateStatus();
+                checkCancelled();
+            }
+            return;
+        }
+
         try
         {
-            // ALF-2016
-            ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
             zipStream.putArchiveEntry(zipEntry);
             
             // copy export stream to zip
@@ -190,6 +281,18 @@ public class ZipDownloadExporter extends BaseExporter
     @Override
     public void end()
     {
+        try
+        {
+            if (scatterZipCreator != null)
+            {
+                gatherEntries();
+            }
+        }
+        finally
+        {
+            releaseCompression();
+        }
+
         try
         {
             zipStream.close();
@@ -200,6 +303,104 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Releases the compression threads, their temporary files and the zip file, whether or not the export got as far
+     * as {@link #end()}. It is safe to call more than once.
+     */
+    public void close()
+    {
+        releaseCompression();
+        try
+        {
+            zipStream.close();
+        }
+        catch (IOException error)
+        {
+            log.debug("Failed to close zip stream", error);
+        }
+    }
+
+    /**
+     * Waits for the workers to compress the remaining entries, still updating the status, and then writes the
+     * compressed entries to the zip.
+     */
+    private void gatherEntries()
+    {
+        compressionExecutor.shutdown();
+        try
+        {
+            while (!compressionExecutor.awaitTermination(STATUS_UPDATE_WAIT_SECONDS, TimeUnit.SECONDS))
+            {
+                updateStatus();
+                checkCancelled();
+            }
+            scatterZipCreator.writeTo(zipStream);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ExporterException("Interrupted while compressing zip entries", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new ExporterException("Failed to zip export stream", e.getCause());
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Failed to zip export stream", e);
+        }
+    }
+
+    /**
+     * Stops the compression threads, without waiting for any entry still being compressed, and deletes their
+     * temporary files.
+     */
+    private void releaseCompression()
+    {
+        if (compressionExecutor == null)
+        {
+            return;
+        }
+        compressionExecutor.shutdownNow();
+        synchronized (scatterStores)
+        {
+            for (ScatterGatherBackingStore scatterStore : scatterStores)
+            {
+                try
+                {
+                    scatterStore.close();
+                }
+                catch (IOException error)
+                {
+                    log.debug("Failed to remove scatter file", error);
+                }
+            }
+            scatterStores.clear();
+        }
+        compressionExecutor = null;
+        scatterZipCreator = null;
+    }
+
+    private boolean isStoredMimetype(String mimetype)
+    {
+        if (mimetype == null)
+        {
+            return false;
+        }
+        if (storedMimetypes.contains(mimetype))
+        {
+            return true;
+        }
+        for (String storedMimetype : storedMimetypes)
+        {
+            if (storedMimetype.endsWith("*") && mimetype.startsWith(storedMimetype.substring(0, storedMimetype.length() - 1)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String getPath()
     {
         if (path.size() < 1) 
@@ -240,7 +441,7 @@ public class ZipDownloadExporter extends BaseExporter
         while (read != -1)
         {
             output.write(buffer, 0, read);
-            done = done + read;
+            done.addAndGet(read);
             
             // ALF-16289 - only update the status every 10MB
             if (i++%500 == 0)
@@ -267,12 +468,15 @@ public class ZipDownloadExporter extends BaseExporter
         if ( downloadCancelled == true)
         {
             log.debug("Download cancelled");
+            releaseCompression();
             throw new DownloadCancelledException();
         }
     }
 
     private void updateStatus()
     {
+        final long done = this.done.get();
+        doneAtLastUpdate = done;
         transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
         {
             @Override
@@ -293,7 +497,7 @@ public class ZipDownloadExporter extends BaseExporter
 
     public long getDone()
     {
-        return done;
+        return done.get();
     }
 
     public long getTotal()
@@ -310,4 +514,37 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+
+    /**
+     * Counts the bytes read by the compression workers towards the download progress.
+     */
+    private class ProgressInputStream extends FilterInputStream
+    {
+        ProgressInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int read = super.read();
+            if (read != -1)
+            {
+                done.incrementAndGet();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            if (read > 0)
+            {
+                done.addAndGet(read);
+            }
+            return read;
+        }
+    }
 }
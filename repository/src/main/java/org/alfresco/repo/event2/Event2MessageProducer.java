@@ -60,6 +60,26 @@ public class Event2MessageProducer extends AbstractEventProducer implements Init
         send(this.endpoint, null, event, null);
     }
 
+    /**
+     * Serialize an event into the message body that {@link #send(Object)} would send.
+     * The result can be sent later on as it is.
+     */
+    public String toJson(Object event)
+    {
+        if (event instanceof String)
+        {
+            return (String) event;
+        }
+        try
+        {
+            return this.objectMapper.writeValueAsString(event);
+        }
+        catch (Exception e)
+        {
+            throw new AlfrescoRuntimeException(ERROR_SENDING, e);
+        }
+    }
+
     @Override
     public void send(String endpointUri, ExchangePattern exchangePattern, Object event, Map<String, Object> headers)
     {
@@ -25,39 +25,156 @@
  */
 package org.alfresco.repo.event2;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.repo.event.v1.model.RepoEvent;
 import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
 /*
  * This queue allows to create asynchronously the RepoEvent offloading the work to a ThreadPool but
- * at the same time it preserves the order of the events
+ * at the same time it preserves the order of the events.
+ *
+ * The queue is bounded by maxQueueSize; when it is full the overflowPolicy decides whether the caller
+ * waits for space (BLOCK), the event is made straight away and journaled to disk (SPILL) or the event
+ * is discarded (DROP). Events are dequeued in batches of up to batchSize and sent in order, one message
+ * per event.
  */
-public class EventGeneratorQueue implements InitializingBean
+public class EventGeneratorQueue implements InitializingBean, DisposableBean
 {
 	protected static final Log LOGGER = LogFactory.getLog(EventGeneratorQueue.class);
-    
+
+    /**
+     * What to do with a new event when the queue is full
+     */
+    public enum OverflowPolicy
+    {
+        /** Wait until there is space in the queue */
+        BLOCK,
+        /** Make the event straight away and append it to a journal on disk until the queue has drained */
+        SPILL,
+        /** Discard the event */
+        DROP
+    }
+
+    public static final String METRIC_EVENTS = "alfresco.event2.events";
+    public static final String METRIC_MAKE = "alfresco.event2.make";
+    public static final String METRIC_SEND = "alfresco.event2.send";
+    public static final String METRIC_QUEUE_SIZE = "alfresco.event2.queue.size";
+    public static final String METRIC_SPILL_SIZE = "alfresco.event2.spill.size";
+
+    private static final long POLL_TIMEOUT_MS = 1000L;
+    private static final long DROP_WARNING_INTERVAL = 1000L;
+
     protected Executor enqueueThreadPoolExecutor;
     protected Executor dequeueThreadPoolExecutor;
     protected Event2MessageProducer event2MessageProducer;
-    protected BlockingQueue<EventInMaking> queue = new LinkedBlockingQueue<>();
+    protected BlockingQueue<EventInMaking> queue;
     protected Runnable listener = createListener();
 
+    private int maxQueueSize = 10000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int batchSize = 100;
+    private MeterRegistry meterRegistry;
+
+    private final Object spillLock = new Object();
+    private final EventSpillJournal spillJournal = new EventSpillJournal();
+    /** Set while events are being spilled; new events must go to the journal to keep their order */
+    private volatile boolean spilling;
+    /** The next journal slot to hand out when an event is accepted for spilling, guarded by spillLock */
+    private long nextSpillSlot;
+    /** The journal slot whose event is appended next, guarded by spillLock; slots below nextSpillSlot are still pending */
+    private long nextAppendSlot;
+    private final AtomicLong dropCount = new AtomicLong();
+
+    private Timer makeTimer;
+    private Timer sendTimer;
+    private Counter sentCounter;
+    private Counter failedCounter;
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+
     @Override
     public void afterPropertiesSet() throws Exception
     {
         PropertyCheck.mandatory(this, "enqueueThreadPoolExecutor", enqueueThreadPoolExecutor);
         PropertyCheck.mandatory(this, "dequeueThreadPoolExecutor", dequeueThreadPoolExecutor);
         PropertyCheck.mandatory(this, "event2MessageProducer", event2MessageProducer);
+        PropertyCheck.mandatory(this, "overflowPolicy", overflowPolicy);
+        PropertyCheck.mandatory(this, "meterRegistry", meterRegistry);
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Property 'batchSize' must be at least 1.");
+        }
+
+        // A bounded queue is a fixed ring buffer, so the heap it takes is known up front
+        queue = maxQueueSize > 0 ? new ArrayBlockingQueue<>(maxQueueSize) : new LinkedBlockingQueue<>();
+
+        makeTimer = Timer.builder(METRIC_MAKE)
+                .description("Time taken to create repository events")
+                .register(meterRegistry);
+        sendTimer = Timer.builder(METRIC_SEND)
+                .description("Time taken to send repository events")
+                .register(meterRegistry);
+        sentCounter = eventCounter("sent");
+        failedCounter = eventCounter("failed");
+        droppedCounter = eventCounter("dropped");
+        spilledCounter = eventCounter("spilled");
+        Gauge.builder(METRIC_QUEUE_SIZE, queue, BlockingQueue::size)
+                .description("Repository events waiting to be sent")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_SPILL_SIZE, spillJournal, EventSpillJournal::size)
+                .description("Repository events spilled to disk waiting to be sent")
+                .register(meterRegistry);
+
+        dequeueThreadPoolExecutor.execute(listener);
+    }
+
+    private Counter eventCounter(String outcome)
+    {
+        return Counter.builder(METRIC_EVENTS)
+                .description("Repository events by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        synchronized (spillLock)
+        {
+            if (!spillJournal.isEmpty())
+            {
+                LOGGER.warn("Discarding " + spillJournal.size() + " repository events spilled to disk on shutdown.");
+            }
+            spillJournal.close();
+        }
+    }
+
+    /**
+     * @param meterRegistry the registry the queue metrics are published to
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
     }
 
     public void setEvent2MessageProducer(Event2MessageProducer event2MessageProducer)
@@ -73,7 +190,30 @@ public class EventGeneratorQueue implements InitializingBean
     public void setDequeueThreadPoolExecutor(Executor dequeueThreadPoolExecutor)
     {
         this.dequeueThreadPoolExecutor = dequeueThreadPoolExecutor;
-        dequeueThreadPoolExecutor.execute(listener);
+    }
+
+    /**
+     * @param maxQueueSize the number of events that may wait to be sent, or zero or less for no limit
+     */
+    public void setMaxQueueSize(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * @param overflowPolicy what to do with new events while the queue is full
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @param batchSize the maximum number of events taken off the queue at a time
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
     }
 
     /**
@@ -83,11 +223,14 @@ public class EventGeneratorQueue implements InitializingBean
     public void accept(Callable<RepoEvent<?>> maker)
     {
         EventInMaking eventInMaking = new EventInMaking(maker);
-        queue.offer(eventInMaking);
+        if (!enqueue(eventInMaking))
+        {
+            return;
+        }
         enqueueThreadPoolExecutor.execute(() -> {
             try
             {
-                eventInMaking.make();
+                make(eventInMaking);
             }
             catch (Exception e)
             {
@@ -96,6 +239,220 @@ public class EventGeneratorQueue implements InitializingBean
         });
     }
 
+    /**
+     * Put the event on the queue, applying the overflow policy if the queue is full.
+     * @return true if the event was queued and still has to be made
+     */
+    private boolean enqueue(EventInMaking eventInMaking)
+    {
+        switch (overflowPolicy)
+        {
+            case SPILL:
+                long slot;
+                synchronized (spillLock)
+                {
+                    if (!spilling && queue.offer(eventInMaking))
+                    {
+                        return true;
+                    }
+                    spilling = true;
+                    slot = nextSpillSlot++;
+                }
+                spill(eventInMaking, slot);
+                return false;
+            case DROP:
+                if (queue.offer(eventInMaking))
+                {
+                    return true;
+                }
+                drop(eventInMaking);
+                return false;
+            default:
+                try
+                {
+                    queue.put(eventInMaking);
+                    return true;
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    drop(eventInMaking);
+                    return false;
+                }
+        }
+    }
+
+    private void make(EventInMaking eventInMaking) throws Exception
+    {
+        long start = System.nanoTime();
+        try
+        {
+            eventInMaking.make();
+        }
+        finally
+        {
+            makeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Make the event on the calling thread and append it to the journal. Events are made concurrently,
+     * but each waits for its slot so that they reach the journal in the order they were accepted.
+     */
+    private void spill(EventInMaking eventInMaking, long slot)
+    {
+        String json = null;
+        boolean failed = true;
+        try
+        {
+            make(eventInMaking);
+            RepoEvent<?> event = eventInMaking.getEventWhenReady();
+            if (event != null)
+            {
+                json = event2MessageProducer.toJson(event);
+            }
+            failed = false;
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Unexpected error while spilling repository event " + eventInMaking + ", the event is lost: " + e);
+        }
+        finally
+        {
+            append(eventInMaking, slot, json, failed);
+        }
+    }
+
+    private void append(EventInMaking eventInMaking, long slot, String json, boolean failed)
+    {
+        synchronized (spillLock)
+        {
+            boolean interrupted = false;
+            while (nextAppendSlot != slot)
+            {
+                try
+                {
+                    spillLock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    // The slot must still be filled or every later event would wait for it forever
+                    interrupted = true;
+                }
+            }
+            try
+            {
+                if (failed)
+                {
+                    droppedCounter.increment();
+                }
+                else if (json != null)
+                {
+                    spillJournal.append(json);
+                    spilledCounter.increment();
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Unable to spill repository event " + eventInMaking + " to disk, the event is lost: " + e);
+                droppedCounter.increment();
+            }
+            finally
+            {
+                nextAppendSlot++;
+                // Wake the next event in line, and the listener if it is waiting for this event to reach the journal
+                spillLock.notifyAll();
+                if (interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void drop(EventInMaking eventInMaking)
+    {
+        droppedCounter.increment();
+        if (dropCount.getAndIncrement() % DROP_WARNING_INTERVAL == 0)
+        {
+            LOGGER.warn("The repository event queue is full, dropping event " + eventInMaking
+                    + " (" + dropCount.get() + " dropped so far).");
+        }
+    }
+
+    private void send(Object event)
+    {
+        if (event == null)
+        {
+            return;
+        }
+        long start = System.nanoTime();
+        try
+        {
+            event2MessageProducer.send(event);
+            sentCounter.increment();
+        }
+        catch (Exception | Error e)
+        {
+            // Errors are consumed as well so that the rest of the batch is still sent
+            failedCounter.increment();
+            LOGGER.error("Unexpected error while sending repository event" + e);
+        }
+        finally
+        {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Send the next batch of spilled events. Only called once the in-memory queue is empty,
+     * as everything in it was queued before spilling started. If the journal is empty but events
+     * are still being spilled, waits for them to be appended rather than polling again straight away.
+     */
+    private void sendSpilled()
+    {
+        List<String> events;
+        synchronized (spillLock)
+        {
+            try
+            {
+                events = spillJournal.read(batchSize);
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Unable to read repository events spilled to disk, discarding " + spillJournal.size() + " events: " + e);
+                events = new ArrayList<>();
+                try
+                {
+                    spillJournal.close();
+                }
+                catch (IOException ce)
+                {
+                    LOGGER.error("Unable to close the repository event spill journal: " + ce);
+                }
+            }
+            if (spillJournal.isEmpty() && nextAppendSlot == nextSpillSlot)
+            {
+                spilling = false;
+            }
+            else if (events.isEmpty())
+            {
+                try
+                {
+                    spillLock.wait(POLL_TIMEOUT_MS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        for (String event : events)
+        {
+            send(event);
+        }
+    }
+
     /**
      * Create listener task in charge of dequeuing and sending events ready to be sent.
      * @return The task in charge of dequeuing and sending events ready to be sent.
@@ -109,21 +466,34 @@ public class EventGeneratorQueue implements InitializingBean
             {
                 try 
                 {
+                    List<EventInMaking> batch = new ArrayList<>();
                     while (!Thread.interrupted())
                     {
                         try
                         {
-                            EventInMaking eventInMaking = queue.take();
-                            RepoEvent<?> event = eventInMaking.getEventWhenReady();
-                            if (event != null)
+                            EventInMaking eventInMaking = spilling ? queue.poll() : queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                            if (eventInMaking != null)
+                            {
+                                batch.add(eventInMaking);
+                                queue.drainTo(batch, batchSize - 1);
+                                for (EventInMaking next : batch)
+                                {
+                                    send(next.getEventWhenReady());
+                                }
+                            }
+                            else if (spilling)
                             {
-                                event2MessageProducer.send(event);
+                                sendSpilled();
                             }
                         }
                         catch (Exception e)
                         {
                             LOGGER.error("Unexpected error while dequeuing and sending repository event" + e);
                         }
+                        finally
+                        {
+                            batch.clear();
+                        }
                     }
                 }
                 finally
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.util.TempFileProvider;
+
+/**
+ * A first-in-first-out journal of serialized events, used by the {@link EventGeneratorQueue}
+ * to spill events to disk when its in-memory queue is full.
+ * <p>
+ * Entries are appended as length-prefixed UTF-8 strings to a temporary file which is
+ * truncated as soon as every entry has been read back. The journal does not survive a restart.
+ * This class is not thread safe; callers must synchronize access.
+ *
+ * @since 7.1
+ */
+class EventSpillJournal
+{
+    private RandomAccessFile file;
+    private File path;
+    private long writePosition;
+    private long readPosition;
+    private int size;
+
+    /**
+     * @return the number of entries that have not been read yet
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Append an entry to the end of the journal.
+     */
+    public void append(String entry) throws IOException
+    {
+        if (file == null)
+        {
+            path = TempFileProvider.createTempFile("event2_spill_", ".journal");
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+        }
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        file.seek(writePosition);
+        file.writeInt(bytes.length);
+        file.write(bytes);
+        writePosition = file.getFilePointer();
+        size++;
+    }
+
+    /**
+     * Read and remove up to <code>maxEntries</code> entries from the head of the journal.
+     */
+    public List<String> read(int maxEntries) throws IOException
+    {
+        List<String> entries = new ArrayList<>(Math.min(maxEntries, size));
+        if (size == 0)
+        {
+            return entries;
+        }
+        file.seek(readPosition);
+        while (size > 0 && entries.size() < maxEntries)
+        {
+            byte[] bytes = new byte[file.readInt()];
+            file.readFully(bytes);
+            entries.add(new String(bytes, StandardCharsets.UTF_8));
+            size--;
+        }
+        readPosition = file.getFilePointer();
+        if (size == 0)
+        {
+            // Everything has been read back so the space can be reclaimed
+            file.setLength(0);
+            writePosition = 0;
+            readPosition = 0;
+        }
+        return entries;
+    }
+
+    /**
+     * Discard any remaining entries and delete the journal file.
+     */
+    public void close() throws IOException
+    {
+        size = 0;
+        writePosition = 0;
+        readPosition = 0;
+        if (file != null)
+        {
+            file.close();
+            file = null;
+            path.delete();
+        }
+    }
+}
@@ -717,17 +717,16 @@ public class AlfrescoImapFolder extends AbstractImapFolder implements Serializab
         {
             logger.debug("[getNonDeletedMessagesInternal] " + this);
         }
-        List<SimpleStoredMessage> result = new ArrayList<SimpleStoredMessage>();
-
-        Collection<SimpleStoredMessage> values = getMessagesInternal();
-        for (SimpleStoredMessage message : values)
+        // Check the flags against the UID index first, so that only the messages we return are built
+        List<FileInfo> nonDeleted = new ArrayList<FileInfo>();
+        for (FileInfo fileInfo : searchMails().values())
         {
-            if (!getFlags(message).contains(Flags.Flag.DELETED))
+            if (!imapService.getFlags(fileInfo).contains(Flags.Flag.DELETED))
             {
-                result.add(message);
+                nonDeleted.add(fileInfo);
             }
-
         }
+        List<SimpleStoredMessage> result = new ArrayList<SimpleStoredMessage>(convertToMessages(nonDeleted));
         if (logger.isDebugEnabled() && folderInfo != null)
         {
             logger.debug(folderInfo.getName() + " - Non deleted messages count:" + result.size());
@@ -906,11 +905,6 @@ public class AlfrescoImapFolder extends AbstractImapFolder implements Serializab
 
     }
 
-    private Flags getFlags(SimpleStoredMessage mess)
-    {
-        return ((AbstractMimeMessage) mess.getMimeMessage()).getFlags();
-    }
-
     // ----------------------Getters and Setters----------------------------
 
     public String getFolderPath()
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.imap;
+
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.model.FileInfo;
+
+/**
+ * Message rebuilt from the RFC822 bytes held by the IMAP message cache.
+ * <p>
+ * Only the headers are parsed; the body remains a view onto the cached bytes, which are shared rather
+ * than copied.  Flags are still read from the repository through the {@link FileInfo} of the message.
+ * 
+ * @since 7.1
+ */
+public class CachedImapMessage extends AbstractMimeMessage
+{
+    /**
+     * Constructs {@link CachedImapMessage} object.
+     * 
+     * @param fileInfo - reference to the {@link FileInfo} object representing the message.
+     * @param serviceRegistry - serviceRegistry object.
+     * @param rfc822 - the message as previously written by {@link javax.mail.internet.MimeMessage#writeTo(java.io.OutputStream)}.
+     * 
+     * @throws MessagingException if the bytes can't be parsed.
+     */
+    public CachedImapMessage(FileInfo fileInfo, ServiceRegistry serviceRegistry, byte[] rfc822) throws MessagingException
+    {
+        super(Session.getDefaultInstance(new Properties()));
+        checkParameter(serviceRegistry, "ServiceRegistry");
+        this.serviceRegistry = serviceRegistry;
+        this.imapService = serviceRegistry.getImapService();
+        this.messageFileInfo = fileInfo;
+        parse(new SharedByteArrayInputStream(rfc822));
+        // The cached bytes already carry the generated Message-ID and headers
+        modified = false;
+        saved = true;
+    }
+
+    @Override
+    public void buildMessageInternal() throws MessagingException
+    {
+        // Nothing to build, the message was parsed from the cache
+    }
+}
@@ -27,6 +27,7 @@ package org.alfresco.repo.imap;
 
 import static org.alfresco.repo.imap.AlfrescoImapConst.DICTIONARY_TEMPLATE_PREFIX;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -46,7 +47,6 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.mail.Flags;
 import javax.mail.Header;
@@ -61,6 +61,7 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.model.ImapModel;
 import org.alfresco.repo.admin.SysAdminParams;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.SimpleCacheEntryWeigher;
 import org.alfresco.repo.imap.AlfrescoImapConst.ImapViewMode;
 import org.alfresco.repo.imap.config.ImapConfigMountPointsBean;
 import org.alfresco.repo.imap.exception.AlfrescoImapRuntimeException;
@@ -108,7 +109,6 @@ import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.FileFilterMode;
 import org.alfresco.util.FileFilterMode.Client;
 import org.alfresco.util.GUID;
-import org.alfresco.util.MaxSizeMap;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.config.RepositoryFolderConfigBean;
@@ -118,6 +118,9 @@ import org.springframework.context.ApplicationEvent;
 import org.springframework.extensions.surf.util.AbstractLifecycleBean;
 import org.springframework.extensions.surf.util.I18NUtil;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.SimpleStoredMessage;
 
@@ -151,11 +154,12 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     private AttachmentsExtractor attachmentsExtractor;
 
     // Note that this cache need not be cluster synchronized, as it is keyed by the cluster-safe 
-    // change token.  Key is username, changeToken
-    private Map<Pair<String, String>, FolderStatus> folderCache;
+    // change token.  Key is username, changeToken.  Each entry is the user's UID index for the folder.
+    private Cache<Pair<String, String>, FolderStatus> folderCache;
     private int folderCacheSize = 1000;
-    private ReentrantReadWriteLock folderCacheLock = new ReentrantReadWriteLock();
+    private long folderCacheMaxBytes = 0L;
     private SimpleCache<NodeRef, CacheItem> messageCache;
+    private int messageCacheMaxMessageSize = 1048576;
     private Map<String, ImapConfigMountPointsBean> imapConfigMountPoints;
     private Map<String, Integer> mountPointIds;
     private RepositoryFolderConfigBean[] ignoreExtractionFoldersBeans;
@@ -249,6 +253,15 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         this.messageCache = messageCache;
     }
 
+    /**
+     * @param messageCacheMaxMessageSize   the largest message, in bytes, that is kept in the message cache.
+     *                                     Larger messages are rebuilt from the repository when requested.
+     */
+    public void setMessageCacheMaxMessageSize(int messageCacheMaxMessageSize)
+    {
+        this.messageCacheMaxMessageSize = messageCacheMaxMessageSize;
+    }
+
     public void setFileFolderService(FileFolderService fileFolderService)
     {
         this.fileFolderService = fileFolderService;
@@ -290,6 +303,15 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         this.folderCacheSize = folderCacheSize;
     }
 
+    /**
+     * @param folderCacheMaxBytes   the maximum estimated heap size of the folder status cache in bytes.
+     *                              When zero or less, the cache is bounded by the folder cache size instead.
+     */
+    public void setFolderCacheMaxBytes(long folderCacheMaxBytes)
+    {
+        this.folderCacheMaxBytes = folderCacheMaxBytes;
+    }
+
     public String getDefaultFromAddress()
     {
         return defaultFromAddress;
@@ -391,7 +413,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         PropertyCheck.mandatory(this, "policyBehaviourFilter", policyBehaviourFilter);
         PropertyCheck.mandatory(this, "namespaceService", namespaceService);
         PropertyCheck.mandatory(this, "searchService", getSearchService());
-        this.folderCache = new MaxSizeMap<Pair<String,String>, FolderStatus>(folderCacheSize, false);
+        this.folderCache = createFolderCache(folderCacheSize, folderCacheMaxBytes);
         
         // be sure that a default e-mail is correct
         try
@@ -536,11 +558,22 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             {
                 if (cached.getModified().equals(modified))
                 {
-                    return cached.getMessage();
+                    // Rebuild from the cached bytes, without going to the content store or the templates
+                    Long key = (Long) mesInfo.getProperties().get(ContentModel.PROP_NODE_DBID);
+                    return new SimpleStoredMessage(new CachedImapMessage(mesInfo, serviceRegistry, cached.getMessage()), new Date(), key);
                 }
             }
             SimpleStoredMessage message = createImapMessage(mesInfo, true);
-            messageCache.put(nodeRef, new CacheItem(modified, message));            
+            byte[] rfc822 = writeMessage(message.getMimeMessage(), messageCacheMaxMessageSize);
+            if (rfc822 != null)
+            {
+                messageCache.put(nodeRef, new CacheItem(modified, rfc822));
+            }
+            else
+            {
+                // Too big to keep; it will be rebuilt when next requested
+                messageCache.remove(nodeRef);
+            }
             return message;
         }
         else
@@ -550,6 +583,55 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         }
     }
         
+    /**
+     * Write the message in RFC822 format, provided it is no larger than the given size.
+     * 
+     * @return the message bytes or <tt>null</tt> if the message is too large
+     */
+    static byte[] writeMessage(MimeMessage message, int maxSize) throws MessagingException
+    {
+        if (maxSize <= 0)
+        {
+            return null;
+        }
+        // Generated messages report -1, so the size is only known once they have been written
+        int size = message.getSize();
+        if (size > maxSize)
+        {
+            return null;
+        }
+        BoundedOutputStream os = new BoundedOutputStream(size > 0 ? size + 1024 : 8192, maxSize);
+        try
+        {
+            message.writeTo(os);
+        }
+        catch (MessageTooLargeException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new MessagingException("Failed to write message for the message cache.", e);
+        }
+        return os.toByteArray();
+    }
+    
+    /**
+     * Creates the folder status cache, bounded by estimated heap size if <tt>maxBytes</tt> is set and by entry count otherwise.
+     */
+    static Cache<Pair<String, String>, FolderStatus> createFolderCache(int maxSize, long maxBytes)
+    {
+        // Caffeine rather than a synchronized map, so that concurrent clients don't queue on one lock
+        if (maxBytes > 0)
+        {
+            return Caffeine.newBuilder().maximumWeight(maxBytes).weigher(new FolderStatusWeigher()).build();
+        }
+        else
+        {
+            return Caffeine.newBuilder().maximumSize(maxSize).build();
+        }
+    }
+
     public SimpleStoredMessage createImapMessage(FileInfo fileInfo, boolean generateBody) throws MessagingException
     {
         // TODO MER 26/11/2010- this test should really be that the content of the node is of type message/RFC822
@@ -857,18 +939,10 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         if (changeToken != null)
         {
             cacheKey = new Pair<String, String>(userName, changeToken);
-            this.folderCacheLock.readLock().lock();
-            try
-            {
-                FolderStatus result = this.folderCache.get(cacheKey);
-                if (result != null)
-                {
-                    return result;
-                }
-            }
-            finally
+            FolderStatus result = this.folderCache.getIfPresent(cacheKey);
+            if (result != null)
             {
-                this.folderCacheLock.readLock().unlock();
+                return result;
             }
         }
         
@@ -953,31 +1027,22 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         Long uidValidity = (Long) nodeService.getProperty(contextNodeRef, ImapModel.PROP_UIDVALIDITY);
         FolderStatus result = new FolderStatus(messageCount, recentCount, firstUnseen, unseenCount,
                 uidValidity == null ? 0 : uidValidity, changeToken, currentSearch);
-        this.folderCacheLock.writeLock().lock();
-        try
+        FolderStatus oldResult = this.folderCache.asMap().putIfAbsent(cacheKey, result);
+        if (oldResult != null)
         {
-            FolderStatus oldResult = this.folderCache.get(cacheKey);
-            if (oldResult != null)
-            {
-                if(logger.isDebugEnabled())
-                {
-                    logger.debug("At end of getFolderStatus. Found info in cache, changeToken:" + changeToken);
-                }
-         
-                return oldResult;
-            }
-            this.folderCache.put(cacheKey, result);
-
             if(logger.isDebugEnabled())
             {
-                logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken);
+                logger.debug("At end of getFolderStatus. Found info in cache, changeToken:" + changeToken);
             }
-            return result;
+     
+            return oldResult;
         }
-        finally
+
+        if(logger.isDebugEnabled())
         {
-            this.folderCacheLock.writeLock().unlock();
+            logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken);
         }
+        return result;
     }
 
     public void subscribe(AlfrescoImapUser user, String mailbox)
@@ -2258,12 +2323,89 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         return false; 
     }
     
-    static class CacheItem
+    /**
+     * Estimates the heap held by a folder status, which is dominated by the {@link FileInfo}s of its UID index.
+     */
+    static class FolderStatusWeigher implements Weigher<Pair<String, String>, FolderStatus>
+    {
+        private static final int FOLDER_STATUS_OVERHEAD = 256;
+        private static final int FILE_INFO_OVERHEAD = 96;
+        
+        private final SimpleCacheEntryWeigher weigher = new SimpleCacheEntryWeigher();
+        
+        @Override
+        public int weigh(Pair<String, String> key, FolderStatus status)
+        {
+            long weight = FOLDER_STATUS_OVERHEAD + weigher.estimate(key.getFirst()) + weigher.estimate(key.getSecond());
+            for (FileInfo fileInfo : status.search.values())
+            {
+                weight += FILE_INFO_OVERHEAD + weigher.estimate(fileInfo.getProperties());
+            }
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+        }
+    }
+    
+    /**
+     * Buffers a message for the message cache, giving up as soon as it grows past the limit rather than
+     * holding the whole message (attachments included) in memory first.
+     */
+    private static class BoundedOutputStream extends ByteArrayOutputStream
+    {
+        private final int maxSize;
+        
+        BoundedOutputStream(int initialSize, int maxSize)
+        {
+            super(Math.min(initialSize, maxSize + 1));
+            this.maxSize = maxSize;
+        }
+        
+        @Override
+        public synchronized void write(int b)
+        {
+            checkSize(1);
+            super.write(b);
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+        {
+            checkSize(len);
+            super.write(b, off, len);
+        }
+        
+        private void checkSize(int len)
+        {
+            if ((long) count + len > maxSize)
+            {
+                throw new MessageTooLargeException();
+            }
+        }
+    }
+    
+    /**
+     * Thrown by {@link BoundedOutputStream} once a message is too large to cache.
+     */
+    private static class MessageTooLargeException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+        
+        MessageTooLargeException()
+        {
+            super(null, null, false, false);
+        }
+    }
+    
+    /**
+     * Message cache entry, holding the message in RFC822 format rather than as a parsed {@link MimeMessage}.
+     */
+    static class CacheItem implements SimpleCacheEntryWeigher.Weighable
     {
+        private static final int CACHE_ITEM_OVERHEAD = 64;
+        
         private Date modified;
-        private SimpleStoredMessage message;
+        private byte[] message;
         
-        public CacheItem(Date modified, SimpleStoredMessage message)
+        public CacheItem(Date modified, byte[] message)
         {
             this.setMessage(message);
             this.setModified(modified);
@@ -2279,15 +2421,21 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             return modified;
         }
 
-        public void setMessage(SimpleStoredMessage message)
+        public void setMessage(byte[] message)
         {
             this.message = message;
         }
 
-        public SimpleStoredMessage getMessage()
+        public byte[] getMessage()
         {
             return message;
         }
+
+        @Override
+        public long getEstimatedSize()
+        {
+            return CACHE_ITEM_OVERHEAD + (message == null ? 0 : message.length);
+        }
     }    
 
     @Override
@@ -27,6 +27,7 @@ package org.alfresco.repo.model.filefolder;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -92,6 +93,15 @@ public class GetChildrenCannedQuery extends org.alfresco.repo.node.getchildren.G
         this.ignoreAspectQNames = ignoreAspectQNames;
     }
     
+    @Override
+    protected Set<QName> getFolderTypeQNames()
+    {
+        // ALF-13968 - the same types as are sorted as folders post query
+        Set<QName> folderTypeQNames = new HashSet<QName>(dictionaryService.getSubTypes(ContentModel.TYPE_FOLDER, true));
+        folderTypeQNames.add(ContentModel.TYPE_FOLDER);
+        return folderTypeQNames;
+    }
+    
     @Override
     protected UnsortedChildQueryCallback getUnsortedChildQueryCallback(final List<NodeRef> rawResult, final int requestedCount, GetChildrenCannedQueryParams paramBean)
     {
@@ -73,6 +73,15 @@ public interface NodeBulkLoader
      */
     public void cacheNodesById(List<Long> nodeIds);
     
+    /**
+     * Gets the IDs of the nodes currently held in the shared node cache, e.g. so that they can be
+     * {@link #cacheNodesById(List) pre-cached} again after a restart.
+     * 
+     * @param maxNodes          the maximum number of node IDs to return
+     * @return the IDs of the cached nodes, in no particular order
+     */
+    public List<Long> getCachedNodeIds(int maxNodes);
+    
     /**
      * <b>FOR TESTING ONLY: </b>Clears out node cache data
      */
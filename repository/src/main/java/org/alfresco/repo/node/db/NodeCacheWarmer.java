@@ -0,0 +1,371 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.node.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Keeps the node caches warm across restarts.
+ * <p>
+ * At shutdown the IDs of the nodes held in the node cache are written to a local snapshot file. At startup the
+ * snapshot is read back and the nodes, with their aspects and properties, are pre-loaded in batches through
+ * {@link NodeBulkLoader#cacheNodesById(List)}. The pre-loading runs in the background on a configurable number of
+ * threads and stops when its time budget runs out, so it never delays startup.
+ * <p>
+ * The snapshot holds the node IDs in ascending order, delta-encoded as variable-length integers, so a snapshot of a
+ * few hundred thousand nodes takes a few hundred kilobytes. Nodes deleted in the meantime are simply not found.
+ * 
+ * @since 7.1
+ */
+public class NodeCacheWarmer extends AbstractLifecycleBean
+{
+    private static final Log logger = LogFactory.getLog(NodeCacheWarmer.class);
+
+    /** Identifies a node cache snapshot file ("NCS1") */
+    private static final int SNAPSHOT_MAGIC = 0x4E435331;
+
+    private NodeBulkLoader nodeDAO;
+    private TransactionService transactionService;
+    private boolean enabled;
+    private String snapshotFile;
+    private int maxNodes = 100000;
+    private int batchSize = 500;
+    private int threadCount = 2;
+    private long timeBudgetSeconds = 300;
+
+    private volatile ExecutorService warmupExecutor;
+
+    public void setNodeDAO(NodeBulkLoader nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param enabled           <tt>true</tt> to snapshot the node cache at shutdown and pre-load it at startup
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param snapshotFile      the local file holding the IDs of the cached nodes between restarts
+     */
+    public void setSnapshotFile(String snapshotFile)
+    {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param maxNodes          the maximum number of node IDs to snapshot
+     */
+    public void setMaxNodes(int maxNodes)
+    {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param batchSize         the number of nodes pre-loaded in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param threadCount       the number of threads pre-loading nodes concurrently
+     */
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @param timeBudgetSeconds the time after which any nodes not yet pre-loaded are left to be loaded on demand
+     */
+    public void setTimeBudgetSeconds(long timeBudgetSeconds)
+    {
+        this.timeBudgetSeconds = timeBudgetSeconds;
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "nodeDAO", nodeDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "snapshotFile", snapshotFile);
+
+        File file = new File(snapshotFile);
+        if (!file.exists())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("No node cache snapshot found at " + file);
+            }
+            return;
+        }
+        long[] nodeIds;
+        try
+        {
+            nodeIds = readSnapshot(file);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to read the node cache snapshot " + file + ": " + e.getMessage());
+            return;
+        }
+        warmUp(nodeIds);
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        ExecutorService executor = warmupExecutor;
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+        if (!enabled)
+        {
+            return;
+        }
+        File file = new File(snapshotFile);
+        try
+        {
+            List<Long> nodeIds = nodeDAO.getCachedNodeIds(maxNodes);
+            writeSnapshot(file, nodeIds);
+            if (logger.isInfoEnabled())
+            {
+                logger.info("Saved the IDs of " + nodeIds.size() + " cached nodes to " + file);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.warn("Unable to save the node cache snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pre-load the given nodes in the background.
+     * 
+     * @return the number of batches submitted
+     */
+    int warmUp(final long[] nodeIds)
+    {
+        if (nodeIds.length == 0)
+        {
+            return 0;
+        }
+        final long start = System.currentTimeMillis();
+        final long deadline = start + TimeUnit.SECONDS.toMillis(timeBudgetSeconds);
+        final int batchCount = (nodeIds.length + batchSize - 1) / batchSize;
+        final AtomicInteger loadedCount = new AtomicInteger();
+        final AtomicInteger skippedCount = new AtomicInteger();
+        final AtomicInteger completedBatches = new AtomicInteger();
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("NodeCacheWarmer");
+        threadFactory.setThreadDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount), threadFactory);
+        warmupExecutor = executor;
+
+        for (int i = 0; i < nodeIds.length; i += batchSize)
+        {
+            final List<Long> batch = new ArrayList<Long>(batchSize);
+            for (int j = i; j < Math.min(i + batchSize, nodeIds.length); j++)
+            {
+                batch.add(nodeIds[j]);
+            }
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        preload(batch, deadline, loadedCount, skippedCount);
+                    }
+                    finally
+                    {
+                        if (completedBatches.incrementAndGet() == batchCount && logger.isInfoEnabled())
+                        {
+                            logger.info("Pre-loaded " + loadedCount.get() + " of " + nodeIds.length + " nodes from the node cache snapshot in "
+                                    + (System.currentTimeMillis() - start) + "ms (" + skippedCount.get() + " skipped)");
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        return batchCount;
+    }
+
+    private void preload(final List<Long> batch, long deadline, AtomicInteger loadedCount, AtomicInteger skippedCount)
+    {
+        if (System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted())
+        {
+            skippedCount.addAndGet(batch.size());
+            return;
+        }
+        try
+        {
+            transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    nodeDAO.cacheNodesById(batch);
+                    return null;
+                }
+            }, true, true);
+            loadedCount.addAndGet(batch.size());
+        }
+        catch (RuntimeException e)
+        {
+            skippedCount.addAndGet(batch.size());
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Failed to pre-load a batch of nodes: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the node IDs in ascending order, each as the variable-length difference from the previous one.
+     */
+    static void writeSnapshot(File file, List<Long> nodeIds) throws IOException
+    {
+        long[] sortedIds = new long[nodeIds.size()];
+        for (int i = 0; i < sortedIds.length; i++)
+        {
+            sortedIds[i] = nodeIds.get(i);
+        }
+        Arrays.sort(sortedIds);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists())
+        {
+            parent.mkdirs();
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+        {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(sortedIds.length);
+            long previous = 0L;
+            for (long nodeId : sortedIds)
+            {
+                writeVarLong(out, nodeId - previous);
+                previous = nodeId;
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static long[] readSnapshot(File file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != SNAPSHOT_MAGIC)
+            {
+                throw new IOException("Not a node cache snapshot");
+            }
+            int count = in.readInt();
+            if (count < 0)
+            {
+                throw new IOException("Invalid node count: " + count);
+            }
+            long[] nodeIds = new long[count];
+            long previous = 0L;
+            for (int i = 0; i < count; i++)
+            {
+                previous += readVarLong(in);
+                nodeIds[i] = previous;
+            }
+            return nodeIds;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed node cache snapshot");
+    }
+}
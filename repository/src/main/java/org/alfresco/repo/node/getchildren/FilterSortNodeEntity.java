@@ -62,6 +62,16 @@ public class FilterSortNodeEntity
 
     private Boolean isPrimary;
     
+    // Keyset (database sorted) query parameters and results
+    private String keysetSort;
+    private boolean keysetAscending = true;
+    private List<Long> keysetTypeQNameIds;
+    private boolean keysetTypeInclusive = true;
+    private String keysetValue;
+    private Long keysetNodeId;
+    private int keysetLimit;
+    private String sortValue;
+    
     /**
      * Default constructor
      */
@@ -258,4 +268,92 @@ public class FilterSortNodeEntity
     {
         this.isPrimary = isPrimary;
     }
+
+    /**
+     * @return              the column set to sort by in the database ("name", "created" or "modified")
+     */
+    public String getKeysetSort()
+    {
+        return keysetSort;
+    }
+
+    public void setKeysetSort(String keysetSort)
+    {
+        this.keysetSort = keysetSort;
+    }
+
+    public boolean isKeysetAscending()
+    {
+        return keysetAscending;
+    }
+
+    public void setKeysetAscending(boolean keysetAscending)
+    {
+        this.keysetAscending = keysetAscending;
+    }
+
+    public List<Long> getKeysetTypeQNameIds()
+    {
+        return keysetTypeQNameIds;
+    }
+
+    /**
+     * @param keysetTypeQNameIds    child node types to include or exclude (see {@link #setKeysetTypeInclusive(boolean)})
+     */
+    public void setKeysetTypeQNameIds(List<Long> keysetTypeQNameIds)
+    {
+        this.keysetTypeQNameIds = keysetTypeQNameIds;
+    }
+
+    public boolean isKeysetTypeInclusive()
+    {
+        return keysetTypeInclusive;
+    }
+
+    public void setKeysetTypeInclusive(boolean keysetTypeInclusive)
+    {
+        this.keysetTypeInclusive = keysetTypeInclusive;
+    }
+
+    public String getKeysetValue()
+    {
+        return keysetValue;
+    }
+
+    public Long getKeysetNodeId()
+    {
+        return keysetNodeId;
+    }
+
+    /**
+     * Continue after the given row of a previous keyset query, or start from the beginning if the node id is <tt>null</tt>
+     */
+    public void setKeysetStart(String keysetValue, Long keysetNodeId)
+    {
+        this.keysetValue = keysetValue;
+        this.keysetNodeId = keysetNodeId;
+    }
+
+    public int getKeysetLimit()
+    {
+        return keysetLimit;
+    }
+
+    public void setKeysetLimit(int keysetLimit)
+    {
+        this.keysetLimit = keysetLimit;
+    }
+
+    /**
+     * @return              the value the result was sorted by
+     */
+    public String getSortValue()
+    {
+        return sortValue;
+    }
+
+    public void setSortValue(String sortValue)
+    {
+        this.sortValue = sortValue;
+    }
 }
\ No newline at end of file
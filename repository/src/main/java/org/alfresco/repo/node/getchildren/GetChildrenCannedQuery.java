@@ -78,6 +78,11 @@ import org.springframework.extensions.surf.util.I18NUtil;
  * 
  * To get paged list of children of a parent node filtered by child type.
  * Also optionally filtered and/or sorted by one or more properties (up to three).
+ * <p/>
+ * If {@link #setKeysetSortEnabled(boolean) enabled}, queries sorted only by name, creation date or modification
+ * date (optionally after sorting folders first or last) are sorted by the database instead.  The children are then
+ * read a page at a time, each page continuing after the last row of the previous one, and permissions are applied
+ * as they are read so that only as many children as are needed to fill the requested page are loaded.
  *
  * @author janv
  * @since 4.0
@@ -89,6 +94,13 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     private static final String QUERY_NAMESPACE = "alfresco.node";
     private static final String QUERY_SELECT_GET_CHILDREN_WITH_PROPS = "select_GetChildrenCannedQueryWithProps";
     private static final String QUERY_SELECT_GET_CHILDREN_WITHOUT_PROPS = "select_GetChildrenCannedQueryWithoutProps";
+    private static final String QUERY_SELECT_GET_CHILDREN_KEYSET = "select_GetChildrenCannedQueryKeyset";
+    
+    private static final String KEYSET_SORT_NAME = "name";
+    private static final String KEYSET_SORT_CREATED = "created";
+    private static final String KEYSET_SORT_MODIFIED = "modified";
+    private static final int KEYSET_MIN_PAGE_SIZE = 64;
+    private static final int KEYSET_MAX_PAGE_SIZE = 256 * 4;
     
     public static final int MAX_FILTER_SORT_PROPS = 3;
     
@@ -109,6 +121,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     protected NodeService nodeService;
     
     private boolean applyPostQueryPermissions = false; // if true, the permissions will be applied post-query (else should be applied as part of the "queryAndFilter")
+    private boolean keysetSortEnabled = false;
     
     public GetChildrenCannedQuery(
             NodeDAO nodeDAO,
@@ -142,6 +155,25 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    /**
+     * @param keysetSortEnabled     <tt>true</tt> to let the database sort by name, creation or modification date
+     *                              (see class comments).  Note that the database collation decides the order of names.
+     */
+    public void setKeysetSortEnabled(boolean keysetSortEnabled)
+    {
+        this.keysetSortEnabled = keysetSortEnabled;
+    }
+    
+    /**
+     * Get the types that are sorted as folders when sorting by {@link #SORT_QNAME_NODE_IS_FOLDER} in the database.
+     * 
+     * @return              the folder types or <tt>null</tt> if sorting folders first or last is left to the post-query sort
+     */
+    protected Set<QName> getFolderTypeQNames()
+    {
+        return null;
+    }
+    
     protected FilterSortChildQueryCallback getFilterSortChildQuery(final List<FilterSortNode> children, final List<FilterProp> filterProps, GetChildrenCannedQueryParams paramBean)
     {
         Set<QName> inclusiveAspects = paramBean.getInclusiveAspects();
@@ -248,6 +280,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         
         
         List<NodeRef> result = new ArrayList<>(0);
+        String keysetSort = null;
         
         try
         {
@@ -294,7 +327,13 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
 	            params.setPattern(pattern);
 	        }
 	        
-	        if (filterSortPropCnt > 0)
+	        keysetSort = getKeysetSort(sortPairs, filterProps);
+	        if (keysetSort != null)
+	        {
+	            // sorted by the database - note: permissions are applied during result handling to allow early cutoff
+	            result = queryKeyset(params, keysetSort, sortPairs, parameters.getResultsRequired(), paramBean);
+	        }
+	        else if (filterSortPropCnt > 0)
 	        {
 	            // filtered and/or sorted - note: permissions will be applied post query
 	            final List<FilterSortNode> children = new ArrayList<FilterSortNode>(100);
@@ -342,13 +381,114 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         {
 	        if (start != null)
 	        {
-	            logger.debug("Base query "+(filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)")+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
+	            logger.debug("Base query "+(keysetSort != null ? "(sort=db, perms=y)" : filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)")+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
 	        }
         }
         
         return result;
     }
     
+    // Get the column to sort by in the database, or null if the results must be sorted post query
+    private String getKeysetSort(List<Pair<QName, SortOrder>> sortPairs, List<FilterProp> filterProps)
+    {
+        if (!keysetSortEnabled || filterProps.size() > 0 || sortPairs.isEmpty() || sortPairs.size() > 2)
+        {
+            return null;
+        }
+        if (sortPairs.size() == 2 && (!sortPairs.get(0).getFirst().equals(SORT_QNAME_NODE_IS_FOLDER) || getFolderTypeQNames() == null))
+        {
+            return null;
+        }
+        
+        QName sortQName = sortPairs.get(sortPairs.size() - 1).getFirst();
+        if (sortQName.equals(ContentModel.PROP_NAME))
+        {
+            return KEYSET_SORT_NAME;
+        }
+        else if (sortQName.equals(ContentModel.PROP_CREATED))
+        {
+            return KEYSET_SORT_CREATED;
+        }
+        else if (sortQName.equals(ContentModel.PROP_MODIFIED))
+        {
+            return KEYSET_SORT_MODIFIED;
+        }
+        return null;
+    }
+    
+    private List<NodeRef> queryKeyset(FilterSortNodeEntity params, String keysetSort, List<Pair<QName, SortOrder>> sortPairs, int requestedCount, GetChildrenCannedQueryParams paramBean)
+    {
+        params.setKeysetSort(keysetSort);
+        params.setKeysetAscending(sortPairs.get(sortPairs.size() - 1).getSecond() == SortOrder.ASCENDING);
+        if (keysetSort.equals(KEYSET_SORT_NAME))
+        {
+            Pair<Long, QName> nameQName = qnameDAO.getQName(ContentModel.PROP_NAME);
+            if (nameQName == null)
+            {
+                throw new AlfrescoRuntimeException("Unable to determine qname id of name property");
+            }
+            params.setNamePropertyQNameId(nameQName.getFirst());
+        }
+        
+        final List<NodeRef> rawResult = new ArrayList<NodeRef>(Math.min(1000, requestedCount));
+        UnsortedChildQueryCallback callback = getUnsortedChildQueryCallback(rawResult, requestedCount, paramBean);
+        UnsortedResultHandler resultHandler = new UnsortedResultHandler(callback);
+        
+        if (sortPairs.size() > 1)
+        {
+            // folders first (or last) - query the folders and the other children separately
+            List<Long> folderTypeQNameIds = new ArrayList<Long>(qnameDAO.convertQNamesToIds(getFolderTypeQNames(), false));
+            boolean foldersFirst = (sortPairs.get(0).getSecond() == SortOrder.DESCENDING);
+            queryKeysetRange(params, folderTypeQNameIds, foldersFirst, requestedCount, resultHandler);
+            queryKeysetRange(params, folderTypeQNameIds, !foldersFirst, requestedCount, resultHandler);
+        }
+        else
+        {
+            queryKeysetRange(params, null, true, requestedCount, resultHandler);
+        }
+        
+        // permissions have been applied
+        applyPostQueryPermissions = false;
+        return PermissionCheckedValueMixin.create(rawResult);
+    }
+    
+    private void queryKeysetRange(FilterSortNodeEntity params, List<Long> typeQNameIds, boolean typeInclusive, int requestedCount, UnsortedResultHandler resultHandler)
+    {
+        if ((typeQNameIds != null) && typeQNameIds.isEmpty())
+        {
+            if (typeInclusive)
+            {
+                // short-circuit - the given node type qname(s) do not exist
+                return;
+            }
+            typeQNameIds = null;
+        }
+        params.setKeysetTypeQNameIds(typeQNameIds);
+        params.setKeysetTypeInclusive(typeInclusive);
+        params.setKeysetStart(null, null);
+        
+        int pageSize = Math.max(KEYSET_MIN_PAGE_SIZE, Math.min(requestedCount, KEYSET_MAX_PAGE_SIZE));
+        while (resultHandler.more)
+        {
+            params.setKeysetLimit(pageSize);
+            KeysetResultHandler keysetHandler = new KeysetResultHandler(resultHandler);
+            cannedQueryDAO.executeQuery(QUERY_NAMESPACE, QUERY_SELECT_GET_CHILDREN_KEYSET, params, 0, Integer.MAX_VALUE, keysetHandler);
+            
+            // apply permissions to what has been read so far
+            resultHandler.done();
+            
+            if (keysetHandler.count < pageSize)
+            {
+                // last page
+                break;
+            }
+            params.setKeysetStart(keysetHandler.lastSortValue, keysetHandler.lastNodeId);
+            
+            // children are being filtered out (eg. by permissions) - read more at a time
+            pageSize = Math.min(pageSize * 2, KEYSET_MAX_PAGE_SIZE);
+        }
+    }
+    
     // Set filter/sort props (between 0 and 3)
     private int setFilterSortParams(List<QName> filterSortProps, FilterSortNodeEntity params)
     {
@@ -920,6 +1060,29 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    private class KeysetResultHandler implements CannedQueryDAO.ResultHandler<FilterSortNodeEntity>
+    {
+        private final UnsortedResultHandler resultHandler;
+        
+        private int count = 0;
+        private String lastSortValue;
+        private Long lastNodeId;
+        
+        private KeysetResultHandler(UnsortedResultHandler resultHandler)
+        {
+            this.resultHandler = resultHandler;
+        }
+        
+        public boolean handleResult(FilterSortNodeEntity result)
+        {
+            count++;
+            lastSortValue = result.getSortValue();
+            lastNodeId = result.getId();
+            
+            return resultHandler.handleResult(result.getNode());
+        }
+    }
+    
     private class UnsortedResultHandler implements CannedQueryDAO.ResultHandler<NodeEntity>
     {
         private final UnsortedChildQueryCallback resultsCallback;
@@ -71,6 +71,8 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     
     protected MethodSecurityBean<NodeRef> methodSecurity;
     
+    protected boolean keysetSortEnabled = false;
+    
     public void setDictionaryService(DictionaryService dictionaryService)
     {
         this.dictionaryService = dictionaryService;
@@ -115,13 +117,24 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     {
         this.methodSecurity = methodSecurity;
     }
+    
+    /**
+     * @param keysetSortEnabled     <tt>true</tt> to let the database sort children by name, creation or modification date
+     * @see GetChildrenCannedQuery#setKeysetSortEnabled(boolean)
+     */
+    public void setKeysetSortEnabled(boolean keysetSortEnabled)
+    {
+        this.keysetSortEnabled = keysetSortEnabled;
+    }
 
     @Override
     public CannedQuery<NodeRef> getCannedQuery(CannedQueryParameters parameters)
     {
         NodePropertyHelper nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
         
-        return (CannedQuery<NodeRef>) new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        GetChildrenCannedQuery cq = new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        cq.setKeysetSortEnabled(keysetSortEnabled);
+        return (CannedQuery<NodeRef>) cq;
     }
     
     /**
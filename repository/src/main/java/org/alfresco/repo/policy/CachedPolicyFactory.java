@@ -25,20 +25,25 @@
  */
 package org.alfresco.repo.policy;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.alfresco.api.AlfrescoPublicApi;
-import org.alfresco.util.LockHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 
 /**
  * Policy Factory with caching support.
+ * <p>
+ * Policies are precompiled per binding into a dispatch table holding one aggregate policy for each dispatch mask of
+ * the behaviour index.  The table is an immutable snapshot that is read without locking and replaced when behaviours
+ * are bound or unbound.  When behaviour filters are active the filter only selects the mask, so filtered calls are
+ * served from the table as well.
  *
  * @author David Caruana
  *
@@ -53,27 +58,23 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
 
     // Behaviour Filter
     private BehaviourFilter behaviourFilter = null;
-    
-    // Cache Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
+
+    // Index able to select behaviours by dispatch mask (null if the index does not support it)
+    private ClassBehaviourIndex<ClassBehaviourBinding> classIndex;
 
     /**
-     * Cache for a single Policy interface (keyed by Binding)
-     */
-    private Map<B, P> singleCache = new HashMap<B, P>();
-    
-    /**
-     * Cache for a collection of Policy interfaces (keyed by Binding)
+     * Precompiled policies (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
-
-    // Try lock timeout (MNT-11371)
-    private long tryLockTimeout;
+    private final AtomicReference<DispatchTable<B, P>> dispatchTable = new AtomicReference<DispatchTable<B, P>>(new DispatchTable<B, P>());
 
 
+    /**
+     * Retained for compatibility: the cache is no longer guarded by a lock (MNT-11371)
+     * 
+     * @param tryLockTimeout  ignored
+     */
     public void setTryLockTimeout(long tryLockTimeout)
     {
-        this.tryLockTimeout = tryLockTimeout;
     }
 
 
@@ -83,10 +84,15 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
      * @param policyClass  the policy interface class
      * @param index  the behaviour index to search on
      */
+    @SuppressWarnings("unchecked")
     /*package*/ CachedPolicyFactory(Class<P> policyClass, BehaviourIndex<B> index)
     {
         super(policyClass, index);
         behaviourFilter = index.getFilter();
+        if (index instanceof ClassBehaviourIndex)
+        {
+            classIndex = (ClassBehaviourIndex<ClassBehaviourBinding>) index;
+        }
 
         // Register this cached policy factory as a change observer of the behaviour index
         // to allow for cache to be cleared appropriately.
@@ -94,14 +100,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCache(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCache(binding);
             }
         });
     }
@@ -110,161 +114,217 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     @Override
     public P create(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        int mask = getDispatchMask(binding);
+        if (mask < 0)
         {
             return super.create(binding);
         }
-        
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
-        {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-        }
-        finally
+        return getDispatch(binding).getPolicy(mask);
+    }
+    
+
+    @Override
+    public Collection<P> createList(B binding)
+    {
+        int mask = getDispatchMask(binding);
+        if (mask < 0)
         {
-            lock.readLock().unlock();
+            return super.createList(binding);
         }
-        
-        // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
-        try
+        return getDispatch(binding).getPolicyList(mask);
+    }
+
+
+    /**
+     * Gets the dispatch mask selecting the precompiled policy for the binding
+     * 
+     * @param binding  the binding
+     * @return  the mask, or -1 if the policy cannot be served from the cache
+     */
+    private int getDispatchMask(B binding)
+    {
+        if (behaviourFilter == null || !behaviourFilter.isActivated())
         {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-            policyInterface = super.create(binding);
-            singleCache.put(binding, policyInterface);
-            
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterface;
+            return ClassBehaviourIndex.ALL_BEHAVIOURS;
         }
-        finally
+        if (classIndex == null)
         {
-            lock.writeLock().unlock();
+            // The index applies the filter itself, so bypass the cache
+            return -1;
         }
+        return classIndex.getDispatchMask((ClassBehaviourBinding) binding);
     }
-    
 
-    @Override
-    public Collection<P> createList(B binding)
+
+    /**
+     * Gets the precompiled policies for the binding, compiling them on first use
+     * 
+     * @param binding  the binding
+     * @return  the precompiled policies
+     */
+    private Dispatch<P> getDispatch(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        DispatchTable<B, P> table = dispatchTable.get();
+        Dispatch<P> dispatch = table.dispatches.get(binding);
+        if (dispatch != null)
         {
-            return super.createList(binding);
+            return dispatch;
         }
-        
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
-        try
+
+        dispatch = compile(binding);
+
+        // Publish the new entry, unless behaviours changed while it was compiled
+        while (true)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            DispatchTable<B, P> current = dispatchTable.get();
+            if (current.generation != table.generation)
+            {
+                return dispatch;
+            }
+            Dispatch<P> existing = current.dispatches.get(binding);
+            if (existing != null)
+            {
+                return existing;
+            }
+            if (dispatchTable.compareAndSet(current, current.with(binding, dispatch)))
             {
-                return policyInterfaces;
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interfaces " + Arrays.toString(dispatch.policies) + " for " + binding + " and policy " + getPolicyClass());
+                return dispatch;
             }
         }
-        finally
+    }
+
+
+    /**
+     * Compile the policies for each dispatch mask of the binding
+     * 
+     * @param binding  the binding
+     * @return  the compiled policies
+     */
+    private Dispatch<P> compile(B binding)
+    {
+        Dispatch<P> dispatch = new Dispatch<P>();
+        if (classIndex == null)
         {
-            lock.readLock().unlock();
+            // Only reached with the filter inactive
+            Collection<P> policyList = super.createList(binding);
+            dispatch.policyLists[ClassBehaviourIndex.ALL_BEHAVIOURS] = policyList;
+            dispatch.policies[ClassBehaviourIndex.ALL_BEHAVIOURS] = toPolicy(policyList);
         }
-        
-        // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
-        try
+        else
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            for (int mask = 0; mask <= ClassBehaviourIndex.ALL_BEHAVIOURS; mask++)
             {
-                return policyInterfaces;
+                Collection<P> policyList = createList(classIndex.find((ClassBehaviourBinding) binding, mask));
+                dispatch.policyLists[mask] = policyList;
+                dispatch.policies[mask] = toPolicy(policyList);
             }
-            policyInterfaces = super.createList(binding);
-            listCache.put(binding, policyInterfaces);
-    
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterfaces;
-        }
-        finally
-        {
-            lock.writeLock().unlock();
         }
+        return dispatch;
     }
     
     /**
      * Clear entries in the cache based on binding changes.
      * 
-     * @param cacheDescription  description of cache to clear
-     * @param cache  the cache to clear
      * @param binding  the binding
      */
-    private void clearCache(String cacheDescription, Map<B, ?> cache, B binding)
+    private void clearCache(B binding)
     {
-        if (binding == null)
+        while (true)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
+            DispatchTable<B, P> current = dispatchTable.get();
+            DispatchTable<B, P> cleared = current.without(binding);
+            if (dispatchTable.compareAndSet(current, cleared))
             {
-                lock.writeLock().unlock();
+                if (logger.isDebugEnabled() && cleared.dispatches.size() != current.dispatches.size())
+                {
+                    logger.debug("Cleared " + (current.dispatches.size() - cleared.dispatches.size()) + " cached delegates for "
+                            + (binding == null ? "all class bindings" : binding) + " and policy " + getPolicyClass());
+                }
+                return;
             }
         }
-        else
+    }
+
+
+    /**
+     * Policies precompiled for one binding, indexed by dispatch mask
+     */
+    private static final class Dispatch<P>
+    {
+        private final Object[] policyLists = new Object[ClassBehaviourIndex.ALL_BEHAVIOURS + 1];
+        private final Object[] policies = new Object[ClassBehaviourIndex.ALL_BEHAVIOURS + 1];
+
+        @SuppressWarnings("unchecked")
+        private Collection<P> getPolicyList(int mask)
+        {
+            return (Collection<P>) policyLists[mask];
+        }
+
+        @SuppressWarnings("unchecked")
+        private P getPolicy(int mask)
         {
-            // A specific binding has been provided.  Build a list of entries
-            // that require removal.  An entry is removed if the binding in the
-            // list is equal or derived from the changed binding. 
-            Collection<B> invalidBindings = new ArrayList<B>();
-            for (B cachedBinding : cache.keySet())
+            return (P) policies[mask];
+        }
+    }
+
+
+    /**
+     * Immutable snapshot of the precompiled policies.  The generation changes whenever bound behaviours change.
+     */
+    private static final class DispatchTable<B extends BehaviourBinding, P>
+    {
+        private final long generation;
+        private final Map<B, Dispatch<P>> dispatches;
+
+        private DispatchTable()
+        {
+            this(0, Collections.<B, Dispatch<P>>emptyMap());
+        }
+
+        private DispatchTable(long generation, Map<B, Dispatch<P>> dispatches)
+        {
+            this.generation = generation;
+            this.dispatches = dispatches;
+        }
+
+        private DispatchTable<B, P> with(B binding, Dispatch<P> dispatch)
+        {
+            Map<B, Dispatch<P>> copy = new HashMap<B, Dispatch<P>>(dispatches);
+            copy.put(binding, dispatch);
+            return new DispatchTable<B, P>(generation, copy);
+        }
+
+        /**
+         * Remove the entries for the binding and every binding derived from it, or all entries if the binding is null
+         */
+        private DispatchTable<B, P> without(B binding)
+        {
+            Map<B, Dispatch<P>> copy = new HashMap<B, Dispatch<P>>(dispatches.size() * 2);
+            if (binding != null)
             {
-                // Determine if binding is equal or derived from changed binding
-                BehaviourBinding generalisedBinding = cachedBinding;
-                while(generalisedBinding != null)
+                for (Map.Entry<B, Dispatch<P>> entry : dispatches.entrySet())
                 {
-                    if (generalisedBinding.equals(binding))
+                    // Determine if binding is equal or derived from changed binding
+                    boolean invalid = false;
+                    BehaviourBinding generalisedBinding = entry.getKey();
+                    while (generalisedBinding != null)
                     {
-                        invalidBindings.add(cachedBinding);
-                        break;
+                        if (generalisedBinding.equals(binding))
+                        {
+                            invalid = true;
+                            break;
+                        }
+                        generalisedBinding = generalisedBinding.generaliseBinding();
                     }
-                    generalisedBinding = generalisedBinding.generaliseBinding();
-                }
-            }
-
-            // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
-            {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
+                    if (!invalid)
                     {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
+                        copy.put(entry.getKey(), entry.getValue());
                     }
                 }
-                finally
-                {
-                    lock.writeLock().unlock();
-                }
             }
+            return new DispatchTable<B, P>(generation + 1, copy);
         }
     }
 }
@@ -45,6 +45,16 @@ import org.alfresco.util.LockHelper;
  */
 /*package*/ class ClassBehaviourIndex<B extends ClassBehaviourBinding> implements BehaviourIndex<B>
 {
+    /**
+     * Dispatch mask bit selecting the class behaviours of a binding.  Service behaviours are always selected.
+     */
+    /*package*/ static final int CLASS_BEHAVIOURS = 1;
+
+    /**
+     * Dispatch mask selecting all behaviours of a binding
+     */
+    /*package*/ static final int ALL_BEHAVIOURS = CLASS_BEHAVIOURS;
+
     // Lock
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     
@@ -159,8 +169,33 @@ import org.alfresco.util.LockHelper;
     
 
     @Override
-    @SuppressWarnings("unchecked")
     public Collection<BehaviourDefinition> find(B binding)
+    {
+        return find(binding, getDispatchMask(binding));
+    }
+
+
+    /**
+     * Gets the dispatch mask that the behaviour filter currently allows for the binding
+     * 
+     * @param binding  the binding
+     * @return  {@link #ALL_BEHAVIOURS} or the mask without the filtered behaviours
+     */
+    /*package*/ int getDispatchMask(B binding)
+    {
+        return isEnabled(binding) ? ALL_BEHAVIOURS : ALL_BEHAVIOURS & ~CLASS_BEHAVIOURS;
+    }
+
+
+    /**
+     * Gets the bound behaviours selected by a dispatch mask, regardless of the behaviour filter
+     * 
+     * @param binding  the binding
+     * @param mask  the dispatch mask
+     * @return  the associated behaviours
+     */
+    @SuppressWarnings("unchecked")
+    /*package*/ Collection<BehaviourDefinition> find(B binding, int mask)
     {
         LockHelper.tryLock(lock.readLock(), tryLockTimeout, "searching behavior definitions list in 'ClassBehaviourIndex.find()'");
         
@@ -171,7 +206,7 @@ import org.alfresco.util.LockHelper;
             // Find class behaviour by scanning up the class hierarchy
             List<BehaviourDefinition<B>> behaviour = null;
 
-            if (isEnabled(binding))
+            if ((mask & CLASS_BEHAVIOURS) != 0)
             {
                 while (binding != null)
                 {
@@ -63,6 +63,7 @@ public class LocalTransformClient implements TransformClient, InitializingBean
     private RenditionService2Impl renditionService2;
 
     private ExecutorService executorService;
+    private RenditionScheduler renditionScheduler;
     private ThreadLocal<LocalTransform> transform = new ThreadLocal<>();
 
     public void setLocalTransformServiceRegistry(LocalTransformServiceRegistry localTransformServiceRegistry)
@@ -90,6 +91,15 @@ public class LocalTransformClient implements TransformClient, InitializingBean
         this.executorService = executorService;
     }
 
+    /**
+     * @param renditionScheduler    if set, transforms are run by this scheduler rather than the executor service,
+     *                              so that repeated requests are coalesced and interactive requests go first.
+     */
+    public void setRenditionScheduler(RenditionScheduler renditionScheduler)
+    {
+        this.renditionScheduler = renditionScheduler;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception
     {
@@ -97,7 +107,7 @@ public class LocalTransformClient implements TransformClient, InitializingBean
         PropertyCheck.mandatory(this, "transactionService", transactionService);
         PropertyCheck.mandatory(this, "contentService", contentService);
         PropertyCheck.mandatory(this, "renditionService2", renditionService2);
-        if (executorService == null)
+        if (executorService == null && renditionScheduler == null)
         {
             executorService = Executors.newCachedThreadPool();
         }
@@ -133,7 +143,7 @@ public class LocalTransformClient implements TransformClient, InitializingBean
         Map<String, String> actualOptions = renditionDefinition.getTransformOptions();
         LocalTransform localTransform = transform.get();
 
-        executorService.submit(() ->
+        Runnable work = () ->
         {
             AuthenticationUtil.runAs((AuthenticationUtil.RunAsWork<Void>) () ->
                 transactionService.getRetryingTransactionHelper().doInTransaction(() ->
@@ -185,6 +195,20 @@ public class LocalTransformClient implements TransformClient, InitializingBean
                     }
                     return null;
                 }), user);
-        });
+        };
+
+        if (renditionScheduler == null)
+        {
+            executorService.submit(work);
+        }
+        else if (renditionDefinition instanceof TransformDefinition)
+        {
+            // Each transform request expects its own reply
+            renditionScheduler.scheduleUncoalesced(sourceNodeRef, renditionName, sourceContentHashCode, work);
+        }
+        else
+        {
+            renditionScheduler.schedule(sourceNodeRef, renditionName, sourceContentHashCode, work);
+        }
     }
 }
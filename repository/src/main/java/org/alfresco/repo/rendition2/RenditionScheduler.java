@@ -0,0 +1,416 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.rendition2;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Runs asynchronous renditions on a fixed pool of threads, taking requests from two priority lanes.
+ * <p>
+ * Requests made by the system user, or on a thread marked with {@link #setBackgroundThread(boolean)} (such as the
+ * bulk importer's), go into the <i>background</i> lane; all others go into the <i>interactive</i> lane.  Workers
+ * take from the interactive lane first, except for one pick in every <tt>backgroundShare</tt>, which serves the
+ * background lane first so that it is never starved.
+ * <p>
+ * A request for a node and rendition that is still waiting is coalesced with the new one: if the source content
+ * hash code is unchanged the new request is dropped, otherwise it replaces the waiting one in its place in the
+ * queue.  Quick successive updates to a document therefore produce one transform of the latest content.
+ * <p>
+ * Each lane holds at most <tt>maxQueueSize</tt> requests.  When a lane is full the request is run by the calling
+ * thread, which slows down whoever is producing the requests rather than dropping them.
+ * 
+ * @since 7.1
+ */
+public class RenditionScheduler implements InitializingBean, DisposableBean
+{
+    private static final Log logger = LogFactory.getLog(RenditionScheduler.class);
+
+    public static final String METRIC_REQUESTS = "alfresco.renditions.requests";
+    public static final String METRIC_WAIT = "alfresco.renditions.wait";
+    public static final String METRIC_QUEUE_SIZE = "alfresco.renditions.queue.size";
+
+    private static final long POLL_TIMEOUT_MS = 1000L;
+
+    private static final ThreadLocal<Boolean> backgroundThread = new ThreadLocal<>();
+
+    public enum Lane
+    {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private enum Outcome
+    {
+        QUEUED, COALESCED, SUPERSEDED, CALLER_RUNS
+    }
+
+    private int poolSize = 8;
+    private int maxQueueSize = 1000;
+    private int backgroundShare = 5;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /** Requests waiting to run, by node and rendition */
+    private final ConcurrentHashMap<Key, Request> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Key> interactiveQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Key> backgroundQueue = new LinkedBlockingQueue<>();
+    /** One permit per queued key */
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicLong picks = new AtomicLong();
+    private final AtomicLong uncoalescedIds = new AtomicLong();
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    /**
+     * Marks the current thread as producing background work, such as an import, whose renditions should not delay
+     * those requested by interactive users.
+     * 
+     * @param background        <tt>true</tt> to mark the thread, <tt>false</tt> to clear the mark
+     */
+    public static void setBackgroundThread(boolean background)
+    {
+        if (background)
+        {
+            backgroundThread.set(Boolean.TRUE);
+        }
+        else
+        {
+            backgroundThread.remove();
+        }
+    }
+
+    /**
+     * @param poolSize          the number of threads running renditions
+     */
+    public void setPoolSize(int poolSize)
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param maxQueueSize      the maximum number of requests waiting in each lane
+     */
+    public void setMaxQueueSize(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * @param backgroundShare   one pick in this many serves the background lane first.  Zero or less means the
+     *                          background lane is only served when there is no interactive work.
+     */
+    public void setBackgroundShare(int backgroundShare)
+    {
+        this.backgroundShare = backgroundShare;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        if (poolSize < 1)
+        {
+            throw new IllegalArgumentException("poolSize must be at least 1");
+        }
+        Gauge.builder(METRIC_QUEUE_SIZE, interactiveQueue, BlockingQueue::size)
+                .description("Rendition requests waiting to run")
+                .tag("lane", laneTag(Lane.INTERACTIVE))
+                .register(meterRegistry);
+        Gauge.builder(METRIC_QUEUE_SIZE, backgroundQueue, BlockingQueue::size)
+                .description("Rendition requests waiting to run")
+                .tag("lane", laneTag(Lane.BACKGROUND))
+                .register(meterRegistry);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("RenditionScheduler");
+        running = true;
+        workers = Executors.newFixedThreadPool(poolSize, threadFactory);
+        for (int i = 0; i < poolSize; i++)
+        {
+            workers.execute(this::work);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        running = false;
+        if (workers != null)
+        {
+            workers.shutdownNow();
+        }
+        if (!pending.isEmpty() && logger.isDebugEnabled())
+        {
+            logger.debug("Discarding " + pending.size() + " rendition requests at shutdown");
+        }
+    }
+
+    /**
+     * Schedule a rendition, coalescing it with any request for the same node and rendition that is still waiting.
+     * 
+     * @param sourceNodeRef             the source node
+     * @param renditionName             the rendition (or transform) name
+     * @param sourceContentHashCode     the hash code of the source content the rendition is for
+     * @param work                      the rendition work
+     */
+    public void schedule(NodeRef sourceNodeRef, String renditionName, int sourceContentHashCode, Runnable work)
+    {
+        schedule(new Key(sourceNodeRef, renditionName, 0L), renditionName, sourceContentHashCode, work);
+    }
+
+    /**
+     * Schedule a request that must run even if a request for the same node and name is waiting, such as a
+     * transform whose reply is expected by a client.
+     * 
+     * @param sourceNodeRef             the source node
+     * @param renditionName             the rendition (or transform) name
+     * @param sourceContentHashCode     the hash code of the source content the rendition is for
+     * @param work                      the rendition work
+     */
+    public void scheduleUncoalesced(NodeRef sourceNodeRef, String renditionName, int sourceContentHashCode, Runnable work)
+    {
+        schedule(new Key(sourceNodeRef, renditionName, uncoalescedIds.incrementAndGet()), renditionName, sourceContentHashCode, work);
+    }
+
+    private void schedule(Key key, String renditionName, int sourceContentHashCode, Runnable work)
+    {
+        Lane lane = currentLane();
+        BlockingQueue<Key> queue = queue(lane);
+        Outcome[] outcome = new Outcome[1];
+        pending.compute(key, (k, waiting) ->
+        {
+            if (waiting == null)
+            {
+                if (queue.size() >= maxQueueSize)
+                {
+                    outcome[0] = Outcome.CALLER_RUNS;
+                    return null;
+                }
+                queue.add(key);
+                queued.release();
+                outcome[0] = Outcome.QUEUED;
+                return new Request(renditionName, sourceContentHashCode, work, lane, System.nanoTime());
+            }
+            Lane waitingLane = waiting.lane;
+            if (lane == Lane.INTERACTIVE && waitingLane == Lane.BACKGROUND)
+            {
+                // Someone is waiting for it now; the copy left in the background lane is skipped
+                interactiveQueue.add(key);
+                queued.release();
+                waitingLane = Lane.INTERACTIVE;
+            }
+            if (waiting.sourceContentHashCode == sourceContentHashCode)
+            {
+                outcome[0] = Outcome.COALESCED;
+                return waitingLane == waiting.lane ? waiting
+                        : new Request(renditionName, waiting.sourceContentHashCode, waiting.work, waitingLane, waiting.queuedNanos);
+            }
+            outcome[0] = Outcome.SUPERSEDED;
+            return new Request(renditionName, sourceContentHashCode, work, waitingLane, waiting.queuedNanos);
+        });
+        requestCounter(renditionName, lane, outcome[0]).increment();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Rendition " + renditionName + " of " + key.nodeRef + " (" + sourceContentHashCode + ") " +
+                    outcome[0].name().toLowerCase() + " in the " + laneTag(lane) + " lane");
+        }
+
+        if (outcome[0] == Outcome.CALLER_RUNS)
+        {
+            work.run();
+        }
+    }
+
+    private Lane currentLane()
+    {
+        if (Boolean.TRUE.equals(backgroundThread.get()) || AuthenticationUtil.isRunAsUserTheSystemUser())
+        {
+            return Lane.BACKGROUND;
+        }
+        return Lane.INTERACTIVE;
+    }
+
+    private BlockingQueue<Key> queue(Lane lane)
+    {
+        return lane == Lane.INTERACTIVE ? interactiveQueue : backgroundQueue;
+    }
+
+    private void work()
+    {
+        while (running)
+        {
+            try
+            {
+                if (!queued.tryAcquire(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                {
+                    continue;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            Key key = nextKey();
+            Request request = key == null ? null : pending.remove(key);
+            if (request == null)
+            {
+                // Already taken through the other lane
+                continue;
+            }
+            Timer.builder(METRIC_WAIT)
+                    .description("Time rendition requests wait before they run")
+                    .tag("rendition", request.renditionName)
+                    .tag("lane", laneTag(request.lane))
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - request.queuedNanos, TimeUnit.NANOSECONDS);
+            try
+            {
+                request.work.run();
+            }
+            catch (Throwable e)
+            {
+                // The work reports its own failures, so this is just to keep the worker going
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Rendition " + request.renditionName + " of " + key.nodeRef + " failed", e);
+                }
+            }
+        }
+    }
+
+    private Key nextKey()
+    {
+        boolean backgroundFirst = backgroundShare > 0 && picks.incrementAndGet() % backgroundShare == 0;
+        BlockingQueue<Key> first = backgroundFirst ? backgroundQueue : interactiveQueue;
+        BlockingQueue<Key> second = backgroundFirst ? interactiveQueue : backgroundQueue;
+        Key key = first.poll();
+        return key != null ? key : second.poll();
+    }
+
+    private Counter requestCounter(String renditionName, Lane lane, Outcome outcome)
+    {
+        return Counter.builder(METRIC_REQUESTS)
+                .description("Rendition requests by outcome")
+                .tag("rendition", renditionName)
+                .tag("lane", laneTag(lane))
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    private static String laneTag(Lane lane)
+    {
+        return lane.name().toLowerCase();
+    }
+
+    /**
+     * @return                  the number of requests waiting to run
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    private static final class Key
+    {
+        private final NodeRef nodeRef;
+        private final String renditionName;
+        /** Non-zero for requests that must not be coalesced */
+        private final long id;
+
+        private Key(NodeRef nodeRef, String renditionName, long id)
+        {
+            this.nodeRef = nodeRef;
+            this.renditionName = renditionName;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key that = (Key) o;
+            return id == that.id && nodeRef.equals(that.nodeRef) && renditionName.equals(that.renditionName);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(nodeRef, renditionName, id);
+        }
+    }
+
+    private static final class Request
+    {
+        private final String renditionName;
+        private final int sourceContentHashCode;
+        private final Runnable work;
+        private final Lane lane;
+        private final long queuedNanos;
+
+        private Request(String renditionName, int sourceContentHashCode, Runnable work, Lane lane, long queuedNanos)
+        {
+            this.renditionName = renditionName;
+            this.sourceContentHashCode = sourceContentHashCode;
+            this.work = work;
+            this.lane = lane;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
@@ -25,12 +25,13 @@
  */
 package org.alfresco.repo.security.authority;
 
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.AbstractMTAsynchronouslyRefreshedCache;
@@ -39,22 +40,30 @@ import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.tenant.TenantAdminService;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
-import org.alfresco.util.BridgeTable;
+import org.alfresco.util.CompactBridgeTable;
+import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
+ * Cache of the transitive closure of the authority links, per tenant.
+ * <p>
+ * Each refresh diffs the current links against the previously built table and applies the difference incrementally,
+ * so a membership change only recomputes the closures of the authorities above and below the changed link. The
+ * previous table is left untouched for readers still holding it.
+ *
  * @author Andy
  * @since 4.1.3
  */
-public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<BridgeTable<String>> implements InitializingBean
+public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<CompactBridgeTable<String>> implements InitializingBean
 {
     private AuthorityBridgeDAO authorityBridgeDAO;
     private RetryingTransactionHelper retryingTransactionHelper;
     private TenantAdminService tenantAdminService;
     private AuthorityDAO authorityDAO;
+    private final Map<String, CompactBridgeTable<String>> lastBuilt = new ConcurrentHashMap<String, CompactBridgeTable<String>>();
 
     private Log logger = LogFactory.getLog(getClass());
 
@@ -91,16 +100,16 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
     }
 
     @Override
-    protected BridgeTable<String> buildCache(final String tenantId)
+    protected CompactBridgeTable<String> buildCache(final String tenantId)
     {
-        return AuthenticationUtil.runAs(new RunAsWork<BridgeTable<String>>()
+        return AuthenticationUtil.runAs(new RunAsWork<CompactBridgeTable<String>>()
         {
-            public BridgeTable<String> doWork() throws Exception
+            public CompactBridgeTable<String> doWork() throws Exception
             {
-                return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<BridgeTable<String>>()
+                return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<CompactBridgeTable<String>>()
                 {
                     @Override
-                    public BridgeTable<String> execute() throws Throwable
+                    public CompactBridgeTable<String> execute() throws Throwable
                     {
                         return doBuildCache(tenantId);
                     }
@@ -110,24 +119,33 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
         }, tenantAdminService.getDomainUser(AuthenticationUtil.getSystemUserName(), tenantId));
     }
 
-    private BridgeTable<String> doBuildCache(String tenantId)
+    private CompactBridgeTable<String> doBuildCache(String tenantId)
     {
         List<AuthorityBridgeLink> links = authorityBridgeDAO.getAuthorityBridgeLinks();
-        BridgeTable<String> bridgeTable = new BridgeTable<String>();
+        List<Pair<String, String>> pairs = new ArrayList<Pair<String, String>>(links.size());
+        for (AuthorityBridgeLink link : links)
+        {
+            pairs.add(new Pair<String, String>(link.getParentName(), link.getChildName()));
+        }
+        CompactBridgeTable<String> previous = lastBuilt.get(tenantId);
+        CompactBridgeTable<String> bridgeTable;
         try
         {
-            for (AuthorityBridgeLink link : links)
-            {
-                bridgeTable.addLink(link.getParentName(), link.getChildName());
-            }
+            bridgeTable = previous == null ? CompactBridgeTable.of(pairs) : previous.withLinks(pairs);
         }
-        catch (ConcurrentModificationException e)
+        catch (CompactBridgeTable.CycleException e)
         {
             // Explain exception
             checkCyclic(links);
             // If cyclic groups is not the cause then rethrow
             throw e;
         }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Built bridge table for tenant '" + tenantId + "' with " + bridgeTable.size() + " authorities and "
+                    + bridgeTable.getLinkCount() + " links" + (previous == null ? "" : " from the previous version"));
+        }
+        lastBuilt.put(tenantId, bridgeTable);
         return bridgeTable;
     }
 
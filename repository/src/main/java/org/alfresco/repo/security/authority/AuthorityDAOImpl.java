@@ -84,7 +84,7 @@ import org.alfresco.service.namespace.NamespacePrefixResolver;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
-import org.alfresco.util.BridgeTable;
+import org.alfresco.util.CompactBridgeTable;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
@@ -825,7 +825,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
      */
     private void listAuthoritiesByBridgeTable(Set<String> authorities, String name)
     {
-        BridgeTable<String> bridgeTable = authorityBridgeTableCache.get();
+        CompactBridgeTable<String> bridgeTable = authorityBridgeTableCache.get();
         
         AuthorityType type = AuthorityType.getAuthorityType(name);
         switch(type)
@@ -842,19 +842,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             for(AuthorityBridgeLink parent : parents)
             {
                 authorities.add(getPooledName(parent.getParentName()));
-                for (String ancestor : bridgeTable.getAncestors(parent.getParentName()))
-                {
-                    authorities.add(getPooledName(ancestor));
-                }
+                bridgeTable.visitAncestors(parent.getParentName(), ancestor -> authorities.add(getPooledName(ancestor)));
             }
             break;
         case GROUP:
         case OWNER:
         case ROLE:
-            for (String ancestor : bridgeTable.getAncestors(name))
-            {
-                authorities.add(getPooledName(ancestor));
-            }
+            bridgeTable.visitAncestors(name, ancestor -> authorities.add(getPooledName(ancestor)));
             break;
         }        
     }
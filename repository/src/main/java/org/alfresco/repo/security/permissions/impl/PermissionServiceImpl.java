@@ -29,12 +29,16 @@ import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import net.sf.acegisecurity.Authentication;
 import net.sf.acegisecurity.GrantedAuthority;
 import net.sf.acegisecurity.providers.dao.User;
@@ -78,6 +82,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AccessPermission;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
@@ -89,6 +94,7 @@ import org.alfresco.traitextender.ExtendedTrait;
 import org.alfresco.traitextender.Extensible;
 import org.alfresco.traitextender.Trait;
 import org.alfresco.util.EqualsHelper;
+import org.alfresco.util.GUID;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PolicyIgnoreUtil;
 import org.alfresco.util.PropertyCheck;
@@ -114,8 +120,17 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
     
+    /** a transactionally-safe cache of the generation tokens folded into each user's access cache keys */
+    protected SimpleCache<String, String> accessCacheGenerations;
+    
+    /** the maximum number of users whose access cache entries are invalidated individually */
+    protected int accessCacheInvalidationLimit = 1000;
+    
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
+    /** latency of {@link #hasPermission(NodeRef, PermissionReference)} by result, or <tt>null</tt> if not recorded */
+    private Map<AccessStatus, Timer> hasPermissionTimers;
+    
     protected SimpleCache<Serializable, Set<String>> readersDeniedCache;
 
     /*
@@ -311,6 +326,31 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.accessCache = accessCache;
     }
 
+    /**
+     * Set the cache of generation tokens used to invalidate the access cache entries of individual users
+     * when their group memberships change.  If this is not set then the entire access cache is cleared
+     * on every membership change.
+     * 
+     * @param accessCacheGenerations
+     *            a transactionally safe cache
+     */
+    public void setAccessCacheGenerations(SimpleCache<String, String> accessCacheGenerations)
+    {
+        this.accessCacheGenerations = accessCacheGenerations;
+    }
+
+    /**
+     * Set the maximum number of users that can be affected by a single membership change before the
+     * entire access cache is cleared instead of invalidating the entries of each user.
+     * 
+     * @param accessCacheInvalidationLimit
+     *            the maximum number of users to invalidate individually
+     */
+    public void setAccessCacheInvalidationLimit(int accessCacheInvalidationLimit)
+    {
+        this.accessCacheInvalidationLimit = accessCacheInvalidationLimit;
+    }
+
     /**
      * @param readersCache the readersCache to set
      */
@@ -344,34 +384,154 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     }
 
     /**
-     * Cache clear on move node
+     * Set the registry to record the latency of permission checks in.  Optional: if it is not set (e.g. when the
+     * service is created directly), permission checks are not timed.
+     * 
+     * @param meterRegistry MeterRegistry
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry)
+    {
+        Map<AccessStatus, Timer> timers = new EnumMap<>(AccessStatus.class);
+        for (AccessStatus status : AccessStatus.values())
+        {
+            timers.put(status, Timer.builder("alfresco.permissions.hasPermission")
+                    .tag("result", status.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.hasPermissionTimers = timers;
+    }
+
+    /**
+     * Cache clear on move node.
+     * <p>
+     * The access cache is only used for nodes without a new-style ACL.  Nodes with a new-style ACL
+     * are evaluated against that ACL (whose inheritance is maintained by the ACL DAO when the node
+     * moves) and their descendants all have new-style ACLs too, so the cache is left alone when such
+     * a node is moved.
      * 
      * @param oldChildAssocRef ChildAssociationRef
      * @param newChildAssocRef ChildAssociationRef
      */
     public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
     {
+        if (isEvaluatedByAcl(newChildAssocRef.getChildRef()))
+        {
+            return;
+        }
         accessCache.clear();
     }
 
     /**
-     * Cache clear on create of a child association from an authority container.
+     * Cache invalidation on create of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateAccessCacheForMember(childAssocRef.getChildRef());
     }
 
     /**
-     * Cache clear on delete of a child association from an authority container.
+     * Cache invalidation on delete of a child association from an authority container.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        invalidateAccessCacheForMember(childAssocRef.getChildRef());
+    }
+
+    /**
+     * Invalidate the access cache entries of all users affected by a change to the membership of the given
+     * authority.  Access cache keys built from a user's authorities embed the current generation token for the
+     * user, so removing the token orphans all of the user's entries.  Keys built from explicit sets of
+     * authorities change by themselves when the memberships change.
+     * <p>
+     * The entire cache is cleared if the generation cache is not available, if the affected users cannot be
+     * determined or if there are more than {@link #setAccessCacheInvalidationLimit(int) limit} of them.
+     * 
+     * @param memberRef     the person or authority container that was added or removed
+     */
+    protected void invalidateAccessCacheForMember(NodeRef memberRef)
+    {
+        Set<String> usernames = (accessCacheGenerations == null) ? null : getAffectedUsers(memberRef);
+        if (usernames == null)
+        {
+            accessCache.clear();
+            if (log.isDebugEnabled())
+            {
+                log.debug("Cleared the access cache after a membership change of " + memberRef);
+            }
+            return;
+        }
+        for (String username : usernames)
+        {
+            accessCacheGenerations.remove(username);
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Invalidated the access cache entries of " + usernames.size() + " user(s) after a membership change of " + memberRef);
+        }
+    }
+
+    /**
+     * @return              the users that are, or are contained by, the given authority or <tt>null</tt> if they
+     *                      cannot be determined or there are too many of them
+     */
+    private Set<String> getAffectedUsers(NodeRef memberRef)
+    {
+        if (!nodeService.exists(memberRef))
+        {
+            return null;
+        }
+        QName typeQName = nodeService.getType(memberRef);
+        if (dictionaryService.isSubClass(typeQName, ContentModel.TYPE_PERSON))
+        {
+            String username = (String) nodeService.getProperty(memberRef, ContentModel.PROP_USERNAME);
+            return (username == null) ? null : Collections.singleton(username);
+        }
+        else if (dictionaryService.isSubClass(typeQName, ContentModel.TYPE_AUTHORITY_CONTAINER))
+        {
+            final String authorityName = (String) nodeService.getProperty(memberRef, ContentModel.PROP_AUTHORITY_NAME);
+            if (authorityName == null)
+            {
+                return null;
+            }
+            Set<String> usernames = AuthenticationUtil.runAsSystem(new RunAsWork<Set<String>>()
+            {
+                public Set<String> doWork() throws Exception
+                {
+                    return authorityService.getContainedAuthorities(AuthorityType.USER, authorityName, false);
+                }
+            });
+            return (usernames.size() > accessCacheInvalidationLimit) ? null : usernames;
+        }
+        return null;
+    }
+
+    /**
+     * @return              <tt>true</tt> if the node has a new-style ACL, in which case permissions are evaluated
+     *                      against the ACL rather than through the access cache
+     */
+    private boolean isEvaluatedByAcl(NodeRef nodeRef)
+    {
+        AccessControlListProperties properties = permissionsDaoComponent.getAccessControlListProperties(tenantService.getName(nodeRef));
+        return (properties != null) && (properties.getAclType() != null) && (properties.getAclType() != ACLType.OLD);
+    }
+
+    /**
+     * Get the token that is folded into the access cache keys of the given user, creating one if required.
+     * Tokens are random, so a token that has been evicted or removed never resurrects stale entries.
+     */
+    private String getAccessCacheGeneration(String username)
+    {
+        String generation = accessCacheGenerations.get(username);
+        if (generation == null)
+        {
+            generation = GUID.generate();
+            accessCacheGenerations.put(username, generation);
+        }
+        return generation;
     }
 
     @Override
@@ -534,6 +694,19 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     @Override
     @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
     public AccessStatus hasPermission(NodeRef passedNodeRef, final PermissionReference permIn)
+    {
+        if (hasPermissionTimers == null)
+        {
+            // No meter registry was wired in
+            return checkPermission(passedNodeRef, permIn);
+        }
+        long startNanos = System.nanoTime();
+        AccessStatus status = checkPermission(passedNodeRef, permIn);
+        hasPermissionTimers.get(status).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return status;
+    }
+
+    private AccessStatus checkPermission(NodeRef passedNodeRef, final PermissionReference permIn)
     {
         // If the node ref is null there is no sensible test to do - and there
         // must be no permissions
@@ -832,7 +1005,13 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         // We will just have to key our dynamic sets by username. We wrap it so as not to be confused with a static set
         if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
         {
-            key.add((Serializable)Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername()));
+            String username = (String) ((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername();
+            key.add((Serializable)Collections.singleton(username));
+            // The user's memberships are not part of the key, so track them by generation
+            if (accessCacheGenerations != null)
+            {
+                key.add(getAccessCacheGeneration(username));
+            }
         }
         else
         {
@@ -27,12 +27,18 @@ package org.alfresco.repo.tagging;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
+import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -42,6 +48,7 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
+import org.alfresco.service.namespace.QName;
 
 /**
  * Refresh tag scope action executer
@@ -61,6 +68,20 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
     /** Tagging Service */
     private TaggingService taggingService;
     
+    /** Tag scope count DAO, used instead of the tag scope cache content when enabled */
+    private TagScopeCountDAO tagScopeCountDAO;
+    
+    /** Whether tag scope counts are kept in the tag scope count table */
+    private boolean useTagScopeCountTable;
+    
+    /** Job Lock Service, used to keep tag scope updates out while the counts are replaced */
+    private JobLockService jobLockService;
+    
+    /** How long the tag scope lock is held for, and how hard to try to get it */
+    private static final long TAG_SCOPE_LOCK_TIME = 30000L;
+    private static final long TAG_SCOPE_LOCK_RETRY_WAIT = 500L;
+    private static final int TAG_SCOPE_LOCK_RETRY_COUNT = 20;
+    
     /** Action name and parameters */
     public static final String NAME = "refresh-tagscope";
     
@@ -94,6 +115,36 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         this.taggingService = taggingService;
     }
     
+    /**
+     * Set the tag scope count DAO
+     * 
+     * @param tagScopeCountDAO    the tag scope count DAO
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
+    /**
+     * Set whether tag scope counts are kept in the tag scope count table
+     * 
+     * @param useTagScopeCountTable    <tt>true</tt> to use the tag scope count table
+     */
+    public void setUseTagScopeCountTable(boolean useTagScopeCountTable)
+    {
+        this.useTagScopeCountTable = useTagScopeCountTable;
+    }
+    
+    /**
+     * Set the job lock service
+     * 
+     * @param jobLockService    the job lock service
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -115,6 +166,23 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
                     // Count the tags found in all the (primary) children of the node
                     countTags(actionedUponNodeRef, tags);
                     
+                    if (useTagScopeCountTable == true)
+                    {
+                        // Replace the counts held in the table, dropping any cache content
+                        Map<String, Integer> counts = new HashMap<String, Integer>(tags.size());
+                        for (TagDetails tag : tags)
+                        {
+                            counts.put(tag.getName(), tag.getCount());
+                        }
+                        lockTagScopeUntilCompletion(actionedUponNodeRef);
+                        tagScopeCountDAO.setTagCounts(actionedUponNodeRef, counts);
+                        if (nodeService.getProperty(actionedUponNodeRef, ContentModel.PROP_TAGSCOPE_CACHE) != null)
+                        {
+                            nodeService.removeProperty(actionedUponNodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
+                        }
+                        return null;
+                    }
+                    
                     // Order the list
                     Collections.sort(tags);
                     
@@ -136,6 +204,32 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         }
     }
 
+    /**
+     * Takes the tag scope lock shared with {@link UpdateTagScopesActionExecuter}, so that queued
+     * tag count updates can't interleave with the counts being deleted and re-inserted.  The lock
+     * is released once the current transaction completes.
+     */
+    private void lockTagScopeUntilCompletion(final NodeRef tagScope)
+    {
+        final QName lockQName = UpdateTagScopesActionExecuter.tagScopeToLockQName(tagScope);
+        final String lockToken = jobLockService.getLock(
+                lockQName, TAG_SCOPE_LOCK_TIME, TAG_SCOPE_LOCK_RETRY_WAIT, TAG_SCOPE_LOCK_RETRY_COUNT);
+        AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+        {
+            @Override
+            public void afterCommit()
+            {
+                jobLockService.releaseLock(lockToken, lockQName);
+            }
+            
+            @Override
+            public void afterRollback()
+            {
+                jobLockService.releaseLock(lockToken, lockQName);
+            }
+        });
+    }
+    
     private void countTags(NodeRef nodeRef, List<TagDetails> tagDetailsList)
     {
         // Add the tags of passed node
@@ -33,6 +33,7 @@ import java.util.Map;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
@@ -40,6 +41,7 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
@@ -53,6 +55,8 @@ import org.aopalliance.intercept.MethodInvocation;
  * for a node that has a cm:tagScopeCache property will include the calculated cm:tagScopeSummary property. A call to 
  * getProperty specifying cm:tagScopeSummary as the property name will return the calculated property value or null
  * if the node has no cm:tagScopeCache property value. 
+ * When tag scope counts are kept in the tag scope count table, tag scopes without a cm:tagScopeCache
+ * property take the summary from the table instead.
  * 
  * @author Brian Remmington
  *
@@ -71,6 +75,8 @@ public class TagScopePropertyMethodInterceptor implements MethodInterceptor
     private ContentService contentService;
     private NodeService nodeService;
     private SimpleCache<String, List<String>> cache;
+    private TagScopeCountDAO tagScopeCountDAO;
+    private boolean useTagScopeCountTable;
     
 
     public void setContentService(ContentService contentService)
@@ -88,6 +94,16 @@ public class TagScopePropertyMethodInterceptor implements MethodInterceptor
         this.cache = cache;
     }
 
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+
+    public void setUseTagScopeCountTable(boolean useTagScopeCountTable)
+    {
+        this.useTagScopeCountTable = useTagScopeCountTable;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable
@@ -204,6 +220,19 @@ public class TagScopePropertyMethodInterceptor implements MethodInterceptor
                 }
             }
         }
+        else if (useTagScopeCountTable && nodeService.hasAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE))
+        {
+            List<Pair<String, Integer>> tagCounts = tagScopeCountDAO.getTagCounts(nodeRef, 0);
+            if (!tagCounts.isEmpty())
+            {
+                tagSummary = new ArrayList<String>(tagCounts.size());
+                for (Pair<String, Integer> tagCount : tagCounts)
+                {
+                    tagSummary.add(tagCount.getFirst() + "=" + tagCount.getSecond());
+                }
+                tagSummary = Collections.unmodifiableList(tagSummary);
+            }
+        }
         return tagSummary;
     }
 
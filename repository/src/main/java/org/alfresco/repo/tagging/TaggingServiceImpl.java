@@ -53,6 +53,7 @@ import org.alfresco.repo.coci.CheckOutCheckInServicePolicies;
 import org.alfresco.repo.copy.CopyServicePolicies;
 import org.alfresco.repo.copy.CopyServicePolicies.BeforeCopyPolicy;
 import org.alfresco.repo.copy.CopyServicePolicies.OnCopyCompletePolicy;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
 import org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy;
@@ -120,6 +121,8 @@ public class TaggingServiceImpl implements TaggingService,
     private NamespaceService namespaceService;
     private PolicyComponent policyComponent;
     private AuditComponent auditComponent;
+    private TagScopeCountDAO tagScopeCountDAO;
+    private boolean useTagScopeCountTable;
     
     /** Tag Details Delimiter */
     private static final String TAG_DETAILS_DELIMITER = "|";
@@ -204,6 +207,22 @@ public class TaggingServiceImpl implements TaggingService,
         this.auditComponent = auditComponent;
     }
     
+    /**
+     * Set the DAO holding the tag counts of tag scopes that no longer use <b>cm:tagScopeCache</b> content
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
+    /**
+     * Set whether tag scope counts are kept in the tag scope count table rather than in <b>cm:tagScopeCache</b> content
+     */
+    public void setUseTagScopeCountTable(boolean useTagScopeCountTable)
+    {
+        this.useTagScopeCountTable = useTagScopeCountTable;
+    }
+    
     /**
      * Init method
      */
@@ -1099,6 +1118,10 @@ public class TaggingServiceImpl implements TaggingService,
         if (this.nodeService.hasAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE) == true)
         {
             this.nodeService.removeAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE);
+            if (useTagScopeCountTable)
+            {
+                this.tagScopeCountDAO.deleteTagCounts(nodeRef);
+            }
         }
     }
 
@@ -1123,7 +1146,10 @@ public class TaggingServiceImpl implements TaggingService,
     }
     
     /**
-     * Gets the tag details list for a given tag scope node reference
+     * Gets the tag details list for a given tag scope node reference.
+     * <p>
+     * Tag scopes that still have <b>cm:tagScopeCache</b> content are read from it, otherwise
+     * the counts come from the tag scope count table when that is in use.
      * 
      * @param nodeRef               tag scope node reference
      * @return List<TagDetails>     ordered list of tag details for the tag scope
@@ -1136,6 +1162,13 @@ public class TaggingServiceImpl implements TaggingService,
         {
             tagDetails = TaggingServiceImpl.readTagDetails(reader.getContentInputStream());
         }
+        else if (useTagScopeCountTable)
+        {
+            for (Pair<String, Integer> tagCount : this.tagScopeCountDAO.getTagCounts(nodeRef, 0))
+            {
+                tagDetails.add(new TagDetailsImpl(tagCount.getFirst(), tagCount.getSecond()));
+            }
+        }
         return tagDetails;
     }
 
@@ -38,6 +38,9 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ParameterDefinitionImpl;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.policy.BehaviourFilter;
@@ -58,6 +61,7 @@ import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.Pair;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -94,6 +98,21 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
     /** Used to disable policies/behaviours when changing tag scope properties */
     private BehaviourFilter behaviourFilter;
     
+    /** Tag scope count DAO, used instead of the tag scope cache content when enabled */
+    private TagScopeCountDAO tagScopeCountDAO;
+    
+    /** Node DAO, used to find tag scopes whose cache content still has to be migrated */
+    private NodeDAO nodeDAO;
+    
+    /** Whether tag scope counts are kept in the tag scope count table */
+    private boolean useTagScopeCountTable;
+    
+    /** How many tag scope caches to migrate to the tag scope count table per run */
+    private int migrationBatchSize = 1000;
+    
+    /** Set once no more tag scope caches are left to migrate */
+    private volatile boolean migrationComplete;
+    
     /** Action name and parameters */
     public static final String NAME = "update-tagscope";
     public static final String PARAM_TAG_SCOPES = "tag_scopes";
@@ -183,6 +202,47 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
         this.behaviourFilter = behaviourFilter;
     }
     
+    /**
+     * Set the tag scope count DAO
+     * 
+     * @param tagScopeCountDAO    the tag scope count DAO
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
+    /**
+     * Set the node DAO
+     * 
+     * @param nodeDAO    the node DAO
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+    
+    /**
+     * Set whether tag scope counts are kept in the tag scope count table, with the
+     *  tag scope cache content of existing tag scopes moved there as they are updated
+     * 
+     * @param useTagScopeCountTable    <tt>true</tt> to use the tag scope count table
+     */
+    public void setUseTagScopeCountTable(boolean useTagScopeCountTable)
+    {
+        this.useTagScopeCountTable = useTagScopeCountTable;
+    }
+    
+    /**
+     * Set how many tag scope caches {@link #migrateTagScopeCaches()} moves per call
+     * 
+     * @param migrationBatchSize    the number of tag scopes to migrate per call
+     */
+    public void setMigrationBatchSize(int migrationBatchSize)
+    {
+        this.migrationBatchSize = migrationBatchSize;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -379,7 +439,27 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
      */
     private void performUpdates(NodeRef tagScopeNode, Map<String,Integer> updates)
     {
-       if(nodeService.exists(tagScopeNode))
+       if(nodeService.exists(tagScopeNode) && useTagScopeCountTable)
+       {
+          // Changing the tag scope values is a system operation
+          behaviourFilter.disableBehaviour();
+          try
+          {
+             // The counts are changed in place, no need to read and rewrite the whole list
+             migrateTagScopeCache(tagScopeNode);
+             tagScopeCountDAO.updateTagCounts(tagScopeNode, updates);
+          }
+          finally
+          {
+             behaviourFilter.enableBehaviour();
+          }
+          
+          if(logger.isDebugEnabled())
+          {
+             logger.debug("Updated tag scope counts of " + tagScopeNode + " with " + updates);
+          }
+       }
+       else if(nodeService.exists(tagScopeNode))
        {
           List<TagDetails> tags = null;
           
@@ -556,7 +636,141 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
        return tagNodes;
     }
     
-    private QName tagScopeToLockQName(NodeRef tagScope)
+    /**
+     * For the given tag scope node, which should have been locked,
+     *  move the counts held in its tag scope cache content into
+     *  the tag scope count table, and drop the content.
+     *  
+     * @return <tt>true</tt> if the tag scope had cache content to move
+     */
+    private boolean migrateTagScopeCache(NodeRef tagScopeNode)
+    {
+       ContentReader contentReader = contentService.getReader(tagScopeNode, ContentModel.PROP_TAGSCOPE_CACHE);
+       if (contentReader == null)
+       {
+          return false;
+       }
+       
+       Map<String,Integer> counts = new HashMap<String, Integer>();
+       if (contentReader.exists())
+       {
+          for (TagDetails tag : TaggingServiceImpl.readTagDetails(contentReader.getContentInputStream()))
+          {
+             counts.put(tag.getName(), tag.getCount());
+          }
+       }
+       tagScopeCountDAO.setTagCounts(tagScopeNode, counts);
+       nodeService.removeProperty(tagScopeNode, ContentModel.PROP_TAGSCOPE_CACHE);
+       
+       if(logger.isDebugEnabled())
+       {
+          logger.debug("Moved " + counts.size() + " tag counts of tag scope " + tagScopeNode + " into the tag scope count table");
+       }
+       return true;
+    }
+    
+    /**
+     * Moves the counts of up to one batch of tag scopes that still
+     *  hold them as tag scope cache content into the tag scope count
+     *  table. Tag scopes that are locked for updates are skipped, as
+     *  the update will migrate them anyway.
+     * Does nothing unless the tag scope count table is in use.
+     * 
+     * @return the number of tag scopes migrated
+     */
+    public int migrateTagScopeCaches()
+    {
+       if(!useTagScopeCountTable || migrationComplete)
+       {
+          return 0;
+       }
+       
+       // Find the tag scopes that still have cache content
+       final List<NodeRef> tagScopes = transactionService.getRetryingTransactionHelper().doInTransaction(
+          new RetryingTransactionCallback<List<NodeRef>>() {
+             public List<NodeRef> execute() throws Throwable {
+                final List<NodeRef> found = new ArrayList<NodeRef>();
+                Long minNodeId = nodeDAO.getMinNodeId();
+                Long maxNodeId = nodeDAO.getMaxNodeId();
+                if(minNodeId == null || maxNodeId == null)
+                {
+                   return found;
+                }
+                nodeDAO.getNodesWithAspects(
+                      Collections.singleton(ContentModel.ASPECT_TAGSCOPE), minNodeId, maxNodeId + 1, true,
+                      new NodeRefQueryCallback() {
+                         public boolean handle(Pair<Long, NodeRef> nodePair) {
+                            if(nodeService.getProperty(nodePair.getSecond(), ContentModel.PROP_TAGSCOPE_CACHE) != null)
+                            {
+                               found.add(nodePair.getSecond());
+                            }
+                            return found.size() < migrationBatchSize;
+                         }
+                      });
+                return found;
+             }
+          }, true, true
+       );
+       if(tagScopes.size() < migrationBatchSize)
+       {
+          migrationComplete = true;
+       }
+       
+       int migrated = 0;
+       for(final NodeRef tagScope : tagScopes)
+       {
+          String lock;
+          try
+          {
+             lock = lockTagScope(tagScope);
+          }
+          catch(LockAcquisitionException e)
+          {
+             // Whoever holds the lock is updating, and so migrating, the tag scope
+             migrationComplete = false;
+             continue;
+          }
+          
+          try
+          {
+             Boolean moved = transactionService.getRetryingTransactionHelper().doInTransaction(
+                new RetryingTransactionCallback<Boolean>() {
+                   public Boolean execute() throws Throwable {
+                      if(!nodeService.exists(tagScope))
+                      {
+                         return false;
+                      }
+                      behaviourFilter.disableBehaviour();
+                      try
+                      {
+                         return migrateTagScopeCache(tagScope);
+                      }
+                      finally
+                      {
+                         behaviourFilter.enableBehaviour();
+                      }
+                   }
+                }, false, true
+             );
+             if(moved)
+             {
+                migrated++;
+             }
+          }
+          finally
+          {
+             unlockTagScope(tagScope, lock);
+          }
+       }
+       
+       if(logger.isDebugEnabled())
+       {
+          logger.debug("Moved the tag scope cache content of " + migrated + " tag scopes into the tag scope count table");
+       }
+       return migrated;
+    }
+    
+    static QName tagScopeToLockQName(NodeRef tagScope)
     {
        QName lockQName = QName.createQName("TagScope_" + tagScope.toString());
        return lockQName;
@@ -154,5 +154,16 @@ public class UpdateTagScopesQuartzJob implements Job {
           // Record the scopes we've just done
           handledTagNodes.addAll(tagNodes);
        }
+       
+       // Move a batch of any tag scope caches not yet in the tag scope count table
+       AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Void>() 
+          {
+             public Void doWork() throws Exception
+             {
+                updateTagsAction.migrateTagScopeCaches();
+                return null;
+             }
+          }, AuthenticationUtil.getSystemUserName()
+       );
    }
 }
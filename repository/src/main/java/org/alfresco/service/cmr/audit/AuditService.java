@@ -252,4 +252,31 @@ public interface AuditService
     {
         return -1;
     }
+
+    /**
+     * Get the number of audit entries that have been recorded but not yet written to the audit tables,
+     * and so are not yet returned by audit queries.  This is only ever non-zero when audit entries are
+     * written asynchronously.
+     *
+     * @return                  the number of audit entries waiting to be written
+     *
+     * @since 7.1
+     */
+    default int getAuditEntriesPendingCount()
+    {
+        return 0;
+    }
+
+    /**
+     * Get how far behind the asynchronous writing of audit entries is.
+     *
+     * @return                  the age in milliseconds of the oldest audit entry waiting to be written,
+     *                          or 0 if there is none
+     *
+     * @since 7.1
+     */
+    default long getAuditEntriesPendingAge()
+    {
+        return 0L;
+    }
 }
@@ -0,0 +1,34 @@
+--
+-- Title:      Tag scope count tables
+-- Database:   MySQL InnoDB
+-- Since:      V7.1 Schema 15003
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_tag_scope_count
+(
+   id BIGINT NOT NULL AUTO_INCREMENT,
+   version BIGINT NOT NULL,
+   scope_node_id BIGINT NOT NULL,
+   tag_name_crc BIGINT NOT NULL,
+   tag_name_short VARCHAR(12) NOT NULL,
+   tag_name VARCHAR(1024) NOT NULL,
+   tag_count BIGINT NOT NULL,
+   PRIMARY KEY (id),
+   UNIQUE KEY idx_alf_tsc_crc (scope_node_id, tag_name_short, tag_name_crc),
+   KEY idx_alf_tsc_cnt (scope_node_id, tag_count),
+   CONSTRAINT fk_alf_tsc_n FOREIGN KEY (scope_node_id) REFERENCES alf_node (id) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.1.0-TagScopeTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.1.0-TagScopeTables', 'Manually executed script upgrade V7.1.0: Tag Scope Tables',
+    0, 15002, -1, 15003, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
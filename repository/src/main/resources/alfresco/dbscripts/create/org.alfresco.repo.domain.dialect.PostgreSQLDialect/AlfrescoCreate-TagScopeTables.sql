@@ -0,0 +1,35 @@
+--
+-- Title:      Tag scope count tables
+-- Database:   PostgreSQL
+-- Since:      V7.1 Schema 15003
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE SEQUENCE alf_tag_scope_count_seq START WITH 1 INCREMENT BY 1;
+CREATE TABLE alf_tag_scope_count
+(
+   id INT8 NOT NULL,
+   version INT8 NOT NULL,
+   scope_node_id INT8 NOT NULL,
+   tag_name_crc INT8 NOT NULL,
+   tag_name_short VARCHAR(12) NOT NULL,
+   tag_name VARCHAR(1024) NOT NULL,
+   tag_count INT8 NOT NULL,
+   PRIMARY KEY (id),
+   CONSTRAINT fk_alf_tsc_n FOREIGN KEY (scope_node_id) REFERENCES alf_node (id) ON DELETE CASCADE
+);
+CREATE UNIQUE INDEX idx_alf_tsc_crc ON alf_tag_scope_count (scope_node_id, tag_name_short, tag_name_crc);
+CREATE INDEX idx_alf_tsc_cnt ON alf_tag_scope_count (scope_node_id, tag_count);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.1.0-TagScopeTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.1.0-TagScopeTables', 'Manually executed script upgrade V7.1.0: Tag Scope Tables',
+    0, 15002, -1, 15003, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
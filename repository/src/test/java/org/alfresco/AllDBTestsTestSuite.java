@@ -64,8 +64,10 @@ import org.junit.runners.Suite;
     org.alfresco.repo.domain.patch.AppliedPatchDAOTest.class,
     org.alfresco.repo.domain.permissions.AclCrudDAOTest.class,
     org.alfresco.repo.domain.usage.UsageDAOTest.class,
+    org.alfresco.repo.domain.tagging.TagScopeCountDAOTest.class,
     org.alfresco.repo.domain.solr.SearchDAOTest.class,
     org.alfresco.repo.domain.tenant.TenantAdminDAOTest.class,
+    org.alfresco.repo.domain.activities.ActivityFeedDAOTest.class,
 
     // REPO-1012 : run AuditDAOTest and PropertyValueCleanupTest near the end
     // because their failure can cause other tests to fail on MS SQL
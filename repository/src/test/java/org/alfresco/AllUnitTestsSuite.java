@@ -43,10 +43,14 @@ import org.junit.runners.Suite;
     org.alfresco.encryption.KeyStoreKeyProviderTest.class,
     org.alfresco.filesys.config.ServerConfigurationBeanTest.class,
     org.alfresco.filesys.repo.rules.ShuffleTest.class,
+    org.alfresco.metrics.MetricsBeanPostProcessorTest.class,
     org.alfresco.opencmis.AlfrescoCmisExceptionInterceptorTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
     org.alfresco.repo.cache.AbstractCacheFactoryTest.class,
+    org.alfresco.repo.cache.CacheStatisticsMeterBinderTest.class,
+    org.alfresco.repo.cache.CaffeineSimpleCacheTest.class,
+    org.alfresco.repo.cache.CompactLinkedHashMapTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
     org.alfresco.repo.cache.InMemoryCacheStatisticsTest.class,
@@ -69,6 +73,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.module.tool.ModuleManagementToolTest.class,
     org.alfresco.repo.module.tool.WarHelperImplTest.class,
     org.alfresco.repo.module.tool.ModuleServiceImplTest.class,
+    org.alfresco.repo.node.db.NodeCacheWarmerTest.class,
     org.alfresco.repo.node.integrity.IntegrityEventTest.class,
     org.alfresco.repo.policy.MTPolicyComponentTest.class,
     org.alfresco.repo.policy.PolicyComponentTest.class,
@@ -139,6 +144,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.security.authentication.PasswordHashingTest.class,
     org.alfresco.repo.security.authority.script.ScriptAuthorityService_RegExTest.class,
     org.alfresco.repo.security.permissions.PermissionCheckCollectionTest.class,
+    org.alfresco.repo.security.permissions.impl.PermissionServiceImplUnitTest.class,
     org.alfresco.repo.security.sync.LDAPUserRegistryTest.class,
     org.alfresco.traitextender.TraitExtenderIntegrationTest.class,
     org.alfresco.traitextender.AJExtensionsCompileTest.class,
@@ -179,6 +185,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.action.executer.TransformActionExecuterTest.class,
     org.alfresco.repo.audit.AuditableAnnotationTest.class,
     org.alfresco.repo.audit.PropertyAuditFilterTest.class,
+    org.alfresco.repo.audit.AsyncAuditEntryWriterTest.class,
     org.alfresco.repo.audit.access.NodeChangeTest.class,
     org.alfresco.repo.content.ContentServiceImplUnitTest.class,
     org.alfresco.repo.content.directurl.SystemWideDirectUrlConfigUnitTest.class,
@@ -190,12 +197,14 @@ import org.junit.runners.Suite;
     org.alfresco.service.cmr.repository.TransformationOptionLimitsTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionPairTest.class,
     org.alfresco.repo.content.transform.TransformerConfigTestSuite.class,
+    org.alfresco.repo.content.transform.RemoteTransformerConnectionPoolTest.class,
     org.alfresco.service.cmr.repository.TemporalSourceOptionsTest.class,
     org.alfresco.repo.content.metadata.MetadataExtracterLimitsTest.class,
     org.alfresco.repo.content.caching.quota.StandardQuotaStrategyMockTest.class,
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.domain.node.SegmentedParentAssocsCacheTest.class,
     org.alfresco.repo.domain.permissions.FixedAclUpdaterUnitTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
     org.alfresco.repo.domain.schema.script.ScriptBundleExecutorImplTest.class,
@@ -234,6 +243,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.resource.HierarchicalResourceLoaderTest.class,
     org.alfresco.repo.events.ClientUtilTest.class,
     org.alfresco.repo.rendition2.RenditionService2Test.class,
+    org.alfresco.repo.rendition2.RenditionSchedulerTest.class,
     org.alfresco.repo.rendition2.TransformationOptionsConverterTest.class,
 
     org.alfresco.repo.event2.RepoEvent2UnitSuite.class,
@@ -63,6 +63,7 @@ import org.junit.runners.Suite;
     org.alfresco.repo.transaction.RetryingTransactionHelperTest.class,
     org.alfresco.repo.transaction.TransactionAwareSingletonTest.class,
     org.alfresco.repo.transaction.TransactionServiceImplTest.class,
+    org.alfresco.repo.batch.BatchProcessorTest.class,
     org.alfresco.repo.oauth1.OAuth1CredentialsStoreServiceTest.class,
     org.alfresco.repo.oauth2.OAuth2CredentialsStoreServiceTest.class,
     org.alfresco.repo.template.TemplateServiceImplTest.class,
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.metrics;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.FactoryBean;
+
+/**
+ * Tests for the {@link MetricsBeanPostProcessor} and the {@link MicrometerMetricsReporter}.
+ */
+public class MetricsBeanPostProcessorTest
+{
+    private MicrometerMetricsReporter metricsReporter;
+    private MetricsBeanPostProcessor postProcessor;
+    private MeterRegistry meterRegistry;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        metricsReporter = new MicrometerMetricsReporter();
+        metricsReporter.setEnabled(true);
+        metricsReporter.setJmxEnabled(false);
+        metricsReporter.afterPropertiesSet();
+        meterRegistry = metricsReporter.getMeterRegistry();
+
+        postProcessor = new MetricsBeanPostProcessor();
+        postProcessor.setMetricsReporter(metricsReporter);
+        postProcessor.setTimedBeans(Collections.singletonMap("greeter", "test.greeter.calls"));
+        postProcessor.setContentStores(Collections.singletonList("testContentStore"));
+        postProcessor.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        metricsReporter.destroy();
+    }
+
+    @Test
+    public void timesCallsPerMethod()
+    {
+        Object bean = postProcessor.postProcessAfterInitialization(new Greeter(), "greeter");
+        assertTrue("The bean should still be usable as its class", bean instanceof Greeter);
+        Greeter greeter = (Greeter) bean;
+
+        assertEquals("hello", greeter.get());
+        assertEquals("hello", greeter.get());
+        try
+        {
+            greeter.fail();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+
+        Timer getTimer = meterRegistry.get("test.greeter.calls").tag("method", "get").tag("exception", "none").timer();
+        assertEquals(2, getTimer.count());
+        Timer failTimer = meterRegistry.get("test.greeter.calls").tag("method", "fail").timer();
+        assertEquals(1, failTimer.count());
+        assertEquals("IllegalStateException", failTimer.getId().getTag("exception"));
+
+        String scraped = metricsReporter.scrape();
+        assertTrue(scraped, scraped.contains("test_greeter_calls_seconds_count{exception=\"none\",method=\"get\",} 2.0"));
+    }
+
+    @Test
+    public void leavesOtherBeansAlone()
+    {
+        Greeter greeter = new Greeter();
+        assertSame(greeter, postProcessor.postProcessAfterInitialization(greeter, "otherBean"));
+
+        FactoryBean<?> factoryBean = mock(FactoryBean.class);
+        assertSame(factoryBean, postProcessor.postProcessAfterInitialization(factoryBean, "greeter"));
+    }
+
+    @Test
+    public void doesNothingWhenDisabled() throws Exception
+    {
+        MicrometerMetricsReporter disabledReporter = new MicrometerMetricsReporter();
+        disabledReporter.afterPropertiesSet();
+        postProcessor.setMetricsReporter(disabledReporter);
+
+        Greeter greeter = new Greeter();
+        assertSame(greeter, postProcessor.postProcessAfterInitialization(greeter, "greeter"));
+        assertFalse(disabledReporter.isScrapeAvailable());
+    }
+
+    @Test
+    public void recordsContentStoreBytes()
+    {
+        final ContentReader reader = mock(ContentReader.class);
+        when(reader.getSize()).thenReturn(42L);
+        ContentStore store = (ContentStore) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {ContentStore.class},
+                (proxy, method, args) -> "getReader".equals(method.getName()) ? reader : null);
+
+        ContentStore meteredStore = (ContentStore) postProcessor.postProcessAfterInitialization(store, "testContentStore");
+        assertSame(reader, meteredStore.getReader("store://test"));
+
+        ArgumentCaptor<ContentStreamListener> listener = ArgumentCaptor.forClass(ContentStreamListener.class);
+        verify(reader).addListener(listener.capture());
+        listener.getValue().contentStreamClosed();
+
+        DistributionSummary readBytes = meterRegistry.get(ContentStoreMetricsInterceptor.METRIC_BYTES)
+                .tag(ContentStoreMetricsInterceptor.TAG_STORE, "testContentStore")
+                .tag(ContentStoreMetricsInterceptor.TAG_OPERATION, "read")
+                .summary();
+        assertEquals(1, readBytes.count());
+        assertEquals(42.0, readBytes.totalAmount(), 0.0);
+        assertEquals(1, meterRegistry.get(ContentStoreMetricsInterceptor.METRIC_CALLS).tag("method", "getReader").timer().count());
+    }
+
+    @Test
+    public void ignoresReadersAlreadyInUse()
+    {
+        ContentReader reader = mock(ContentReader.class);
+        org.mockito.Mockito.doThrow(new RuntimeException("Channel is already in use")).when(reader).addListener(any());
+        ContentStoreMetricsInterceptor interceptor = new ContentStoreMetricsInterceptor(meterRegistry, "testContentStore");
+        assertSame(reader, interceptor.afterInvocation(null, reader));
+    }
+
+    public static class Greeter implements Supplier<String>
+    {
+        @Override
+        public String get()
+        {
+            return "hello";
+        }
+
+        public void fail()
+        {
+            throw new IllegalStateException("Failed");
+        }
+    }
+}
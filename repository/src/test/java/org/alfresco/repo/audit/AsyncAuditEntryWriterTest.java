@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.alfresco.repo.audit.AuditJournal.JournalEntry;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Unit tests for the {@link AsyncAuditEntryWriter} and its {@link AuditJournal}.
+ * 
+ * @since 7.1
+ */
+public class AsyncAuditEntryWriterTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File directory;
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private List<AuditEntryInfo> written;
+    private AtomicInteger busyFailures;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        directory = new File(tempFolder.getRoot(), "audit-journal");
+        auditDAO = mock(AuditDAO.class);
+        written = Collections.synchronizedList(new ArrayList<>());
+        busyFailures = new AtomicInteger();
+        doAnswer(invocation -> {
+            List<AuditEntryInfo> entries = invocation.getArgument(0);
+            for (AuditEntryInfo entry : entries)
+            {
+                if (entry.getUsername().equals("bad"))
+                {
+                    throw new IllegalStateException("Bad entry");
+                }
+                if (entry.getUsername().equals("busy") && busyFailures.getAndDecrement() > 0)
+                {
+                    throw new TransientDataAccessResourceException("Database busy");
+                }
+            }
+            written.addAll(entries);
+            return null;
+        }).when(auditDAO).createAuditEntries(anyList());
+
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(
+                invocation -> ((RetryingTransactionCallback<?>) invocation.getArgument(0)).execute());
+        transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+    }
+
+    private static AuditEntryInfo entry(String username)
+    {
+        return new AuditEntryInfo(1L, System.currentTimeMillis(), username,
+                Collections.<String, Serializable>singletonMap("/test/action/value", username));
+    }
+
+    private AsyncAuditEntryWriter createWriter()
+    {
+        AsyncAuditEntryWriter writer = new AsyncAuditEntryWriter();
+        writer.setAuditDAO(auditDAO);
+        writer.setTransactionService(transactionService);
+        writer.setEnabled(true);
+        writer.setJournalDirectory(directory.getAbsolutePath());
+        writer.setSyncJournal(false);
+        writer.setBatchSize(2);
+        writer.setMeterRegistry(new SimpleMeterRegistry());
+        writer.init();
+        return writer;
+    }
+
+    @Test
+    public void journalReturnsEntriesAfterTheCheckpoint() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(directory, false);
+        assertTrue(journal.open().isEmpty());
+        List<JournalEntry> appended = journal.append(Arrays.asList(entry("a"), entry("b"), entry("c")));
+        assertEquals(3L, appended.get(2).sequence);
+        journal.checkpoint(1L);
+        journal.close();
+
+        journal = new AuditJournal(directory, false);
+        List<JournalEntry> recovered = journal.open();
+        assertEquals(2, recovered.size());
+        assertEquals(2L, recovered.get(0).sequence);
+        assertEquals("b", recovered.get(0).entry.getUsername());
+        assertEquals("c", recovered.get(1).entry.getValues().get("/test/action/value"));
+        assertEquals(4L, journal.append(Collections.singletonList(entry("d"))).get(0).sequence);
+        journal.close();
+    }
+
+    @Test
+    public void journalDiscardsTornRecord() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(directory, false);
+        journal.open();
+        journal.append(Arrays.asList(entry("a"), entry("b")));
+        journal.close();
+        File journalFile = new File(directory, AuditJournal.JOURNAL_FILE);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+
+        journal = new AuditJournal(directory, false);
+        List<JournalEntry> recovered = journal.open();
+        assertEquals(1, recovered.size());
+        assertEquals("a", recovered.get(0).entry.getUsername());
+        assertTrue(journal.getDiscardedBytes() > 0);
+        journal.close();
+    }
+
+    @Test
+    public void journalIsEmptiedWhenEverythingIsCheckpointed() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(directory, false);
+        journal.open();
+        journal.append(Arrays.asList(entry("a"), entry("b")));
+        journal.checkpoint(2L);
+        assertEquals(0L, new File(directory, AuditJournal.JOURNAL_FILE).length());
+        journal.close();
+
+        journal = new AuditJournal(directory, false);
+        assertTrue(journal.open().isEmpty());
+        assertEquals(3L, journal.append(Collections.singletonList(entry("c"))).get(0).sequence);
+        journal.close();
+    }
+
+    @Test
+    public void journalIsCompactedBehindTheCheckpoint() throws Exception
+    {
+        AuditJournal journal = new AuditJournal(directory, false, 1L);
+        journal.open();
+        journal.append(Collections.singletonList(entry("a")));
+        journal.append(Collections.singletonList(entry("b")));
+        journal.append(Collections.singletonList(entry("c")));
+        long length = journal.length();
+        journal.checkpoint(2L);
+        assertTrue(journal.length() < length);
+        journal.append(Collections.singletonList(entry("d")));
+        journal.close();
+
+        journal = new AuditJournal(directory, false);
+        List<JournalEntry> recovered = journal.open();
+        assertEquals(2, recovered.size());
+        assertEquals("c", recovered.get(0).entry.getUsername());
+        assertEquals(4L, recovered.get(1).sequence);
+        assertEquals(0L, journal.getDiscardedBytes());
+        journal.close();
+    }
+
+    @Test
+    public void writerWritesEntriesInOrderOnceStarted() throws Exception
+    {
+        AsyncAuditEntryWriter writer = createWriter();
+        assertTrue(writer.isEnabled());
+        for (String username : Arrays.asList("a", "b", "c", "d", "e"))
+        {
+            writer.write(entry(username));
+        }
+        // Nothing is written until the application context has started
+        assertEquals(5, writer.getPendingCount());
+        assertTrue(written.isEmpty());
+
+        writer.onBootstrap(null);
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (writer.getPendingCount() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10L);
+        }
+        writer.onShutdown(null);
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(0L, writer.getLagMillis());
+        List<String> usernames = new ArrayList<>();
+        for (AuditEntryInfo entry : written)
+        {
+            usernames.add(entry.getUsername());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), usernames);
+        // Written in batches of two
+        ArgumentCaptor<List<AuditEntryInfo>> batches = ArgumentCaptor.forClass(List.class);
+        verify(auditDAO, atLeastOnce()).createAuditEntries(batches.capture());
+        for (List<AuditEntryInfo> batch : batches.getAllValues())
+        {
+            assertTrue(batch.size() <= 2);
+        }
+    }
+
+    @Test
+    public void writerRecoversEntriesLeftAtShutdown() throws Exception
+    {
+        AsyncAuditEntryWriter writer = createWriter();
+        writer.write(entry("a"));
+        writer.write(entry("b"));
+        writer.onShutdown(null);
+
+        writer = createWriter();
+        assertEquals(2, writer.getPendingCount());
+        assertTrue(writer.getLagMillis() >= 0L);
+        writer.onShutdown(null);
+    }
+
+    @Test
+    public void writerIsIdleWhenDisabledWithoutJournal() throws Exception
+    {
+        AsyncAuditEntryWriter writer = new AsyncAuditEntryWriter();
+        writer.setAuditDAO(auditDAO);
+        writer.setTransactionService(transactionService);
+        writer.setJournalDirectory(directory.getAbsolutePath());
+        writer.setMeterRegistry(new SimpleMeterRegistry());
+        writer.init();
+        assertFalse(writer.isEnabled());
+        assertFalse(directory.exists());
+    }
+
+    @Test
+    public void badEntriesAreDiscardedWhenWrittenOneByOne() throws Exception
+    {
+        AsyncAuditEntryWriter writer = createWriter();
+        writer.write(entry("a"));
+        writer.write(entry("bad"));
+        writer.write(entry("c"));
+        List<JournalEntry> batch = new ArrayList<>(Arrays.asList(
+                new JournalEntry(1L, entry("a")), new JournalEntry(2L, entry("bad")), new JournalEntry(3L, entry("c"))));
+
+        assertFalse(writer.writeBatch(batch, false));
+        assertTrue(written.isEmpty());
+        assertEquals(3, writer.getPendingCount());
+
+        assertTrue(writer.writeBatch(batch, true));
+        assertTrue(batch.isEmpty());
+        assertEquals(2, written.size());
+        assertEquals("a", written.get(0).getUsername());
+        assertEquals("c", written.get(1).getUsername());
+        assertEquals(0, writer.getPendingCount());
+        writer.onShutdown(null);
+    }
+
+    @Test
+    public void transientFailuresAreRetriedWhenWrittenOneByOne() throws Exception
+    {
+        AsyncAuditEntryWriter writer = createWriter();
+        writer.write(entry("a"));
+        writer.write(entry("busy"));
+        writer.write(entry("c"));
+        List<JournalEntry> batch = new ArrayList<>(Arrays.asList(
+                new JournalEntry(1L, entry("a")), new JournalEntry(2L, entry("busy")), new JournalEntry(3L, entry("c"))));
+        busyFailures.set(1);
+
+        // The entry that failed for want of the database is kept, and the journal is not checkpointed past it
+        assertFalse(writer.writeBatch(batch, true));
+        assertEquals(1, batch.size());
+        assertEquals("busy", batch.get(0).entry.getUsername());
+        assertEquals(2, written.size());
+        assertEquals(1, writer.getPendingCount());
+        writer.onShutdown(null);
+
+        writer = createWriter();
+        assertEquals(2, writer.getPendingCount());
+        writer.onShutdown(null);
+
+        // Once it can be written, the journal is checkpointed past the rest of the batch as well
+        writer = createWriter();
+        batch = new ArrayList<>(Arrays.asList(new JournalEntry(2L, entry("busy")), new JournalEntry(3L, entry("c"))));
+        busyFailures.set(1);
+        assertFalse(writer.writeBatch(batch, true));
+        assertEquals(1, writer.getPendingCount());
+        assertTrue(writer.writeBatch(batch, true));
+        assertTrue(batch.isEmpty());
+        assertEquals(0, writer.getPendingCount());
+        writer.onShutdown(null);
+
+        writer = createWriter();
+        assertEquals(0, writer.getPendingCount());
+        writer.onShutdown(null);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.BaseSpringTest;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests the prefetching, adaptive batch sizing and progress counting of the {@link BatchProcessor}.
+ */
+public class BatchProcessorTest extends BaseSpringTest
+{
+    private static final String KEY_COMMITTED_BATCH = "BatchProcessorTest.committedBatch";
+
+    private RetryingTransactionHelper txnHelper;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        TransactionService transactionService = (TransactionService) applicationContext.getBean("transactionService");
+        txnHelper = transactionService.getRetryingTransactionHelper();
+    }
+
+    /**
+     * Prefetched pages are fetched on another thread, one at a time and in order, and every entry is processed once
+     * in the order the provider returned it.
+     */
+    @Test
+    public void testPrefetchWorkKeepsProviderOrder() throws Exception
+    {
+        final Thread callingThread = Thread.currentThread();
+        final List<Thread> fetchingThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        PagedWorkProvider workProvider = new PagedWorkProvider(95, 10)
+        {
+            @Override
+            public Collection<Integer> getNextWork()
+            {
+                fetchingThreads.add(Thread.currentThread());
+                return super.getNextWork();
+            }
+        };
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                "BatchProcessorTest", txnHelper, workProvider, 1, 7, null, null, 1000);
+        batchProcessor.setPrefetchWork(true);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                processed.add(entry);
+            }
+        }, true);
+
+        assertEquals(range(0, 95), processed);
+        // Ten pages and the empty page that ends the work
+        assertEquals(11, fetchingThreads.size());
+        assertEquals("The first page is fetched by the caller", callingThread, fetchingThreads.get(0));
+        for (Thread fetchingThread : fetchingThreads.subList(1, fetchingThreads.size()))
+        {
+            assertNotSame("Following pages are fetched in the background", callingThread, fetchingThread);
+        }
+        assertEquals(95, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(0, batchProcessor.getTotalErrors());
+    }
+
+    /**
+     * Without splitting transactions the provider runs in the caller's transaction, so nothing is prefetched.
+     */
+    @Test
+    public void testPrefetchWorkIgnoredWithoutSplitTransactions() throws Exception
+    {
+        final Thread callingThread = Thread.currentThread();
+        final Set<Thread> fetchingThreads = ConcurrentHashMap.newKeySet();
+        PagedWorkProvider workProvider = new PagedWorkProvider(25, 10)
+        {
+            @Override
+            public Collection<Integer> getNextWork()
+            {
+                fetchingThreads.add(Thread.currentThread());
+                return super.getNextWork();
+            }
+        };
+        final List<Integer> processed = new ArrayList<Integer>();
+
+        final BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                "BatchProcessorTest", txnHelper, workProvider, 1, 10, null, null, 1000);
+        batchProcessor.setPrefetchWork(true);
+        txnHelper.doInTransaction(() -> batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                processed.add(entry);
+            }
+        }, false));
+
+        assertEquals(range(0, 25), processed);
+        assertEquals(Collections.singleton(callingThread), fetchingThreads);
+    }
+
+    /**
+     * A retried transaction halves the batch size and transactions that commit first time grow it back by a tenth of
+     * the configured size.
+     */
+    @Test
+    public void testAdaptiveBatchSizeBacksOffAndRecovers() throws Exception
+    {
+        List<List<Integer>> committedBatches = processWithOneRetry(true);
+
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        for (List<Integer> committedBatch : committedBatches)
+        {
+            batchSizes.add(committedBatch.size());
+        }
+        assertEquals(Arrays.asList(10, 5, 6, 7, 8, 9, 10, 10, 10, 10, 10, 5), batchSizes);
+        assertEquals(range(0, 100), flatten(committedBatches));
+    }
+
+    /**
+     * Retries leave the batch size alone unless it is adaptive.
+     */
+    @Test
+    public void testFixedBatchSizeIgnoresRetries() throws Exception
+    {
+        List<List<Integer>> committedBatches = processWithOneRetry(false);
+
+        assertEquals(10, committedBatches.size());
+        for (List<Integer> committedBatch : committedBatches)
+        {
+            assertEquals(10, committedBatch.size());
+        }
+        assertEquals(range(0, 100), flatten(committedBatches));
+    }
+
+    /**
+     * The progress counters and metrics add up when many workers update them at once.
+     */
+    @Test
+    public void testCountsFromConcurrentWorkers() throws Exception
+    {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final Set<Integer> processed = ConcurrentHashMap.newKeySet();
+
+        BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                "BatchProcessorTest", txnHelper, new PagedWorkProvider(2000, 100), 8, 5, null, null, 100);
+        batchProcessor.setMeterRegistry(meterRegistry);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                if (!processed.add(entry))
+                {
+                    throw new IllegalStateException("Processed twice: " + entry);
+                }
+                if (entry % 10 == 0)
+                {
+                    throw new IllegalStateException("Failing entry: " + entry);
+                }
+            }
+        }, true);
+
+        assertEquals(2000, processed.size());
+        assertEquals(1800, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(200, batchProcessor.getTotalErrors());
+        assertEquals(NumberFormat.getPercentInstance().format(1.0F), batchProcessor.getPercentComplete());
+        assertNotNull(batchProcessor.getLastError());
+        assertTrue(Integer.parseInt(batchProcessor.getLastErrorEntryId()) % 10 == 0);
+        assertNotNull(batchProcessor.getEndTime());
+
+        assertEquals(1800.0, meterRegistry.get(BatchProcessor.METRIC_ENTRIES)
+                .tags("process", "BatchProcessorTest", "outcome", "processed").counter().count());
+        assertEquals(200.0, meterRegistry.get(BatchProcessor.METRIC_ENTRIES)
+                .tags("process", "BatchProcessorTest", "outcome", "error").counter().count());
+        assertEquals(400, meterRegistry.get(BatchProcessor.METRIC_TRANSACTIONS).timer().count());
+        assertEquals(0.0, meterRegistry.get(BatchProcessor.METRIC_RETRIES).counter().count());
+    }
+
+    /**
+     * Processes 100 entries in batches of 10 on a single thread, failing the first attempt at entry 5 with a
+     * retryable exception.
+     *
+     * @return the entries of each committed transaction, in commit order
+     */
+    private List<List<Integer>> processWithOneRetry(boolean adaptiveBatchSize)
+    {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final List<List<Integer>> committedBatches = new ArrayList<List<Integer>>();
+        final boolean[] failed = new boolean[1];
+
+        BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                "BatchProcessorTest", txnHelper, new PagedWorkProvider(100, 100), 1, 10, null, null, 1000);
+        batchProcessor.setAdaptiveBatchSize(adaptiveBatchSize);
+        batchProcessor.setMeterRegistry(meterRegistry);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry == 5 && !failed[0])
+                {
+                    failed[0] = true;
+                    throw new ConcurrencyFailureException("Simulated deadlock");
+                }
+                List<Integer> committedBatch = AlfrescoTransactionSupport.getResource(KEY_COMMITTED_BATCH);
+                if (committedBatch == null)
+                {
+                    final List<Integer> batch = new ArrayList<Integer>();
+                    AlfrescoTransactionSupport.bindResource(KEY_COMMITTED_BATCH, batch);
+                    AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                    {
+                        @Override
+                        public void afterCommit()
+                        {
+                            committedBatches.add(batch);
+                        }
+                    });
+                    committedBatch = batch;
+                }
+                committedBatch.add(entry);
+            }
+        }, true);
+
+        assertTrue(failed[0]);
+        assertEquals(100, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(0, batchProcessor.getTotalErrors());
+        assertEquals(10, batchProcessor.getCurrentBatchSize());
+        assertEquals(1.0, meterRegistry.get(BatchProcessor.METRIC_RETRIES).counter().count());
+        return committedBatches;
+    }
+
+    private static List<Integer> range(int from, int to)
+    {
+        List<Integer> range = new ArrayList<Integer>(to - from);
+        for (int i = from; i < to; i++)
+        {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private static List<Integer> flatten(List<List<Integer>> batches)
+    {
+        List<Integer> entries = new ArrayList<Integer>();
+        for (List<Integer> batch : batches)
+        {
+            entries.addAll(batch);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the integers from zero up to a total, a page at a time and then an empty page.
+     */
+    private static class PagedWorkProvider implements BatchProcessWorkProvider<Integer>
+    {
+        private final int total;
+        private final int pageSize;
+        private int next;
+
+        private PagedWorkProvider(int total, int pageSize)
+        {
+            this.total = total;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return total;
+        }
+
+        @Override
+        public Collection<Integer> getNextWork()
+        {
+            int end = Math.min(total, next + pageSize);
+            List<Integer> page = range(next, end);
+            next = end;
+            return page;
+        }
+    }
+}
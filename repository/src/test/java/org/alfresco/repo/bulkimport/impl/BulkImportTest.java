@@ -35,6 +35,7 @@ import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionCondition;
 import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.rule.Rule;
@@ -158,6 +159,57 @@ public class BulkImportTest extends AbstractBulkImportTests
 
         System.out.println(bulkImporter.getStatus());
 
+        checkStripingImport(folderNode);
+    }
+
+    @Test
+    public void testCopyImportPipelined() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        StripingBulkFilesystemImporter stripingImporter = (StripingBulkFilesystemImporter)bulkImporter;
+        stripingImporter.setPipelineEnabled(true);
+
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(40);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            stripingImporter.setPipelineEnabled(false);
+        }
+
+        System.out.println(bulkImporter.getStatus());
+
+        BulkImportStatusImpl status = (BulkImportStatusImpl)bulkImporter.getStatus();
+        assertTrue(status.getNumberOfPipelineItems(BulkImportStatusImpl.PipelineStage.SCAN) > 0);
+        assertTrue(status.getNumberOfPipelineItems(BulkImportStatusImpl.PipelineStage.METADATA) > 0);
+        assertTrue(status.getNumberOfPipelineItems(BulkImportStatusImpl.PipelineStage.CONTENT) > 0);
+
+        checkStripingImport(folderNode);
+
+        // Content copied ahead of the import is described as fully as streamed content
+        NodeRef quickNodeRef = fileFolderService.searchSimple(folderNode, "quick.txt");
+        ContentData contentData = (ContentData) nodeService.getProperty(quickNodeRef, ContentModel.PROP_CONTENT);
+        assertEquals(MimetypeMap.MIMETYPE_TEXT_PLAIN, contentData.getMimetype());
+        assertNotNull(contentData.getEncoding());
+        assertNotNull(contentData.getLocale());
+    }
+
+    private void checkStripingImport(NodeRef folderNode)
+    {
         checkFiles(folderNode, null, 2, 9,
                 new ExpectedFile[]
                 {
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests for the {@link CacheStatisticsMeterBinder} class.
+ */
+public class CacheStatisticsMeterBinderTest
+{
+    private InMemoryCacheStatistics cacheStats;
+    private SimpleMeterRegistry meterRegistry;
+    private CacheStatisticsMeterBinder binder;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        cacheStats = new InMemoryCacheStatistics();
+        cacheStats.setApplicationContext(Mockito.mock(ApplicationContext.class));
+        meterRegistry = new SimpleMeterRegistry();
+        binder = new CacheStatisticsMeterBinder();
+        binder.setMeterRegistry(meterRegistry);
+        binder.afterPropertiesSet();
+    }
+
+    @Test
+    public void publishesCacheStatistics()
+    {
+        TransactionStats txStats = new TransactionStats();
+        txStats.record(0, 100, OpType.GET_HIT);
+        txStats.record(0, 300, OpType.GET_HIT);
+        txStats.record(0, 1000, OpType.GET_MISS);
+        cacheStats.add("nodesCache", txStats);
+
+        binder.onApplicationEvent(new CacheStatisticsCreated(cacheStats, "nodesCache"));
+
+        FunctionTimer hits = timer("nodesCache", "get_hit");
+        assertEquals(2.0, hits.count(), 0.0);
+        assertEquals(400.0, hits.totalTime(TimeUnit.NANOSECONDS), 0.0);
+        assertEquals(1.0, timer("nodesCache", "get_miss").count(), 0.0);
+        assertEquals(0.0, timer("nodesCache", "clear").totalTime(TimeUnit.NANOSECONDS), 0.0);
+
+        // The meters follow the statistics
+        txStats = new TransactionStats();
+        txStats.record(0, 100, OpType.GET_HIT);
+        cacheStats.add("nodesCache", txStats);
+        assertEquals(3.0, hits.count(), 0.0);
+    }
+
+    private FunctionTimer timer(String cacheName, String operation)
+    {
+        return meterRegistry.get(CacheStatisticsMeterBinder.METRIC_NAME)
+                .tag(CacheStatisticsMeterBinder.TAG_CACHE, cacheName)
+                .tag(CacheStatisticsMeterBinder.TAG_OPERATION, operation)
+                .functionTimer();
+    }
+}
@@ -593,6 +593,37 @@ public class CacheTest extends TestCase
         }
     }
     
+    /**
+     * Read-write transactions keep seeing the shared cache values they have read while read-only
+     * transactions see the latest shared cache values.
+     */
+    public void testSharedCacheReadsInReadOnlyTxn() throws Exception
+    {
+        String key = "readKey";
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        for (boolean readOnly : new boolean[] {false, true})
+        {
+            TransactionalCache.putSharedCacheValue(backingCache, key, "one", null);
+            UserTransaction txn = transactionService.getUserTransaction(readOnly);
+            try
+            {
+                txn.begin();
+                
+                assertEquals("one", transactionalCache.get(key));
+                TransactionalCache.putSharedCacheValue(backingCache, key, "two", null);
+                assertEquals(readOnly ? "two" : "one", transactionalCache.get(key));
+                
+                txn.commit();
+            }
+            finally
+            {
+                try { txn.rollback(); } catch (Throwable ee) {}
+            }
+            assertEquals("two", TransactionalCache.getSharedCacheValue(backingCache, key, null));
+            backingCache.clear();
+        }
+    }
+    
     /** Execute the callback and ensure that the backing cache is left with the expected value */
     private void executeAndCheck(
             RetryingTransactionCallback<Object> callback,
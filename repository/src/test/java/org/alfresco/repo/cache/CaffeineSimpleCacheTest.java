@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the CaffeineSimpleCache class.
+ */
+public class CaffeineSimpleCacheTest extends SimpleCacheTestBase<CaffeineSimpleCache<Integer, String>>
+{
+    @Override
+    protected CaffeineSimpleCache<Integer, String> createCache()
+    {
+        return new CaffeineSimpleCache<Integer, String>(100, true, 0, 0, 0, getClass().getName());
+    }
+
+    @Test
+    public void boundedSizeCache() throws Exception
+    {
+        cache = new CaffeineSimpleCache<Integer, String>(3, true, 0, 0, 0, getClass().getName());
+
+        for (int i = 1; i <= 10; i++)
+        {
+            cache.put(i, Integer.toString(i));
+        }
+        cache.cleanUp();
+
+        // The admission policy decides which items stay, but the bound is respected
+        assertEquals(3, cache.getKeys().size());
+        assertTrue(cache.isUseMaxItems());
+    }
+
+    @Test
+    public void defaultMaxItems()
+    {
+        // maxItems of 0 results in a capacity of Integer.MAX_VALUE - this is to match Hazelcast cache behaviour.
+        cache = new CaffeineSimpleCache<Integer, String>(0, true, 0, 0, 0, getClass().getName());
+        assertEquals(Integer.MAX_VALUE, cache.getMaxItems());
+        assertTrue(cache.isUseMaxItems());
+        assertEquals(-1L, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void putAndCheckUpdate()
+    {
+        assertFalse(cache.putAndCheckUpdate(1, "1"));
+        assertFalse(cache.putAndCheckUpdate(1, "1"));
+        assertTrue(cache.putAndCheckUpdate(1, "one"));
+        assertTrue(cache.putAndCheckUpdate(1, null));
+        assertFalse(cache.putAndCheckUpdate(1, null));
+    }
+
+    @Test
+    public void boundedByBytes()
+    {
+        CaffeineSimpleCache<Integer, Map<String, Serializable>> bytesCache =
+                new CaffeineSimpleCache<Integer, Map<String, Serializable>>(0, false, 100000L, 0, 0, getClass().getName());
+        assertEquals(100000L, bytesCache.getMaxBytes());
+
+        Map<String, Serializable> smallValue = new HashMap<String, Serializable>();
+        smallValue.put("name", "small");
+        bytesCache.put(1, smallValue);
+        bytesCache.cleanUp();
+        long smallBytes = bytesCache.getEstimatedBytes();
+        assertTrue("Expected a positive estimate but got " + smallBytes, smallBytes > 0);
+
+        Map<String, Serializable> largeValue = new HashMap<String, Serializable>();
+        for (int i = 0; i < 100; i++)
+        {
+            largeValue.put("property" + i, "value " + i);
+        }
+        bytesCache.put(2, largeValue);
+        bytesCache.cleanUp();
+        long bothBytes = bytesCache.getEstimatedBytes();
+        assertTrue("Large values must weigh more than small values", bothBytes - smallBytes > smallBytes);
+
+        // Fill way beyond the limit: the estimated size must stay within the bound
+        for (int i = 10; i < 2000; i++)
+        {
+            bytesCache.put(i, smallValue);
+        }
+        bytesCache.cleanUp();
+        assertTrue(bytesCache.getEstimatedBytes() <= 100000L);
+        assertTrue(bytesCache.getKeys().size() < 1990);
+    }
+
+    @Test
+    public void weighableValuesGiveTheirOwnSize()
+    {
+        CaffeineSimpleCache<Integer, SimpleCacheEntryWeigher.Weighable> bytesCache =
+                new CaffeineSimpleCache<Integer, SimpleCacheEntryWeigher.Weighable>(0, false, 100000L, 0, 0, getClass().getName());
+
+        bytesCache.put(1, () -> 30000L);
+        bytesCache.cleanUp();
+        long oneBytes = bytesCache.getEstimatedBytes();
+        assertTrue("Expected the value's own size to be used but got " + oneBytes, oneBytes >= 30000L && oneBytes < 31000L);
+
+        for (int i = 2; i <= 10; i++)
+        {
+            bytesCache.put(i, () -> 30000L);
+        }
+        bytesCache.cleanUp();
+        assertTrue(bytesCache.getEstimatedBytes() <= 100000L);
+        assertTrue(bytesCache.getKeys().size() <= 3);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the CompactLinkedHashMap class.
+ */
+public class CompactLinkedHashMapTest
+{
+    @Test
+    public void basicOperations()
+    {
+        CompactLinkedHashMap<String, String> map = new CompactLinkedHashMap<>(4);
+        assertTrue(map.isEmpty());
+        assertNull(map.get("a"));
+        assertNull(map.remove("a"));
+
+        assertNull(map.put("a", "1"));
+        assertNull(map.put("b", "2"));
+        assertNull(map.put(null, "3"));
+        assertNull(map.put("c", null));
+        assertEquals(4, map.size());
+        assertEquals("1", map.get("a"));
+        assertEquals("3", map.get(null));
+        assertNull(map.get("c"));
+        assertTrue(map.containsKey("c"));
+        assertTrue(map.containsKey(null));
+        assertFalse(map.containsKey("d"));
+
+        assertEquals("1", map.put("a", "one"));
+        assertEquals("one", map.get("a"));
+        assertEquals(4, map.size());
+
+        assertEquals("3", map.remove(null));
+        assertFalse(map.containsKey(null));
+        assertEquals(3, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey("a"));
+        map.put("a", "1");
+        assertEquals("1", map.get("a"));
+    }
+
+    @Test
+    public void keepsInsertionOrder()
+    {
+        CompactLinkedHashMap<Integer, String> map = new CompactLinkedHashMap<>(2);
+        for (int i = 0; i < 20; i++)
+        {
+            map.put(i, Integer.toString(i));
+        }
+        map.put(5, "five");
+        map.remove(0);
+        map.remove(10);
+        map.put(10, "ten");
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1; i < 20; i++)
+        {
+            if (i != 10)
+            {
+                expected.add(i);
+            }
+        }
+        expected.add(10);
+        assertEquals(expected, new ArrayList<>(map.keySet()));
+        assertEquals("five", map.get(5));
+    }
+
+    @Test
+    public void removeEldestEntry()
+    {
+        CompactLinkedHashMap<Integer, Integer> map = new CompactLinkedHashMap<Integer, Integer>(4)
+        {
+            @Override
+            protected boolean removeEldestEntry()
+            {
+                return size() > 3;
+            }
+        };
+        for (int i = 0; i < 100; i++)
+        {
+            map.put(i, i);
+        }
+        assertEquals(Arrays.asList(97, 98, 99), new ArrayList<>(map.keySet()));
+        assertFalse(map.containsKey(96));
+    }
+
+    @Test
+    public void iteratorRemove()
+    {
+        CompactLinkedHashMap<Integer, Integer> map = new CompactLinkedHashMap<>(8);
+        for (int i = 0; i < 10; i++)
+        {
+            map.put(i, i);
+        }
+        Iterator<Map.Entry<Integer, Integer>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().getKey() % 2 == 0)
+            {
+                iterator.remove();
+            }
+        }
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), new ArrayList<>(map.keySet()));
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(i % 2 == 1, map.containsKey(i));
+        }
+        try
+        {
+            map.entrySet().iterator().remove();
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void behavesLikeLinkedHashMap()
+    {
+        // Colliding keys exercise the linear probing and backward shift deletion
+        Random random = new Random(42L);
+        CompactLinkedHashMap<CollidingKey, Integer> map = new CompactLinkedHashMap<>(8);
+        Map<CollidingKey, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20000; i++)
+        {
+            CollidingKey key = new CollidingKey(random.nextInt(200));
+            switch (random.nextInt(3))
+            {
+            case 0:
+                assertEquals(expected.remove(key), map.remove(key));
+                break;
+            default:
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+    }
+
+    private static class CollidingKey
+    {
+        private final int id;
+
+        private CollidingKey(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return id % 7;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof CollidingKey && ((CollidingKey) obj).id == id;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "CollidingKey-" + id;
+        }
+    }
+}
@@ -62,6 +62,13 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.caffeine
+        properties.setProperty("cache.caffeine.maxItems", "5");
+        properties.setProperty("cache.caffeine.eviction-policy", "LRU");
+        properties.setProperty("cache.caffeine.implementation", "caffeine");
+        properties.setProperty("cache.caffeine.maxBytes", "1048576");
+        // cache.badImplementation
+        properties.setProperty("cache.badImplementation.implementation", "unknown");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +107,20 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
+    
+    @Test
+    public void canCreateCaffeineCache()
+    {
+        CaffeineSimpleCache<String, String> caffeineCache = (CaffeineSimpleCache<String, String>) cacheFactory.createCache("cache.caffeine");
+        assertEquals("cache.caffeine", caffeineCache.getCacheName());
+        assertEquals(5, caffeineCache.getMaxItems());
+        assertTrue(caffeineCache.isUseMaxItems());
+        assertEquals(1048576L, caffeineCache.getMaxBytes());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotCreateUnknownImplementation()
+    {
+        cacheFactory.createCache("cache.badImplementation");
+    }
 }
@@ -26,6 +26,9 @@
 package org.alfresco.repo.cache.lookup;
 
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -58,6 +61,7 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
     private EntityLookupCache<Long, Object, String> entityLookupCacheB;
     private TreeMap<Long, String> database;
     private ControlDAO controlDAO;
+    private List<List<Long>> findByKeysCalls;
 
     @Override
     protected void setUp() throws Exception
@@ -66,6 +70,7 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         entityLookupCacheA = new EntityLookupCache<Long, Object, String>(cache, "A", this);
         entityLookupCacheB = new EntityLookupCache<Long, Object, String>(cache, "B", this);
         database = new TreeMap<Long, String>();
+        findByKeysCalls = new ArrayList<List<Long>>();
         
         controlDAO = Mockito.mock(ControlDAO.class);
         Mockito.when(controlDAO.createSavepoint(Mockito.anyString())).thenReturn(Mockito.mock(Savepoint.class));
@@ -251,6 +256,73 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         assertEquals(0, cache.getKeys().size());
     }
     
+    public void testGetByKeys() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        createValue(new TestValue("CCC"));
+        // Get one of them into the cache
+        entityLookupCacheA.getByKey(1L);
+        
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(3L, 1L, 99L, 2L, 3L));
+        assertEquals("Missing entities must be left out and duplicates removed", 3, entityPairs.size());
+        assertEquals(new Pair<Long, Object>(3L, new TestValue("CCC")), entityPairs.get(0));
+        assertEquals(new Pair<Long, Object>(1L, new TestValue("AAA")), entityPairs.get(1));
+        assertEquals(new Pair<Long, Object>(2L, new TestValue("BBB")), entityPairs.get(2));
+        assertEquals("Cache misses must be loaded together", 1, findByKeysCalls.size());
+        assertEquals(Arrays.asList(3L, 99L, 2L), findByKeysCalls.get(0));
+        
+        // Everything, including the missing entity, is now cached
+        entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(1L, 2L, 3L, 99L));
+        assertEquals(3, entityPairs.size());
+        assertEquals(1, findByKeysCalls.size());
+        // The values are cached for lookups by value as well
+        assertEquals(new Long(2), entityLookupCacheA.getKey("BBB"));
+    }
+    
+    public void testGetCachedKeys() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        createValue(new TestValue("CCC"));
+        entityLookupCacheA.getByKeys(Arrays.asList(1L, 2L));
+        entityLookupCacheB.getByKey(3L);
+        
+        List<Long> cachedKeys = entityLookupCacheA.getCachedKeys(10);
+        cachedKeys.sort(null);
+        assertEquals("Only the keys of the cache region are returned", Arrays.asList(1L, 2L), cachedKeys);
+        assertEquals(1, entityLookupCacheA.getCachedKeys(1).size());
+        assertEquals(Arrays.asList(3L), entityLookupCacheB.getCachedKeys(10));
+    }
+    
+    public void testGetByKeysWithoutCache() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        EntityLookupCache<Long, Object, String> entityLookupCacheNoCache = new EntityLookupCache<Long, Object, String>(this);
+        
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheNoCache.getByKeys(Arrays.asList(2L, 3L, 1L));
+        assertEquals(2, entityPairs.size());
+        assertEquals(new Long(2), entityPairs.get(0).getFirst());
+        assertEquals(new Long(1), entityPairs.get(1).getFirst());
+        
+        entityLookupCacheNoCache.getByKeys(Arrays.asList(2L, 1L));
+        assertEquals("Without a cache all lookups go to the DAO", 2, findByKeysCalls.size());
+    }
+    
+    public void testGetByKeysWithNullKey() throws Exception
+    {
+        try
+        {
+            entityLookupCacheA.getByKeys(Arrays.asList(1L, null));
+            fail("Null keys must be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+    
     public void testClear() throws Exception
     {
         TestValue valueOne = new TestValue(getName() + "-ONE");
@@ -315,6 +387,12 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         return new Pair<Long, Object>(key, value);
     }
 
+    public List<Pair<Long, Object>> findByKeys(List<Long> keys)
+    {
+        findByKeysCalls.add(new ArrayList<Long>(keys));
+        return EntityLookupCallbackDAO.super.findByKeys(keys);
+    }
+
     public Pair<Long, Object> findByValue(Object value)
     {
         assertTrue(value == null || value instanceof TestValue);
@@ -50,6 +50,7 @@ import org.alfresco.repo.node.ContentPropertyRestrictionInterceptor;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -111,7 +112,7 @@ public class ContentStoreCleanerTest extends TestCase
         listeners.add(listener);
         listeners.add(new DummyUnsupportiveCleanerListener());
         // initialise record of deleted URLs
-        deletedUrls = new ArrayList<String>(5);
+        deletedUrls = Collections.synchronizedList(new ArrayList<String>(5));
         
         // Construct the test cleaners
         eagerCleaner = (EagerContentStoreCleaner) ctx.getBean("eagerContentStoreCleaner");
@@ -394,6 +395,100 @@ public class ContentStoreCleanerTest extends TestCase
         assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
     }
     
+    public void testImmediateRemovalInParallel() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        List<ContentData> contentDatas = new ArrayList<ContentData>();
+        for (int i = 0; i < 10; i++)
+        {
+            contentDatas.add(createOrphanedContent(storeRef));
+        }
+        
+        // fire the cleaner with small batches deleted on several threads
+        cleaner.setProtectDays(0);
+        cleaner.setBatchSize(3);
+        cleaner.setThreadCount(4);
+        cleaner.setStoreConcurrency(2);
+        cleaner.execute();
+        
+        for (ContentData contentData : contentDatas)
+        {
+            ContentReader reader = contentService.getRawReader(contentData.getContentUrl());
+            assertFalse("Unprotected content was not deleted", reader.exists());
+            assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
+        }
+    }
+    
+    public void testResumeFromCheckpoint() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        final AttributeService attributeService = (AttributeService) ctx.getBean("attributeService");
+        cleaner.setAttributeService(attributeService);
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        ContentData contentData = createOrphanedContent(storeRef);
+        
+        // Pretend that an earlier run got past all the current orphans
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                attributeService.setAttribute(Long.MAX_VALUE - 1L,
+                        ContentStoreCleaner.KEY_CLEANER_ROOT, ContentStoreCleaner.KEY_LAST_PROCESSED_ID);
+                return null;
+            }
+        });
+        cleaner.setProtectDays(0);
+        cleaner.execute();
+        assertTrue("Content before the checkpoint should not have been deleted",
+                contentService.getRawReader(contentData.getContentUrl()).exists());
+        
+        // The finished run cleared the checkpoint, so the next one starts from the beginning
+        Serializable checkpoint = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Serializable>()
+        {
+            public Serializable execute() throws Throwable
+            {
+                return attributeService.getAttribute(ContentStoreCleaner.KEY_CLEANER_ROOT, ContentStoreCleaner.KEY_LAST_PROCESSED_ID);
+            }
+        }, true);
+        assertNull("Checkpoint was not cleared", checkpoint);
+        cleaner.execute();
+        assertFalse("Unprotected content was not deleted",
+                contentService.getRawReader(contentData.getContentUrl()).exists());
+    }
+    
+    /**
+     * Create content and delete its node, bypassing the archive, without eagerly deleting the binary
+     */
+    private ContentData createOrphanedContent(final StoreRef storeRef)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<ContentData>()
+        {
+            public ContentData execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                properties.put(ContentModel.PROP_NAME, (Serializable)"test.txt");
+                NodeRef contentNodeRef = nodeService.createNode(
+                        rootNodeRef,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.TYPE_CONTENT,
+                        properties).getChildRef();
+                ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                writer.putContent("INITIAL CONTENT " + GUID.generate());
+                ContentData contentData = writer.getContentData();
+                
+                nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                nodeService.deleteNode(contentNodeRef);
+                return contentData;
+            }
+        });
+    }
+    
     /**
      * Test forced and immediate shredding of content
      * <p/>
@@ -0,0 +1,284 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the pooled {@link RemoteTransformerClient} against a stub T-Engine running in the test.
+ *
+ * @since 7.1
+ */
+public class RemoteTransformerConnectionPoolTest
+{
+    private static final Log logger = LogFactory.getLog(RemoteTransformerConnectionPoolTest.class);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private volatile int transformStatus = 200;
+    private volatile long transformDelayMs = 0;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final AtomicInteger maxInProgress = new AtomicInteger();
+
+    private SimpleMeterRegistry meterRegistry;
+    private RemoteTransformerConnectionPool connectionPool;
+    private RemoteTransformerClient client;
+    private File sourceFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/version", exchange -> respond(exchange, 200, "Stub T-Engine 1.0"));
+        server.createContext("/transform", this::transform);
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        connectionPool = new RemoteTransformerConnectionPool();
+        connectionPool.setMeterRegistry(meterRegistry);
+        client = new RemoteTransformerClient("stub", "http://localhost:" + server.getAddress().getPort() + "/",
+                connectionPool);
+
+        sourceFile = TempFileProvider.createTempFile("RemoteTransformerConnectionPoolTest", ".txt");
+        Files.write(sourceFile.toPath(), "Some text to transform".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown()
+    {
+        connectionPool.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        sourceFile.delete();
+    }
+
+    private void transform(HttpExchange exchange) throws IOException
+    {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        int current = inProgress.incrementAndGet();
+        maxInProgress.accumulateAndGet(current, Math::max);
+        try
+        {
+            try (InputStream is = exchange.getRequestBody())
+            {
+                is.readAllBytes();
+            }
+            if (transformDelayMs > 0)
+            {
+                Thread.sleep(transformDelayMs);
+            }
+            respond(exchange, transformStatus, transformStatus == 200 ? "TRANSFORMED" : "FAILED");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            inProgress.decrementAndGet();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    private String requestTransform()
+    {
+        StringBuilder result = new StringBuilder();
+        ContentWriter writer = mock(ContentWriter.class);
+        doAnswer(invocation ->
+        {
+            InputStream is = invocation.getArgument(0);
+            result.append(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            return null;
+        }).when(writer).putContent(any(InputStream.class));
+
+        client.request(new FileContentReader(sourceFile), writer, "text/plain", "txt", "pdf", 0, logger);
+        return result.toString();
+    }
+
+    @Test
+    public void requestsReuseThePooledConnection()
+    {
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals("TRANSFORMED", requestTransform());
+        }
+
+        assertEquals("All requests should have used the same kept alive connection", 1, clientPorts.size());
+        assertEquals(1, connectionPool.getStats().getAvailable());
+        assertEquals(0, connectionPool.getStats().getLeased());
+
+        Timer timer = meterRegistry.get(RemoteTransformerConnectionPool.METRIC_REQUEST)
+                .tag("transformer", "stub").tag("outcome", "success").timer();
+        assertEquals(5, timer.count());
+    }
+
+    @Test
+    public void consecutiveFailuresMarkTheTransformerUnavailable()
+    {
+        client.setFailureThreshold(2);
+        assertTrue(client.check(logger).getFirst());
+        assertTrue(client.isAvailable());
+
+        transformStatus = 500;
+        for (int i = 1; i <= 2; i++)
+        {
+            assertTrue("Should be available until the threshold is reached", client.isAvailable());
+            try
+            {
+                requestTransform();
+                fail("The transform should have failed");
+            }
+            catch (UnsupportedTransformationException | UnimportantTransformException e)
+            {
+                fail("A server error should not be reported as " + e.getClass().getSimpleName());
+            }
+            catch (RuntimeException e)
+            {
+                // expected
+            }
+        }
+        assertFalse("The transformer should be unavailable after the threshold", client.isAvailable());
+
+        Timer timer = meterRegistry.get(RemoteTransformerConnectionPool.METRIC_REQUEST)
+                .tag("transformer", "stub").tag("outcome", "failure").timer();
+        assertEquals(2, timer.count());
+    }
+
+    @Test
+    public void concurrentRequestsAreLimited() throws Exception
+    {
+        client.setMaxConcurrentRequests(2);
+        transformDelayMs = 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try
+        {
+            Future<?>[] futures = new Future<?>[6];
+            for (int i = 0; i < futures.length; i++)
+            {
+                futures[i] = executor.submit(this::requestTransform);
+            }
+            for (Future<?> future : futures)
+            {
+                assertEquals("TRANSFORMED", future.get(30, TimeUnit.SECONDS));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, maxInProgress.get());
+    }
+
+    @Test
+    public void exhaustedPoolTimesOutWithoutBlockingChecks() throws Exception
+    {
+        connectionPool.shutdown();
+        connectionPool = new RemoteTransformerConnectionPool();
+        connectionPool.setMeterRegistry(meterRegistry);
+        connectionPool.setMaxConnectionsPerRoute(1);
+        connectionPool.setConnectionRequestTimeoutMs(200);
+        client = new RemoteTransformerClient("stub", "http://localhost:" + server.getAddress().getPort() + "/",
+                connectionPool);
+        client.setFailureThreshold(1);
+        transformDelayMs = 2000;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<String> first = executor.submit(this::requestTransform);
+            while (inProgress.get() == 0)
+            {
+                Thread.sleep(10);
+            }
+
+            try
+            {
+                requestTransform();
+                fail("The request should have timed out waiting for a pooled connection");
+            }
+            catch (RuntimeException e)
+            {
+                // expected
+            }
+            assertTrue("A pool timeout should not count as a transformer failure", client.isAvailable());
+            assertTrue("Checks should not wait for the exhausted pool", client.check(logger).getFirst());
+
+            assertEquals("TRANSFORMED", first.get(30, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
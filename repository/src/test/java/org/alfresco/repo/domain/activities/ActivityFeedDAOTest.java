@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.activities;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.activities.feed.FeedTaskProcessor;
+import org.alfresco.repo.domain.activities.ibatis.ActivityFeedDAOImpl;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.testing.category.DBTests;
+import org.junit.experimental.categories.Category;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * @see ActivityFeedDAO
+ */
+@Category({OwnJVMTestsCategory.class, DBTests.class})
+public class ActivityFeedDAOTest extends TestCase
+{
+    private static final String INSERT_FEEDS = "alfresco.activities.insert.insert_activity_feeds";
+
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private RetryingTransactionHelper txnHelper;
+    private ActivityFeedDAO feedDAO;
+    private SqlSessionTemplate activitiesTemplate;
+    private JdbcTemplate jdbcTemplate;
+    private String siteId;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+
+        feedDAO = (ActivityFeedDAO) ctx.getBean("feedDAO");
+        activitiesTemplate = (SqlSessionTemplate) ctx.getBean("activitiesSqlSessionTemplate");
+        jdbcTemplate = new JdbcTemplate(ctx.getBean("dataSource", DataSource.class));
+
+        siteId = "feedDAOTest-" + GUID.generate();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        txnHelper.doInTransaction(() -> feedDAO.deleteSiteFeedEntries(siteId), false, true);
+    }
+
+    /**
+     * Entries are written by one statement per chunk of the configured insert batch size
+     */
+    public void testInsertFeedEntriesInChunks() throws Exception
+    {
+        SqlSessionTemplate template = spy(activitiesTemplate);
+        final ActivityFeedDAOImpl chunkingFeedDAO = new ActivityFeedDAOImpl();
+        chunkingFeedDAO.setSqlSessionTemplate(template);
+        chunkingFeedDAO.setInsertBatchSize(3);
+
+        final List<ActivityFeedEntity> feeds = createFeedEntries(7);
+        int inserted = txnHelper.doInTransaction(() -> chunkingFeedDAO.insertFeedEntries(feeds), false, true);
+        assertEquals(7, inserted);
+
+        ArgumentCaptor<Object> batches = ArgumentCaptor.forClass(Object.class);
+        verify(template, times(3)).insert(eq(INSERT_FEEDS), batches.capture());
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        for (Object batch : batches.getAllValues())
+        {
+            batchSizes.add(((List<?>) batch).size());
+        }
+        assertEquals(Arrays.asList(3, 3, 1), batchSizes);
+
+        checkPersisted(feeds);
+    }
+
+    /**
+     * The configured DAO writes every entry, including nulls, whatever the dialect
+     */
+    public void testInsertFeedEntries() throws Exception
+    {
+        final List<ActivityFeedEntity> feeds = createFeedEntries(250);
+        int inserted = txnHelper.doInTransaction(() -> feedDAO.insertFeedEntries(feeds), false, true);
+        assertEquals(250, inserted);
+
+        checkPersisted(feeds);
+    }
+
+    /**
+     * A feed task processor that does not batch inserts each entry on its own, with the same result
+     */
+    public void testInsertFeedEntriesDefaultsToOneAtATime() throws Exception
+    {
+        final FeedTaskProcessor feedTaskProcessor = mock(FeedTaskProcessor.class, Mockito.CALLS_REAL_METHODS);
+        when(feedTaskProcessor.insertFeedEntry(any(ActivityFeedEntity.class)))
+                .thenAnswer(invocation -> feedDAO.insertFeedEntry(invocation.getArgument(0)));
+
+        final List<ActivityFeedEntity> feeds = createFeedEntries(5);
+        int inserted = txnHelper.doInTransaction(() -> feedTaskProcessor.insertFeedEntries(feeds), false, true);
+        assertEquals(5, inserted);
+
+        verify(feedTaskProcessor, times(5)).insertFeedEntry(any(ActivityFeedEntity.class));
+        List<Map<String, Object>> rows = checkPersisted(feeds);
+        for (int i = 0; i < feeds.size(); i++)
+        {
+            // single row inserts return the generated IDs
+            assertEquals(feeds.get(i).getId().longValue(), ((Number) rows.get(i).get("id")).longValue());
+        }
+    }
+
+    /**
+     * Creates feed entries for the test site, with and without a summary, feed user and app tool
+     */
+    private List<ActivityFeedEntity> createFeedEntries(int count)
+    {
+        // whole seconds, as not every database keeps milliseconds
+        long now = (System.currentTimeMillis() / 1000L) * 1000L;
+        List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ActivityFeedEntity feed = new ActivityFeedEntity();
+            feed.setActivityType("testActivityType");
+            feed.setActivitySummary(i % 3 == 0 ? null : "{\"entry\":" + i + "}");
+            if (i % 2 == 0)
+            {
+                // otherwise a site feed entry
+                feed.setFeedUserId("feedUser" + i);
+            }
+            feed.setPostUserId("postUser" + i);
+            feed.setPostDate(new Date(now - (i * 60000L)));
+            feed.setPostId(i);
+            feed.setSiteNetwork(siteId);
+            feed.setAppTool(i % 2 == 0 ? null : "testAppTool");
+            feed.setFeedDate(new Date(now));
+            feeds.add(feed);
+        }
+        return feeds;
+    }
+
+    /**
+     * Checks that the test site holds exactly the given entries, in insert order, with increasing IDs
+     *
+     * @return the rows of the test site, in ID order
+     */
+    private List<Map<String, Object>> checkPersisted(List<ActivityFeedEntity> feeds)
+    {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "select id, activity_type, activity_summary, feed_user_id, post_user_id, post_date, post_id, site_network, app_tool, feed_date"
+                        + " from alf_activity_feed where site_network = ? order by id", siteId);
+        assertEquals(feeds.size(), rows.size());
+
+        long lastId = -1L;
+        for (int i = 0; i < feeds.size(); i++)
+        {
+            ActivityFeedEntity feed = feeds.get(i);
+            Map<String, Object> row = rows.get(i);
+
+            long id = ((Number) row.get("id")).longValue();
+            assertTrue("IDs must be generated in insert order", id > lastId);
+            lastId = id;
+
+            assertEquals(feed.getActivityType(), row.get("activity_type"));
+            assertEquals(feed.getActivitySummary(), row.get("activity_summary"));
+            assertEquals(feed.getFeedUserId(), row.get("feed_user_id"));
+            assertEquals(feed.getPostUserId(), row.get("post_user_id"));
+            assertEquals(feed.getPostDate().getTime(), ((Date) row.get("post_date")).getTime());
+            assertEquals(feed.getPostId(), ((Number) row.get("post_id")).longValue());
+            assertEquals(feed.getSiteNetwork(), row.get("site_network"));
+            assertEquals(feed.getAppTool(), row.get("app_tool"));
+            assertEquals(feed.getFeedDate().getTime(), ((Date) row.get("feed_date")).getTime());
+        }
+        return rows;
+    }
+}
@@ -312,6 +312,52 @@ public class NodeDAOTest extends TestCase
         assertNotNull("Null list", acls);
     }
     
+    public void testGetPrimaryChildAclsPaged() throws Throwable
+    {
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        final Long rootNodeId = nodeDAO.getRootNode(storeRef).getFirst();
+        
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                List<Long> expected = new ArrayList<Long>();
+                for (NodeIdAndAclId child : nodeDAO.getPrimaryChildrenAcls(rootNodeId))
+                {
+                    expected.add(child.getId());
+                }
+                Collections.sort(expected);
+                assertTrue("Expected several children of the root node", expected.size() > 1);
+                
+                // One child per page, in order of ID
+                List<Long> paged = new ArrayList<Long>();
+                Long minChildNodeId = null;
+                while (true)
+                {
+                    List<NodeIdAndAclId> page = nodeDAO.getPrimaryChildrenAcls(Collections.singletonList(rootNodeId), minChildNodeId, 1);
+                    assertTrue(page.size() <= 1);
+                    if (page.isEmpty())
+                    {
+                        break;
+                    }
+                    minChildNodeId = page.get(0).getId();
+                    paged.add(minChildNodeId);
+                }
+                assertEquals(expected, paged);
+                
+                List<Long> nodeIds = new ArrayList<Long>(expected);
+                nodeIds.add(rootNodeId);
+                Set<Long> roots = nodeDAO.getNodeIdsWithAspect(nodeIds, ContentModel.ASPECT_ROOT);
+                assertTrue(roots.contains(rootNodeId));
+                assertTrue(nodeIds.containsAll(roots));
+                assertTrue(nodeDAO.getNodeIdsWithAspect(expected, ContentModel.ASPECT_AUDITABLE).size() <= expected.size());
+                assertTrue(nodeDAO.getNodeIdsWithAspect(Collections.<Long>emptyList(), ContentModel.ASPECT_ROOT).isEmpty());
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
     public void testGetStoreId() throws Throwable
     {
         // Get all stores
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.util.Pair;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link SegmentedParentAssocsCache}
+ * 
+ * @since 7.1
+ */
+public class SegmentedParentAssocsCacheTest
+{
+    private static long nextAssocId = 1L;
+
+    @Test
+    public void testGetPutRemove()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(100, 8, 4);
+        Pair<Long, String> key = new Pair<Long, String>(1L, "txn-1");
+        ParentAssocsInfo value = createParentAssocsInfo(1L, 2);
+
+        assertNull(cache.get(key));
+        cache.put(key, value);
+        assertSame(value, cache.get(key));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getParentCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Replacing an entry must not leak the parent count
+        ParentAssocsInfo newValue = createParentAssocsInfo(1L, 3);
+        cache.put(key, newValue);
+        assertSame(newValue, cache.get(key));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getParentCount());
+
+        assertSame(newValue, cache.remove(key));
+        assertNull(cache.remove(key));
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getParentCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testSizeLimit()
+    {
+        // A single segment gives the same eviction order as the LinkedParentAssocsCache
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(3, 8, 1);
+        assertEquals(1, cache.getSegmentCount());
+        for (long i = 1; i <= 5; i++)
+        {
+            cache.put(new Pair<Long, String>(i, "txn"), createParentAssocsInfo(i, 1));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertNull(cache.get(new Pair<Long, String>(1L, "txn")));
+        assertNull(cache.get(new Pair<Long, String>(2L, "txn")));
+        assertNotNull(cache.get(new Pair<Long, String>(3L, "txn")));
+        assertNotNull(cache.get(new Pair<Long, String>(5L, "txn")));
+    }
+
+    @Test
+    public void testParentCountLimit()
+    {
+        // 10 entries with an average of 2 parents each
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(10, 2, 1);
+        for (long i = 1; i <= 4; i++)
+        {
+            cache.put(new Pair<Long, String>(i, "txn"), createParentAssocsInfo(i, 6));
+        }
+        // Only 3 entries with 6 parents fit into the limit of 20 parents
+        assertEquals(3, cache.size());
+        assertEquals(18, cache.getParentCount());
+        assertNull(cache.get(new Pair<Long, String>(1L, "txn")));
+    }
+
+    @Test
+    public void testSegmentedLimits()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(1000, 4, 16);
+        assertEquals(16, cache.getSegmentCount());
+        for (long i = 0; i < 10000; i++)
+        {
+            cache.put(new Pair<Long, String>(i, "txn-" + (i % 7)), createParentAssocsInfo(i, 1 + (int) (i % 3)));
+        }
+        // Each segment is rounded up to a whole number of entries
+        int maxSize = 16 * ((1000 + 15) / 16);
+        int size = cache.size();
+        assertEquals("Size exceeded: " + size, true, size <= maxSize);
+        assertEquals("Parent count exceeded", true, cache.getParentCount() <= 4000);
+        assertEquals(10000 - size, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getParentCount());
+    }
+
+    @Test
+    public void testSegmentCountIsCappedBySize()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(5, 8, 64);
+        assertEquals(4, cache.getSegmentCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSize()
+    {
+        new SegmentedParentAssocsCache(0, 8, 16);
+    }
+
+    private static ParentAssocsInfo createParentAssocsInfo(Long childNodeId, int parentCount)
+    {
+        NodeEntity childNode = new NodeEntity();
+        childNode.setId(childNodeId);
+        List<ChildAssocEntity> parentAssocs = new ArrayList<ChildAssocEntity>(parentCount);
+        for (int i = 0; i < parentCount; i++)
+        {
+            ChildAssocEntity parentAssoc = new ChildAssocEntity();
+            parentAssoc.setId(nextAssocId++);
+            parentAssoc.setChildNode(childNode);
+            parentAssoc.setPrimary(i == 0);
+            parentAssocs.add(parentAssoc);
+        }
+        return new ParentAssocsInfo(false, false, parentAssocs);
+    }
+}
@@ -240,6 +240,46 @@ public class FixedAclUpdaterTest extends TestCase
         }
     }
 
+    /*
+     * Test setting permissions explicitly as async, with the job setting the ACLs a level at a time
+     */
+    @Test
+    public void testAsyncSetBased()
+    {
+        NodeRef folderRef = createFolderHierarchyInRootForFolderTests("testAsyncSetBasedFolder");
+        ACLComparator aclComparator = new ACLComparator(folderRef);
+
+        try
+        {
+            fixedAclUpdater.setSetBasedPropagation(true);
+            setPermissionsOnTree(folderRef, true, true);
+
+            NodeRef folderWithPendingAcl = getFirstNodeWithAclPending(ContentModel.TYPE_FOLDER);
+            assertNotNull("No children folders were found with pendingFixACl aspect", folderWithPendingAcl);
+            ACLComparator aclComparatorForPending = new ACLComparator(folderWithPendingAcl);
+            assertFalse("Permissions not expected to be applied on a pending node before job",
+                    aclComparatorForPending.firstChildHasOriginalPermission());
+
+            // Trigger job
+            triggerFixedACLJob();
+
+            // Verify if ACLs where applied correctly
+            aclComparator.updateCurrentACLs();
+            aclComparatorForPending.updateCurrentACLs();
+            assertEquals("Not all nodes were processed", 0, getNodesCountWithPendingFixedAclAspect());
+            assertEquals("Processed Pending ACL children doesn't have correct ACL", aclComparator.getChildAcl(),
+                    aclComparatorForPending.getChildAcl());
+            assertTrue("Children of Pending nodes doesn't have same permission as parent",
+                    aclComparatorForPending.firstChildHasOriginalPermission());
+            aclComparator.compareACLs();
+        }
+        finally
+        {
+            fixedAclUpdater.setSetBasedPropagation(false);
+            deleteNodes(folderRef);
+        }
+    }
+
     /*
      * MNT-21847 - Create a new content in folder that has the aspect applied
      */
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.ChildAssocEntity;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.Pair;
+import org.alfresco.util.testing.category.DBTests;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+import org.springframework.extensions.surf.util.I18NUtil;
+
+/**
+ * @see TagScopeCountDAO
+ * 
+ * @since 7.1
+ */
+@Category({OwnJVMTestsCategory.class, DBTests.class})
+public class TagScopeCountDAOTest extends TestCase
+{
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+    
+    private RetryingTransactionHelper txnHelper;
+    
+    private TagScopeCountDAO tagScopeCountDAO;
+    private NodeDAO nodeDAO;
+    
+    private final static StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        TransactionService transactionService = (TransactionService)ctx.getBean("transactionService");
+        txnHelper = transactionService.getRetryingTransactionHelper();
+        
+        tagScopeCountDAO = (TagScopeCountDAO)ctx.getBean("tagScopeCountDAO");
+        nodeDAO = (NodeDAO)ctx.getBean("nodeDAO");
+    }
+    
+    private NodeRef createNode()
+    {
+        long rootNodeId = nodeDAO.getRootNode(storeRef).getFirst();
+        ChildAssocEntity assoc = nodeDAO.newNode(
+                rootNodeId,
+                ContentModel.ASSOC_CHILDREN,
+                ContentModel.ASSOC_CHILDREN,
+                storeRef,
+                null,
+                ContentModel.TYPE_FOLDER,
+                I18NUtil.getLocale(),
+                null,
+                null);
+        
+        return assoc.getChildNode().getNodeRef();
+    }
+    
+    private static Map<String, Integer> counts(Object ... tagsAndCounts)
+    {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < tagsAndCounts.length; i += 2)
+        {
+            counts.put((String) tagsAndCounts[i], (Integer) tagsAndCounts[i + 1]);
+        }
+        return counts;
+    }
+    
+    public void testUpdateAndGetTagCounts() throws Exception
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                NodeRef scopeNodeRef = createNode();
+                assertEquals(0, tagScopeCountDAO.getTagCounts(scopeNodeRef, 0).size());
+                
+                tagScopeCountDAO.updateTagCounts(scopeNodeRef, counts("alpha", 2, "beta", 1, "gamma", 0));
+                List<Pair<String, Integer>> tagCounts = tagScopeCountDAO.getTagCounts(scopeNodeRef, 0);
+                assertEquals(2, tagCounts.size());
+                assertEquals(new Pair<String, Integer>("alpha", 2), tagCounts.get(0));
+                assertEquals(new Pair<String, Integer>("beta", 1), tagCounts.get(1));
+                
+                // Counts are added to, and tags that are no longer used are removed
+                tagScopeCountDAO.updateTagCounts(scopeNodeRef, counts("alpha", -2, "beta", 3, "delta", 1, "epsilon", -1));
+                tagCounts = tagScopeCountDAO.getTagCounts(scopeNodeRef, 0);
+                assertEquals(2, tagCounts.size());
+                assertEquals(new Pair<String, Integer>("beta", 4), tagCounts.get(0));
+                assertEquals(new Pair<String, Integer>("delta", 1), tagCounts.get(1));
+                
+                // Top N
+                tagCounts = tagScopeCountDAO.getTagCounts(scopeNodeRef, 1);
+                assertEquals(Collections.singletonList(new Pair<String, Integer>("beta", 4)), tagCounts);
+                
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback);
+    }
+    
+    public void testSetAndDeleteTagCounts() throws Exception
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                NodeRef scopeNodeRef = createNode();
+                NodeRef otherScopeNodeRef = createNode();
+                tagScopeCountDAO.updateTagCounts(scopeNodeRef, counts("alpha", 1));
+                tagScopeCountDAO.updateTagCounts(otherScopeNodeRef, counts("alpha", 1));
+                
+                tagScopeCountDAO.setTagCounts(scopeNodeRef, counts("beta", 5, "gamma", 0, "delta", 7));
+                List<Pair<String, Integer>> tagCounts = tagScopeCountDAO.getTagCounts(scopeNodeRef, 0);
+                assertEquals(2, tagCounts.size());
+                assertEquals(new Pair<String, Integer>("delta", 7), tagCounts.get(0));
+                assertEquals(new Pair<String, Integer>("beta", 5), tagCounts.get(1));
+                
+                assertEquals(2, tagScopeCountDAO.deleteTagCounts(scopeNodeRef));
+                assertEquals(0, tagScopeCountDAO.getTagCounts(scopeNodeRef, 0).size());
+                
+                // Other scopes are left alone
+                assertEquals(1, tagScopeCountDAO.getTagCounts(otherScopeNodeRef, 0).size());
+                
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback);
+    }
+}
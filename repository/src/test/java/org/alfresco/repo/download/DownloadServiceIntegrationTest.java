@@ -78,6 +78,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -316,6 +317,23 @@ public class DownloadServiceIntegrationTest
         validateEntries(entryNames, allEntries, true);
     }
 
+    @Test public void createDownloadInParallel() throws IOException, InterruptedException
+    {
+        CreateDownloadArchiveAction action = APP_CONTEXT_INIT.getApplicationContext().getBean("createDownloadArchiveAction", CreateDownloadArchiveAction.class);
+        action.setParallelThreads(2);
+        // Store the test files, so both compression methods are used
+        action.setStoredMimetypes("text/*");
+        try
+        {
+            createDownload();
+        }
+        finally
+        {
+            action.setParallelThreads(0);
+            action.setStoredMimetypes(APP_CONTEXT_INIT.getApplicationContext().getBean("global-properties", Properties.class).getProperty("download.storedMimetypes"));
+        }
+    }
+
     private void validateEntries(final Set<String> entryNames, final Set<String> expectedEntries, boolean onlyExpected)
     {
         Set<String> copy = new TreeSet<String>(entryNames);
@@ -27,11 +27,14 @@ package org.alfresco.repo.event2;
 
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +47,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.repo.event2.EventGeneratorQueue.OverflowPolicy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,7 +66,7 @@ public class EventGeneratorQueueUnitTest
     private Map<String, RepoEvent<?>> events;
 
     @Before
-    public void setup() 
+    public void setup() throws Exception
     {
         queue = new EventGeneratorQueue();
 
@@ -73,6 +77,8 @@ public class EventGeneratorQueueUnitTest
 
         bus = mock(Event2MessageProducer.class);
         queue.setEvent2MessageProducer(bus);
+        queue.setMeterRegistry(new SimpleMeterRegistry());
+        queue.afterPropertiesSet();
 
         events = new HashMap<>();
 
@@ -217,6 +223,141 @@ public class EventGeneratorQueueUnitTest
         assertEquals("C", recordedEvents.get(1).getId());
     }
 
+    @Test
+    public void shouldDropEventsWhenFullWithDropPolicy() throws Exception
+    {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EventGeneratorQueue boundedQueue = newBoundedQueue(OverflowPolicy.DROP, meterRegistry);
+        boundedQueue.accept(messageWithDelay("A", 0l));
+        boundedQueue.accept(messageWithDelay("B", 0l));
+        boundedQueue.accept(messageWithDelay("C", 0l));
+        dequeuePool.execute(boundedQueue.listener);
+
+        sleep(150l);
+
+        assertEquals(1, recordedEvents.size());
+        assertEquals("A", recordedEvents.get(0).getId());
+        assertEquals(2.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "dropped").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "sent").counter().count(), 0.0);
+    }
+
+    @Test
+    public void shouldSpillEventsWhenFullPreservingOrder() throws Exception
+    {
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            Object event = invocation.getArgument(0);
+            sent.add(event instanceof RepoEvent ? ((RepoEvent<?>) event).getId() : event);
+            return null;
+        }).when(bus).send(any());
+        when(bus.toJson(any())).thenAnswer(invocation -> invocation.getArgument(0, RepoEvent.class).getId());
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EventGeneratorQueue boundedQueue = newBoundedQueue(OverflowPolicy.SPILL, meterRegistry);
+        boundedQueue.accept(messageWithDelay("A", 100l));
+        boundedQueue.accept(messageWithDelay("B", 0l));
+        boundedQueue.accept(messageWithDelay("C", 0l));
+        assertEquals(2.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "spilled").counter().count(), 0.0);
+        dequeuePool.execute(boundedQueue.listener);
+
+        sleep(300l);
+        // Once the spilled events have been sent the in-memory queue is used again
+        boundedQueue.accept(messageWithDelay("D", 0l));
+        sleep(150l);
+
+        assertEquals(4, sent.size());
+        assertEquals("A", sent.get(0));
+        assertEquals("B", sent.get(1));
+        assertEquals("C", sent.get(2));
+        assertEquals("D", sent.get(3));
+        assertEquals(2.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "spilled").counter().count(), 0.0);
+        boundedQueue.destroy();
+    }
+
+    @Test
+    public void shouldSpillConcurrentEventsInAcceptanceOrder() throws Exception
+    {
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return null;
+        }).when(bus).send(any());
+        when(bus.toJson(any())).thenAnswer(invocation -> invocation.getArgument(0, RepoEvent.class).getId());
+
+        EventGeneratorQueue boundedQueue = newBoundedQueue(OverflowPolicy.SPILL, new SimpleMeterRegistry());
+        boundedQueue.accept(messageWithDelay("A", 0l));
+        // B is accepted first but takes longer to make than C
+        Thread slowProducer = new Thread(() -> boundedQueue.accept(messageWithDelay("B", 200l)));
+        slowProducer.start();
+        sleep(50l);
+        Thread quickProducer = new Thread(() -> boundedQueue.accept(messageWithDelay("C", 0l)));
+        quickProducer.start();
+        slowProducer.join(1000l);
+        quickProducer.join(1000l);
+        dequeuePool.execute(boundedQueue.listener);
+
+        sleep(300l);
+
+        assertEquals(3, sent.size());
+        assertEquals("B", sent.get(1));
+        assertEquals("C", sent.get(2));
+        boundedQueue.destroy();
+    }
+
+    @Test
+    public void shouldCountFailedSpillsAsDropped() throws Exception
+    {
+        when(bus.toJson(any())).thenAnswer(invocation -> invocation.getArgument(0, RepoEvent.class).getId());
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EventGeneratorQueue boundedQueue = newBoundedQueue(OverflowPolicy.SPILL, meterRegistry);
+        boundedQueue.accept(messageWithDelay("A", 0l));
+        boundedQueue.accept(() -> {
+            throw new RuntimeException("Unable to make the event");
+        });
+        boundedQueue.accept(messageWithDelay("C", 0l));
+
+        assertEquals(1.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "dropped").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get(EventGeneratorQueue.METRIC_EVENTS).tag("outcome", "spilled").counter().count(), 0.0);
+        boundedQueue.destroy();
+    }
+
+    @Test
+    public void shouldBlockWhenFullWithBlockPolicy() throws Exception
+    {
+        EventGeneratorQueue boundedQueue = newBoundedQueue(OverflowPolicy.BLOCK, new SimpleMeterRegistry());
+        boundedQueue.accept(messageWithDelay("A", 0l));
+        Thread producer = new Thread(() -> boundedQueue.accept(messageWithDelay("B", 0l)));
+        producer.start();
+
+        sleep(150l);
+        assertTrue("The producer should wait for space in the queue", producer.isAlive());
+
+        dequeuePool.execute(boundedQueue.listener);
+        producer.join(1000l);
+        sleep(150l);
+
+        assertEquals(2, recordedEvents.size());
+        assertEquals("A", recordedEvents.get(0).getId());
+        assertEquals("B", recordedEvents.get(1).getId());
+    }
+
+    /**
+     * A queue holding a single event whose listener is only started by the test
+     */
+    private EventGeneratorQueue newBoundedQueue(OverflowPolicy overflowPolicy, SimpleMeterRegistry meterRegistry) throws Exception
+    {
+        EventGeneratorQueue boundedQueue = new EventGeneratorQueue();
+        boundedQueue.setEnqueueThreadPoolExecutor(enqueuePool);
+        boundedQueue.setDequeueThreadPoolExecutor(command -> {});
+        boundedQueue.setEvent2MessageProducer(bus);
+        boundedQueue.setMeterRegistry(meterRegistry);
+        boundedQueue.setMaxQueueSize(1);
+        boundedQueue.setOverflowPolicy(overflowPolicy);
+        boundedQueue.afterPropertiesSet();
+        return boundedQueue;
+    }
+
     private Callable<RepoEvent<?>> messageWithDelay(String id, long delay)
     {
         Callable<RepoEvent<?>> res = new Callable<RepoEvent<?>>() {
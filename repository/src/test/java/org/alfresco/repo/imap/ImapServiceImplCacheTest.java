@@ -29,10 +29,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
 
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.imap.ImapService.FolderStatus;
 import org.alfresco.repo.management.subsystems.ChildApplicationContextFactory;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -48,11 +57,13 @@ import org.alfresco.service.cmr.security.MutableAuthenticationService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.Pair;
 import org.alfresco.util.config.RepositoryFolderConfigBean;
 import org.alfresco.util.testing.category.LuceneTests;
 import org.junit.experimental.categories.Category;
 import org.springframework.context.ApplicationContext;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.icegreen.greenmail.store.SimpleStoredMessage;
 
 /**
@@ -79,6 +90,7 @@ public class ImapServiceImplCacheTest extends TestCase
     private FileInfo oldFile;
     
     private ImapService imapService;
+    private ImapServiceImpl imapServiceImpl;
 
     private NodeRef testImapFolderNodeRef;
     
@@ -109,7 +121,7 @@ public class ImapServiceImplCacheTest extends TestCase
 
         ChildApplicationContextFactory imap = (ChildApplicationContextFactory) ctx.getBean("imap");
         ApplicationContext imapCtx = imap.getApplicationContext();
-        final ImapServiceImpl imapServiceImpl = (ImapServiceImpl)imapCtx.getBean("imapService");
+        imapServiceImpl = (ImapServiceImpl)imapCtx.getBean("imapService");
 
         // Creating IMAP test folder for IMAP root
         LinkedList<String> folders = new LinkedList<String>();
@@ -238,6 +250,129 @@ public class ImapServiceImplCacheTest extends TestCase
         
     }
     
+    public void testMessageCacheMaxMessageSize() throws Exception
+    {
+        FileInfo content = fileFolderService.create(testImapFolderNodeRef, "content", ContentModel.TYPE_CONTENT);
+        writeContent(content, "TEST");
+        NodeRef nodeRef = content.getNodeRef();
+        
+        @SuppressWarnings("unchecked")
+        SimpleCache<NodeRef, ImapServiceImpl.CacheItem> messageCache = (SimpleCache<NodeRef, ImapServiceImpl.CacheItem>) ctx.getBean("imapMessageCache");
+        messageCache.remove(nodeRef);
+        
+        try
+        {
+            assertNotNull(imapServiceImpl.getMessage(fileFolderService.getFileInfo(nodeRef)));
+            ImapServiceImpl.CacheItem cached = messageCache.get(nodeRef);
+            assertNotNull("Message wasn't cached", cached);
+            int size = cached.getMessage().length;
+            assertTrue(size > 0);
+            
+            // The cached copy is served on the next read
+            SimpleStoredMessage message = imapServiceImpl.getMessage(fileFolderService.getFileInfo(nodeRef));
+            assertTrue(message.getMimeMessage() instanceof CachedImapMessage);
+            
+            // Once the message no longer fits it is rebuilt, and dropped from the cache
+            messageCache.remove(nodeRef);
+            imapServiceImpl.setMessageCacheMaxMessageSize(size - 1);
+            message = imapServiceImpl.getMessage(fileFolderService.getFileInfo(nodeRef));
+            assertFalse(message.getMimeMessage() instanceof CachedImapMessage);
+            assertNull("Message over the size limit was cached", messageCache.get(nodeRef));
+            
+            // Caching can be switched off altogether
+            imapServiceImpl.setMessageCacheMaxMessageSize(0);
+            imapServiceImpl.getMessage(fileFolderService.getFileInfo(nodeRef));
+            assertNull("Message was cached with the cache switched off", messageCache.get(nodeRef));
+        }
+        finally
+        {
+            imapServiceImpl.setMessageCacheMaxMessageSize(1048576);
+        }
+    }
+    
+    public void testWriteMessageStopsAtMaxSize() throws Exception
+    {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+        message.setSubject("test");
+        message.setText(buildString(100000));
+        message.saveChanges();
+        
+        assertNull(ImapServiceImpl.writeMessage(message, 0));
+        assertNull("Message over the size limit was written", ImapServiceImpl.writeMessage(message, 10000));
+        byte[] rfc822 = ImapServiceImpl.writeMessage(message, 200000);
+        assertNotNull(rfc822);
+        assertTrue(rfc822.length > 100000 && rfc822.length <= 200000);
+    }
+    
+    public void testFolderCacheEviction() throws Exception
+    {
+        // Bounded by entry count
+        Cache<Pair<String, String>, FolderStatus> folderCache = ImapServiceImpl.createFolderCache(5, 0L);
+        for (int i = 0; i < 50; i++)
+        {
+            folderCache.put(new Pair<String, String>(USER_NAME, "token" + i), createFolderStatus("token" + i, 0));
+        }
+        folderCache.cleanUp();
+        assertTrue("Folder cache grew past its size", folderCache.estimatedSize() <= 5);
+        
+        // The weight follows the size of the UID index
+        ImapServiceImpl.FolderStatusWeigher weigher = new ImapServiceImpl.FolderStatusWeigher();
+        Pair<String, String> key = new Pair<String, String>(USER_NAME, "token");
+        int emptyWeight = weigher.weigh(key, createFolderStatus("token", 0));
+        int fullWeight = weigher.weigh(key, createFolderStatus("token", 3));
+        assertTrue(emptyWeight > 0);
+        assertTrue("Folder status weight doesn't follow its messages", fullWeight > emptyWeight);
+        
+        // Bounded by weight, so fewer large statuses fit than small ones
+        long maxBytes = fullWeight * 4L;
+        folderCache = ImapServiceImpl.createFolderCache(1000, maxBytes);
+        for (int i = 0; i < 50; i++)
+        {
+            folderCache.put(new Pair<String, String>(USER_NAME, "token" + i), createFolderStatus("token", 3));
+        }
+        folderCache.cleanUp();
+        assertTrue("Folder cache grew past its weight", folderCache.estimatedSize() <= 4);
+        long weight = 0;
+        for (Map.Entry<Pair<String, String>, FolderStatus> entry : folderCache.asMap().entrySet())
+        {
+            weight += weigher.weigh(entry.getKey(), entry.getValue());
+        }
+        assertTrue(weight <= maxBytes);
+    }
+    
+    private FolderStatus createFolderStatus(String changeToken, int count)
+    {
+        NavigableMap<Long, FileInfo> search = new TreeMap<Long, FileInfo>();
+        for (int i = 0; i < count; i++)
+        {
+            FileInfo fileInfo = fileFolderService.create(testImapFolderNodeRef, changeToken + "_" + i + "_" + System.nanoTime(), ContentModel.TYPE_CONTENT);
+            search.put((long) i, fileInfo);
+        }
+        return new FolderStatus(count, 0, 0, 0, 1L, changeToken, search);
+    }
+    
+    private void writeContent(FileInfo fileInfo, String content)
+    {
+        ContentWriter contentWriter = contentService.getWriter(fileInfo.getNodeRef(), ContentModel.PROP_CONTENT, true);
+        contentWriter.setMimetype("text/plain");
+        contentWriter.setEncoding("UTF-8");
+        contentWriter.putContent(content);
+    }
+    
+    private String buildString(int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char) ('a' + (i % 26)));
+            if (i % 76 == 75)
+            {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+    
     private List<FileInfo> createTestContent(FileInfo parent, int count)
     {
         List<FileInfo> result = new ArrayList<FileInfo>(count);
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.node.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests for the {@link NodeCacheWarmer}.
+ */
+public class NodeCacheWarmerTest
+{
+    private File snapshotFile;
+    private NodeBulkLoader nodeDAO;
+    private NodeCacheWarmer warmer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        snapshotFile = TempFileProvider.createTempFile(getClass().getSimpleName(), ".bin");
+
+        nodeDAO = mock(NodeBulkLoader.class);
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean()))
+                .thenAnswer(invocation -> invocation.getArgument(0, RetryingTransactionCallback.class).execute());
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+
+        warmer = new NodeCacheWarmer();
+        warmer.setNodeDAO(nodeDAO);
+        warmer.setTransactionService(transactionService);
+        warmer.setEnabled(true);
+        warmer.setSnapshotFile(snapshotFile.getPath());
+    }
+
+    @After
+    public void tearDown()
+    {
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws Exception
+    {
+        List<Long> nodeIds = Arrays.asList(1000000L, 3L, Long.MAX_VALUE, 1000001L, 0L, 129L);
+        NodeCacheWarmer.writeSnapshot(snapshotFile, nodeIds);
+
+        long[] read = NodeCacheWarmer.readSnapshot(snapshotFile);
+        assertArrayEquals(new long[] {0L, 3L, 129L, 1000000L, 1000001L, Long.MAX_VALUE}, read);
+    }
+
+    @Test
+    public void snapshotIsCompact() throws Exception
+    {
+        List<Long> nodeIds = new ArrayList<>();
+        for (long nodeId = 5000000L; nodeId < 5100000L; nodeId += 3)
+        {
+            nodeIds.add(nodeId);
+        }
+        NodeCacheWarmer.writeSnapshot(snapshotFile, nodeIds);
+
+        assertTrue("Close node IDs should take about a byte each", snapshotFile.length() < nodeIds.size() + 16);
+        assertEquals(nodeIds.size(), NodeCacheWarmer.readSnapshot(snapshotFile).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception
+    {
+        try (FileOutputStream out = new FileOutputStream(snapshotFile))
+        {
+            out.write("Not a snapshot".getBytes("UTF-8"));
+        }
+        NodeCacheWarmer.readSnapshot(snapshotFile);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warmUpLoadsNodesInBatches() throws Exception
+    {
+        warmer.setBatchSize(2);
+        warmer.setThreadCount(2);
+
+        assertEquals(3, warmer.warmUp(new long[] {1L, 2L, 3L, 4L, 5L}));
+
+        ArgumentCaptor<List<Long>> batches = ArgumentCaptor.forClass(List.class);
+        verify(nodeDAO, timeout(5000).times(3)).cacheNodesById(batches.capture());
+        List<Long> loaded = new ArrayList<>();
+        for (List<Long> batch : batches.getAllValues())
+        {
+            assertTrue(batch.size() <= 2);
+            loaded.addAll(batch);
+        }
+        loaded.sort(null);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), loaded);
+    }
+
+    @Test
+    public void snapshotsCachedNodesAtShutdown() throws Exception
+    {
+        warmer.setMaxNodes(10);
+        when(nodeDAO.getCachedNodeIds(10)).thenReturn(Arrays.asList(7L, 5L));
+
+        warmer.onShutdown(null);
+
+        assertArrayEquals(new long[] {5L, 7L}, NodeCacheWarmer.readSnapshot(snapshotFile));
+    }
+}
@@ -59,6 +59,7 @@ import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.model.filefolder.GetChildrenCannedQueryFactory;
 import org.alfresco.repo.model.filefolder.HiddenAspect;
 import org.alfresco.repo.node.getchildren.FilterPropString.FilterTypeString;
+import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.impl.acegi.MethodSecurityBean;
 import org.alfresco.repo.tenant.TenantService;
@@ -120,6 +121,7 @@ public class GetChildrenCannedQueryTest extends TestCase
     private PermissionService permissionService;
     private RatingService ratingService;
     private TenantService tenantService;
+    private BehaviourFilter behaviourFilter;
     private DictionaryDAO dictionaryDAO;
     
     private RatingScheme fiveStarRatingScheme;
@@ -172,6 +174,7 @@ public class GetChildrenCannedQueryTest extends TestCase
         
         dictionaryDAO = (DictionaryDAO) ctx.getBean("dictionaryDAO");
         tenantService = (TenantService) ctx.getBean("tenantService");
+        behaviourFilter = (BehaviourFilter) ctx.getBean("policyBehaviourFilter");
         
         cannedQueryRegistry = new NamedObjectRegistry<CannedQueryFactory>();
         cannedQueryRegistry.setStorageType(CannedQueryFactory.class);
@@ -1513,6 +1516,160 @@ public class GetChildrenCannedQueryTest extends TestCase
         }
     }
 
+    public void testKeysetSorting() throws Exception
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        GetChildrenCannedQueryFactory getChildrenCannedQueryFactory = (GetChildrenCannedQueryFactory)cannedQueryRegistry.getNamedObject(CQ_FACTORY_NAME);
+        try
+        {
+            NodeRef parentFolder = createFolder(repositoryHelper.getCompanyHome(), "testKeysetSorting-"+GUID.generate(), ContentModel.TYPE_FOLDER);
+            
+            // more children than fit in the first keyset page (at least 64 rows), with runs of equal created and
+            // modified dates, so that pages end part way through a run and continue on the node id
+            int childCount = 150;
+            List<Integer> numbers = new ArrayList<Integer>(childCount);
+            for (int i = 1; i <= childCount; i++)
+            {
+                numbers.add(i);
+            }
+            Collections.shuffle(numbers);
+            long baseTime = System.currentTimeMillis() - 86400000L;
+            for (int i : numbers)
+            {
+                String name = String.format("keyset-%03d", i);
+                NodeRef child;
+                if (i % 4 == 0)
+                {
+                    child = createFolder(parentFolder, name, ContentModel.TYPE_FOLDER);
+                }
+                else
+                {
+                    child = createContent(parentFolder, name + ".txt", ContentModel.TYPE_CONTENT);
+                }
+                setAuditableDates(child, new Date(baseTime + (i / 10) * 60000L), new Date(baseTime + (i % 7) * 60000L));
+            }
+            
+            List<List<Pair<QName, Boolean>>> sorts = new ArrayList<List<Pair<QName, Boolean>>>();
+            sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_NAME, true)));
+            sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_NAME, false)));
+            sorts.add(Arrays.asList(new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER, false), new Pair<QName, Boolean>(ContentModel.PROP_NAME, true)));
+            sorts.add(Arrays.asList(new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER, true), new Pair<QName, Boolean>(ContentModel.PROP_NAME, false)));
+            sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_CREATED, true)));
+            sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_CREATED, false)));
+            sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_MODIFIED, true)));
+            sorts.add(Arrays.asList(new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER, false), new Pair<QName, Boolean>(ContentModel.PROP_MODIFIED, false)));
+            
+            for (List<Pair<QName, Boolean>> sortProps : sorts)
+            {
+                // sorted post query
+                List<NodeRef> expected = list(parentFolder, 0, Integer.MAX_VALUE, 0, null, null, sortProps).getPage();
+                assertEquals(childCount, expected.size());
+                
+                // sorted by the database, a few at a time
+                getChildrenCannedQueryFactory.setKeysetSortEnabled(true);
+                try
+                {
+                    List<NodeRef> actual = new ArrayList<NodeRef>(childCount);
+                    boolean hasMore = true;
+                    while (hasMore)
+                    {
+                        PagingResults<NodeRef> results = list(parentFolder, actual.size(), 6, 0, null, null, sortProps);
+                        actual.addAll(results.getPage());
+                        hasMore = results.hasMoreItems();
+                    }
+                    
+                    if (sortProps.get(sortProps.size() - 1).getFirst().equals(ContentModel.PROP_NAME))
+                    {
+                        // names are unique, so the order is fully defined
+                        assertEquals("Unexpected order for "+sortProps, expected, actual);
+                    }
+                    else
+                    {
+                        // the post query sort leaves equal dates in any order, the database orders them by node id
+                        assertEquals("Unexpected children for "+sortProps, new HashSet<NodeRef>(expected), new HashSet<NodeRef>(actual));
+                        assertEquals("Duplicate children for "+sortProps, childCount, actual.size());
+                        assertKeysetOrder(actual, sortProps);
+                    }
+                }
+                finally
+                {
+                    getChildrenCannedQueryFactory.setKeysetSortEnabled(false);
+                }
+            }
+        }
+        finally
+        {
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+    
+    private void setAuditableDates(final NodeRef nodeRef, final Date created, final Date modified)
+    {
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                behaviourFilter.disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                try
+                {
+                    nodeService.setProperty(nodeRef, ContentModel.PROP_CREATED, created);
+                    nodeService.setProperty(nodeRef, ContentModel.PROP_MODIFIED, modified);
+                }
+                finally
+                {
+                    behaviourFilter.enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                }
+                return null;
+            }
+        });
+    }
+    
+    private void assertKeysetOrder(List<NodeRef> nodeRefs, List<Pair<QName, Boolean>> sortProps)
+    {
+        for (int i = 1; i < nodeRefs.size(); i++)
+        {
+            NodeRef previous = nodeRefs.get(i - 1);
+            NodeRef next = nodeRefs.get(i);
+            
+            int result = 0;
+            for (Pair<QName, Boolean> sortProp : sortProps)
+            {
+                if (sortProp.getFirst().equals(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER))
+                {
+                    result = Boolean.compare(isFolder(previous), isFolder(next));
+                }
+                else
+                {
+                    Date previousDate = (Date)nodeService.getProperty(previous, sortProp.getFirst());
+                    Date nextDate = (Date)nodeService.getProperty(next, sortProp.getFirst());
+                    result = previousDate.compareTo(nextDate);
+                }
+                if (!sortProp.getSecond())
+                {
+                    result = -result;
+                }
+                if (result != 0)
+                {
+                    break;
+                }
+            }
+            if (result == 0)
+            {
+                // ties are broken by the node id, in the direction of the last sort
+                Long previousId = (Long)nodeService.getProperty(previous, ContentModel.PROP_NODE_DBID);
+                Long nextId = (Long)nodeService.getProperty(next, ContentModel.PROP_NODE_DBID);
+                result = sortProps.get(sortProps.size() - 1).getSecond() ? previousId.compareTo(nextId) : nextId.compareTo(previousId);
+            }
+            assertTrue("Children "+(i - 1)+" and "+i+" out of order for "+sortProps, result < 0);
+        }
+    }
+    
+    private boolean isFolder(NodeRef nodeRef)
+    {
+        return dictionaryService.isSubClass(nodeService.getType(nodeRef), ContentModel.TYPE_FOLDER);
+    }
+    
     // REPO-1204 / MNT-16742 (fallout from MNT-12894)
     public void testPagingGetChildrenCannedQueryWithoutProps() throws Exception
     {
@@ -25,6 +25,10 @@
  */
 package org.alfresco.repo.policy;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -59,6 +63,7 @@ public class PolicyComponentTest extends TestCase
     private static QName ASPECT_PROP_A = QName.createQName(TEST_NAMESPACE, "aspect_a");
     private static QName INVALID_TYPE = QName.createQName(TEST_NAMESPACE, "classdoesnotexist");
 
+    private DictionaryComponent dictionary = null;
     private PolicyComponent policyComponent = null;
 
 
@@ -82,7 +87,7 @@ public class PolicyComponentTest extends TestCase
         bootstrap.setTenantService(new SingleTServiceImpl());
         bootstrap.bootstrap();
 
-        DictionaryComponent dictionary = new DictionaryComponent();
+        dictionary = new DictionaryComponent();
         dictionary.setDictionaryDAO(dictionaryDAO);
 
         // Instantiate Policy Component
@@ -361,6 +366,48 @@ public class PolicyComponentTest extends TestCase
     }
 
 
+    public void testClassCacheWithActiveFilter()
+    {
+        // Disable the class behaviours of the file type only
+        BehaviourFilter filter = mock(BehaviourFilter.class);
+        when(filter.isActivated()).thenReturn(true);
+        when(filter.isEnabled(any(QName.class))).thenReturn(true);
+        when(filter.isEnabled(FILE_TYPE)).thenReturn(false);
+        PolicyComponentImpl filteredComponent = new PolicyComponentImpl(dictionary);
+        filteredComponent.setBehaviourFilter(filter);
+
+        // Register Policy and bind class and service behaviour
+        ClassPolicyDelegate<TestClassPolicy> delegate = filteredComponent.registerClassPolicy(TestClassPolicy.class);
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        filteredComponent.bindClassBehaviour(policyName, BASE_TYPE, new JavaBehaviour(this, "baseTest"));
+        filteredComponent.bindClassBehaviour(policyName, this, new JavaBehaviour(this, "serviceTest"));
+
+        // Filtered class behaviours are left out, service behaviours are kept
+        assertEquals(2, delegate.getList(BASE_TYPE).size());
+        assertEquals(2, delegate.getList(FOLDER_TYPE).size());
+        assertEquals(1, delegate.getList(FILE_TYPE).size());
+        assertEquals("Service: file", delegate.get(FILE_TYPE).test("file"));
+
+        // Policies are cached although the filter is active
+        TestClassPolicy basePolicy = delegate.get(BASE_TYPE);
+        assertTrue(basePolicy == delegate.get(BASE_TYPE));
+        TestClassPolicy filePolicy = delegate.get(FILE_TYPE);
+        assertTrue(filePolicy == delegate.get(FILE_TYPE));
+
+        // The filter is applied on each call
+        when(filter.isEnabled(FILE_TYPE)).thenReturn(true);
+        assertEquals(2, delegate.getList(FILE_TYPE).size());
+        assertTrue(filePolicy != delegate.get(FILE_TYPE));
+
+        // Binding new behaviour resets the cache
+        filteredComponent.bindClassBehaviour(policyName, BASE_TYPE, new JavaBehaviour(this, "newBaseTest"));
+        assertTrue(basePolicy != delegate.get(BASE_TYPE));
+        assertEquals(3, delegate.getList(BASE_TYPE).size());
+        when(filter.isEnabled(BASE_TYPE)).thenReturn(false);
+        assertEquals(1, delegate.getList(BASE_TYPE).size());
+    }
+
+
     public void testPropertyDelegate()
     {
         // Register Policy
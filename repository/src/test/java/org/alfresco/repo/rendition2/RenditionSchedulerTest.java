@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.rendition2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RenditionScheduler}, using a single worker that is held busy while requests are queued.
+ */
+public class RenditionSchedulerTest
+{
+    private static final String DOCLIB = "doclib";
+    private static final NodeRef BLOCKER = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "blocker");
+    private static final NodeRef NODE_1 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node1");
+    private static final NodeRef NODE_2 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node2");
+    private static final NodeRef NODE_3 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node3");
+    private static final NodeRef NODE_4 = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "node4");
+
+    private SimpleMeterRegistry meterRegistry;
+    private RenditionScheduler scheduler;
+    private List<String> ran;
+
+    @Before
+    public void setUp()
+    {
+        meterRegistry = new SimpleMeterRegistry();
+        ran = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RenditionScheduler.setBackgroundThread(false);
+        if (scheduler != null)
+        {
+            scheduler.destroy();
+        }
+    }
+
+    private void startScheduler(int maxQueueSize, int backgroundShare) throws Exception
+    {
+        scheduler = new RenditionScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setMaxQueueSize(maxQueueSize);
+        scheduler.setBackgroundShare(backgroundShare);
+        scheduler.setMeterRegistry(meterRegistry);
+        scheduler.afterPropertiesSet();
+    }
+
+    /**
+     * Keeps the only worker busy until the returned latch is released.
+     */
+    private CountDownLatch blockWorker() throws InterruptedException
+    {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.scheduleUncoalesced(BLOCKER, DOCLIB, 1, () ->
+        {
+            started.countDown();
+            try
+            {
+                release.await(30, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue("Worker did not start", started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private Runnable record(String name)
+    {
+        return () -> ran.add(name);
+    }
+
+    private void waitForRuns(int count) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 10000L;
+        while (ran.size() < count && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        // Give any unexpected extra runs a chance to show up
+        Thread.sleep(100L);
+    }
+
+    private double requests(String outcome)
+    {
+        return meterRegistry.get(RenditionScheduler.METRIC_REQUESTS).tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    public void requestForSameContentIsCoalesced() throws Exception
+    {
+        startScheduler(10, 0);
+        CountDownLatch release = blockWorker();
+
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("first"));
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("second"));
+        assertEquals(1, scheduler.getPendingCount());
+        release.countDown();
+
+        waitForRuns(1);
+        assertEquals(Arrays.asList("first"), ran);
+        assertEquals(1.0, requests("coalesced"), 0.0);
+    }
+
+    @Test
+    public void requestForNewContentSupersedesWaitingRequest() throws Exception
+    {
+        startScheduler(10, 0);
+        CountDownLatch release = blockWorker();
+
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("first"));
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("other"));
+        scheduler.schedule(NODE_1, DOCLIB, 2, record("second"));
+        release.countDown();
+
+        // The newer request keeps the original place in the queue
+        waitForRuns(2);
+        assertEquals(Arrays.asList("second", "other"), ran);
+        assertEquals(1.0, requests("superseded"), 0.0);
+    }
+
+    @Test
+    public void differentRenditionsAreNotCoalesced() throws Exception
+    {
+        startScheduler(10, 0);
+        CountDownLatch release = blockWorker();
+
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("doclib"));
+        scheduler.schedule(NODE_1, "pdf", 1, record("pdf"));
+        scheduler.scheduleUncoalesced(NODE_1, "pdf", 1, record("transform"));
+        release.countDown();
+
+        waitForRuns(3);
+        assertEquals(Arrays.asList("doclib", "pdf", "transform"), ran);
+    }
+
+    @Test
+    public void interactiveRequestsRunBeforeBackgroundRequests() throws Exception
+    {
+        startScheduler(10, 0);
+        CountDownLatch release = blockWorker();
+
+        RenditionScheduler.setBackgroundThread(true);
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("background1"));
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("background2"));
+        RenditionScheduler.setBackgroundThread(false);
+        scheduler.schedule(NODE_3, DOCLIB, 1, record("interactive"));
+        release.countDown();
+
+        waitForRuns(3);
+        assertEquals(Arrays.asList("interactive", "background1", "background2"), ran);
+    }
+
+    @Test
+    public void backgroundLaneIsServedOnItsShare() throws Exception
+    {
+        // Every pick serves the background lane first
+        startScheduler(10, 1);
+        CountDownLatch release = blockWorker();
+
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("interactive"));
+        RenditionScheduler.setBackgroundThread(true);
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("background"));
+        RenditionScheduler.setBackgroundThread(false);
+        release.countDown();
+
+        waitForRuns(2);
+        assertEquals(Arrays.asList("background", "interactive"), ran);
+    }
+
+    @Test
+    public void interactiveRequestPromotesWaitingBackgroundRequest() throws Exception
+    {
+        startScheduler(10, 0);
+        CountDownLatch release = blockWorker();
+
+        RenditionScheduler.setBackgroundThread(true);
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("background"));
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("promoted"));
+        RenditionScheduler.setBackgroundThread(false);
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("interactive"));
+        release.countDown();
+
+        // Runs once, and ahead of the background lane
+        waitForRuns(2);
+        assertEquals(Arrays.asList("promoted", "background"), ran);
+    }
+
+    @Test
+    public void fullLaneRunsRequestOnCallingThread() throws Exception
+    {
+        startScheduler(2, 0);
+        CountDownLatch release = blockWorker();
+
+        scheduler.schedule(NODE_1, DOCLIB, 1, record("queued1"));
+        scheduler.schedule(NODE_2, DOCLIB, 1, record("queued2"));
+        String caller = Thread.currentThread().getName();
+        scheduler.schedule(NODE_3, DOCLIB, 1, () -> ran.add("callerRuns " + Thread.currentThread().getName()));
+        assertEquals(Arrays.asList("callerRuns " + caller), ran);
+
+        // The background lane has its own bound
+        RenditionScheduler.setBackgroundThread(true);
+        scheduler.schedule(NODE_4, DOCLIB, 1, record("background"));
+        RenditionScheduler.setBackgroundThread(false);
+        release.countDown();
+
+        waitForRuns(4);
+        assertEquals(Arrays.asList("callerRuns " + caller, "queued1", "queued2", "background"), ran);
+        assertEquals(1.0, requests("caller_runs"), 0.0);
+    }
+}
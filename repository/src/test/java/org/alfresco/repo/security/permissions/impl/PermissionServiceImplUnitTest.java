@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+import java.io.Serializable;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.permissions.ACLType;
+import org.alfresco.repo.security.permissions.AccessControlListProperties;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/** Mock-based unit tests for the access cache invalidation of {@link PermissionServiceImpl}. */
+public class PermissionServiceImplUnitTest
+{
+    private static final NodeRef GROUP_NODE = new NodeRef("test://group/node");
+    private static final NodeRef PERSON_NODE = new NodeRef("test://person/node");
+    private static final NodeRef PARENT_NODE = new NodeRef("test://parent/node");
+    private static final NodeRef CHILD_NODE = new NodeRef("test://child/node");
+
+    private PermissionServiceImpl permissionService = new PermissionServiceImpl();
+    @Mock
+    private SimpleCache<Serializable, AccessStatus> accessCache;
+    @Mock
+    private SimpleCache<String, String> accessCacheGenerations;
+    @Mock
+    private NodeService nodeService;
+    @Mock
+    private DictionaryService dictionaryService;
+    @Mock
+    private TenantService tenantService;
+    @Mock
+    private PermissionsDaoComponent permissionsDaoComponent;
+
+    @Before
+    public void setUp()
+    {
+        openMocks(this);
+        permissionService.setAccessCache(accessCache);
+        permissionService.setAccessCacheGenerations(accessCacheGenerations);
+        permissionService.setNodeService(nodeService);
+        permissionService.setDictionaryService(dictionaryService);
+        permissionService.setTenantService(tenantService);
+        permissionService.setPermissionsDaoComponent(permissionsDaoComponent);
+
+        when(tenantService.getName(CHILD_NODE)).thenReturn(CHILD_NODE);
+        when(nodeService.exists(PERSON_NODE)).thenReturn(true);
+        when(nodeService.getType(PERSON_NODE)).thenReturn(ContentModel.TYPE_PERSON);
+        when(nodeService.getProperty(PERSON_NODE, ContentModel.PROP_USERNAME)).thenReturn("andy");
+        when(dictionaryService.isSubClass(ContentModel.TYPE_PERSON, ContentModel.TYPE_PERSON)).thenReturn(true);
+    }
+
+    /** Adding a user to a group only invalidates the entries of that user. */
+    @Test
+    public void testAddUserToGroupInvalidatesUser()
+    {
+        permissionService.onCreateChildAssociation(childAssoc(GROUP_NODE, PERSON_NODE));
+
+        verify(accessCacheGenerations).remove("andy");
+        verify(accessCache, never()).clear();
+    }
+
+    /** Removing a user from a group only invalidates the entries of that user. */
+    @Test
+    public void testRemoveUserFromGroupInvalidatesUser()
+    {
+        permissionService.beforeDeleteChildAssociation(childAssoc(GROUP_NODE, PERSON_NODE));
+
+        verify(accessCacheGenerations).remove("andy");
+        verify(accessCache, never()).clear();
+    }
+
+    /** Without a generation cache the whole access cache has to be cleared. */
+    @Test
+    public void testMembershipChangeWithoutGenerationsClearsCache()
+    {
+        permissionService.setAccessCacheGenerations(null);
+
+        permissionService.onCreateChildAssociation(childAssoc(GROUP_NODE, PERSON_NODE));
+
+        verify(accessCache).clear();
+    }
+
+    /** Members that are neither people nor authority containers clear the whole cache. */
+    @Test
+    public void testUnknownMemberClearsCache()
+    {
+        NodeRef otherNode = new NodeRef("test://other/node");
+        when(nodeService.exists(otherNode)).thenReturn(true);
+        when(nodeService.getType(otherNode)).thenReturn(ContentModel.TYPE_CONTENT);
+
+        permissionService.onCreateChildAssociation(childAssoc(GROUP_NODE, otherNode));
+
+        verify(accessCacheGenerations, never()).remove(anyString());
+        verify(accessCache).clear();
+    }
+
+    /** Moving a node with a new-style ACL leaves the access cache alone. */
+    @Test
+    public void testMoveNodeWithAclKeepsCache()
+    {
+        AccessControlListProperties properties = mock(AccessControlListProperties.class);
+        when(properties.getAclType()).thenReturn(ACLType.SHARED);
+        when(permissionsDaoComponent.getAccessControlListProperties(CHILD_NODE)).thenReturn(properties);
+
+        permissionService.onMoveNode(childAssoc(PARENT_NODE, CHILD_NODE), childAssoc(GROUP_NODE, CHILD_NODE));
+
+        verify(accessCache, never()).clear();
+    }
+
+    /** Moving a node without an ACL still clears the access cache. */
+    @Test
+    public void testMoveNodeWithoutAclClearsCache()
+    {
+        permissionService.onMoveNode(childAssoc(PARENT_NODE, CHILD_NODE), childAssoc(GROUP_NODE, CHILD_NODE));
+
+        verify(accessCache).clear();
+    }
+
+    private ChildAssociationRef childAssoc(NodeRef parentRef, NodeRef childRef)
+    {
+        return new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, parentRef, ContentModel.ASSOC_CONTAINS, childRef);
+    }
+}